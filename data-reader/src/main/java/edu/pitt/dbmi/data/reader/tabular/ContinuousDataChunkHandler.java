@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2019 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.pitt.dbmi.data.reader.tabular;
+
+/**
+ * Receives continuous data in chunks of rows as it is read, so that a file can
+ * be processed without holding all of its data in memory.
+ *
+ * Oct 18, 2026 10:12:40 AM
+ *
+ * @author agent
+ */
+@FunctionalInterface
+public interface ContinuousDataChunkHandler {
+
+    /**
+     * Handle the next chunk of rows. The array is reused for the following
+     * chunk, so its values must be copied out if they are to be kept.
+     *
+     * @param data rows of data, of which only the first numOfRows are filled
+     * @param numOfRows number of rows in this chunk
+     */
+    public void handle(double[][] data, int numOfRows);
+
+}
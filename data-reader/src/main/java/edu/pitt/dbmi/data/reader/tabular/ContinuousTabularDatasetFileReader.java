@@ -60,7 +60,7 @@ public class ContinuousTabularDatasetFileReader extends DatasetFileReader implem
                 ? columnReader.readInDataColumns(namesOfColumnsToExclude, isDiscrete)
                 : columnReader.generateColumns(new int[0], isDiscrete);
 
-        TabularDataReader dataReader = new TabularDataFileReader(dataFile, delimiter);
+        TabularDataReader dataReader = new ParallelTabularDataFileReader(dataFile, delimiter);
         dataReader.setCommentMarker(commentMarker);
         dataReader.setQuoteCharacter(quoteChar);
         dataReader.setMissingDataMarker(missingDataMarker);
@@ -79,7 +79,7 @@ public class ContinuousTabularDatasetFileReader extends DatasetFileReader implem
                 ? columnReader.readInDataColumns(columnsToExclude, isDiscrete)
                 : columnReader.generateColumns(columnsToExclude, isDiscrete);
 
-        TabularDataReader dataReader = new TabularDataFileReader(dataFile, delimiter);
+        TabularDataReader dataReader = new ParallelTabularDataFileReader(dataFile, delimiter);
         dataReader.setCommentMarker(commentMarker);
         dataReader.setQuoteCharacter(quoteChar);
         dataReader.setMissingDataMarker(missingDataMarker);
@@ -87,6 +87,27 @@ public class ContinuousTabularDatasetFileReader extends DatasetFileReader implem
         return dataReader.read(dataColumns, hasHeader);
     }
 
+    @Override
+    public DataColumn[] readInData(Set<String> namesOfColumnsToExclude, int chunkSize, ContinuousDataChunkHandler handler) throws IOException {
+        TabularColumnReader columnReader = new TabularColumnFileReader(dataFile, delimiter);
+        columnReader.setCommentMarker(commentMarker);
+        columnReader.setQuoteCharacter(quoteChar);
+
+        boolean isDiscrete = false;
+        DataColumn[] dataColumns = hasHeader
+                ? columnReader.readInDataColumns(namesOfColumnsToExclude, isDiscrete)
+                : columnReader.generateColumns(new int[0], isDiscrete);
+
+        TabularDataReader dataReader = new TabularDataFileReader(dataFile, delimiter);
+        dataReader.setCommentMarker(commentMarker);
+        dataReader.setQuoteCharacter(quoteChar);
+        dataReader.setMissingDataMarker(missingDataMarker);
+
+        dataReader.read(dataColumns, hasHeader, chunkSize, handler);
+
+        return dataColumns;
+    }
+
     @Override
     public void setHasHeader(boolean hasHeader) {
         this.hasHeader = hasHeader;
@@ -18,6 +18,10 @@
  */
 package edu.pitt.dbmi.data.reader.tabular;
 
+import edu.pitt.dbmi.data.reader.DataColumn;
+import java.io.IOException;
+import java.util.Set;
+
 /**
  *
  * Dec 13, 2018 4:11:33 PM
@@ -26,4 +30,16 @@ package edu.pitt.dbmi.data.reader.tabular;
  */
 public interface ContinuousTabularDatasetReader extends TabularDatasetReader {
 
+    /**
+     * Read in the data in chunks of at most chunkSize rows, passing each chunk
+     * to the handler instead of keeping all of the data.
+     *
+     * @param namesOfColumnsToExclude
+     * @param chunkSize maximum number of rows in a chunk
+     * @param handler
+     * @return the columns of the data read in
+     * @throws IOException
+     */
+    public DataColumn[] readInData(Set<String> namesOfColumnsToExclude, int chunkSize, ContinuousDataChunkHandler handler) throws IOException;
+
 }
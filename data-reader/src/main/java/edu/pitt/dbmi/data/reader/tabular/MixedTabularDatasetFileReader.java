@@ -66,7 +66,7 @@ public class MixedTabularDatasetFileReader extends DatasetFileReader implements
                 ? columnReader.readInDataColumns(namesOfColumnsToExclude, isDiscrete)
                 : columnReader.generateColumns(new int[0], isDiscrete);
 
-        TabularDataReader dataReader = new TabularDataFileReader(dataFile, delimiter);
+        TabularDataReader dataReader = new ParallelTabularDataFileReader(dataFile, delimiter);
         dataReader.setCommentMarker(commentMarker);
         dataReader.setQuoteCharacter(quoteChar);
         dataReader.setMissingDataMarker(missingDataMarker);
@@ -87,7 +87,7 @@ public class MixedTabularDatasetFileReader extends DatasetFileReader implements
                 ? columnReader.readInDataColumns(columnsToExclude, isDiscrete)
                 : columnReader.generateColumns(columnsToExclude, isDiscrete);
 
-        TabularDataReader dataReader = new TabularDataFileReader(dataFile, delimiter);
+        TabularDataReader dataReader = new ParallelTabularDataFileReader(dataFile, delimiter);
         dataReader.setCommentMarker(commentMarker);
         dataReader.setQuoteCharacter(quoteChar);
         dataReader.setMissingDataMarker(missingDataMarker);
@@ -0,0 +1,1271 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.pitt.dbmi.data.reader.tabular;
+
+import edu.pitt.dbmi.data.reader.Data;
+import edu.pitt.dbmi.data.reader.DataColumn;
+import edu.pitt.dbmi.data.reader.DataReaderException;
+import edu.pitt.dbmi.data.reader.DatasetFileReader;
+import edu.pitt.dbmi.data.reader.Delimiter;
+import edu.pitt.dbmi.data.reader.DiscreteDataColumn;
+import edu.pitt.dbmi.data.reader.metadata.Metadata;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads tabular data the way {@link TabularDataFileReader} does, but maps the
+ * file and parses it in parallel, in segments split at line boundaries.
+ * Values are parsed from the bytes of the file into primitive arrays without
+ * creating a string for each value, and the arrays are sized up front by
+ * counting the rows of each segment, so that each segment is parsed in place.
+ *
+ * When discrete columns are determined, the categories and the numeric values
+ * of each column are collected in the same pass, and kept for the read that
+ * follows, so that mixed data is read from the file only once.
+ *
+ * Quoted values are assumed not to span lines.
+ *
+ * @author agent
+ */
+public final class ParallelTabularDataFileReader extends DatasetFileReader implements TabularDataReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelTabularDataFileReader.class);
+
+    /**
+     * Files are split into segments no shorter than this, other than the
+     * last.
+     */
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+
+    /**
+     * Segments are kept well under the 2 GB that can be mapped at once.
+     */
+    private static final long MAX_SEGMENT_SIZE = 1024L * 1024 * 1024;
+
+    private static final int WINDOW_SIZE = 64 * 1024;
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // parse modes of a column
+    private static final int CONTINUOUS = 0;
+    private static final int DISCRETE = 1;
+    private static final int UNDETERMINED = 2;
+
+    /**
+     * Columns parsed when discrete columns were determined, kept for the next
+     * read.
+     */
+    private ParsedData parsedData;
+
+    public ParallelTabularDataFileReader(Path dataFile, Delimiter delimiter) {
+        super(dataFile, delimiter);
+    }
+
+    @Override
+    public void determineDiscreteDataColumns(DataColumn[] dataColumns, int numberOfCategories, boolean hasHeader) throws IOException {
+        int numOfColsInDataFile = countColumnsInDataFile(dataColumns);
+
+        int[] modes = new int[numOfColsInDataFile];
+        Arrays.fill(modes, UNDETERMINED);
+
+        // one more category than allowed is collected, to tell that there are too many
+        int maxCategories = (int) Math.min((long) numberOfCategories + 1, Integer.MAX_VALUE);
+        ParsedData data = parse(dataColumns, numOfColsInDataFile, hasHeader, modes, maxCategories, -1, "");
+
+        for (int i = 0; i < numOfColsInDataFile; i++) {
+            Set<String> categories = data.collectCategories(i);
+            boolean discrete = categories != null && categories.size() <= numberOfCategories;
+
+            dataColumns[i].setDiscrete(discrete);
+
+            // keep only what the column will be read as
+            if (discrete) {
+                data.values[i] = null;
+            } else {
+                data.codes[i] = null;
+            }
+        }
+
+        this.parsedData = data;
+    }
+
+    @Override
+    public Data read(DataColumn[] dataColumns, boolean hasHeader) throws IOException {
+        if (dataColumns == null) {
+            return null;
+        }
+
+        int numOfCols = dataColumns.length;
+        int numOfColsInDataFile = countColumnsInDataFile(dataColumns);
+
+        boolean isDiscrete = false;
+        boolean isContinuous = false;
+        for (DataColumn dataColumn : dataColumns) {
+            if (dataColumn.isDiscrete()) {
+                isDiscrete = true;
+            } else {
+                isContinuous = true;
+            }
+        }
+
+        if (!(isDiscrete || isContinuous)) {
+            return null;
+        }
+
+        boolean isMixed = isDiscrete && isContinuous;
+
+        int[] modes = new int[numOfColsInDataFile];
+        for (int i = 0; i < numOfColsInDataFile; i++) {
+            modes[i] = dataColumns[i].isDiscrete() ? DISCRETE : CONTINUOUS;
+        }
+
+        String invalidNumberFormat = isDiscrete
+                ? "Invalid number %s on line %d at column %d."
+                : "Non-continuous number %s on line %d at column %d.";
+
+        ParsedData data = takeParsedData(dataColumns, numOfColsInDataFile, hasHeader, modes);
+        if (data == null) {
+            data = parse(dataColumns, numOfColsInDataFile, hasHeader, modes, Integer.MAX_VALUE, isDiscrete ? -1 : numOfCols, invalidNumberFormat);
+        }
+
+        int numOfRows = data.numOfRows;
+
+        if (!isDiscrete) {
+            double[][] rows = data.rows;
+
+            if (rows == null) {
+                rows = new double[numOfRows][numOfCols];
+
+                double[][] values = data.values;
+                double[][] _rows = rows;
+                IntStream.range(0, numOfRows).parallel().forEach(row -> {
+                    for (int col = 0; col < numOfColsInDataFile; col++) {
+                        _rows[row][col] = values[col][row];
+                    }
+                });
+            }
+
+            return new ContinuousTabularData(dataColumns, rows);
+        }
+
+        DiscreteDataColumn[] discreteDataColumns = new DiscreteDataColumn[numOfCols];
+        double[][] continuousData = new double[numOfCols][];
+        int[][] discreteData = new int[numOfCols][];
+
+        ParsedData _data = data;
+        IntStream.range(0, numOfCols).parallel().forEach(i -> {
+            DataColumn dataColumn = dataColumns[i];
+            DiscreteDataColumn discreteDataColumn = isMixed
+                    ? new MixedTabularDataColumn(dataColumn)
+                    : new DiscreteTabularDataColumn(dataColumn);
+
+            if (i < numOfColsInDataFile) {
+                if (dataColumn.isDiscrete()) {
+                    discreteData[i] = _data.encode(i, discreteDataColumn);
+                } else {
+                    continuousData[i] = _data.values[i];
+                }
+            } else {
+                if (dataColumn.isDiscrete()) {
+                    discreteDataColumn.setValue("0");
+                    discreteDataColumn.setValue("1");
+                    discreteDataColumn.recategorize();
+
+                    discreteData[i] = new int[numOfRows];
+                } else {
+                    continuousData[i] = new double[numOfRows];
+                }
+            }
+
+            discreteDataColumns[i] = discreteDataColumn;
+        });
+
+        return isMixed
+                ? new MixedTabularData(numOfRows, discreteDataColumns, continuousData, discreteData)
+                : new VerticalDiscreteTabularData(discreteDataColumns, discreteData);
+    }
+
+    @Override
+    public Data read(DataColumn[] dataColumns, boolean hasHeader, Metadata metadata) throws IOException {
+        Data data = read(dataColumns, hasHeader);
+
+        if (metadata != null) {
+            TabularDataFileReader.applyInterventionalMetadata(data, dataColumns, metadata);
+        }
+
+        return data;
+    }
+
+    /**
+     * Chunks are handed over in file order, so they are read sequentially.
+     */
+    @Override
+    public void read(DataColumn[] dataColumns, boolean hasHeader, int chunkSize, ContinuousDataChunkHandler handler) throws IOException {
+        TabularDataReader dataReader = new TabularDataFileReader(dataFile, delimiter);
+        dataReader.setCommentMarker(commentMarker);
+        dataReader.setQuoteCharacter((char) quoteCharacter);
+        dataReader.setMissingDataMarker(missingDataMarker);
+
+        dataReader.read(dataColumns, hasHeader, chunkSize, handler);
+    }
+
+    private int countColumnsInDataFile(DataColumn[] dataColumns) {
+        int numOfColsInDataFile = 0;
+        for (DataColumn dataColumn : dataColumns) {
+            if (!dataColumn.isGenerated()) {
+                numOfColsInDataFile++;
+            }
+        }
+
+        return numOfColsInDataFile;
+    }
+
+    /**
+     * Returns the columns parsed when discrete columns were determined, if
+     * they hold what the given columns are to be read as, and lets go of
+     * them in any case.
+     */
+    private ParsedData takeParsedData(DataColumn[] dataColumns, int numOfColsInDataFile, boolean hasHeader, int[] modes) {
+        ParsedData data = this.parsedData;
+        this.parsedData = null;
+
+        if (data == null || data.hasHeader != hasHeader) {
+            return null;
+        }
+
+        Map<Integer, Integer> indices = new HashMap<>();
+        for (int i = 0; i < data.columnNumbers.length; i++) {
+            indices.put(data.columnNumbers[i], i);
+        }
+
+        int[] columns = new int[numOfColsInDataFile];
+        for (int i = 0; i < numOfColsInDataFile; i++) {
+            Integer index = indices.get(dataColumns[i].getColumnNumber());
+            if (index == null) {
+                return null;
+            }
+
+            boolean parsed = (modes[i] == DISCRETE)
+                    ? data.isEncoded(index)
+                    : data.values[index] != null && data.badValues(index) == null;
+            if (!parsed) {
+                return null;
+            }
+
+            columns[i] = index;
+        }
+
+        return data.select(columns);
+    }
+
+    private ParsedData parse(DataColumn[] dataColumns, int numOfColsInDataFile, boolean hasHeader, int[] modes, int maxCategories, int rowWidth, String invalidNumberFormat) throws IOException {
+        int[] columnNumbers = new int[numOfColsInDataFile];
+        for (int i = 0; i < numOfColsInDataFile; i++) {
+            columnNumbers[i] = dataColumns[i].getColumnNumber();
+        }
+
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            Segment[] segments = split(channel, hasHeader);
+
+            IntStream.range(0, segments.length).parallel().forEach(i -> segments[i].count());
+
+            if (Thread.currentThread().isInterrupted()) {
+                throw new DataReaderException("Reading of data was interrupted.");
+            }
+
+            int numOfRows = 0;
+            int lineNum = segments.length == 0 ? 1 : segments[0].firstLineNum;
+            for (Segment segment : segments) {
+                segment.firstRow = numOfRows;
+                segment.firstLineNum = lineNum;
+                numOfRows += segment.numOfRows;
+                lineNum += segment.numOfLines;
+            }
+
+            ParsedData data = new ParsedData(hasHeader, columnNumbers, segments, numOfRows);
+            for (int i = 0; i < numOfColsInDataFile; i++) {
+                if (modes[i] != DISCRETE && rowWidth < 0) {
+                    data.values[i] = new double[numOfRows];
+                }
+                if (modes[i] != CONTINUOUS) {
+                    data.codes[i] = new int[numOfRows];
+                }
+            }
+            if (rowWidth >= 0) {
+                data.rows = new double[numOfRows][rowWidth];
+            }
+
+            IntStream.range(0, segments.length).parallel()
+                    .forEach(i -> segments[i].parse(data, modes, maxCategories, invalidNumberFormat));
+
+            if (Thread.currentThread().isInterrupted()) {
+                throw new DataReaderException("Reading of data was interrupted.");
+            }
+
+            for (Segment segment : segments) {
+                if (segment.errMsg != null) {
+                    LOGGER.error(segment.errMsg);
+                    throw new DataReaderException(segment.errMsg);
+                }
+            }
+
+            return data;
+        }
+    }
+
+    /**
+     * Splits the data, after the header, into segments that begin at the
+     * start of a line.
+     */
+    private Segment[] split(FileChannel channel, boolean hasHeader) throws IOException {
+        long size = channel.size();
+        long[] dataStart = hasHeader ? skipHeader(channel) : new long[]{0, 1};
+        long start = dataStart[0];
+        long length = size - start;
+
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        long numOfSegments = Math.max(1, Math.min(length / MIN_SEGMENT_SIZE, 4L * parallelism));
+        numOfSegments = Math.max(numOfSegments, (length + MAX_SEGMENT_SIZE - 1) / MAX_SEGMENT_SIZE);
+
+        long[] bounds = new long[(int) numOfSegments + 1];
+        bounds[0] = start;
+        for (int i = 1; i < numOfSegments; i++) {
+            bounds[i] = Math.max(bounds[i - 1], findNextLine(channel, start + length * i / numOfSegments));
+        }
+        bounds[(int) numOfSegments] = size;
+
+        Segment[] segments = new Segment[(int) numOfSegments];
+        for (int i = 0; i < numOfSegments; i++) {
+            long segmentLength = bounds[i + 1] - bounds[i];
+            if (segmentLength > Integer.MAX_VALUE) {
+                throw new DataReaderException("Line too long to be read.");
+            }
+
+            byte prevChar = (bounds[i] == 0) ? -1 : readByte(channel, bounds[i] - 1);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, bounds[i], segmentLength);
+
+            segments[i] = new Segment(buffer, prevChar, i == numOfSegments - 1);
+        }
+
+        if (segments.length > 0) {
+            segments[0].firstLineNum = (int) dataStart[1];
+        }
+
+        return segments;
+    }
+
+    /**
+     * Finds where the data begins after the header line, skipping blank and
+     * commented lines.
+     *
+     * @return the position in the file and the line number where the data
+     * begins
+     */
+    private long[] skipHeader(FileChannel channel) throws IOException {
+        boolean skip = false;
+        boolean hasSeenNonblankChar = false;
+
+        // comment marker check
+        byte[] comment = commentMarker.getBytes();
+        int cmntIndex = 0;
+        boolean checkForComment = comment.length > 0;
+
+        int lineNum = 1;
+        long position = 0;
+
+        byte prevChar = -1;
+        ByteBuffer buffer = ByteBuffer.allocate(WINDOW_SIZE);
+        int len;
+        while ((len = channel.read(buffer, position)) > 0) {
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < len; i++) {
+                byte currChar = bytes[i];
+
+                if (currChar == CARRIAGE_RETURN || currChar == LINE_FEED) {
+                    if (currChar == LINE_FEED && prevChar == CARRIAGE_RETURN) {
+                        prevChar = currChar;
+                        continue;
+                    }
+
+                    lineNum++;
+
+                    if (hasSeenNonblankChar && !skip) {
+                        return new long[]{position + i + 1, lineNum};
+                    }
+
+                    // reset states
+                    skip = false;
+                    hasSeenNonblankChar = false;
+                    cmntIndex = 0;
+                    checkForComment = comment.length > 0;
+                } else if (!skip) {
+                    if (currChar > SPACE_CHAR) {
+                        hasSeenNonblankChar = true;
+                    }
+
+                    // skip blank chars at the begining of the line
+                    if (currChar <= SPACE_CHAR && !hasSeenNonblankChar) {
+                        continue;
+                    }
+
+                    // check for comment marker to skip line
+                    if (checkForComment) {
+                        if (currChar == comment[cmntIndex]) {
+                            cmntIndex++;
+                            if (cmntIndex == comment.length) {
+                                skip = true;
+                                prevChar = currChar;
+                                continue;
+                            }
+                        } else {
+                            checkForComment = false;
+                        }
+                    }
+                }
+
+                prevChar = currChar;
+            }
+
+            position += len;
+            buffer.clear();
+        }
+
+        // the header is the last line
+        return new long[]{channel.size(), lineNum};
+    }
+
+    /**
+     * @return the position just after the first end of line at or after the
+     * given position
+     */
+    private long findNextLine(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+        int len;
+        while ((len = channel.read(buffer, position)) > 0) {
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < len; i++) {
+                if (bytes[i] == CARRIAGE_RETURN || bytes[i] == LINE_FEED) {
+                    return position + i + 1;
+                }
+            }
+
+            position += len;
+            buffer.clear();
+        }
+
+        return channel.size();
+    }
+
+    private byte readByte(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        channel.read(buffer, position);
+
+        return buffer.get(0);
+    }
+
+    /**
+     * Converts bytes to a string the way the sequential reader does, one char
+     * per byte.
+     */
+    private static String toString(byte[] bytes, int start, int end) {
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = (char) bytes[i];
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * The parsed columns of the data file, for all segments.
+     */
+    private static final class ParsedData {
+
+        private final boolean hasHeader;
+        private final int[] columnNumbers;
+        private final Segment[] segments;
+        private final int numOfRows;
+
+        // rows of continuous data, or else the columns
+        private double[][] rows;
+        private final double[][] values;
+
+        // codes of the values of each column, local to each segment
+        private final int[][] codes;
+
+        private ParsedData(boolean hasHeader, int[] columnNumbers, Segment[] segments, int numOfRows) {
+            this.hasHeader = hasHeader;
+            this.columnNumbers = columnNumbers;
+            this.segments = segments;
+            this.numOfRows = numOfRows;
+            this.values = new double[columnNumbers.length][];
+            this.codes = new int[columnNumbers.length][];
+        }
+
+        /**
+         * @return the given columns, in the given order
+         */
+        private ParsedData select(int[] columns) {
+            int[] _columnNumbers = new int[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                _columnNumbers[i] = columnNumbers[columns[i]];
+            }
+
+            ParsedData data = new ParsedData(hasHeader, _columnNumbers, segments, numOfRows);
+            for (int i = 0; i < columns.length; i++) {
+                data.values[i] = values[columns[i]];
+                data.codes[i] = codes[columns[i]];
+            }
+            for (Segment segment : segments) {
+                segment.select(columns);
+            }
+
+            return data;
+        }
+
+        /**
+         * @return the distinct values of the column, or null if there were
+         * too many to collect
+         */
+        private Set<String> collectCategories(int column) {
+            if (!isEncoded(column)) {
+                return null;
+            }
+
+            Set<String> categories = new HashSet<>();
+            for (Segment segment : segments) {
+                TokenTable table = segment.tables[column];
+                for (int id = 0; id < table.size(); id++) {
+                    categories.add(table.get(id));
+                }
+            }
+
+            return categories;
+        }
+
+        /**
+         * @return true if each value of the column has a code
+         */
+        private boolean isEncoded(int column) {
+            if (codes[column] == null) {
+                return false;
+            }
+
+            for (Segment segment : segments) {
+                TokenTable table = segment.tables[column];
+                if (table == null || table.isOverflowed()) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * @return the first value of the column that isn't a number, if any
+         */
+        private String badValues(int column) {
+            for (Segment segment : segments) {
+                if (segment.badValues[column] != null) {
+                    return segment.badValues[column];
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Categorizes the values of the column and replaces their codes with
+         * the encoded values.
+         */
+        private int[] encode(int column, DiscreteDataColumn discreteDataColumn) {
+            for (Segment segment : segments) {
+                TokenTable table = segment.tables[column];
+                for (int id = 0; id < table.size(); id++) {
+                    discreteDataColumn.setValue(table.get(id));
+                }
+            }
+            discreteDataColumn.recategorize();
+
+            int[] data = codes[column];
+            for (Segment segment : segments) {
+                TokenTable table = segment.tables[column];
+                int[] encodeValues = new int[table.size()];
+                for (int id = 0; id < encodeValues.length; id++) {
+                    encodeValues[id] = discreteDataColumn.getEncodeValue(table.get(id));
+                }
+
+                int end = segment.firstRow + segment.numOfRows;
+                for (int row = segment.firstRow; row < end; row++) {
+                    if (data[row] != DISCRETE_MISSING_VALUE) {
+                        data[row] = encodeValues[data[row]];
+                    }
+                }
+            }
+
+            return data;
+        }
+
+    }
+
+    /**
+     * A part of the data file that begins at the start of a line.
+     */
+    private final class Segment {
+
+        private final MappedByteBuffer buffer;
+        private final byte firstPrevChar;
+        private final boolean isLast;
+
+        private int numOfRows;
+        private int numOfLines;
+        private int firstRow;
+        private int firstLineNum;
+
+        // first error, which stops the parsing of the segment
+        private String errMsg;
+
+        // distinct values of each column, and the first that isn't a number
+        private TokenTable[] tables;
+        private String[] badValues;
+
+        private Segment(MappedByteBuffer buffer, byte prevChar, boolean isLast) {
+            this.buffer = buffer;
+            this.firstPrevChar = prevChar;
+            this.isLast = isLast;
+        }
+
+        private void select(int[] columns) {
+            TokenTable[] _tables = new TokenTable[columns.length];
+            String[] _badValues = new String[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                _tables[i] = tables[columns[i]];
+                _badValues[i] = badValues[columns[i]];
+            }
+
+            this.tables = _tables;
+            this.badValues = _badValues;
+        }
+
+        /**
+         * Counts the lines, and the non-blank, non-commented lines, which are
+         * the rows of data.
+         */
+        private void count() {
+            ByteBuffer in = buffer.duplicate();
+
+            boolean skip = false;
+            boolean hasSeenNonblankChar = false;
+
+            // comment marker check
+            byte[] comment = commentMarker.getBytes();
+            int cmntIndex = 0;
+            boolean checkForComment = comment.length > 0;
+
+            int rows = 0;
+            int lines = 0;
+
+            byte prevChar = firstPrevChar;
+            byte[] window = new byte[WINDOW_SIZE];
+            while (in.hasRemaining()) {
+                int len = Math.min(window.length, in.remaining());
+                in.get(window, 0, len);
+
+                for (int i = 0; i < len; i++) {
+                    byte currChar = window[i];
+
+                    if (currChar == CARRIAGE_RETURN || currChar == LINE_FEED) {
+                        if (currChar == LINE_FEED && prevChar == CARRIAGE_RETURN) {
+                            prevChar = currChar;
+                            continue;
+                        }
+
+                        if (hasSeenNonblankChar && !skip) {
+                            rows++;
+                        }
+
+                        lines++;
+
+                        // reset states
+                        skip = false;
+                        hasSeenNonblankChar = false;
+                        cmntIndex = 0;
+                        checkForComment = comment.length > 0;
+                    } else if (!skip) {
+                        if (currChar > SPACE_CHAR) {
+                            hasSeenNonblankChar = true;
+                        }
+
+                        // skip blank chars at the begining of the line
+                        if (currChar <= SPACE_CHAR && !hasSeenNonblankChar) {
+                            continue;
+                        }
+
+                        // check for comment marker to skip line
+                        if (checkForComment && currChar == comment[cmntIndex]) {
+                            cmntIndex++;
+                            if (cmntIndex == comment.length) {
+                                skip = true;
+                            }
+                        } else {
+                            // the line is a row; skip the rest of it
+                            rows++;
+                            skip = true;
+                        }
+                    }
+
+                    prevChar = currChar;
+                }
+            }
+
+            // case when no newline char at end of file
+            if (hasSeenNonblankChar && !skip) {
+                rows++;
+            }
+
+            this.numOfRows = rows;
+            this.numOfLines = lines;
+        }
+
+        private void parse(ParsedData data, int[] modes, int maxCategories, String invalidNumberFormat) {
+            int numOfColsInDataFile = modes.length;
+            int[] columnNumbers = data.columnNumbers;
+
+            this.tables = new TokenTable[numOfColsInDataFile];
+            this.badValues = new String[numOfColsInDataFile];
+            for (int i = 0; i < numOfColsInDataFile; i++) {
+                if (modes[i] != CONTINUOUS) {
+                    tables[i] = new TokenTable(maxCategories);
+                }
+            }
+
+            ValueParser parser = new ValueParser();
+            ByteBuffer in = buffer.duplicate();
+
+            boolean skip = false;
+            boolean hasSeenNonblankChar = false;
+            boolean hasQuoteChar = false;
+
+            byte delimChar = delimiter.getByteValue();
+
+            // comment marker check
+            byte[] comment = commentMarker.getBytes();
+            int cmntIndex = 0;
+            boolean checkForComment = comment.length > 0;
+
+            int colNum = 0;
+            int lineNum = firstLineNum;
+
+            int columnIndex = 0;
+
+            int row = firstRow;  // array row number
+
+            byte prevChar = firstPrevChar;
+            byte[] window = new byte[WINDOW_SIZE];
+            while (in.hasRemaining()) {
+                int len = Math.min(window.length, in.remaining());
+                in.get(window, 0, len);
+
+                for (int i = 0; i < len; i++) {
+                    byte currChar = window[i];
+
+                    if (currChar == CARRIAGE_RETURN || currChar == LINE_FEED) {
+                        if (currChar == LINE_FEED && prevChar == CARRIAGE_RETURN) {
+                            prevChar = currChar;
+                            continue;
+                        }
+
+                        if (hasSeenNonblankChar && !skip) {
+                            colNum++;
+
+                            if (columnIndex < numOfColsInDataFile && columnNumbers[columnIndex] == colNum) {
+                                if (!store(data, modes, parser, columnIndex, row, lineNum, colNum, invalidNumberFormat)) {
+                                    return;
+                                }
+
+                                columnIndex++;
+                            }
+
+                            // ensure we have enough data
+                            if (columnIndex < numOfColsInDataFile) {
+                                errMsg = String.format("Insufficient data on line %d.  Extracted %d value(s) but expected %d.", lineNum, columnIndex, numOfColsInDataFile);
+                                return;
+                            }
+
+                            row++;
+                        }
+
+                        lineNum++;
+
+                        // clear data
+                        parser.clear();
+
+                        // reset states
+                        skip = false;
+                        hasSeenNonblankChar = false;
+                        cmntIndex = 0;
+                        checkForComment = comment.length > 0;
+                        columnIndex = 0;
+                        colNum = 0;
+                    } else if (!skip) {
+                        if (currChar > SPACE_CHAR) {
+                            hasSeenNonblankChar = true;
+                        }
+
+                        // skip blank chars at the begining of the line
+                        if (currChar <= SPACE_CHAR && !hasSeenNonblankChar) {
+                            continue;
+                        }
+
+                        // check for comment marker to skip line
+                        if (checkForComment) {
+                            if (currChar == comment[cmntIndex]) {
+                                cmntIndex++;
+                                if (cmntIndex == comment.length) {
+                                    skip = true;
+                                    prevChar = currChar;
+                                    continue;
+                                }
+                            } else {
+                                checkForComment = false;
+                            }
+                        }
+
+                        if (currChar == quoteCharacter) {
+                            hasQuoteChar = !hasQuoteChar;
+                        } else {
+                            if (hasQuoteChar) {
+                                parser.append(currChar);
+                            } else {
+                                boolean isDelimiter;
+                                switch (delimiter) {
+                                    case WHITESPACE:
+                                        isDelimiter = (currChar <= SPACE_CHAR) && (prevChar > SPACE_CHAR);
+                                        break;
+                                    default:
+                                        isDelimiter = (currChar == delimChar);
+                                }
+
+                                if (isDelimiter) {
+                                    colNum++;
+
+                                    if (columnIndex < numOfColsInDataFile && columnNumbers[columnIndex] == colNum) {
+                                        if (!store(data, modes, parser, columnIndex, row, lineNum, colNum, invalidNumberFormat)) {
+                                            return;
+                                        }
+
+                                        columnIndex++;
+                                        if (columnIndex == numOfColsInDataFile) {
+                                            row++;
+                                            skip = true;
+                                        }
+                                    }
+
+                                    // clear data
+                                    parser.clear();
+                                } else {
+                                    parser.append(currChar);
+                                }
+                            }
+                        }
+                    }
+
+                    prevChar = currChar;
+                }
+            }
+
+            if (isLast && hasSeenNonblankChar && !skip) {
+                colNum++;
+
+                if (columnIndex < numOfColsInDataFile && columnNumbers[columnIndex] == colNum) {
+                    if (!store(data, modes, parser, columnIndex, row, lineNum, colNum, invalidNumberFormat)) {
+                        return;
+                    }
+
+                    columnIndex++;
+                }
+
+                // ensure we have enough data
+                if (columnIndex < numOfColsInDataFile) {
+                    errMsg = String.format("Insufficient data on line %d.  Extracted %d value(s) but expected %d.", lineNum, columnIndex, numOfColsInDataFile);
+                }
+            }
+        }
+
+        /**
+         * Stores the current value as a number and/or a code, depending on
+         * the column.
+         *
+         * @return false if the value is not a number but must be
+         */
+        private boolean store(ParsedData data, int[] modes, ValueParser parser, int col, int row, int lineNum, int colNum, String invalidNumberFormat) {
+            parser.trim();
+
+            boolean isMissing = parser.isMissing(missingDataMarker);
+
+            int mode = modes[col];
+            if (mode != DISCRETE && badValues[col] == null) {
+                    double value = CONTINUOUS_MISSING_VALUE;
+                boolean isNumber = true;
+                if (!isMissing) {
+                    value = parser.parseDouble();
+                    isNumber = parser.isNumber();
+                }
+
+                if (isNumber) {
+                    if (data.rows == null) {
+                        data.values[col][row] = value;
+                    } else {
+                        data.rows[row][col] = value;
+                    }
+                } else {
+                    badValues[col] = parser.toString();
+
+                    if (mode == CONTINUOUS) {
+                        errMsg = String.format(invalidNumberFormat, badValues[col], lineNum, colNum);
+                        return false;
+                    }
+                }
+            }
+
+            TokenTable table = tables[col];
+            if (table != null && !table.isOverflowed()) {
+                data.codes[col][row] = isMissing ? DISCRETE_MISSING_VALUE : parser.encode(table);
+            }
+
+            return true;
+        }
+
+    }
+
+    /**
+     * Collects the bytes of a value and parses them without creating a
+     * string, but for numbers too long to parse exactly, which are handed to
+     * Double.parseDouble.
+     */
+    private static final class ValueParser {
+
+        private byte[] bytes = new byte[64];
+        private int start;
+        private int end;
+        private boolean isNumber;
+
+        private void append(byte b) {
+            if (end == bytes.length) {
+                bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+            }
+
+            bytes[end++] = b;
+        }
+
+        private void clear() {
+            start = 0;
+            end = 0;
+        }
+
+        /**
+         * Trims the value as String.trim would, one char per byte.
+         */
+        private void trim() {
+            while (start < end && bytes[start] >= 0 && bytes[start] <= SPACE_CHAR) {
+                start++;
+            }
+            while (end > start && bytes[end - 1] >= 0 && bytes[end - 1] <= SPACE_CHAR) {
+                end--;
+            }
+        }
+
+        private boolean isMissing(String missingDataMarker) {
+            if (start == end) {
+                return true;
+            }
+
+            if (end - start != missingDataMarker.length()) {
+                return false;
+            }
+
+            for (int i = start; i < end; i++) {
+                if ((char) bytes[i] != missingDataMarker.charAt(i - start)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * @return true if the last value parsed was a number
+         */
+        private boolean isNumber() {
+            return isNumber;
+        }
+
+        private double parseDouble() {
+            isNumber = true;
+
+            int i = start;
+            boolean negative = false;
+            if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+                negative = bytes[i] == '-';
+                i++;
+            }
+
+            long mantissa = 0;
+            int numOfDigits = 0;
+            int exponent = 0;
+            boolean hasDigits = false;
+
+            for (; i < end && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+                hasDigits = true;
+                int digit = bytes[i] - '0';
+                if (mantissa != 0 || digit != 0) {
+                    if (++numOfDigits > 18) {
+                        return parseSlowly();
+                    }
+                    mantissa = 10 * mantissa + digit;
+                }
+            }
+
+            if (i < end && bytes[i] == '.') {
+                for (i++; i < end && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+                    hasDigits = true;
+                    int digit = bytes[i] - '0';
+                    if (mantissa != 0 || digit != 0) {
+                        if (++numOfDigits > 18) {
+                            return parseSlowly();
+                        }
+                        mantissa = 10 * mantissa + digit;
+                    }
+                    exponent--;
+                }
+            }
+
+            if (!hasDigits) {
+                return parseSlowly();
+            }
+
+            if (i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+                i++;
+
+                boolean negativeExponent = false;
+                if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+                    negativeExponent = bytes[i] == '-';
+                    i++;
+                }
+
+                if (i == end) {
+                    return parseSlowly();
+                }
+
+                int value = 0;
+                for (; i < end && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+                    if (value > 1000) {
+                        return parseSlowly();
+                    }
+                    value = 10 * value + (bytes[i] - '0');
+                }
+
+                exponent += negativeExponent ? -value : value;
+            }
+
+            if (i != end) {
+                return parseSlowly();
+            }
+
+            if (mantissa == 0) {
+                return negative ? -0.0 : 0.0;
+            }
+
+            // exact when both the mantissa and the power of ten are
+            if (mantissa >= (1L << 53) || exponent < -22 || exponent > 22) {
+                return parseSlowly();
+            }
+
+            double value = (exponent < 0)
+                    ? mantissa / POWERS_OF_TEN[-exponent]
+                    : mantissa * POWERS_OF_TEN[exponent];
+
+            return negative ? -value : value;
+        }
+
+        private double parseSlowly() {
+            try {
+                return Double.parseDouble(toString());
+            } catch (NumberFormatException exception) {
+                isNumber = false;
+
+                return CONTINUOUS_MISSING_VALUE;
+            }
+        }
+
+        private int encode(TokenTable table) {
+            return table.add(bytes, start, end);
+        }
+
+        @Override
+        public String toString() {
+            return ParallelTabularDataFileReader.toString(bytes, start, end);
+        }
+
+    }
+
+    /**
+     * Assigns consecutive codes to distinct values, up to a maximum number
+     * of them, storing the bytes of the values rather than strings.
+     */
+    private static final class TokenTable {
+
+        private final int maxSize;
+        private boolean overflowed;
+
+        private byte[] pool = new byte[256];
+        private int poolSize;
+        private int[] offsets = new int[16];
+        private int size;
+
+        // codes plus one, by hash
+        private int[] slots = new int[32];
+
+        private TokenTable(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * @return the code of the value, or -1 if there are too many values
+         */
+        private int add(byte[] bytes, int start, int end) {
+            int hash = 1;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+
+            int mask = slots.length - 1;
+            for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+                int code = slots[slot] - 1;
+                if (code < 0) {
+                    break;
+                }
+
+                if (matches(code, bytes, start, end)) {
+                    return code;
+                }
+            }
+
+            if (size == maxSize) {
+                overflowed = true;
+                return -1;
+            }
+
+            int length = end - start;
+            if (poolSize + length > pool.length) {
+                pool = Arrays.copyOf(pool, Math.max(2 * pool.length, poolSize + length));
+            }
+            System.arraycopy(bytes, start, pool, poolSize, length);
+
+            if (size + 1 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+            }
+            offsets[size] = poolSize;
+            poolSize += length;
+            offsets[size + 1] = poolSize;
+
+            int code = size++;
+            if (2 * size > slots.length) {
+                rehash();
+            } else {
+                insert(mix(hash), code);
+            }
+
+            return code;
+        }
+
+        private String get(int code) {
+            return ParallelTabularDataFileReader.toString(pool, offsets[code], offsets[code + 1]);
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private boolean isOverflowed() {
+            return overflowed;
+        }
+
+        private boolean matches(int code, byte[] bytes, int start, int end) {
+            int offset = offsets[code];
+            if (offsets[code + 1] - offset != end - start) {
+                return false;
+            }
+
+            for (int i = start; i < end; i++) {
+                if (pool[offset++] != bytes[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private void rehash() {
+            slots = new int[2 * slots.length];
+            for (int code = 0; code < size; code++) {
+                int hash = 1;
+                for (int i = offsets[code]; i < offsets[code + 1]; i++) {
+                    hash = 31 * hash + pool[i];
+                }
+
+                insert(mix(hash), code);
+            }
+        }
+
+        private void insert(int hash, int code) {
+            int mask = slots.length - 1;
+            int slot = hash & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+
+            slots[slot] = code + 1;
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+    }
+
+}
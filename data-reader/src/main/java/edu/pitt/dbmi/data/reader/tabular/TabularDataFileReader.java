@@ -324,110 +324,150 @@ public final class TabularDataFileReader extends DatasetFileReader implements Ta
         }
     }
 
+    @Override
+    public void read(DataColumn[] dataColumns, boolean hasHeader, int chunkSize, ContinuousDataChunkHandler handler) throws IOException {
+        if (dataColumns == null) {
+            return;
+        }
+
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1.");
+        }
+
+        int numOfColsInDataFile = 0;
+        for (DataColumn dataColumn : dataColumns) {
+            if (dataColumn.isDiscrete()) {
+                String errMsg = String.format("Column %s is discrete; only continuous data can be read in chunks.", dataColumn.getName());
+                LOGGER.error(errMsg);
+                throw new DataReaderException(errMsg);
+            }
+
+            if (!dataColumn.isGenerated()) {
+                numOfColsInDataFile++;
+            }
+        }
+
+        double[][] data = new double[chunkSize][dataColumns.length];
+        readInContinuousData(dataColumns, hasHeader, numOfColsInDataFile, data, handler);
+    }
+
     @Override
     public Data read(DataColumn[] dataColumns, boolean hasHeader, Metadata metadata) throws IOException {
         Data data = read(dataColumns, hasHeader);
 
         if (metadata != null) {
-            if (data instanceof ContinuousData) {
-                ContinuousData continuousData = (ContinuousData) data;
-                double[][] contData = continuousData.getData();
-                metadata.getInterventionalColumns().forEach(column -> {
-                    ColumnMetadata valCol = column.getValueColumn();
-                    ColumnMetadata statCol = column.getStatusColumn();
-                    int valColNum = valCol.getColumnNumber() - 1;
-                    int statColNum = statCol.getColumnNumber() - 1;
-                    double[] val = contData[valColNum];
-                    double[] stat = contData[statColNum];
-                    for (int i = 0; i < val.length; i++) {
-                        if (Double.isNaN(val[i])) {
-                            val[i] = 0.0;
-                            stat[i] = 0.0;
-                        } else if (dataColumns[statColNum].isGenerated()) {
-                            stat[i] = 1.0;
-                        }
+            applyInterventionalMetadata(data, dataColumns, metadata);
+        }
+
+        return data;
+    }
+
+    /**
+     * Set the values of the interventional columns given in the metadata:
+     * missing values become 0 with status 0, and generated status columns are
+     * 1 where there is a value.
+     *
+     * @param data
+     * @param dataColumns
+     * @param metadata
+     */
+    static void applyInterventionalMetadata(Data data, DataColumn[] dataColumns, Metadata metadata) {
+        if (data instanceof ContinuousData) {
+            ContinuousData continuousData = (ContinuousData) data;
+            double[][] contData = continuousData.getData();
+            metadata.getInterventionalColumns().forEach(column -> {
+                ColumnMetadata valCol = column.getValueColumn();
+                ColumnMetadata statCol = column.getStatusColumn();
+                int valColNum = valCol.getColumnNumber() - 1;
+                int statColNum = statCol.getColumnNumber() - 1;
+                double[] val = contData[valColNum];
+                double[] stat = contData[statColNum];
+                for (int i = 0; i < val.length; i++) {
+                    if (Double.isNaN(val[i])) {
+                        val[i] = 0.0;
+                        stat[i] = 0.0;
+                    } else if (dataColumns[statColNum].isGenerated()) {
+                        stat[i] = 1.0;
+                    }
+                }
+            });
+        } else if (data instanceof DiscreteData) {
+            DiscreteData verticalDiscreteData = (DiscreteData) data;
+            int[][] discreteData = verticalDiscreteData.getData();
+            metadata.getInterventionalColumns().forEach(column -> {
+                ColumnMetadata valCol = column.getValueColumn();
+                ColumnMetadata statCol = column.getStatusColumn();
+                int valColNum = valCol.getColumnNumber() - 1;
+                int statColNum = statCol.getColumnNumber() - 1;
+                int[] val = discreteData[valColNum];
+                int[] stat = discreteData[statColNum];
+                for (int i = 0; i < val.length; i++) {
+                    if (val[i] == DISCRETE_MISSING_VALUE) {
+                        val[i] = 0;
+                        stat[i] = 0;
+                    } else if (dataColumns[statColNum].isGenerated()) {
+                        stat[i] = 1;
                     }
-                });
-            } else if (data instanceof DiscreteData) {
-                DiscreteData verticalDiscreteData = (DiscreteData) data;
-                int[][] discreteData = verticalDiscreteData.getData();
-                metadata.getInterventionalColumns().forEach(column -> {
-                    ColumnMetadata valCol = column.getValueColumn();
-                    ColumnMetadata statCol = column.getStatusColumn();
-                    int valColNum = valCol.getColumnNumber() - 1;
-                    int statColNum = statCol.getColumnNumber() - 1;
+                }
+            });
+        } else if (data instanceof MixedTabularData) {
+            MixedTabularData mixedTabularData = (MixedTabularData) data;
+            double[][] continuousData = mixedTabularData.getContinuousData();
+            int[][] discreteData = mixedTabularData.getDiscreteData();
+            metadata.getInterventionalColumns().forEach(column -> {
+                ColumnMetadata valCol = column.getValueColumn();
+                ColumnMetadata statCol = column.getStatusColumn();
+                int valColNum = valCol.getColumnNumber() - 1;
+                int statColNum = statCol.getColumnNumber() - 1;
+                if (valCol.isDiscrete()) {
                     int[] val = discreteData[valColNum];
-                    int[] stat = discreteData[statColNum];
-                    for (int i = 0; i < val.length; i++) {
-                        if (val[i] == DISCRETE_MISSING_VALUE) {
-                            val[i] = 0;
-                            stat[i] = 0;
-                        } else if (dataColumns[statColNum].isGenerated()) {
-                            stat[i] = 1;
+                    if (statCol.isDiscrete()) {
+                        int[] stat = discreteData[statColNum];
+                        for (int i = 0; i < val.length; i++) {
+                            if (val[i] == DISCRETE_MISSING_VALUE) {
+                                val[i] = 0;
+                                stat[i] = 0;
+                            } else if (dataColumns[statColNum].isGenerated()) {
+                                stat[i] = 1;
+                            }
                         }
-                    }
-                });
-            } else if (data instanceof MixedTabularData) {
-                MixedTabularData mixedTabularData = (MixedTabularData) data;
-                double[][] continuousData = mixedTabularData.getContinuousData();
-                int[][] discreteData = mixedTabularData.getDiscreteData();
-                metadata.getInterventionalColumns().forEach(column -> {
-                    ColumnMetadata valCol = column.getValueColumn();
-                    ColumnMetadata statCol = column.getStatusColumn();
-                    int valColNum = valCol.getColumnNumber() - 1;
-                    int statColNum = statCol.getColumnNumber() - 1;
-                    if (valCol.isDiscrete()) {
-                        int[] val = discreteData[valColNum];
-                        if (statCol.isDiscrete()) {
-                            int[] stat = discreteData[statColNum];
-                            for (int i = 0; i < val.length; i++) {
-                                if (val[i] == DISCRETE_MISSING_VALUE) {
-                                    val[i] = 0;
-                                    stat[i] = 0;
-                                } else if (dataColumns[statColNum].isGenerated()) {
-                                    stat[i] = 1;
-                                }
+                    } else {
+                        double[] stat = continuousData[statColNum];
+                        for (int i = 0; i < val.length; i++) {
+                            if (val[i] == DISCRETE_MISSING_VALUE) {
+                                val[i] = 0;
+                                stat[i] = 0.0;
+                            } else if (dataColumns[statColNum].isGenerated()) {
+                                stat[i] = 1.0;
                             }
-                        } else {
-                            double[] stat = continuousData[statColNum];
-                            for (int i = 0; i < val.length; i++) {
-                                if (val[i] == DISCRETE_MISSING_VALUE) {
-                                    val[i] = 0;
-                                    stat[i] = 0.0;
-                                } else if (dataColumns[statColNum].isGenerated()) {
-                                    stat[i] = 1.0;
-                                }
+                        }
+                    }
+                } else {
+                    double[] val = continuousData[valColNum];
+                    if (statCol.isDiscrete()) {
+                        int[] stat = discreteData[statColNum];
+                        for (int i = 0; i < val.length; i++) {
+                            if (Double.isNaN(val[i])) {
+                                val[i] = 0.0;
+                                stat[i] = 0;
+                            } else if (dataColumns[statColNum].isGenerated()) {
+                                stat[i] = 1;
                             }
                         }
                     } else {
-                        double[] val = continuousData[valColNum];
-                        if (statCol.isDiscrete()) {
-                            int[] stat = discreteData[statColNum];
-                            for (int i = 0; i < val.length; i++) {
-                                if (Double.isNaN(val[i])) {
-                                    val[i] = 0.0;
-                                    stat[i] = 0;
-                                } else if (dataColumns[statColNum].isGenerated()) {
-                                    stat[i] = 1;
-                                }
-                            }
-                        } else {
-                            double[] stat = continuousData[statColNum];
-                            for (int i = 0; i < val.length; i++) {
-                                if (Double.isNaN(val[i])) {
-                                    val[i] = 0.0;
-                                    stat[i] = 0.0;
-                                } else if (dataColumns[statColNum].isGenerated()) {
-                                    stat[i] = 1.0;
-                                }
+                        double[] stat = continuousData[statColNum];
+                        for (int i = 0; i < val.length; i++) {
+                            if (Double.isNaN(val[i])) {
+                                val[i] = 0.0;
+                                stat[i] = 0.0;
+                            } else if (dataColumns[statColNum].isGenerated()) {
+                                stat[i] = 1.0;
                             }
                         }
                     }
-                });
-            }
+                }
+            });
         }
-
-        return data;
     }
 
     private Data readInMixedData(DataColumn[] dataColumns, boolean hasHeader, int numOfColsInDataFile) throws IOException {
@@ -732,6 +772,21 @@ public final class TabularDataFileReader extends DatasetFileReader implements Ta
         int numOfRows = hasHeader ? countNumberOfLines() - 1 : countNumberOfLines();
         double[][] data = new double[numOfRows][numOfCols];
 
+        // all the rows fit in one chunk, which is the data
+        readInContinuousData(dataColumns, hasHeader, numOfColsInDataFile, data, (rows, n) -> {
+        });
+
+        return new ContinuousTabularData(dataColumns, data);
+    }
+
+    /**
+     * Read in continuous data into the rows of the given array, passing it to
+     * the handler each time it is full and once more at the end for any
+     * remaining rows.
+     */
+    private void readInContinuousData(DataColumn[] dataColumns, boolean hasHeader, int numOfColsInDataFile, double[][] data, ContinuousDataChunkHandler handler) throws IOException {
+        int numOfCols = dataColumns.length;
+
         try (InputStream in = Files.newInputStream(dataFile, StandardOpenOption.READ)) {
             boolean skipHeader = hasHeader;
             boolean skip = false;
@@ -849,7 +904,10 @@ public final class TabularDataFileReader extends DatasetFileReader implements Ta
                                 throw new DataReaderException(errMsg);
                             }
 
-                            row++;
+                            if (++row == data.length) {
+                                handler.handle(data, row);
+                                row = 0;
+                            }
                         }
 
                         lineNum++;
@@ -924,7 +982,10 @@ public final class TabularDataFileReader extends DatasetFileReader implements Ta
 
                                         columnIndex++;
                                         if (columnIndex == numOfCols) {
-                                            row++;
+                                            if (++row == data.length) {
+                                                handler.handle(data, row);
+                                                row = 0;
+                                            }
                                             skip = true;
                                         }
                                     }
@@ -969,10 +1030,14 @@ public final class TabularDataFileReader extends DatasetFileReader implements Ta
                     LOGGER.error(errMsg);
                     throw new DataReaderException(errMsg);
                 }
+
+                row++;
             }
-        }
 
-        return new ContinuousTabularData(dataColumns, data);
+            if (row > 0) {
+                handler.handle(data, row);
+            }
+        }
     }
 
     private Data readInDiscreteData(DataColumn[] dataColumns, boolean hasHeader, int numOfColsInDataFile) throws IOException {
@@ -51,4 +51,17 @@ public interface TabularDataReader extends DatasetReader {
 
     public Data read(DataColumn[] dataColumns, boolean hasHeader, Metadata metadata) throws IOException;
 
+    /**
+     * Read in continuous data in chunks of at most chunkSize rows, passing
+     * each chunk to the handler. Only chunkSize rows are held in memory at a
+     * time.
+     *
+     * @param dataColumns continuous data columns
+     * @param hasHeader
+     * @param chunkSize maximum number of rows in a chunk
+     * @param handler
+     * @throws IOException
+     */
+    public void read(DataColumn[] dataColumns, boolean hasHeader, int chunkSize, ContinuousDataChunkHandler handler) throws IOException;
+
 }
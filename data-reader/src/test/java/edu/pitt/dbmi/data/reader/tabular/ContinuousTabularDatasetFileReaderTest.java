@@ -25,8 +25,11 @@ import edu.pitt.dbmi.data.reader.Delimiter;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import org.junit.Assert;
 import org.junit.Test;
@@ -231,4 +234,43 @@ public class ContinuousTabularDatasetFileReaderTest {
         }
     }
 
+    /**
+     * Test of readInData method in chunks, of class
+     * ContinuousTabularDataReader.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testReadInDataInChunks() throws IOException {
+        for (Path dataFile : dataFiles) {
+            ContinuousTabularDatasetReader dataReader = new ContinuousTabularDatasetFileReader(dataFile, delimiter);
+            dataReader.setCommentMarker(commentMarker);
+            dataReader.setQuoteCharacter(quoteCharacter);
+            dataReader.setMissingDataMarker(missingValueMarker);
+            dataReader.setHasHeader(hasHeader);
+
+            double[][] contData = ((ContinuousData) dataReader.readInData()).getData();
+
+            List<double[]> rows = new ArrayList<>();
+            List<Integer> chunkSizes = new ArrayList<>();
+            DataColumn[] dataColumns = dataReader.readInData(Collections.EMPTY_SET, 7, (data, numOfRows) -> {
+                chunkSizes.add(numOfRows);
+                for (int i = 0; i < numOfRows; i++) {
+                    rows.add(data[i].clone());
+                }
+            });
+
+            long expected = 10;
+            long actual = dataColumns.length;
+            Assert.assertEquals(expected, actual);
+
+            Assert.assertEquals(Arrays.asList(7, 7, 4), chunkSizes);
+            Assert.assertEquals(contData.length, rows.size());
+
+            for (int i = 0; i < contData.length; i++) {
+                Assert.assertArrayEquals(contData[i], rows.get(i), 0);
+            }
+        }
+    }
+
 }
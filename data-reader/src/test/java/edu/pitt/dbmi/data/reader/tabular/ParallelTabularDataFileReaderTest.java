@@ -0,0 +1,211 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.pitt.dbmi.data.reader.tabular;
+
+import edu.pitt.dbmi.data.reader.ContinuousData;
+import edu.pitt.dbmi.data.reader.Data;
+import edu.pitt.dbmi.data.reader.DataColumn;
+import edu.pitt.dbmi.data.reader.DataReaderException;
+import edu.pitt.dbmi.data.reader.Delimiter;
+import edu.pitt.dbmi.data.reader.DiscreteData;
+import edu.pitt.dbmi.data.reader.DiscreteDataColumn;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that the parallel reader reads the same data as the sequential one.
+ *
+ * @author agent
+ */
+public class ParallelTabularDataFileReaderTest {
+
+    private final Delimiter delimiter = Delimiter.COMMA;
+    private final char quoteCharacter = '"';
+    private final String missingValueMarker = "*";
+    private final String commentMarker = "//";
+    private final boolean hasHeader = true;
+    private final int numberOfCategories = 4;
+
+    private final Path[] continuousDataFiles = {
+        Paths.get(getClass().getResource("/data/tabular/continuous/dos_sim_test_data.csv").getFile()),
+        Paths.get(getClass().getResource("/data/tabular/continuous/mac_sim_test_data.csv").getFile()),
+        Paths.get(getClass().getResource("/data/tabular/continuous/sim_test_data.csv").getFile()),
+        Paths.get(getClass().getResource("/data/tabular/continuous/quotes_sim_test_data.csv").getFile())
+    };
+
+    private final Path[] discreteDataFiles = {
+        Paths.get(getClass().getResource("/data/tabular/discrete/dos_sim_test_data.csv").getFile()),
+        Paths.get(getClass().getResource("/data/tabular/discrete/mac_sim_test_data.csv").getFile()),
+        Paths.get(getClass().getResource("/data/tabular/discrete/sim_test_data.csv").getFile()),
+        Paths.get(getClass().getResource("/data/tabular/discrete/quotes_sim_test_data.csv").getFile())
+    };
+
+    private final Path[] mixedDataFiles = {
+        Paths.get(getClass().getResource("/data/tabular/mixed/dos_sim_test_data.csv").getFile()),
+        Paths.get(getClass().getResource("/data/tabular/mixed/mac_sim_test_data.csv").getFile()),
+        Paths.get(getClass().getResource("/data/tabular/mixed/sim_test_data.csv").getFile()),
+        Paths.get(getClass().getResource("/data/tabular/mixed/quotes_sim_test_data.csv").getFile())
+    };
+
+    public ParallelTabularDataFileReaderTest() {
+    }
+
+    @Test
+    public void testReadInContinuousData() throws IOException {
+        for (Path dataFile : continuousDataFiles) {
+            assertSameData(read(new TabularDataFileReader(dataFile, delimiter), dataFile, false, false),
+                    read(new ParallelTabularDataFileReader(dataFile, delimiter), dataFile, false, false));
+        }
+    }
+
+    @Test
+    public void testReadInDiscreteData() throws IOException {
+        for (Path dataFile : discreteDataFiles) {
+            assertSameData(read(new TabularDataFileReader(dataFile, delimiter), dataFile, true, false),
+                    read(new ParallelTabularDataFileReader(dataFile, delimiter), dataFile, true, false));
+        }
+    }
+
+    @Test
+    public void testReadInMixedData() throws IOException {
+        for (Path dataFile : mixedDataFiles) {
+            assertSameData(read(new TabularDataFileReader(dataFile, delimiter), dataFile, false, true),
+                    read(new ParallelTabularDataFileReader(dataFile, delimiter), dataFile, false, true));
+        }
+    }
+
+    /**
+     * A file long enough to be split into segments, with blank and commented
+     * lines, quotes, missing values and DOS line endings.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testReadInLargeData() throws IOException {
+        Path dataFile = Files.createTempFile("parallel_test_data", ".csv");
+        try {
+            Random random = new Random(1952);
+            try (BufferedWriter writer = Files.newBufferedWriter(dataFile)) {
+                writer.write("// simulated data\r\n\r\nX1,\"X2\",X3,X4\r\n");
+                for (int i = 0; i < 60000; i++) {
+                    if (i % 97 == 0) {
+                        writer.write("\r\n  // comment\r\n");
+                    }
+
+                    writer.write(String.format("%s,%.4f,%d,\"%s\"\r\n",
+                            (i % 31 == 0) ? "*" : Double.toString(random.nextGaussian()),
+                            random.nextGaussian() * 1e6,
+                            random.nextInt(3),
+                            (random.nextBoolean() ? "on" : "off")));
+                }
+            }
+
+            Assert.assertTrue(Files.size(dataFile) > 2 * 1024 * 1024);
+
+            Data data = read(new ParallelTabularDataFileReader(dataFile, delimiter), dataFile, false, true);
+            assertSameData(read(new TabularDataFileReader(dataFile, delimiter), dataFile, false, true), data);
+
+            long expected = 60000;
+            long actual = ((MixedTabularData) data).getNumOfRows();
+            Assert.assertEquals(expected, actual);
+
+            assertSameData(read(new TabularDataFileReader(dataFile, delimiter), dataFile, true, false),
+                    read(new ParallelTabularDataFileReader(dataFile, delimiter), dataFile, true, false));
+        } finally {
+            Files.deleteIfExists(dataFile);
+        }
+    }
+
+    @Test
+    public void testReadInBadData() throws IOException {
+        Path dataFile = Paths.get(getClass().getResource("/data/tabular/continuous/bad_data_sim_test_data.csv").getFile());
+
+        String expected = null;
+        try {
+            read(new TabularDataFileReader(dataFile, delimiter), dataFile, false, false);
+        } catch (DataReaderException exception) {
+            expected = exception.getMessage();
+        }
+
+        String actual = null;
+        try {
+            read(new ParallelTabularDataFileReader(dataFile, delimiter), dataFile, false, false);
+        } catch (DataReaderException exception) {
+            actual = exception.getMessage();
+        }
+
+        Assert.assertNotNull(actual);
+        Assert.assertEquals(expected, actual);
+    }
+
+    private Data read(TabularDataReader dataReader, Path dataFile, boolean isDiscrete, boolean isMixed) throws IOException {
+        TabularColumnReader columnReader = new TabularColumnFileReader(dataFile, delimiter);
+        columnReader.setCommentMarker(commentMarker);
+        columnReader.setQuoteCharacter(quoteCharacter);
+        DataColumn[] dataColumns = columnReader.readInDataColumns(isDiscrete);
+
+        dataReader.setCommentMarker(commentMarker);
+        dataReader.setQuoteCharacter(quoteCharacter);
+        dataReader.setMissingDataMarker(missingValueMarker);
+
+        if (isMixed) {
+            dataReader.determineDiscreteDataColumns(dataColumns, numberOfCategories, hasHeader);
+        }
+
+        return dataReader.read(dataColumns, hasHeader);
+    }
+
+    private void assertSameData(Data expected, Data actual) {
+        if (expected instanceof ContinuousData) {
+            Assert.assertTrue(actual instanceof ContinuousData);
+            Assert.assertArrayEquals(((ContinuousData) expected).getData(), ((ContinuousData) actual).getData());
+        } else if (expected instanceof DiscreteData) {
+            Assert.assertTrue(actual instanceof DiscreteData);
+            assertSameColumns(((DiscreteData) expected).getDataColumns(), ((DiscreteData) actual).getDataColumns());
+            Assert.assertArrayEquals(((DiscreteData) expected).getData(), ((DiscreteData) actual).getData());
+        } else {
+            Assert.assertTrue(actual instanceof MixedTabularData);
+            MixedTabularData expectedData = (MixedTabularData) expected;
+            MixedTabularData actualData = (MixedTabularData) actual;
+            Assert.assertEquals(expectedData.getNumOfRows(), actualData.getNumOfRows());
+            assertSameColumns(expectedData.getDataColumns(), actualData.getDataColumns());
+            Assert.assertArrayEquals(expectedData.getContinuousData(), actualData.getContinuousData());
+            Assert.assertArrayEquals(expectedData.getDiscreteData(), actualData.getDiscreteData());
+        }
+    }
+
+    private void assertSameColumns(DiscreteDataColumn[] expected, DiscreteDataColumn[] actual) {
+        Assert.assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(expected[i].getDataColumn().getName(), actual[i].getDataColumn().getName());
+            Assert.assertEquals(expected[i].getDataColumn().isDiscrete(), actual[i].getDataColumn().isDiscrete());
+            Assert.assertEquals(expected[i].getCategories(), actual[i].getCategories());
+        }
+    }
+
+}
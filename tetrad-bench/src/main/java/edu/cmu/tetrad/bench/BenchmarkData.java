@@ -0,0 +1,132 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bench;
+
+import edu.cmu.tetrad.bayes.BayesPm;
+import edu.cmu.tetrad.bayes.MlBayesIm;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Seeded graphs, data and query sets shared by the benchmarks. Everything here is a
+ * function of the seed, so two runs of the same benchmark see the same inputs.
+ *
+ * @author agent
+ */
+final class BenchmarkData {
+
+    static final long SEED = 8474393L;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * A random DAG over numVars measured variables with about avgDegree * numVars / 2 edges.
+     */
+    static Graph dag(int numVars, double avgDegree, long seed) {
+        RandomUtil.getInstance().setSeed(seed);
+        int numEdges = (int) (avgDegree * numVars / 2.0);
+        return GraphUtils.randomGraph(numVars, 0, numEdges, 30, 15, 15, false);
+    }
+
+    /**
+     * Linear Gaussian data simulated from the given DAG.
+     */
+    static DataSet continuousData(Graph dag, int sampleSize, long seed) {
+        RandomUtil.getInstance().setSeed(seed);
+        SemIm im = new SemIm(new SemPm(dag));
+        return im.simulateData(sampleSize, false);
+    }
+
+    /**
+     * Discrete data, 2 to 4 categories per variable, simulated from the given DAG.
+     */
+    static DataSet discreteData(Graph dag, int sampleSize, long seed) {
+        RandomUtil.getInstance().setSeed(seed);
+        MlBayesIm im = new MlBayesIm(new BayesPm(dag, 2, 4), MlBayesIm.RANDOM);
+        return im.simulateData(sampleSize, false);
+    }
+
+    /**
+     * For each variable, its parents in the DAG, as indices into the data set's variables.
+     */
+    static int[][] parentSets(Graph dag, DataSet data) {
+        List<Node> variables = data.getVariables();
+        int[][] parents = new int[variables.size()][];
+
+        for (int i = 0; i < variables.size(); i++) {
+            List<Node> p = dag.getParents(dag.getNode(variables.get(i).getName()));
+            parents[i] = new int[p.size()];
+
+            for (int j = 0; j < p.size(); j++) {
+                parents[i][j] = data.getColumn(data.getVariable(p.get(j).getName()));
+            }
+        }
+
+        return parents;
+    }
+
+    /**
+     * Random (x, y, z) queries with |z| = depth, none of x, y or the members of z repeated.
+     */
+    static List<Query> queries(List<Node> nodes, int depth, int numQueries, long seed) {
+        RandomUtil random = RandomUtil.getInstance();
+        random.setSeed(seed);
+        List<Query> queries = new ArrayList<>();
+
+        for (int q = 0; q < numQueries; q++) {
+            List<Node> shuffled = new ArrayList<>(nodes);
+
+            for (int i = 0; i < depth + 2; i++) {
+                int j = i + random.nextInt(shuffled.size() - i);
+                Node tmp = shuffled.get(i);
+                shuffled.set(i, shuffled.get(j));
+                shuffled.set(j, tmp);
+            }
+
+            queries.add(new Query(shuffled.get(0), shuffled.get(1),
+                    new ArrayList<>(shuffled.subList(2, depth + 2))));
+        }
+
+        return queries;
+    }
+
+    static final class Query {
+        final Node x;
+        final Node y;
+        final List<Node> z;
+
+        Query(Node x, Node y, List<Node> z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bench;
+
+import edu.cmu.tetrad.graph.EdgeListGraph;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.search.MeekRules;
+import edu.cmu.tetrad.search.SearchGraphUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * D-separation queries against a seeded DAG, and Meek orientation of that DAG's
+ * collider-only pattern.
+ *
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GraphBenchmarks {
+
+    @Param({"50", "200"})
+    public int numVars;
+
+    @Param({"4"})
+    public double avgDegree;
+
+    @Param({"3"})
+    public int depth;
+
+    private Graph dag;
+    private List<BenchmarkData.Query> queries;
+    private int next = 0;
+
+    private Graph colliders;
+    private Graph pattern;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dag = BenchmarkData.dag(numVars, avgDegree, BenchmarkData.SEED);
+        queries = BenchmarkData.queries(dag.getNodes(), depth, 1024, BenchmarkData.SEED);
+
+        colliders = new EdgeListGraph(dag);
+        SearchGraphUtils.basicPattern(colliders, false);
+    }
+
+    /**
+     * orientImplied() works in place, so each invocation gets a fresh copy.
+     */
+    @Setup(Level.Invocation)
+    public void copyPattern() {
+        pattern = new EdgeListGraph(colliders);
+    }
+
+    @Benchmark
+    public boolean dSeparation() {
+        BenchmarkData.Query query = queries.get(next);
+        next = (next + 1) % queries.size();
+        return dag.isDSeparatedFrom(query.x, query.y, query.z);
+    }
+
+    @Benchmark
+    public Graph meekRules() {
+        new MeekRules().orientImplied(pattern);
+        return pattern;
+    }
+}
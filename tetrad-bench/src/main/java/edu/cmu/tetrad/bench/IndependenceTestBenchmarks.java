@@ -0,0 +1,81 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bench;
+
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.search.IndTestFisherZ;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fisher Z p-values at several conditioning set sizes, and covariance matrix construction
+ * from raw data.
+ *
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IndependenceTestBenchmarks {
+
+    @Param({"50"})
+    public int numVars;
+
+    @Param({"1000"})
+    public int sampleSize;
+
+    @Param({"0", "2", "4"})
+    public int depth;
+
+    private DataSet data;
+    private IndTestFisherZ test;
+    private List<BenchmarkData.Query> queries;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Graph dag = BenchmarkData.dag(numVars, 4, BenchmarkData.SEED);
+        data = BenchmarkData.continuousData(dag, sampleSize, BenchmarkData.SEED);
+        test = new IndTestFisherZ(new CovarianceMatrix(data), 0.01);
+        queries = BenchmarkData.queries(test.getVariables(), depth, 1024, BenchmarkData.SEED);
+    }
+
+    @Benchmark
+    public double fisherZPValue() {
+        BenchmarkData.Query query = queries.get(next);
+        next = (next + 1) % queries.size();
+        return test.getPValue(query.x, query.y, query.z);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public CovarianceMatrix covarianceMatrix() {
+        return new CovarianceMatrix(data);
+    }
+}
@@ -0,0 +1,90 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bench;
+
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.search.BDeuScore;
+import edu.cmu.tetrad.search.SemBicScore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local score throughput for SemBicScore and BDeuScore. Each invocation scores the next
+ * variable against its true parents, cycling over all variables of a seeded DAG.
+ *
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScoreBenchmarks {
+
+    @Param({"20", "100"})
+    public int numVars;
+
+    @Param({"1000"})
+    public int sampleSize;
+
+    @Param({"4"})
+    public double avgDegree;
+
+    private SemBicScore semBicScore;
+    private int[][] continuousParents;
+
+    private BDeuScore bdeuScore;
+    private int[][] discreteParents;
+
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Graph dag = BenchmarkData.dag(numVars, avgDegree, BenchmarkData.SEED);
+
+        DataSet continuous = BenchmarkData.continuousData(dag, sampleSize, BenchmarkData.SEED);
+        semBicScore = new SemBicScore(new CovarianceMatrix(continuous));
+        continuousParents = BenchmarkData.parentSets(dag, continuous);
+
+        DataSet discrete = BenchmarkData.discreteData(dag, sampleSize, BenchmarkData.SEED);
+        bdeuScore = new BDeuScore(discrete);
+        discreteParents = BenchmarkData.parentSets(dag, discrete);
+    }
+
+    @Benchmark
+    public double semBicLocalScore() {
+        int i = next;
+        next = (i + 1) % numVars;
+        return semBicScore.localScore(i, continuousParents[i]);
+    }
+
+    @Benchmark
+    public double bdeuLocalScore() {
+        int i = next;
+        next = (i + 1) % numVars;
+        return bdeuScore.localScore(i, discreteParents[i]);
+    }
+}
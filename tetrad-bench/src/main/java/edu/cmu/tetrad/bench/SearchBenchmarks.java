@@ -0,0 +1,87 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bench;
+
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.search.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end FGES, PC-Stable and FCI on continuous data simulated from a seeded DAG.
+ *
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmarks {
+
+    @Param({"20", "50"})
+    public int numVars;
+
+    @Param({"1000"})
+    public int sampleSize;
+
+    @Param({"2"})
+    public double avgDegree;
+
+    @Param({"0.01"})
+    public double alpha;
+
+    private ICovarianceMatrix cov;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Graph dag = BenchmarkData.dag(numVars, avgDegree, BenchmarkData.SEED);
+        DataSet data = BenchmarkData.continuousData(dag, sampleSize, BenchmarkData.SEED);
+        cov = new CovarianceMatrix(data);
+    }
+
+    @Benchmark
+    public Graph fges() {
+        Fges fges = new Fges(new SemBicScore(cov));
+        fges.setVerbose(false);
+        return fges.search();
+    }
+
+    @Benchmark
+    public Graph pcStable() {
+        PcStable pc = new PcStable(new IndTestFisherZ(cov, alpha));
+        pc.setVerbose(false);
+        return pc.search();
+    }
+
+    @Benchmark
+    public Graph fci() {
+        Fci fci = new Fci(new IndTestFisherZ(cov, alpha));
+        fci.setVerbose(false);
+        return fci.search();
+    }
+}
@@ -36,6 +36,7 @@ import edu.pitt.dbmi.data.reader.covariance.LowerCovarianceDataFileReader;
 import edu.pitt.dbmi.data.reader.metadata.Metadata;
 import edu.pitt.dbmi.data.reader.metadata.MetadataFileReader;
 import edu.pitt.dbmi.data.reader.metadata.MetadataReader;
+import edu.pitt.dbmi.data.reader.tabular.ParallelTabularDataFileReader;
 import edu.pitt.dbmi.data.reader.tabular.TabularColumnFileReader;
 import edu.pitt.dbmi.data.reader.tabular.TabularColumnReader;
 import edu.pitt.dbmi.data.reader.tabular.TabularDataFileReader;
@@ -1210,7 +1211,7 @@ public final class LoadDataSettings extends JPanel {
             }
 
             // Now read in the data rows
-            TabularDataReader dataReader = new TabularDataFileReader(file.toPath(), delimiter);
+            TabularDataReader dataReader = new ParallelTabularDataFileReader(file.toPath(), delimiter);
 
             // Need to specify commentMarker, .... again to the TabularDataFileReader
             dataReader.setCommentMarker(commentMarker);
@@ -0,0 +1,62 @@
+package edu.cmu.tetrad.algcomparison.independence;
+
+import edu.cmu.tetrad.data.DataModel;
+import edu.cmu.tetrad.data.DataType;
+import edu.cmu.tetrad.search.IndTestCache;
+import edu.cmu.tetrad.search.IndependenceTest;
+import edu.cmu.tetrad.util.Parameters;
+import edu.cmu.tetrad.util.Params;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Wrapper for another test that keeps its results in a file, so that runs on the same data that differ only in
+ * alpha, or are simply repeated, can look them up. The values of the other test's parameters other than alpha are
+ * part of the key.
+ *
+ * @author agent
+ * @see IndTestCache
+ */
+public class CachedTest implements IndependenceWrapper {
+
+    static final long serialVersionUID = 23L;
+
+    private final IndependenceWrapper test;
+    private final File file;
+
+    public CachedTest(IndependenceWrapper test, File file) {
+        if (test == null) throw new NullPointerException("Test not provided.");
+        if (file == null) throw new NullPointerException("File not provided.");
+        this.test = test;
+        this.file = file;
+    }
+
+    @Override
+    public IndependenceTest getTest(DataModel dataSet, Parameters parameters) {
+        StringBuilder settings = new StringBuilder();
+
+        for (String param : test.getParameters()) {
+            if (!Params.ALPHA.equals(param)) {
+                settings.append(param).append("=").append(parameters.get(param)).append(";");
+            }
+        }
+
+        return new IndTestCache(test.getTest(dataSet, parameters), file, settings.toString());
+    }
+
+    @Override
+    public String getDescription() {
+        return test.getDescription() + ", cached";
+    }
+
+    @Override
+    public DataType getDataType() {
+        return test.getDataType();
+    }
+
+    @Override
+    public List<String> getParameters() {
+        return test.getParameters();
+    }
+}
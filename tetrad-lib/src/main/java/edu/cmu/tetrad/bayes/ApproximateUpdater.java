@@ -37,12 +37,23 @@ import java.util.List;
  * sample points are simulated from the underlying BayesIm so that 1000 satisfy
  * the condition B. Then the maximum likelihood estimate of condition A is
  * calculated.
+ * <p>
+ * Alternatively, the marginals may be estimated by likelihood weighting or by
+ * Gibbs sampling, with several chains run in parallel, each from a random
+ * stream of its own drawn from the seed. These sample from the manipulated
+ * Bayes IM until the marginals are within the tolerance, or until the sample
+ * or time limit is reached, so they give an answer in bounded time for
+ * networks too large for exact updating. See BayesSampler.
  *
  * @author Joseph Ramsey
  */
 public final class ApproximateUpdater implements ManipulatingBayesUpdater {
     static final long serialVersionUID = 23L;
 
+    public static final int REJECTION_SAMPLING = 0;
+    public static final int LIKELIHOOD_WEIGHTING = 1;
+    public static final int GIBBS_SAMPLING = 2;
+
     /**
      * The IM which this updater modifies.
      *
@@ -72,6 +83,39 @@ public final class ApproximateUpdater implements ManipulatingBayesUpdater {
      */
     private BayesIm manipulatedBayesIm;
 
+    /**
+     * The sampling method, one of REJECTION_SAMPLING, LIKELIHOOD_WEIGHTING or
+     * GIBBS_SAMPLING.
+     *
+     * @serial
+     */
+    private int method = REJECTION_SAMPLING;
+
+    /**
+     * For likelihood weighting and Gibbs sampling, the number of chains, the
+     * largest error allowed in a marginal, and the limits on the number of
+     * samples over all chains and on the milliseconds spent.
+     *
+     * @serial
+     */
+    private int numChains = 4;
+    private double tolerance = 0.01;
+    private long maxSamples = 1000000;
+    private long maxTime = 10000;
+
+    /**
+     * The seed of the random streams of the chains, or null if one is to be
+     * drawn from RandomUtil for each update.
+     *
+     * @serial
+     */
+    private Long seed;
+
+    /**
+     * The result of the last likelihood weighting or Gibbs sampling update.
+     */
+    private transient BayesSampler.Result result;
+
     //==============================CONSTRUCTORS===========================//
 
     public ApproximateUpdater(BayesIm bayesIm) {
@@ -95,6 +139,15 @@ public final class ApproximateUpdater implements ManipulatingBayesUpdater {
         setEvidence(evidence);
     }
 
+    /**
+     * Constructs a new updater for the given Bayes net, using the given
+     * sampling method.
+     */
+    public ApproximateUpdater(BayesIm bayesIm, Evidence evidence, int method) {
+        this(bayesIm, evidence);
+        setMethod(method);
+    }
+
     /**
      * @return a simple exemplar of this class to test serialization.
      */
@@ -161,9 +214,150 @@ public final class ApproximateUpdater implements ManipulatingBayesUpdater {
         this.manipulatedBayesIm = createdUpdatedBayesIm(manipulatedBayesPm);
 
         this.counts = null;
+        this.result = null;
+    }
+
+    public int getMethod() {
+        return method;
+    }
+
+    /**
+     * Sets the sampling method, one of REJECTION_SAMPLING,
+     * LIKELIHOOD_WEIGHTING or GIBBS_SAMPLING.
+     */
+    public void setMethod(int method) {
+        if (method != REJECTION_SAMPLING && method != LIKELIHOOD_WEIGHTING
+                && method != GIBBS_SAMPLING) {
+            throw new IllegalArgumentException("Unrecognized method: " + method);
+        }
+
+        this.method = method;
+        this.counts = null;
+        this.result = null;
+    }
+
+    public int getNumChains() {
+        return numChains;
+    }
+
+    /**
+     * Sets the number of chains for likelihood weighting and Gibbs sampling.
+     * The marginals depend on the seed and the number of chains, not on the
+     * number of threads.
+     */
+    public void setNumChains(int numChains) {
+        if (numChains < 1) {
+            throw new IllegalArgumentException("Number of chains must be at least 1: " + numChains);
+        }
+
+        this.numChains = numChains;
+        this.result = null;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Sets the largest error, at about 95% confidence, allowed in any marginal
+     * before likelihood weighting or Gibbs sampling stops.
+     */
+    public void setTolerance(double tolerance) {
+        if (!(tolerance > 0)) {
+            throw new IllegalArgumentException("Tolerance must be positive: " + tolerance);
+        }
+
+        this.tolerance = tolerance;
+        this.result = null;
+    }
+
+    public long getMaxSamples() {
+        return maxSamples;
+    }
+
+    /**
+     * Sets the most samples, over all chains, that likelihood weighting or
+     * Gibbs sampling may draw; for Gibbs sampling a sample is a sweep over the
+     * nodes. 0 is no limit, so long as there is a time limit.
+     */
+    public void setMaxSamples(long maxSamples) {
+        if (maxSamples < 0) {
+            throw new IllegalArgumentException("Max samples must be at least 0: " + maxSamples);
+        }
+
+        this.maxSamples = maxSamples;
+        this.result = null;
+    }
+
+    public long getMaxTime() {
+        return maxTime;
+    }
+
+    /**
+     * Sets the most milliseconds that likelihood weighting or Gibbs sampling
+     * may take, checked between rounds of sampling. 0 is no limit, so long as
+     * there is a sample limit.
+     */
+    public void setMaxTime(long maxTime) {
+        if (maxTime < 0) {
+            throw new IllegalArgumentException("Max time must be at least 0: " + maxTime);
+        }
+
+        this.maxTime = maxTime;
+        this.result = null;
+    }
+
+    /**
+     * Sets the seed of the random streams of the chains, or, if null, has one
+     * drawn from RandomUtil for each update.
+     */
+    public void setSeed(Long seed) {
+        this.seed = seed;
+        this.result = null;
+    }
+
+    /**
+     * @return the number of samples drawn in the last likelihood weighting or
+     * Gibbs sampling update.
+     */
+    public long getNumSamples() {
+        doSample();
+        return result.numSamples;
+    }
+
+    /**
+     * @return true iff the last likelihood weighting or Gibbs sampling update
+     * stopped because the marginals were within the tolerance.
+     */
+    public boolean isConverged() {
+        doSample();
+        return result.converged;
+    }
+
+    /**
+     * @return the estimated error, at about 95% confidence, of the marginal
+     * least certain in the last likelihood weighting or Gibbs sampling update.
+     */
+    public double getError() {
+        doSample();
+        return result.error;
+    }
+
+    /**
+     * @return the milliseconds taken by the last likelihood weighting or Gibbs
+     * sampling update.
+     */
+    public long getElapsedTime() {
+        doSample();
+        return result.elapsedTime;
     }
 
     public double getMarginal(int variable, int value) {
+        if (method != REJECTION_SAMPLING) {
+            doSample();
+            return result.marginals[variable][value];
+        }
+
         doUpdate();
         int sum = 0;
 
@@ -262,6 +456,30 @@ public final class ApproximateUpdater implements ManipulatingBayesUpdater {
         }
     }
 
+    private void doSample() {
+        if (method == REJECTION_SAMPLING) {
+            throw new IllegalStateException("Not sampling by likelihood weighting or Gibbs sampling.");
+        }
+
+        if (result != null) {
+            return;
+        }
+
+        Proposition proposition = new Proposition(manipulatedBayesIm, evidence.getProposition());
+        boolean[] manipulated = new boolean[manipulatedBayesIm.getNumNodes()];
+
+        for (int i = 0; i < evidence.getNumNodes(); i++) {
+            if (evidence.isManipulated(i)) {
+                Node node = manipulatedBayesIm.getNode(evidence.getNode(i).getName());
+                manipulated[manipulatedBayesIm.getNodeIndex(node)] = true;
+            }
+        }
+
+        long _seed = seed != null ? seed : RandomUtil.getInstance().nextLong();
+        BayesSampler sampler = new BayesSampler(manipulatedBayesIm, proposition, manipulated);
+        this.result = sampler.sample(method == GIBBS_SAMPLING, numChains, _seed, tolerance, maxSamples, maxTime);
+    }
+
     private BayesIm createdUpdatedBayesIm(BayesPm updatedBayesPm) {
         return new MlBayesIm(updatedBayesPm, bayesIm, MlBayesIm.RANDOM);
     }
@@ -350,6 +568,19 @@ public final class ApproximateUpdater implements ManipulatingBayesUpdater {
         if (evidence == null) {
             throw new NullPointerException();
         }
+
+        if (method != REJECTION_SAMPLING && method != LIKELIHOOD_WEIGHTING
+                && method != GIBBS_SAMPLING) {
+            throw new IllegalStateException("Unrecognized method: " + method);
+        }
+
+        // Saved before the sampling options were added.
+        if (numChains == 0) {
+            numChains = 4;
+            tolerance = 0.01;
+            maxSamples = 1000000;
+            maxTime = 10000;
+        }
     }
 }
 
@@ -0,0 +1,541 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bayes;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.RowBlockSimulator;
+import edu.cmu.tetrad.util.SearchExecutor;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Estimates the marginals of a Bayes IM given a proposition by sampling, for ApproximateUpdater. The conditional
+ * probability tables are copied into flat arrays, and sampling goes in rounds. In each round each of a number of
+ * chains, with a random stream of its own drawn from the seed, adds a batch of samples, the chains running in
+ * parallel; the batches are then pooled in chain order, so that the marginals depend only on the seed and the
+ * number of chains. Sampling stops when the marginals are within the tolerance, with about 95% confidence, as
+ * judged by the spread of the estimates of the batches, or when the sample or time limit is reached.
+ * <p>
+ * Likelihood weighting samples a block of cases a node at a time, in causal order, drawing each node from its
+ * table restricted to the categories the proposition allows and weighting the case by the probability of those
+ * categories. Gibbs sampling keeps one case per chain, starting from such a draw, and in each sweep redraws each
+ * node not fixed by the proposition from its distribution given its Markov blanket; the marginals are averaged
+ * from those distributions rather than from the values drawn. Gibbs sampling may not mix when the tables have
+ * zeros.
+ *
+ * @author agent
+ */
+final class BayesSampler {
+
+    /**
+     * Cases per likelihood weighting batch, and sweeps per Gibbs batch.
+     */
+    private static final int WEIGHTING_BATCH = 1000;
+    private static final int GIBBS_BATCH = 100;
+    private static final int GIBBS_BURN_IN = 100;
+
+    private final int[] numCategories;
+    private final int[][] parents;
+    private final int[][] parentStrides;
+    private final double[][] probabilities;
+    private final int[] order;
+
+    // The children of each node, with the stride of the node in each child's row index.
+    private final int[][] children;
+    private final int[][] childStrides;
+
+    // The categories the proposition allows, and whether it allows all of them or just one.
+    private final boolean[][] allowed;
+    private final boolean[] free;
+    private final boolean[] fixed;
+
+    /**
+     * The result of a run.
+     */
+    static final class Result {
+        final double[][] marginals;
+        final long numSamples;
+        final double error;
+        final boolean converged;
+        final long elapsedTime;
+
+        private Result(double[][] marginals, long numSamples, double error, boolean converged, long elapsedTime) {
+            this.marginals = marginals;
+            this.numSamples = numSamples;
+            this.error = error;
+            this.converged = converged;
+            this.elapsedTime = elapsedTime;
+        }
+    }
+
+    /**
+     * Compiles the given IM, conditioned on the given proposition over its nodes. The tables of manipulated nodes
+     * are replaced by 1 for each allowed category, as JunctionTreeUpdater does, normalized, so that a manipulated
+     * node is drawn uniformly from its allowed categories.
+     */
+    BayesSampler(BayesIm bayesIm, Proposition proposition, boolean[] manipulated) {
+        int numNodes = bayesIm.getNumNodes();
+        this.numCategories = new int[numNodes];
+        this.parents = new int[numNodes][];
+        this.parentStrides = new int[numNodes][];
+        this.probabilities = new double[numNodes][];
+        this.allowed = new boolean[numNodes][];
+        this.free = new boolean[numNodes];
+        this.fixed = new boolean[numNodes];
+
+        for (int v = 0; v < numNodes; v++) {
+            int numValues = bayesIm.getNumColumns(v);
+            numCategories[v] = numValues;
+            parents[v] = bayesIm.getParents(v);
+
+            int[] dims = bayesIm.getParentDims(v);
+            parentStrides[v] = new int[dims.length];
+            int stride = 1;
+
+            for (int k = dims.length - 1; k >= 0; k--) {
+                parentStrides[v][k] = stride;
+                stride *= dims[k];
+            }
+
+            allowed[v] = new boolean[numValues];
+            int numAllowed = 0;
+
+            for (int k = 0; k < numValues; k++) {
+                allowed[v][k] = proposition.isAllowed(v, k);
+                if (allowed[v][k]) numAllowed++;
+            }
+
+            free[v] = numAllowed == numValues;
+            fixed[v] = numAllowed == 1;
+
+            int numRows = bayesIm.getNumRows(v);
+            probabilities[v] = new double[numRows * numValues];
+
+            for (int row = 0; row < numRows; row++) {
+                for (int k = 0; k < numValues; k++) {
+                    double p = manipulated[v] ? (allowed[v][k] ? 1.0 / numAllowed : 0.0)
+                            : bayesIm.getProbability(v, row, k);
+
+                    if (Double.isNaN(p)) {
+                        throw new IllegalStateException("Some probability values in the BayesIm are not filled "
+                                + "in; cannot simulate data to do approximate updating.");
+                    }
+
+                    probabilities[v][row * numValues + k] = p;
+                }
+            }
+        }
+
+        List<Node> ordering = bayesIm.getDag().getCausalOrdering();
+        this.order = new int[numNodes];
+
+        for (int i = 0; i < numNodes; i++) {
+            order[i] = bayesIm.getNodeIndex(ordering.get(i));
+        }
+
+        List<List<int[]>> _children = new ArrayList<>();
+
+        for (int v = 0; v < numNodes; v++) {
+            _children.add(new ArrayList<>());
+        }
+
+        for (int c = 0; c < numNodes; c++) {
+            for (int k = 0; k < parents[c].length; k++) {
+                _children.get(parents[c][k]).add(new int[]{c, parentStrides[c][k]});
+            }
+        }
+
+        this.children = new int[numNodes][];
+        this.childStrides = new int[numNodes][];
+
+        for (int v = 0; v < numNodes; v++) {
+            List<int[]> list = _children.get(v);
+            children[v] = new int[list.size()];
+            childStrides[v] = new int[list.size()];
+
+            for (int i = 0; i < list.size(); i++) {
+                children[v][i] = list.get(i)[0];
+                childStrides[v][i] = list.get(i)[1];
+            }
+        }
+    }
+
+    /**
+     * Samples until the marginals are within the given tolerance, or until the given number of samples (cases for
+     * likelihood weighting, sweeps for Gibbs sampling, over all chains) have been drawn or the given number of
+     * milliseconds has passed. A limit of 0 or less is no limit, but there must be one or the other. If the
+     * proposition can't be satisfied, or no sample satisfying it was found, the marginals are NaN.
+     */
+    Result sample(final boolean gibbs, int numChains, long seed, double tolerance, long maxSamples, long maxTime) {
+        if (maxSamples <= 0 && maxTime <= 0) {
+            throw new IllegalArgumentException("Sampling must be limited by a number of samples or a time.");
+        }
+
+        long start = System.currentTimeMillis();
+        final Chain[] chains = new Chain[numChains];
+
+        for (int c = 0; c < numChains; c++) {
+            chains[c] = new Chain(RowBlockSimulator.getGenerator(seed, c));
+        }
+
+        int numNodes = numCategories.length;
+        double[][] counts = newCounts();
+        double totalWeight = 0.0;
+        double[][] sum = newCounts();
+        double[][] sumSquares = newCounts();
+        int numBatches = 0;
+        long numSamples = 0;
+        int numRounds = 0;
+        double error = Double.POSITIVE_INFINITY;
+        boolean converged = false;
+
+        while (true) {
+            List<Callable<Batch>> tasks = new ArrayList<>();
+
+            for (final Chain chain : chains) {
+                tasks.add(() -> gibbs ? chain.gibbs() : chain.weight());
+            }
+
+            for (Batch batch : SearchExecutor.getInstance().invokeAll("ApproximateUpdater", tasks)) {
+                numSamples += batch.numSamples;
+
+                if (batch.weight == 0) {
+                    continue;
+                }
+
+                totalWeight += batch.weight;
+                numBatches++;
+
+                for (int v = 0; v < numNodes; v++) {
+                    for (int k = 0; k < numCategories[v]; k++) {
+                        double estimate = batch.counts[v][k] / batch.weight;
+                        counts[v][k] += batch.counts[v][k];
+                        sum[v][k] += estimate;
+                        sumSquares[v][k] += estimate * estimate;
+                    }
+                }
+            }
+
+            numRounds++;
+
+            // Twice the standard error of the mean of the batch estimates, at the worst node and category.
+            if (numBatches >= 4) {
+                error = 0.0;
+
+                for (int v = 0; v < numNodes; v++) {
+                    for (int k = 0; k < numCategories[v]; k++) {
+                        double mean = sum[v][k] / numBatches;
+                        double variance = (sumSquares[v][k] - numBatches * mean * mean) / (numBatches - 1);
+                        error = Math.max(error, 2.0 * Math.sqrt(Math.max(variance, 0.0) / numBatches));
+                    }
+                }
+            }
+
+            if (numRounds >= 2 && error <= tolerance) {
+                converged = true;
+                break;
+            }
+
+            if ((maxSamples > 0 && numSamples >= maxSamples)
+                    || (maxTime > 0 && System.currentTimeMillis() - start >= maxTime)) {
+                break;
+            }
+        }
+
+        for (int v = 0; v < numNodes; v++) {
+            for (int k = 0; k < numCategories[v]; k++) {
+                counts[v][k] = totalWeight > 0 ? counts[v][k] / totalWeight : Double.NaN;
+            }
+        }
+
+        return new Result(counts, numSamples, error, converged, System.currentTimeMillis() - start);
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    private double[][] newCounts() {
+        double[][] counts = new double[numCategories.length][];
+
+        for (int v = 0; v < counts.length; v++) {
+            counts[v] = new double[numCategories[v]];
+        }
+
+        return counts;
+    }
+
+    // Draws a category of node v from the given row of its table, restricted to the allowed categories, and
+    // returns it; the probability of the allowed categories is put in mass[0].
+    private int draw(int v, int row, RandomGenerator random, double[] mass) {
+        int numValues = numCategories[v];
+        double[] p = probabilities[v];
+        int base = row * numValues;
+
+        if (free[v]) {
+            double cutoff = random.nextDouble();
+            double sum = 0.0;
+            mass[0] = 1.0;
+
+            for (int k = 0; k < numValues - 1; k++) {
+                sum += p[base + k];
+
+                if (sum >= cutoff) {
+                    return k;
+                }
+            }
+
+            return numValues - 1;
+        }
+
+        double total = 0.0;
+        int last = -1;
+
+        for (int k = 0; k < numValues; k++) {
+            if (allowed[v][k]) {
+                total += p[base + k];
+                last = k;
+            }
+        }
+
+        mass[0] = total;
+
+        if (last == -1 || total == 0) {
+            return Math.max(last, 0);
+        }
+
+        double cutoff = random.nextDouble() * total;
+        double sum = 0.0;
+
+        for (int k = 0; k < last; k++) {
+            if (allowed[v][k]) {
+                sum += p[base + k];
+
+                if (sum >= cutoff) {
+                    return k;
+                }
+            }
+        }
+
+        return last;
+    }
+
+    private int getRow(int v, int[] values) {
+        int row = 0;
+
+        for (int k = 0; k < parents[v].length; k++) {
+            row += values[parents[v][k]] * parentStrides[v][k];
+        }
+
+        return row;
+    }
+
+    // Weighted counts of the categories of each node over one batch of one chain.
+    private static final class Batch {
+        final double[][] counts;
+        final double weight;
+        final long numSamples;
+
+        Batch(double[][] counts, double weight, long numSamples) {
+            this.counts = counts;
+            this.weight = weight;
+            this.numSamples = numSamples;
+        }
+    }
+
+    // A random stream, with the working space of likelihood weighting or the current case of Gibbs sampling.
+    private final class Chain {
+        private final RandomGenerator random;
+        private final double[] mass = new double[1];
+
+        private int[][] values;
+        private int[] rows;
+        private double[] weights;
+
+        private int[] current;
+        private double[] distribution;
+
+        Chain(RandomGenerator random) {
+            this.random = random;
+        }
+
+        // One batch of likelihood weighting, a node at a time over a block of cases.
+        Batch weight() {
+            int numNodes = numCategories.length;
+
+            if (values == null) {
+                values = new int[numNodes][WEIGHTING_BATCH];
+                rows = new int[WEIGHTING_BATCH];
+                weights = new double[WEIGHTING_BATCH];
+            }
+
+            Arrays.fill(weights, 1.0);
+
+            for (int v : order) {
+                Arrays.fill(rows, 0);
+
+                for (int k = 0; k < parents[v].length; k++) {
+                    int[] parentValues = values[parents[v][k]];
+                    int stride = parentStrides[v][k];
+
+                    for (int b = 0; b < WEIGHTING_BATCH; b++) {
+                        rows[b] += parentValues[b] * stride;
+                    }
+                }
+
+                int[] _values = values[v];
+
+                for (int b = 0; b < WEIGHTING_BATCH; b++) {
+                    _values[b] = draw(v, rows[b], random, mass);
+                    weights[b] *= mass[0];
+                }
+            }
+
+            double[][] counts = newCounts();
+            double weight = 0.0;
+
+            for (int b = 0; b < WEIGHTING_BATCH; b++) {
+                weight += weights[b];
+            }
+
+            for (int v = 0; v < numNodes; v++) {
+                int[] _values = values[v];
+                double[] _counts = counts[v];
+
+                for (int b = 0; b < WEIGHTING_BATCH; b++) {
+                    _counts[_values[b]] += weights[b];
+                }
+            }
+
+            return new Batch(counts, weight, WEIGHTING_BATCH);
+        }
+
+        // One batch of Gibbs sweeps, after burning in the first time.
+        Batch gibbs() {
+            double[][] counts = newCounts();
+
+            if (current == null && !start()) {
+                return new Batch(counts, 0.0, GIBBS_BATCH);
+            }
+
+            for (int sweep = 0; sweep < GIBBS_BATCH; sweep++) {
+                sweep(counts);
+            }
+
+            return new Batch(counts, GIBBS_BATCH, GIBBS_BATCH);
+        }
+
+        // Finds a starting case of positive probability by weighting, and burns in from it.
+        private boolean start() {
+            int numNodes = numCategories.length;
+            int[] _current = new int[numNodes];
+            distribution = new double[Arrays.stream(numCategories).max().orElse(0)];
+
+            for (int attempt = 0; attempt < WEIGHTING_BATCH; attempt++) {
+                double weight = 1.0;
+
+                for (int v : order) {
+                    _current[v] = draw(v, getRow(v, _current), random, mass);
+                    weight *= mass[0];
+                }
+
+                if (weight > 0) {
+                    current = _current;
+                    double[][] discarded = newCounts();
+
+                    for (int sweep = 0; sweep < GIBBS_BURN_IN; sweep++) {
+                        sweep(discarded);
+                    }
+
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        // Redraws each node not fixed, adding its distribution given the rest to the counts.
+        private void sweep(double[][] counts) {
+            for (int v : order) {
+                if (fixed[v]) {
+                    counts[v][current[v]] += 1.0;
+                    continue;
+                }
+
+                int numValues = numCategories[v];
+                double[] p = probabilities[v];
+                int base = getRow(v, current) * numValues;
+                double total = 0.0;
+
+                for (int k = 0; k < numValues; k++) {
+                    distribution[k] = allowed[v][k] ? p[base + k] : 0.0;
+                }
+
+                for (int i = 0; i < children[v].length; i++) {
+                    int c = children[v][i];
+                    int stride = childStrides[v][i];
+                    int numChildValues = numCategories[c];
+                    int childBase = getRow(c, current) - current[v] * stride;
+                    double[] q = probabilities[c];
+
+                    for (int k = 0; k < numValues; k++) {
+                        if (distribution[k] != 0) {
+                            distribution[k] *= q[(childBase + k * stride) * numChildValues + current[c]];
+                        }
+                    }
+                }
+
+                for (int k = 0; k < numValues; k++) {
+                    total += distribution[k];
+                }
+
+                if (total == 0) {
+                    counts[v][current[v]] += 1.0;
+                    continue;
+                }
+
+                double cutoff = random.nextDouble() * total;
+                double sum = 0.0;
+                int value = -1;
+
+                for (int k = 0; k < numValues; k++) {
+                    if (distribution[k] > 0) {
+                        value = k;
+                        sum += distribution[k];
+
+                        if (sum >= cutoff) {
+                            break;
+                        }
+                    }
+                }
+
+                current[v] = value;
+
+                for (int k = 0; k < numValues; k++) {
+                    counts[v][k] += distribution[k] / total;
+                }
+            }
+        }
+    }
+}
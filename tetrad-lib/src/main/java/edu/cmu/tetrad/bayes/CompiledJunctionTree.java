@@ -0,0 +1,1012 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bayes;
+
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.SearchExecutor;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * A junction tree for a discrete Bayes IM, compiled once into flat tables. The clique tree is built as in
+ * JunctionTreeAlgorithm (moralize, triangulate by maximum cardinality search, connect cliques by their separators).
+ * Each clique's table is a double[] over its variables, laid out with the last variable varying fastest, and holds
+ * the product of the conditional probability tables assigned to it. For each clique, an index map takes each entry
+ * of its table, and each entry of its parent's table, to the entry of the separator between them, so that
+ * multiplying in or summing out a separator is a single pass over an int[].
+ * <p>
+ * Queries pass messages in the Shafer-Shenoy way: the message up from a clique to its parent, and the message down
+ * from the parent to it, are kept until evidence they depend on changes. Evidence on a node is entered in one clique
+ * containing it; changing it invalidates the messages up along the path from that clique to the root and the
+ * messages down into cliques whose subtrees don't contain it, and a query recomputes just the invalid messages it
+ * needs. Messages are normalized as they're passed, their log scales being kept, so that the probability of the
+ * evidence is available as a log without underflow.
+ * <p>
+ * Evidence set by setEvidence and setLikelihood applies to the other query methods of this object, which shouldn't
+ * be called from more than one thread at once. The batch methods, which evaluate many cases of evidence in parallel
+ * each from scratch, don't see or change that evidence and may be called from any thread.
+ *
+ * @author agent
+ */
+public final class CompiledJunctionTree {
+
+    private final BayesIm bayesIm;
+    private final int[] numCategories;
+
+    // The cliques, numbered in depth first preorder, so that the subtree under clique c is the cliques c through
+    // c + subtreeSize[c] - 1. The nodes of a clique are node indices in ascending order.
+    private final int[][] cliqueNodes;
+    private final int[][] strides;
+    private final double[][] potentials;
+    private final int[] parent;
+    private final int[][] children;
+    private final int[] subtreeSize;
+    private final int[] roots;
+
+    // The separator between clique c and its parent has separatorSize[c] entries, one for a root. childMap[c][i] is
+    // the separator entry for entry i of c, and parentMap[c][i] the separator entry for entry i of c's parent.
+    private final int[] separatorSize;
+    private final int[][] childMap;
+    private final int[][] parentMap;
+
+    // The evidence on each node is entered in its home clique, the smallest clique containing it.
+    private final int[] home;
+    private final int[] homeStride;
+    private final int[][] homed;
+
+    // The conditional probability table of each node, copied, with cell row * numValues + value, and the parents
+    // of each node with their numbers of values.
+    private final double[][] probabilities;
+    private final int[][] parents;
+    private final int[][] parentDims;
+
+    // The clique each node's table is multiplied into, and for each entry of that clique's table, the cell of the
+    // node's table it draws from.
+    private final int[] familyClique;
+    private final int[][] familyMap;
+
+    // indicators[v][k] is the likelihood for the evidence that node v has value k.
+    private final double[][][] indicators;
+
+    // The evidence and messages of the non-batch methods.
+    private final State state;
+
+    /**
+     * Compiles a junction tree for the given IM. The probabilities in the IM are copied, so later changes to it
+     * aren't seen.
+     */
+    public CompiledJunctionTree(BayesIm bayesIm) {
+        if (bayesIm == null) {
+            throw new NullPointerException("Bayes IM must not be null.");
+        }
+
+        this.bayesIm = bayesIm;
+
+        int numNodes = bayesIm.getNumNodes();
+        this.numCategories = new int[numNodes];
+
+        for (int v = 0; v < numNodes; v++) {
+            numCategories[v] = bayesIm.getNumColumns(v);
+        }
+
+        // The clique tree, as JunctionTreeAlgorithm builds it.
+        Graph moralGraph = GraphTools.moralize(bayesIm.getDag());
+        Node[] ordering = GraphTools.getMaximumCardinalityOrdering(moralGraph);
+        GraphTools.fillIn(moralGraph, ordering);
+        ordering = GraphTools.getMaximumCardinalityOrdering(moralGraph);
+
+        Map<Node, Set<Node>> cliques = GraphTools.getCliques(ordering, moralGraph);
+        Map<Node, Set<Node>> separators = GraphTools.getSeparators(ordering, cliques);
+        Map<Node, Node> parentCliques = GraphTools.getCliqueTree(ordering, cliques, separators);
+
+        List<Node> keys = new ArrayList<>();
+        Map<Node, List<Node>> childKeys = new HashMap<>();
+
+        for (Node node : ordering) {
+            if (cliques.containsKey(node)) {
+                keys.add(node);
+                childKeys.put(node, new ArrayList<>());
+            }
+        }
+
+        List<Node> rootKeys = new ArrayList<>();
+
+        for (Node key : keys) {
+            Node parentKey = parentCliques.get(key);
+
+            if (parentKey == null) {
+                rootKeys.add(key);
+            } else {
+                childKeys.get(parentKey).add(key);
+            }
+        }
+
+        // Number the cliques in depth first preorder.
+        List<Node> preorder = new ArrayList<>();
+        Deque<Node> stack = new ArrayDeque<>();
+
+        for (int r = rootKeys.size() - 1; r >= 0; r--) {
+            stack.push(rootKeys.get(r));
+        }
+
+        while (!stack.isEmpty()) {
+            Node key = stack.pop();
+            preorder.add(key);
+
+            List<Node> _children = childKeys.get(key);
+
+            for (int k = _children.size() - 1; k >= 0; k--) {
+                stack.push(_children.get(k));
+            }
+        }
+
+        if (preorder.size() != keys.size()) {
+            throw new IllegalStateException("The cliques don't form a tree.");
+        }
+
+        int numCliques = preorder.size();
+        Map<Node, Integer> cliqueIndices = new HashMap<>();
+
+        for (int c = 0; c < numCliques; c++) {
+            cliqueIndices.put(preorder.get(c), c);
+        }
+
+        this.cliqueNodes = new int[numCliques][];
+        this.strides = new int[numCliques][];
+        this.parent = new int[numCliques];
+        this.children = new int[numCliques][];
+        this.subtreeSize = new int[numCliques];
+        this.roots = new int[rootKeys.size()];
+
+        for (int r = 0; r < roots.length; r++) {
+            roots[r] = cliqueIndices.get(rootKeys.get(r));
+        }
+
+        for (int c = 0; c < numCliques; c++) {
+            Node key = preorder.get(c);
+            int[] _nodes = new int[cliques.get(key).size()];
+            int j = 0;
+
+            for (Node node : cliques.get(key)) {
+                _nodes[j++] = bayesIm.getNodeIndex(node);
+            }
+
+            Arrays.sort(_nodes);
+            cliqueNodes[c] = _nodes;
+            strides[c] = getStrides(_nodes);
+
+            Node parentKey = parentCliques.get(key);
+            parent[c] = parentKey == null ? -1 : cliqueIndices.get(parentKey);
+
+            List<Node> _children = childKeys.get(key);
+            children[c] = new int[_children.size()];
+
+            for (int k = 0; k < _children.size(); k++) {
+                children[c][k] = cliqueIndices.get(_children.get(k));
+            }
+        }
+
+        for (int c = numCliques - 1; c >= 0; c--) {
+            subtreeSize[c] = 1;
+
+            for (int k : children[c]) {
+                subtreeSize[c] += subtreeSize[k];
+            }
+        }
+
+        // Separators and the index maps into them.
+        this.separatorSize = new int[numCliques];
+        this.childMap = new int[numCliques][];
+        this.parentMap = new int[numCliques][];
+
+        for (int c = 0; c < numCliques; c++) {
+            if (parent[c] == -1) {
+                separatorSize[c] = 1;
+                childMap[c] = new int[getSize(c)];
+                continue;
+            }
+
+            int[] separator = intersection(cliqueNodes[c], cliqueNodes[parent[c]]);
+            int[] separatorStrides = getStrides(separator);
+            separatorSize[c] = separator.length == 0 ? 1 : separatorStrides[0] * numCategories[separator[0]];
+            childMap[c] = getMap(c, separator, separatorStrides);
+            parentMap[c] = getMap(parent[c], separator, separatorStrides);
+        }
+
+        // Home cliques.
+        this.home = new int[numNodes];
+        this.homeStride = new int[numNodes];
+        List<List<Integer>> _homed = new ArrayList<>();
+
+        for (int c = 0; c < numCliques; c++) {
+            _homed.add(new ArrayList<>());
+        }
+
+        for (int v = 0; v < numNodes; v++) {
+            home[v] = -1;
+
+            for (int c = 0; c < numCliques; c++) {
+                if (contains(cliqueNodes[c], v) && (home[v] == -1 || getSize(c) < getSize(home[v]))) {
+                    home[v] = c;
+                }
+            }
+
+            if (home[v] == -1) {
+                throw new IllegalStateException("Node " + bayesIm.getNode(v) + " is in no clique.");
+            }
+
+            homeStride[v] = strides[home[v]][Arrays.binarySearch(cliqueNodes[home[v]], v)];
+            _homed.get(home[v]).add(v);
+        }
+
+        this.homed = new int[numCliques][];
+
+        for (int c = 0; c < numCliques; c++) {
+            homed[c] = _homed.get(c).stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        // Each conditional probability table is multiplied into the first clique containing its family.
+        this.potentials = new double[numCliques][];
+        this.probabilities = new double[numNodes][];
+        this.parents = new int[numNodes][];
+        this.parentDims = new int[numNodes][];
+        this.familyClique = new int[numNodes];
+        this.familyMap = new int[numNodes][];
+
+        for (int c = 0; c < numCliques; c++) {
+            potentials[c] = new double[getSize(c)];
+            Arrays.fill(potentials[c], 1.0);
+        }
+
+        for (int v = 0; v < numNodes; v++) {
+            parents[v] = bayesIm.getParents(v);
+            parentDims[v] = bayesIm.getParentDims(v);
+            probabilities[v] = new double[bayesIm.getNumRows(v) * numCategories[v]];
+
+            for (int row = 0; row < bayesIm.getNumRows(v); row++) {
+                for (int k = 0; k < numCategories[v]; k++) {
+                    probabilities[v][row * numCategories[v] + k] = bayesIm.getProbability(v, row, k);
+                }
+            }
+
+            int c = 0;
+
+            while (c < numCliques && !(contains(cliqueNodes[c], v) && containsAll(cliqueNodes[c], parents[v]))) {
+                c++;
+            }
+
+            if (c == numCliques) {
+                throw new IllegalStateException("The family of " + bayesIm.getNode(v) + " is in no clique.");
+            }
+
+            multiplyTable(c, v);
+        }
+
+        this.indicators = new double[numNodes][][];
+
+        for (int v = 0; v < numNodes; v++) {
+            indicators[v] = new double[numCategories[v]][numCategories[v]];
+
+            for (int k = 0; k < numCategories[v]; k++) {
+                indicators[v][k][k] = 1.0;
+            }
+        }
+
+        this.state = new State();
+    }
+
+    //==============================PUBLIC METHODS=========================//
+
+    public BayesIm getBayesIm() {
+        return bayesIm;
+    }
+
+    /**
+     * @return the number of cliques in the tree.
+     */
+    public int getNumCliques() {
+        return cliqueNodes.length;
+    }
+
+    /**
+     * Sets the evidence that the given node has the given value, or, if the value is -1, removes the evidence on
+     * the node.
+     */
+    public void setEvidence(int node, int value) {
+        validate(node);
+
+        if (value == -1) {
+            state.setLikelihood(node, null);
+        } else {
+            validate(node, value);
+            state.setLikelihood(node, indicators[node][value]);
+        }
+    }
+
+    /**
+     * Sets the likelihood of each value of the given node as the evidence on it; null removes the evidence. A value
+     * whose likelihood is zero is ruled out.
+     */
+    public void setLikelihood(int node, double[] likelihood) {
+        validate(node);
+
+        if (likelihood != null && likelihood.length != numCategories[node]) {
+            throw new IllegalArgumentException("Expecting " + numCategories[node] + " likelihoods for node "
+                    + bayesIm.getNode(node) + ".");
+        }
+
+        state.setLikelihood(node, likelihood == null ? null : likelihood.clone());
+    }
+
+    /**
+     * Removes all evidence.
+     */
+    public void clearEvidence() {
+        for (int v = 0; v < numCategories.length; v++) {
+            state.setLikelihood(v, null);
+        }
+    }
+
+    /**
+     * @return the probability of each value of the given node, given the evidence. If the evidence is impossible,
+     * the probabilities are NaN.
+     */
+    public double[] getMarginals(int node) {
+        validate(node);
+        return state.getMarginals(node);
+    }
+
+    /**
+     * @return the probability that the given node has the given value, given the evidence.
+     */
+    public double getMarginal(int node, int value) {
+        validate(node, value);
+        return state.getMarginals(node)[value];
+    }
+
+    /**
+     * @return the probability of each value of the given node, given the evidence and that the given nodes have
+     * the given values.
+     */
+    public double[] getConditionalMarginals(int node, int[] nodes, int[] values) {
+        validate(node);
+        validate(nodes, values);
+
+        double[][] saved = state.restrict(nodes, values);
+        double[] marginals = state.getMarginals(node);
+        state.restore(nodes, saved);
+
+        return marginals;
+    }
+
+    /**
+     * @return the probability that the given nodes have the given values, given the evidence.
+     */
+    public double getJointMarginal(int[] nodes, int[] values) {
+        validate(nodes, values);
+
+        double logProbability = state.getLogProbabilityOfEvidence();
+        double[][] saved = state.restrict(nodes, values);
+        double joint = state.getLogProbabilityOfEvidence();
+        state.restore(nodes, saved);
+
+        if (logProbability == Double.NEGATIVE_INFINITY) {
+            return Double.NaN;
+        }
+
+        return Math.exp(joint - logProbability);
+    }
+
+    /**
+     * @return the probability of the evidence.
+     */
+    public double getProbabilityOfEvidence() {
+        return Math.exp(state.getLogProbabilityOfEvidence());
+    }
+
+    /**
+     * @return the natural log of the probability of the evidence.
+     */
+    public double getLogProbabilityOfEvidence() {
+        return state.getLogProbabilityOfEvidence();
+    }
+
+    /**
+     * Evaluates many cases of evidence, in parallel. Each case gives a value for each node, or -1 where the node
+     * isn't observed.
+     *
+     * @return for each case, the natural log of the probability of the values observed in it.
+     */
+    public double[] getLogProbabilities(final int[][] cases) {
+        final double[] logProbabilities = new double[cases.length];
+        forEachCase(cases, (_state, i) -> logProbabilities[i] = _state.getLogProbabilityOfEvidence());
+        return logProbabilities;
+    }
+
+    /**
+     * Evaluates many cases of evidence, in parallel, as getLogProbabilities does.
+     *
+     * @return for each case, the probability of each value of the given node given the values observed in the case.
+     */
+    public double[][] getMarginals(final int[][] cases, final int node) {
+        validate(node);
+
+        final double[][] marginals = new double[cases.length][];
+        forEachCase(cases, (_state, i) -> marginals[i] = _state.getMarginals(node));
+        return marginals;
+    }
+
+    //==============================PACKAGE METHODS=========================//
+
+    /**
+     * For each of the cases from to to - 1, adds the case's weight times the probability, given the values observed
+     * in the case, that each node and its parents have the values of each cell of the node's table to
+     * counts[v][row * numValues + value], where v is the node's index. Cases give a value for each node, or -1, as
+     * for getLogProbabilities, and aren't checked. Cases whose values are impossible add nothing. Uses a state of
+     * its own, so blocks of cases may be run in parallel into separate counts.
+     *
+     * @return the sum over the cases of the weight times the natural log of the probability of the case.
+     */
+    double addExpectedCounts(int[][] cases, double[] weights, int from, int to, double[][] counts) {
+        State _state = new State();
+        double logLikelihood = 0.0;
+
+        for (int i = from; i < to; i++) {
+            int[] _case = cases[i];
+            double weight = weights[i];
+            boolean complete = true;
+
+            for (int v = 0; v < numCategories.length; v++) {
+                int value = _case[v];
+                complete &= value != -1;
+                _state.setLikelihood(v, value == -1 ? null : indicators[v][value]);
+            }
+
+            // A complete case needs no propagation; its probability is a product of cells.
+            if (complete) {
+                double logProbability = 0.0;
+
+                for (int v = 0; v < numCategories.length; v++) {
+                    logProbability += Math.log(probabilities[v][getCell(v, _case)]);
+                }
+
+                if (logProbability == Double.NEGATIVE_INFINITY) {
+                    logLikelihood = Double.NEGATIVE_INFINITY;
+                    continue;
+                }
+
+                for (int v = 0; v < numCategories.length; v++) {
+                    counts[v][getCell(v, _case)] += weight;
+                }
+
+                logLikelihood += weight * logProbability;
+                continue;
+            }
+
+            double logProbability = _state.getLogProbabilityOfEvidence();
+
+            if (logProbability == Double.NEGATIVE_INFINITY) {
+                logLikelihood = Double.NEGATIVE_INFINITY;
+                continue;
+            }
+
+            logLikelihood += weight * logProbability;
+
+            for (int v = 0; v < numCategories.length; v++) {
+                int cell = getCell(v, _case);
+
+                if (cell != -1) {
+                    counts[v][cell] += weight;
+                    continue;
+                }
+
+                // The belief of the family's clique is proportional to its posterior within its tree.
+                double[] belief = _state.getBelief(familyClique[v]);
+                int[] map = familyMap[v];
+                double[] _counts = counts[v];
+                double sum = 0.0;
+
+                for (double b : belief) {
+                    sum += b;
+                }
+
+                if (sum <= 0) {
+                    continue;
+                }
+
+                double scale = weight / sum;
+
+                for (int j = 0; j < belief.length; j++) {
+                    if (belief[j] != 0) {
+                        _counts[map[j]] += scale * belief[j];
+                    }
+                }
+            }
+        }
+
+        return logLikelihood;
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    private interface CaseQuery {
+        void query(State state, int i);
+    }
+
+    // Runs the query for each case in chunks of consecutive cases, each chunk with a state of its own. Within a
+    // chunk only the nodes whose values differ from the last case's change the evidence, so cases sharing values
+    // share work.
+    private void forEachCase(final int[][] cases, final CaseQuery query) {
+        for (int[] _case : cases) {
+            if (_case.length != numCategories.length) {
+                throw new IllegalArgumentException("Expecting a value for each of the " + numCategories.length
+                        + " nodes.");
+            }
+
+            for (int v = 0; v < _case.length; v++) {
+                if (_case[v] != -1) {
+                    validate(v, _case[v]);
+                }
+            }
+        }
+
+        int numChunks = 4 * SearchExecutor.getInstance().getParallelism();
+        int chunk = Math.max(1, (cases.length + numChunks - 1) / numChunks);
+        List<Callable<Void>> tasks = new ArrayList<>();
+
+        for (int from = 0; from < cases.length; from += chunk) {
+            final int _from = from;
+            final int _to = Math.min(cases.length, from + chunk);
+
+            tasks.add(() -> {
+                State _state = new State();
+
+                for (int i = _from; i < _to; i++) {
+                    for (int v = 0; v < numCategories.length; v++) {
+                        int value = cases[i][v];
+                        _state.setLikelihood(v, value == -1 ? null : indicators[v][value]);
+                    }
+
+                    query.query(_state, i);
+                }
+
+                return null;
+            });
+        }
+
+        SearchExecutor.getInstance().invokeAll("CompiledJunctionTree", tasks);
+    }
+
+    private int getSize(int c) {
+        return cliqueNodes[c].length == 0 ? 1 : strides[c][0] * numCategories[cliqueNodes[c][0]];
+    }
+
+    private int[] getStrides(int[] nodes) {
+        int[] _strides = new int[nodes.length];
+        long stride = 1;
+
+        for (int j = nodes.length - 1; j >= 0; j--) {
+            _strides[j] = (int) stride;
+            stride *= numCategories[nodes[j]];
+
+            if (stride > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("A clique table would be too large: " + Arrays.toString(nodes));
+            }
+        }
+
+        return _strides;
+    }
+
+    // For each entry of clique c, the entry of the separator, whose nodes are a subset of c's.
+    private int[] getMap(int c, int[] separator, int[] separatorStrides) {
+        int[] positions = new int[separator.length];
+
+        for (int s = 0; s < separator.length; s++) {
+            positions[s] = Arrays.binarySearch(cliqueNodes[c], separator[s]);
+        }
+
+        int[] map = new int[getSize(c)];
+
+        for (int i = 0; i < map.length; i++) {
+            int index = 0;
+
+            for (int s = 0; s < separator.length; s++) {
+                index += getValue(c, positions[s], i) * separatorStrides[s];
+            }
+
+            map[i] = index;
+        }
+
+        return map;
+    }
+
+    // The value of the node at the given position in clique c, in entry i of its table.
+    private int getValue(int c, int position, int i) {
+        return (i / strides[c][position]) % numCategories[cliqueNodes[c][position]];
+    }
+
+    private void multiplyTable(int c, int v) {
+        int position = Arrays.binarySearch(cliqueNodes[c], v);
+        int[] parentPositions = new int[parents[v].length];
+
+        for (int k = 0; k < parents[v].length; k++) {
+            parentPositions[k] = Arrays.binarySearch(cliqueNodes[c], parents[v][k]);
+        }
+
+        double[] table = potentials[c];
+        int[] map = new int[table.length];
+
+        for (int i = 0; i < table.length; i++) {
+            int row = 0;
+
+            for (int k = 0; k < parentPositions.length; k++) {
+                row = row * parentDims[v][k] + getValue(c, parentPositions[k], i);
+            }
+
+            map[i] = row * numCategories[v] + getValue(c, position, i);
+            table[i] *= probabilities[v][map[i]];
+        }
+
+        familyClique[v] = c;
+        familyMap[v] = map;
+    }
+
+    // The cell of node v's table for the values in the case, or -1 if v or one of its parents isn't observed.
+    private int getCell(int v, int[] _case) {
+        if (_case[v] == -1) {
+            return -1;
+        }
+
+        int row = 0;
+
+        for (int k = 0; k < parents[v].length; k++) {
+            int value = _case[parents[v][k]];
+
+            if (value == -1) {
+                return -1;
+            }
+
+            row = row * parentDims[v][k] + value;
+        }
+
+        return row * numCategories[v] + _case[v];
+    }
+
+    private static int[] intersection(int[] nodes1, int[] nodes2) {
+        return Arrays.stream(nodes1).filter(v -> contains(nodes2, v)).toArray();
+    }
+
+    private static boolean contains(int[] nodes, int v) {
+        return Arrays.binarySearch(nodes, v) >= 0;
+    }
+
+    private static boolean containsAll(int[] nodes, int[] vs) {
+        for (int v : vs) {
+            if (!contains(nodes, v)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // table[i] *= message[map[i]].
+    private static void multiply(double[] table, int[] map, double[] message) {
+        for (int i = 0; i < table.length; i++) {
+            table[i] *= message[map[i]];
+        }
+    }
+
+    // Scales the values to sum to 1, unless they sum to 0, and returns the log of the sum.
+    private static double normalize(double[] values) {
+        double sum = 0.0;
+
+        for (double value : values) {
+            sum += value;
+        }
+
+        if (sum > 0) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] /= sum;
+            }
+        }
+
+        return Math.log(sum);
+    }
+
+    private void validate(int node) {
+        if (node < 0 || node >= numCategories.length) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid node index %d. Node index must be between 0 and %d.", node, numCategories.length - 1));
+        }
+    }
+
+    private void validate(int node, int value) {
+        validate(node);
+
+        if (value < 0 || value >= numCategories[node]) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid value %d for node index %d. Value must be between 0 and %d.",
+                    value, node, numCategories[node] - 1));
+        }
+    }
+
+    private void validate(int[] nodes, int[] values) {
+        if (nodes == null || values == null) {
+            throw new NullPointerException("Nodes and values must not be null.");
+        }
+
+        if (nodes.length != values.length) {
+            throw new IllegalArgumentException("Number of values must be equal to the number of nodes.");
+        }
+
+        for (int k = 0; k < nodes.length; k++) {
+            validate(nodes[k], values[k]);
+        }
+    }
+
+    /**
+     * Evidence, with the messages and working space for it.
+     */
+    private final class State {
+
+        // The likelihood entered for each node, or null.
+        private final double[][] likelihoods = new double[numCategories.length][];
+
+        // Messages up from each clique to its parent, normalized, and the log of the product of the normalizing
+        // constants in the subtree under the clique. For a root, the log of the probability of the evidence
+        // entered in its subtree.
+        private final double[][] up = new double[cliqueNodes.length][];
+        private final double[] upLog = new double[cliqueNodes.length];
+        private final boolean[] upValid = new boolean[cliqueNodes.length];
+
+        // Messages down to each non-root clique from its parent, normalized.
+        private final double[][] down = new double[cliqueNodes.length][];
+        private final boolean[] downValid = new boolean[cliqueNodes.length];
+
+        // Products of all of the messages into a clique, made as needed.
+        private final double[][] beliefs = new double[cliqueNodes.length][];
+        private final boolean[] beliefValid = new boolean[cliqueNodes.length];
+
+        private final double[][] scratch = new double[cliqueNodes.length][];
+        private final int[] path = new int[cliqueNodes.length];
+
+        State() {
+            for (int c = 0; c < cliqueNodes.length; c++) {
+                up[c] = new double[separatorSize[c]];
+                scratch[c] = new double[potentials[c].length];
+
+                if (parent[c] != -1) {
+                    down[c] = new double[separatorSize[c]];
+                }
+            }
+        }
+
+        void setLikelihood(int node, double[] likelihood) {
+            if (likelihoods[node] == likelihood) {
+                return;
+            }
+
+            likelihoods[node] = likelihood;
+            int h = home[node];
+
+            for (int c = h; c != -1; c = parent[c]) {
+                upValid[c] = false;
+            }
+
+            for (int c = 0; c < downValid.length; c++) {
+                if (h < c || h >= c + subtreeSize[c]) {
+                    downValid[c] = false;
+                }
+            }
+
+            Arrays.fill(beliefValid, false);
+        }
+
+        // Further restricts the evidence on the given nodes to the given values, returning the old likelihoods.
+        double[][] restrict(int[] nodes, int[] values) {
+            double[][] saved = new double[nodes.length][];
+
+            for (int k = 0; k < nodes.length; k++) {
+                saved[k] = likelihoods[nodes[k]];
+            }
+
+            for (int k = 0; k < nodes.length; k++) {
+                double[] old = likelihoods[nodes[k]];
+                double[] likelihood = new double[numCategories[nodes[k]]];
+                likelihood[values[k]] = old == null ? 1.0 : old[values[k]];
+                setLikelihood(nodes[k], likelihood);
+            }
+
+            return saved;
+        }
+
+        void restore(int[] nodes, double[][] saved) {
+            for (int k = nodes.length - 1; k >= 0; k--) {
+                setLikelihood(nodes[k], saved[k]);
+            }
+        }
+
+        double getLogProbabilityOfEvidence() {
+            double log = 0.0;
+
+            for (int r : roots) {
+                ensureUp(r);
+                log += upLog[r];
+            }
+
+            return log;
+        }
+
+        double[] getMarginals(int node) {
+            int c = home[node];
+            double[] belief = getBelief(c);
+            int stride = homeStride[node];
+            int numValues = numCategories[node];
+            double[] marginals = new double[numValues];
+
+            for (int i = 0; i < belief.length; i++) {
+                marginals[(i / stride) % numValues] += belief[i];
+            }
+
+            // With more than one tree, evidence ruled out in another tree doesn't show up in this one's belief.
+            if (normalize(marginals) == Double.NEGATIVE_INFINITY
+                    || (roots.length > 1 && getLogProbabilityOfEvidence() == Double.NEGATIVE_INFINITY)) {
+                Arrays.fill(marginals, Double.NaN);
+            }
+
+            return marginals;
+        }
+
+        private double[] getBelief(int c) {
+            if (beliefValid[c]) {
+                return beliefs[c];
+            }
+
+            for (int k : children[c]) {
+                ensureUp(k);
+            }
+
+            ensureDown(c);
+
+            if (beliefs[c] == null) {
+                beliefs[c] = new double[potentials[c].length];
+            }
+
+            double[] belief = beliefs[c];
+            startProduct(c, belief);
+
+            if (parent[c] != -1) {
+                multiply(belief, childMap[c], down[c]);
+            }
+
+            for (int k : children[c]) {
+                multiply(belief, parentMap[k], up[k]);
+            }
+
+            beliefValid[c] = true;
+            return belief;
+        }
+
+        // Makes the messages up from the subtree under c valid, children before parents.
+        private void ensureUp(int c) {
+            for (int k = c + subtreeSize[c] - 1; k >= c; k--) {
+                if (!upValid[k]) {
+                    computeUp(k);
+                }
+            }
+        }
+
+        // Makes the messages down the path from the root to c valid, parents before children.
+        private void ensureDown(int c) {
+            int length = 0;
+
+            for (int a = c; parent[a] != -1; a = parent[a]) {
+                path[length++] = a;
+            }
+
+            for (int k = length - 1; k >= 0; k--) {
+                if (!downValid[path[k]]) {
+                    computeDown(path[k]);
+                }
+            }
+        }
+
+        private void computeUp(int c) {
+            double[] table = scratch[c];
+            startProduct(c, table);
+            double log = 0.0;
+
+            for (int k : children[c]) {
+                multiply(table, parentMap[k], up[k]);
+                log += upLog[k];
+            }
+
+            double[] message = up[c];
+            Arrays.fill(message, 0.0);
+            int[] map = childMap[c];
+
+            for (int i = 0; i < table.length; i++) {
+                message[map[i]] += table[i];
+            }
+
+            upLog[c] = log + normalize(message);
+            upValid[c] = true;
+        }
+
+        private void computeDown(int c) {
+            int p = parent[c];
+
+            for (int k : children[p]) {
+                if (k != c) {
+                    ensureUp(k);
+                }
+            }
+
+            double[] table = scratch[p];
+            startProduct(p, table);
+
+            if (parent[p] != -1) {
+                multiply(table, childMap[p], down[p]);
+            }
+
+            for (int k : children[p]) {
+                if (k != c) {
+                    multiply(table, parentMap[k], up[k]);
+                }
+            }
+
+            double[] message = down[c];
+            Arrays.fill(message, 0.0);
+            int[] map = parentMap[c];
+
+            for (int i = 0; i < table.length; i++) {
+                message[map[i]] += table[i];
+            }
+
+            normalize(message);
+            downValid[c] = true;
+        }
+
+        // Copies the potentials of clique c into the table and multiplies in the evidence entered there.
+        private void startProduct(int c, double[] table) {
+            System.arraycopy(potentials[c], 0, table, 0, table.length);
+
+            for (int v : homed[c]) {
+                double[] likelihood = likelihoods[v];
+
+                if (likelihood == null) {
+                    continue;
+                }
+
+                int stride = homeStride[v];
+                int numValues = numCategories[v];
+
+                for (int i = 0; i < table.length; i++) {
+                    table[i] *= likelihood[(i / stride) % numValues];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,555 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bayes;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DiscreteVariable;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.graph.NodeType;
+import edu.cmu.tetrad.util.SearchExecutor;
+import edu.cmu.tetrad.util.TetradLogger;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * Estimates the parameters of a Bayes net with latent variables or missing values by EM, for large data sets. The
+ * rows of the data are grouped once, when the engine is made, by the values observed in them, missing values
+ * included, so that each distinct pattern of values is propagated once per iteration and counted as many times as
+ * it occurs. The expectation step splits the patterns into blocks, runs each block in parallel through a
+ * CompiledJunctionTree into counts of its own, and adds the counts of the blocks together in order, so the result
+ * doesn't depend on the number of threads. The maximization step divides the expected counts of each row of each
+ * table by their sum; a row whose parent values are never expected keeps its old probabilities.
+ * <p>
+ * Each iteration is recorded, with the log likelihood of the data under the parameters it starts from, the distance
+ * the parameters move, and the time taken; see getIterations.
+ *
+ * @author agent
+ */
+public final class EmBayesEngine {
+
+    private final BayesPm bayesPm;
+    private final String[] names;
+    private final int[] numCategories;
+
+    // The distinct patterns of values, with -1 for a missing value, in lexicographic order, and the number of rows
+    // with each.
+    private final int[][] patterns;
+    private final double[] weights;
+    private final int numRows;
+
+    private int maxIterations = 1000;
+    private final List<Iteration> iterations = new ArrayList<>();
+
+    /**
+     * Groups the rows of the given data for estimating parameters for the given PM. Each measured node of the PM
+     * must be a discrete column of the data, by name; latent nodes needn't be, and are missing in every row.
+     */
+    public EmBayesEngine(BayesPm bayesPm, DataSet dataSet) {
+        this(bayesPm, dataSet.getNumRows(), group(bayesPm, dataSet));
+    }
+
+    private EmBayesEngine(BayesPm bayesPm, int numRows, Map<Pattern, double[]> groups) {
+        this.bayesPm = bayesPm;
+        this.names = getNames(bayesPm);
+        this.numCategories = getNumCategories(bayesPm);
+        this.numRows = numRows;
+
+        // Sorted, so that neighboring patterns share values and the junction tree has less to redo between them.
+        Pattern[] sorted = groups.keySet().toArray(new Pattern[0]);
+        Arrays.sort(sorted);
+
+        this.patterns = new int[sorted.length][];
+        this.weights = new double[sorted.length];
+
+        for (int p = 0; p < sorted.length; p++) {
+            patterns[p] = sorted[p].values;
+            weights[p] = groups.get(sorted[p])[0];
+        }
+    }
+
+    //==============================PUBLIC METHODS=========================//
+
+    /**
+     * @return an engine for another PM over the same data, which shares this engine's grouping of the rows rather
+     * than reading the data again. Nodes of the new PM are matched to this one's by name.
+     */
+    public EmBayesEngine forBayesPm(BayesPm bayesPm) {
+        if (bayesPm == null) {
+            throw new NullPointerException("Bayes PM must not be null.");
+        }
+
+        List<String> _names = Arrays.asList(names);
+        List<Node> nodes = bayesPm.getDag().getNodes();
+        int[] sources = new int[nodes.size()];
+
+        for (int v = 0; v < nodes.size(); v++) {
+            Node node = nodes.get(v);
+            sources[v] = _names.indexOf(node.getName());
+
+            if (sources[v] == -1 && node.getNodeType() != NodeType.LATENT) {
+                throw new IllegalArgumentException("Some observed variable in the Bayes net is not in the "
+                        + "dataset: " + node);
+            }
+
+            if (sources[v] != -1 && bayesPm.getNumCategories(node) < numCategories[sources[v]]) {
+                throw new IllegalArgumentException("Expecting at least " + numCategories[sources[v]]
+                        + " categories for " + node + ".");
+            }
+        }
+
+        Map<Pattern, double[]> groups = new HashMap<>();
+
+        for (int p = 0; p < patterns.length; p++) {
+            int[] values = new int[sources.length];
+
+            for (int v = 0; v < sources.length; v++) {
+                values[v] = sources[v] == -1 ? -1 : patterns[p][sources[v]];
+            }
+
+            groups.computeIfAbsent(new Pattern(values), k -> new double[1])[0] += weights[p];
+        }
+
+        EmBayesEngine engine = new EmBayesEngine(bayesPm, numRows, groups);
+        engine.maxIterations = maxIterations;
+        return engine;
+    }
+
+    public BayesPm getBayesPm() {
+        return bayesPm;
+    }
+
+    /**
+     * @return the number of rows in the data.
+     */
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * @return the number of distinct patterns of values among the rows, which is the number of cases propagated
+     * in each expectation step.
+     */
+    public int getNumPatterns() {
+        return patterns.length;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * Sets the largest number of iterations estimate will do, whether or not the parameters have converged.
+     */
+    public void setMaxIterations(int maxIterations) {
+        if (maxIterations < 1) {
+            throw new IllegalArgumentException("Max iterations must be at least 1: " + maxIterations);
+        }
+
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Iterates expectation and maximization from the given IM until the distance between the parameters of one
+     * iteration and the next, as BayesImDistanceFunction measures it, is at most the given tolerance, or until the
+     * maximum number of iterations is reached.
+     *
+     * @return the estimated IM.
+     */
+    public BayesIm estimate(BayesIm bayesIm, double tolerance) {
+        checkIm(bayesIm);
+        iterations.clear();
+
+        BayesIm current = bayesIm;
+
+        for (int i = 1; i <= maxIterations; i++) {
+            long start = System.currentTimeMillis();
+            ExpectedCounts counts = expectation(current);
+            long expectationTime = System.currentTimeMillis() - start;
+
+            BayesIm next = maximization(counts, current);
+            double distance = BayesImDistanceFunction.distance(next, current);
+
+            Iteration iteration = new Iteration(i, counts.getLogLikelihood(), distance, expectationTime,
+                    System.currentTimeMillis() - start);
+            iterations.add(iteration);
+            TetradLogger.getInstance().log("details", iteration.toString());
+
+            current = next;
+
+            if (distance <= tolerance) {
+                break;
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * @return the expected counts of the cells of each table, and the log likelihood of the data, given the
+     * parameters of the given IM.
+     */
+    public ExpectedCounts expectation(BayesIm bayesIm) {
+        checkIm(bayesIm);
+
+        final CompiledJunctionTree junctionTree = new CompiledJunctionTree(bayesIm);
+        int numBlocks = 4 * SearchExecutor.getInstance().getParallelism();
+        int chunk = Math.max(1, (patterns.length + numBlocks - 1) / numBlocks);
+        List<Callable<ExpectedCounts>> tasks = new ArrayList<>();
+
+        for (int from = 0; from < patterns.length; from += chunk) {
+            final int _from = from;
+            final int _to = Math.min(patterns.length, from + chunk);
+
+            tasks.add(() -> {
+                ExpectedCounts counts = new ExpectedCounts(bayesIm);
+                counts.logLikelihood = junctionTree.addExpectedCounts(patterns, weights, _from, _to, counts.counts);
+                return counts;
+            });
+        }
+
+        ExpectedCounts counts = new ExpectedCounts(bayesIm);
+
+        for (ExpectedCounts _counts : SearchExecutor.getInstance().invokeAll("EmBayesEngine", tasks)) {
+            counts.add(_counts);
+        }
+
+        return counts;
+    }
+
+    /**
+     * @return an IM whose conditional probabilities are the given expected counts divided by the sum of their rows.
+     * Rows that sum to zero take their probabilities from the given IM.
+     */
+    public BayesIm maximization(ExpectedCounts counts, BayesIm bayesIm) {
+        checkIm(bayesIm);
+
+        MlBayesIm estimatedIm = new MlBayesIm(bayesPm);
+
+        for (int v = 0; v < names.length; v++) {
+            int numValues = numCategories[v];
+
+            for (int row = 0; row < estimatedIm.getNumRows(v); row++) {
+                double total = counts.getRowCount(v, row);
+
+                for (int k = 0; k < numValues; k++) {
+                    double p = total > 0 ? counts.getCount(v, row, k) / total : bayesIm.getProbability(v, row, k);
+                    estimatedIm.setProbability(v, row, k, p);
+                }
+            }
+        }
+
+        return estimatedIm;
+    }
+
+    /**
+     * @return the iterations of the last call to estimate, in order.
+     */
+    public List<Iteration> getIterations() {
+        return Collections.unmodifiableList(iterations);
+    }
+
+    /**
+     * Expected counts for each cell of each conditional probability table, with the log likelihood they were
+     * computed under. Counts for different rows of the data may be computed separately and added.
+     */
+    public static final class ExpectedCounts {
+        private final int[] numColumns;
+        private final double[][] counts;
+        private double logLikelihood;
+
+        /**
+         * Makes zero counts for the tables of the given IM.
+         */
+        public ExpectedCounts(BayesIm bayesIm) {
+            this.numColumns = new int[bayesIm.getNumNodes()];
+            this.counts = new double[bayesIm.getNumNodes()][];
+
+            for (int v = 0; v < numColumns.length; v++) {
+                numColumns[v] = bayesIm.getNumColumns(v);
+                counts[v] = new double[bayesIm.getNumRows(v) * numColumns[v]];
+            }
+        }
+
+        /**
+         * Adds the given counts, for the same tables, to these.
+         */
+        public void add(ExpectedCounts other) {
+            if (!Arrays.equals(numColumns, other.numColumns)) {
+                throw new IllegalArgumentException("Counts are for different tables.");
+            }
+
+            for (int v = 0; v < counts.length; v++) {
+                if (counts[v].length != other.counts[v].length) {
+                    throw new IllegalArgumentException("Counts are for different tables.");
+                }
+
+                for (int i = 0; i < counts[v].length; i++) {
+                    counts[v][i] += other.counts[v][i];
+                }
+            }
+
+            logLikelihood += other.logLikelihood;
+        }
+
+        /**
+         * @return the expected number of rows in which the given node has the given value and its parents have the
+         * values of the given row of its table.
+         */
+        public double getCount(int node, int row, int column) {
+            return counts[node][row * numColumns[node] + column];
+        }
+
+        /**
+         * @return the expected number of rows in which the parents of the given node have the values of the given
+         * row of its table.
+         */
+        public double getRowCount(int node, int row) {
+            double sum = 0.0;
+
+            for (int k = 0; k < numColumns[node]; k++) {
+                sum += counts[node][row * numColumns[node] + k];
+            }
+
+            return sum;
+        }
+
+        /**
+         * @return the natural log of the probability of the rows counted, or negative infinity if one of them is
+         * impossible.
+         */
+        public double getLogLikelihood() {
+            return logLikelihood;
+        }
+    }
+
+    /**
+     * What happened in one iteration of estimate.
+     */
+    public static final class Iteration {
+        private final int index;
+        private final double logLikelihood;
+        private final double distance;
+        private final long expectationTime;
+        private final long elapsedTime;
+
+        private Iteration(int index, double logLikelihood, double distance, long expectationTime,
+                          long elapsedTime) {
+            this.index = index;
+            this.logLikelihood = logLikelihood;
+            this.distance = distance;
+            this.expectationTime = expectationTime;
+            this.elapsedTime = elapsedTime;
+        }
+
+        /**
+         * @return the number of the iteration, starting at 1.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the log likelihood of the data under the parameters the iteration started from.
+         */
+        public double getLogLikelihood() {
+            return logLikelihood;
+        }
+
+        /**
+         * @return the distance between the parameters the iteration started from and those it ended with.
+         */
+        public double getDistance() {
+            return distance;
+        }
+
+        /**
+         * @return the milliseconds spent in the expectation step.
+         */
+        public long getExpectationTime() {
+            return expectationTime;
+        }
+
+        /**
+         * @return the milliseconds spent in the whole iteration.
+         */
+        public long getElapsedTime() {
+            return elapsedTime;
+        }
+
+        public String toString() {
+            return String.format("EM iteration %d: log likelihood = %.6f, distance = %.6g, expectation %d ms, "
+                    + "total %d ms", index, logLikelihood, distance, expectationTime, elapsedTime);
+        }
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    // Groups the rows of the data, in blocks in parallel, by their values for the nodes of the PM.
+    private static Map<Pattern, double[]> group(BayesPm bayesPm, final DataSet dataSet) {
+        if (bayesPm == null) {
+            throw new NullPointerException("Bayes PM must not be null.");
+        }
+
+        if (dataSet == null) {
+            throw new NullPointerException("Data set must not be null.");
+        }
+
+        List<Node> nodes = bayesPm.getDag().getNodes();
+        final int[] numCategories = getNumCategories(bayesPm);
+        final int[] columns = new int[nodes.size()];
+
+        for (int v = 0; v < nodes.size(); v++) {
+            Node node = nodes.get(v);
+            Node variable = dataSet.getVariable(node.getName());
+
+            if (variable == null) {
+                if (node.getNodeType() != NodeType.LATENT) {
+                    throw new IllegalArgumentException("Some observed variable in the Bayes net is not in the "
+                            + "dataset: " + node);
+                }
+
+                columns[v] = -1;
+            } else if (!(variable instanceof DiscreteVariable)) {
+                throw new IllegalArgumentException("Expecting a discrete variable: " + variable);
+            } else {
+                columns[v] = dataSet.getColumn(variable);
+            }
+        }
+
+        final int n = dataSet.getNumRows();
+        int numBlocks = 4 * SearchExecutor.getInstance().getParallelism();
+        int chunk = Math.max(1, (n + numBlocks - 1) / numBlocks);
+        List<Callable<Map<Pattern, double[]>>> tasks = new ArrayList<>();
+
+        for (int from = 0; from < n; from += chunk) {
+            final int _from = from;
+            final int _to = Math.min(n, from + chunk);
+
+            tasks.add(() -> {
+                Map<Pattern, double[]> groups = new HashMap<>();
+
+                for (int i = _from; i < _to; i++) {
+                    int[] values = new int[columns.length];
+
+                    for (int v = 0; v < columns.length; v++) {
+                        if (columns[v] == -1) {
+                            values[v] = -1;
+                            continue;
+                        }
+
+                        int value = dataSet.getInt(i, columns[v]);
+
+                        if (value == DiscreteVariable.MISSING_VALUE) {
+                            value = -1;
+                        } else if (value < 0 || value >= numCategories[v]) {
+                            throw new IllegalArgumentException("Value " + value + " in row " + i
+                                    + " is out of range for " + nodes.get(v) + ".");
+                        }
+
+                        values[v] = value;
+                    }
+
+                    groups.computeIfAbsent(new Pattern(values), k -> new double[1])[0]++;
+                }
+
+                return groups;
+            });
+        }
+
+        Map<Pattern, double[]> merged = new HashMap<>();
+
+        for (Map<Pattern, double[]> groups : SearchExecutor.getInstance().invokeAll("EmBayesEngine", tasks)) {
+            for (Map.Entry<Pattern, double[]> entry : groups.entrySet()) {
+                merged.computeIfAbsent(entry.getKey(), k -> new double[1])[0] += entry.getValue()[0];
+            }
+        }
+
+        return merged;
+    }
+
+    private static String[] getNames(BayesPm bayesPm) {
+        List<Node> nodes = bayesPm.getDag().getNodes();
+        String[] names = new String[nodes.size()];
+
+        for (int v = 0; v < nodes.size(); v++) {
+            names[v] = nodes.get(v).getName();
+        }
+
+        return names;
+    }
+
+    private static int[] getNumCategories(BayesPm bayesPm) {
+        List<Node> nodes = bayesPm.getDag().getNodes();
+        int[] numCategories = new int[nodes.size()];
+
+        for (int v = 0; v < nodes.size(); v++) {
+            numCategories[v] = bayesPm.getNumCategories(nodes.get(v));
+        }
+
+        return numCategories;
+    }
+
+    private void checkIm(BayesIm bayesIm) {
+        if (bayesIm == null) {
+            throw new NullPointerException("Bayes IM must not be null.");
+        }
+
+        if (bayesIm.getNumNodes() != names.length) {
+            throw new IllegalArgumentException("Expecting an IM with " + names.length + " nodes.");
+        }
+
+        for (int v = 0; v < names.length; v++) {
+            if (!names[v].equals(bayesIm.getNode(v).getName()) || bayesIm.getNumColumns(v) != numCategories[v]) {
+                throw new IllegalArgumentException("Expecting an IM for the PM of this engine: " + bayesIm.getNode(v));
+            }
+        }
+    }
+
+    private static final class Pattern implements Comparable<Pattern> {
+        private final int[] values;
+        private final int hashCode;
+
+        Pattern(int[] values) {
+            this.values = values;
+            this.hashCode = Arrays.hashCode(values);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Pattern && Arrays.equals(values, ((Pattern) o).values);
+        }
+
+        public int compareTo(Pattern other) {
+            for (int v = 0; v < values.length; v++) {
+                if (values[v] != other.values[v]) {
+                    return Integer.compare(values[v], other.values[v]);
+                }
+            }
+
+            return 0;
+        }
+    }
+}
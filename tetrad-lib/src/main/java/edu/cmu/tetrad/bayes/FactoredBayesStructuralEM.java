@@ -67,6 +67,9 @@ public final class FactoredBayesStructuralEM {
 
     private final int[] ncategories;
 
+    // Groups the rows of the data by pattern of values, once for all of the models estimated.
+    private EmBayesEngine engine;
+
 //    private double resultScore = -1;
 //    private Graph resultGraph = new EdgeListGraph();
 
@@ -141,8 +144,7 @@ public final class FactoredBayesStructuralEM {
 //        resultScore = oldBestScore;
 //        totaliterations = ti.iteration;
 
-        EmBayesEstimator emBayesEst = new EmBayesEstimator(bayesPmMn, dataSet);
-        return emBayesEst.maximization(tolerance);
+        return estimate(bayesPmMn, tolerance);
 
     }
 
@@ -164,8 +166,7 @@ public final class FactoredBayesStructuralEM {
         BdeMetricCache bdeMetricCache;
 
         BayesPm bayesPmMn = bayesPmM0;
-        EmBayesEstimator emBayesEst = new EmBayesEstimator(bayesPmMn, dataSet);
-        emBayesEst.maximization(0.0001);
+        estimate(bayesPmMn, 0.0001);
 
         Dag dag0 = new Dag(bayesPmMn.getDag());
 
@@ -185,8 +186,7 @@ public final class FactoredBayesStructuralEM {
         //System.out.println("Score of dag1 = " + score);
 
         BayesPm bayesPm0 = new BayesPm(dag0);
-        EmBayesEstimator emBayesEst0 = new EmBayesEstimator(bayesPm0, dataSet);
-        BayesIm bayesImMn0 = emBayesEst0.maximization(0.0001);
+        BayesIm bayesImMn0 = estimate(bayesPm0, 0.0001);
 
         BayesPm bayesPmTest0 = new BayesPm(dag0);
 
@@ -306,6 +306,16 @@ public final class FactoredBayesStructuralEM {
         return this.dataSet;
     }
 
+    /*
+     * Estimates the parameters of the given PM by EM. The engine of the last
+     * estimate is reused for the new PM, so the data are grouped only once.
+     */
+    private BayesIm estimate(BayesPm bayesPm, double tolerance) {
+        engine = engine == null ? new EmBayesEngine(bayesPm, dataSet) : engine.forBayesPm(bayesPm);
+        EmBayesEstimator emBayesEst = new EmBayesEstimator(bayesPm, dataSet, engine);
+        return emBayesEst.maximization(tolerance);
+    }
+
 //    private class InterruptScheduler extends TimerTask {
 //        Thread target = null;
 //
@@ -355,9 +365,7 @@ public final class FactoredBayesStructuralEM {
 
                 //Compute the MAP parameters for Mn given o.
                 TetradLogger.getInstance().log("details", "Starting EM Bayes estimator to get MAP parameters of Mn");
-                EmBayesEstimator emBayesEst =
-                        new EmBayesEstimator(bayesPmMn, dataSet);
-                BayesIm bayesImMn = emBayesEst.maximization(tolerance);
+                BayesIm bayesImMn = estimate(bayesPmMn, tolerance);
                 //System.out.println("Result:  ");
                 //System.out.println(bayesImMn.getBayesPm().getGraph());
                 //System.out.println(bayesImMn);
@@ -57,12 +57,10 @@ public class JunctionTreeUpdater implements ManipulatingBayesUpdater {
     private BayesIm updatedBayesIm;
 
     /**
-     * Calculates probabilities from the manipulated Bayes IM.
-     *
-     * @serial Can be null.
+     * Calculates probabilities from the manipulated Bayes IM, given the
+     * evidence. Compiled again as needed after deserialization.
      */
-//    private BayesImProbs bayesImProbs;
-    private JunctionTreeAlgorithm jta;
+    private transient CompiledJunctionTree junctionTree;
 
     /**
      * The BayesIm which this updater modifies.
@@ -131,7 +129,7 @@ public class JunctionTreeUpdater implements ManipulatingBayesUpdater {
             }
         }
 
-        this.jta = new JunctionTreeAlgorithm(manipulatedBayesIm);
+        this.junctionTree = null;
         this.updatedBayesIm = null;
     }
 
@@ -152,7 +150,7 @@ public class JunctionTreeUpdater implements ManipulatingBayesUpdater {
         assertion.setCategory(variable, category);
 
         if (condition.existsCombination()) {
-            return jta.getMarginalProbability(variable, category);
+            return getJunctionTree().getMarginal(variable, category);
         } else {
             return Double.NaN;
         }
@@ -178,12 +176,7 @@ public class JunctionTreeUpdater implements ManipulatingBayesUpdater {
         }
 
         if (condition.existsCombination()) {
-            double joint = 1.0;
-            for (int i = 0; i < variables.length; i++) {
-                joint *= jta.getMarginalProbability(variables[i], values[i]);
-            }
-
-            return joint;
+            return getJunctionTree().getJointMarginal(variables, values);
         } else {
             return Double.NaN;
         }
@@ -230,7 +223,6 @@ public class JunctionTreeUpdater implements ManipulatingBayesUpdater {
         updatedBayesIm = new MlBayesIm(manipulatedBayesIm);
         int numNodes = manipulatedBayesIm.getNumNodes();
 
-        Proposition assertion = Proposition.tautology(manipulatedBayesIm);
         Proposition condition = Proposition.tautology(manipulatedBayesIm);
         Evidence evidence2 = new Evidence(evidence, manipulatedBayesIm);
 
@@ -243,37 +235,64 @@ public class JunctionTreeUpdater implements ManipulatingBayesUpdater {
                 int[] parentValues
                         = manipulatedBayesIm.getParentValues(node, row);
 
-                for (int col = 0; col < numCols; col++) {
-                    assertion.setToTautology();
-                    condition.setToTautology();
-
-                    for (int i = 0; i < numNodes; i++) {
-                        for (int j = 0; j < evidence2.getNumCategories(i); j++) {
-                            if (!evidence2.getProposition().isAllowed(i, j)) {
-                                condition.removeCategory(i, j);
-                            }
+                condition.setToTautology();
+
+                for (int i = 0; i < numNodes; i++) {
+                    for (int j = 0; j < evidence2.getNumCategories(i); j++) {
+                        if (!evidence2.getProposition().isAllowed(i, j)) {
+                            condition.removeCategory(i, j);
                         }
                     }
+                }
 
-                    assertion.disallowComplement(node, col);
+                for (int k = 0; k < parents.length; k++) {
+                    condition.disallowComplement(parents[k],
+                            parentValues[k]);
+                }
 
-                    for (int k = 0; k < parents.length; k++) {
-                        condition.disallowComplement(parents[k],
-                                parentValues[k]);
-                    }
+                // The probabilities of the node given its parents and the evidence, from one query.
+                double[] probs = condition.existsCombination()
+                        ? getJunctionTree().getConditionalMarginals(node, parents, parentValues)
+                        : null;
 
-                    if (condition.existsCombination()) {
-                        double p = jta.getConditionalProbability(node, col, parents, parentValues);
-                        updatedBayesIm.setProbability(node, row, col, p);
-                    } else {
-                        updatedBayesIm.setProbability(node, row, col,
-                                Double.NaN);
-                    }
+                for (int col = 0; col < numCols; col++) {
+                    updatedBayesIm.setProbability(node, row, col,
+                            probs == null ? Double.NaN : probs[col]);
                 }
             }
         }
     }
 
+    /**
+     * @return the junction tree for the manipulated IM, with the evidence
+     * entered into it, compiled if need be.
+     */
+    private CompiledJunctionTree getJunctionTree() {
+        if (junctionTree == null) {
+            CompiledJunctionTree tree = new CompiledJunctionTree(manipulatedBayesIm);
+            Proposition condition
+                    = new Proposition(manipulatedBayesIm, evidence.getProposition());
+
+            for (int i = 0; i < condition.getNumVariables(); i++) {
+                if (condition.isUnconditioned(i)) {
+                    continue;
+                }
+
+                double[] likelihood = new double[condition.getNumCategories(i)];
+
+                for (int j = 0; j < likelihood.length; j++) {
+                    likelihood[j] = condition.isAllowed(i, j) ? 1.0 : 0.0;
+                }
+
+                tree.setLikelihood(i, likelihood);
+            }
+
+            junctionTree = tree;
+        }
+
+        return junctionTree;
+    }
+
     private BayesIm createdUpdatedBayesIm(BayesPm updatedBayesPm) {
         return new MlBayesIm(updatedBayesPm, bayesIm, MlBayesIm.MANUAL);
     }
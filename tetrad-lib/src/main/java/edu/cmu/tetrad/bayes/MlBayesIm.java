@@ -26,6 +26,7 @@ import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.graph.TimeLagGraph;
 import edu.cmu.tetrad.util.NumberFormatUtil;
 import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.RowBlockSimulator;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import static java.lang.Math.abs;
@@ -33,6 +34,8 @@ import static java.lang.Math.pow;
 import java.text.NumberFormat;
 import java.util.*;
 import org.apache.commons.math3.distribution.ChiSquaredDistribution;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well44497b;
 
 /**
  * Stores a table of probabilities for a Bayes net and, together with BayesPm
@@ -947,10 +950,15 @@ public final class MlBayesIm implements BayesIm {
             return simulateTimeSeries(sampleSize);
         }
 
-        return simulateDataHelper(sampleSize, latentDataSaved, tiers);
+        return simulateDataHelper(sampleSize, latentDataSaved, tiers,
+                RandomUtil.getInstance().getRandomGenerator());
     }
 
     public DataSet simulateData(int sampleSize, boolean latentDataSaved) {
+        return simulateData(sampleSize, RandomUtil.getInstance().getRandomGenerator(), latentDataSaved);
+    }
+
+    private DataSet simulateData(int sampleSize, RandomGenerator random, boolean latentDataSaved) {
         if (getBayesPm().getDag().isTimeLagModel()) {
             return simulateTimeSeries(sampleSize);
         }
@@ -969,7 +977,7 @@ public final class MlBayesIm implements BayesIm {
             tiers[i] = getNodeIndex(tierOrdering.get(i));
         }
 
-        return simulateDataHelper(sampleSize, latentDataSaved, tiers);
+        return simulateDataHelper(sampleSize, latentDataSaved, tiers, random);
     }
 
     public DataSet simulateData(DataSet dataSet, boolean latentDataSaved, int[] tiers) {
@@ -1061,6 +1069,13 @@ public final class MlBayesIm implements BayesIm {
      * @return the simulated sample as a DataSet.
      */
     public DataSet simulateData(int sampleSize, long seed, boolean latentDataSaved) {
+
+        // The generator RandomUtil would make for this seed, but private to this call, so that other threads drawing
+        // from RandomUtil meanwhile don't change the data.
+        if (!getBayesPm().getDag().isTimeLagModel()) {
+            return simulateData(sampleSize, new Well44497b(seed), latentDataSaved);
+        }
+
         RandomUtil random = RandomUtil.getInstance();
         long _seed = random.getSeed();
         random.setSeed(seed);
@@ -1088,9 +1103,11 @@ public final class MlBayesIm implements BayesIm {
      * Simulates a sample with the given sample size.
      *
      * @param sampleSize the sample size.
+     * @param random     the generator the first block of rows is drawn from; see RowBlockSimulator.
      * @return the simulated sample as a DataSet.
      */
-    private DataSet simulateDataHelper(int sampleSize, boolean latentDataSaved, int[] tiers) {
+    private DataSet simulateDataHelper(int sampleSize, boolean latentDataSaved, int[] tiers,
+                                       RandomGenerator random) {
         int numMeasured = 0;
         int[] map = new int[nodes.length];
         List<Node> variables = new LinkedList<>();
@@ -1115,8 +1132,17 @@ public final class MlBayesIm implements BayesIm {
             map[index] = j;
         }
 
-        DataSet dataSet = new BoxDataSet(new VerticalIntDataBox(sampleSize, variables.size()), variables);
-        constructSample(sampleSize, dataSet, map, tiers);
+        // The sample is written straight into the columns of the data box, which start out missing.
+        int[][] columns = new int[variables.size()][sampleSize];
+
+        for (int[] column : columns) {
+            Arrays.fill(column, -99);
+        }
+
+        constructSample(sampleSize, columns, map, tiers, random);
+
+        DataBox box = columns.length == 0 ? new VerticalIntDataBox(sampleSize, 0) : new VerticalIntDataBox(columns);
+        DataSet dataSet = new BoxDataSet(box, variables);
 
         if (!latentDataSaved) {
             dataSet = DataUtils.restrictToMeasured(dataSet);
@@ -1168,7 +1194,23 @@ public final class MlBayesIm implements BayesIm {
             dataSet.changeVariable(node, _node);
         }
 
-        constructSample(sampleSize, dataSet, map, tiers);
+        int[][] columns = new int[nodes.length][sampleSize];
+
+        for (int j = 0; j < nodes.length; j++) {
+            for (int i = 0; i < sampleSize; i++) {
+                columns[j][i] = dataSet.getInt(i, j);
+            }
+        }
+
+        constructSample(sampleSize, columns, map, tiers, RandomUtil.getInstance().getRandomGenerator());
+
+        for (int j = 0; j < nodes.length; j++) {
+            for (int i = 0; i < sampleSize; i++) {
+                if (columns[j][i] != dataSet.getInt(i, j)) {
+                    dataSet.setInt(i, j, columns[j][i]);
+                }
+            }
+        }
 
         if (latentDataSaved) {
             return dataSet;
@@ -1177,106 +1219,38 @@ public final class MlBayesIm implements BayesIm {
         }
     }
 
-    final long[] seed = new long[]{new Date().getTime()};
-
-    private void constructSample(int sampleSize, DataSet dataSet, int[] map, int[] tiers) {
-
-//        //Do the simulation.
-//        class SimulationTask extends RecursiveTask<Boolean> {
-//            private int chunk;
-//            private int from;
-//            private int to;
-//            private int[] tiers;
-//            private DataSet dataSet;
-//            private int[] map;
-//
-//            public SimulationTask(int chunk, int from, int to, int[] tiers, DataSet dataSet, int[] map) {
-//                this.chunk = chunk;
-//                this.from = from;
-//                this.to = to;
-//                this.tiers = tiers;
-//                this.dataSet = dataSet;
-//                this.map = map;
-//            }
-//
-//            @Override
-//            protected Boolean compute() {
-//                if (to - from <= chunk) {
-//                    RandomGenerator randomGenerator = new Well1024a(++seed[0]);
-//
-//                    for (int row = from; row < to; row++) {
-//                        for (int t : tiers) {
-//                            int[] parentValues = new int[parents[t].length];
-//
-//                            for (int k = 0; k < parentValues.length; k++) {
-//                                parentValues[k] = dataSet.getInt(row, parents[t][k]);
-//                            }
-//
-//                            int rowIndex = getRowIndex(t, parentValues);
-//                            double sum = 0.0;
-//                            double r;
-//
-//                            r = randomGenerator.nextDouble();
-//
-//                            for (int k = 0; k < getNumColumns(t); k++) {
-//                                double probability = getProbability(t, rowIndex, k);
-//                                sum += probability;
-//
-//                                if (sum >= r) {
-//                                    dataSet.setInt(row, map[t], k);
-//                                    break;
-//                                }
-//                            }
-//                        }
-//                    }
-//
-//                    return true;
-//                } else {
-//                    int mid = (to + from) / 2;
-//                    SimulationTask left = new SimulationTask(chunk, from, mid, tiers, dataSet, map);
-//                    SimulationTask right = new SimulationTask(chunk, mid, to, tiers, dataSet, map);
-//
-//                    left.fork();
-//                    right.compute();
-//                    left.join();
-//
-//                    return true;
-//                }
-//            }
-//        }
-//
-//        int chunk = 25;
-//
-//        ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
-//        SimulationTask task = new SimulationTask(chunk, 0, sampleSize, tiers, dataSet, map);
-//        pool.invoke(task);
-        // Construct the sample.
-        for (int i = 0; i < sampleSize; i++) {
-            for (int t : tiers) {
-                int[] parentValues = new int[parents[t].length];
+    /**
+     * Simulates rows into the given columns, which are indexed as the nodes are. Rows are simulated in blocks, in
+     * parallel; see RowBlockSimulator.
+     */
+    private void constructSample(int sampleSize, final int[][] columns, final int[] map, final int[] tiers,
+                                 RandomGenerator random) {
+        RowBlockSimulator.simulate("MlBayesIm", sampleSize, random, true, (from, to, _random) -> {
+            for (int i = from; i < to; i++) {
+                for (int t : tiers) {
+                    int[] parentValues = new int[parents[t].length];
+
+                    for (int k = 0; k < parentValues.length; k++) {
+                        parentValues[k] = columns[parents[t][k]][i];
+                    }
 
-                for (int k = 0; k < parentValues.length; k++) {
-                    parentValues[k] = dataSet.getInt(i, parents[t][k]);
-                }
+                    int rowIndex = getRowIndex(t, parentValues);
+                    double sum = 0.0;
 
-                int rowIndex = getRowIndex(t, parentValues);
-                double sum = 0.0;
+                    double r = _random.nextDouble();
 
-                double r = RandomUtil.getInstance().nextDouble();
+                    for (int k = 0; k < getNumColumns(t); k++) {
+                        double probability = getProbability(t, rowIndex, k);
+                        sum += probability;
 
-                for (int k = 0; k < getNumColumns(t); k++) {
-                    double probability = getProbability(t, rowIndex, k);
-                    sum += probability;
-
-                    if (sum >= r) {
-                        dataSet.setInt(i, map[t], k);
-                        break;
+                        if (sum >= r) {
+                            columns[map[t]][i] = k;
+                            break;
+                        }
                     }
                 }
             }
-        }
-
-//        System.out.println(dataSet);
+        });
     }
 
     public boolean equals(Object o) {
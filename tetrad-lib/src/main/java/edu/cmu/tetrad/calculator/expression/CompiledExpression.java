@@ -0,0 +1,899 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.calculator.expression;
+
+import org.apache.commons.math3.distribution.*;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import java.util.*;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * An expression compiled for repeated evaluation. Variables are read from a double array, by slot, rather than
+ * looked up by name in a Context; parameters, which don't change from one evaluation to the next, are taken as
+ * constants, and any part of the expression that depends only on constants is evaluated once, when compiled.
+ * <p>
+ * An expression may be evaluated a row at a time, from one value per slot, or a column at a time, from one column
+ * per slot, which does each operation for a whole column before going on to the next. Distributions sample from the
+ * random generator they're given, so that separate generators may be used for separate parts of a simulation, and
+ * are sampled just as the expressions made by ExpressionManager sample them. Functions this class doesn't know are
+ * evaluated through the original expression, with a Context over the slots; these may draw from the generator in
+ * RandomUtil, which is reported by isSelfContained.
+ * <p>
+ * Compiled expressions hold no state between evaluations and may be used from several threads at once.
+ *
+ * @author agent
+ */
+public final class CompiledExpression {
+
+    // Functions are recognized by the classes ExpressionManager makes for them, not by their tokens, since tokens
+    // aren't unique; the expressions for > and >=, for instance, report their tokens as <.
+    private static final String[] TOKENS = {
+            "+", "-", "*", "/", "pow", "^", "exp", "sqrt", "cosh", "sinh", "tanh", "cos", "sin", "tan", "acos",
+            "asin", "atan", "logistic", "ln", "log10", "round", "ceil", "floor", "abs", "signum", "max", "min",
+            "AND", "OR", "XOR", "<=", "<", "=", ">=", ">", "IF", "random", "Indicator", "TruncNormal", "Beta",
+            "Cauchy", "ChiSquare", "ExponentialDist", "FDist", "Gamma", "Gumbel", "Laplace", "Levy", "LogNormal",
+            "Nakagami", "Normal", "N", "Pareto", "Poisson", "StudentT", "Triangular", "Uniform", "U", "Weibull"
+    };
+
+    private static final Set<String> RANDOM = new HashSet<>(Arrays.asList(
+            "random", "Indicator", "TruncNormal", "Beta", "Cauchy", "ChiSquare", "ExponentialDist", "FDist", "Gamma",
+            "Gumbel", "Laplace", "Levy", "LogNormal", "Nakagami", "Normal", "N", "Pareto", "Poisson", "StudentT",
+            "Triangular", "Uniform", "U", "Weibull"
+    ));
+
+    private static final Map<Class<?>, String> KINDS = new HashMap<>();
+
+    static {
+        ExpressionManager manager = ExpressionManager.getInstance();
+
+        for (String token : TOKENS) {
+            ExpressionDescriptor descriptor = manager.getDescriptorFromToken(token);
+
+            for (int arity = 0; arity <= 4; arity++) {
+                Expression[] args = new Expression[arity];
+                Arrays.fill(args, new ConstantExpression(1.0));
+
+                try {
+                    KINDS.put(descriptor.createExpression(args).getClass(), token);
+                } catch (ExpressionInitializationException e) {
+                    // Not a legal number of arguments for this function.
+                }
+            }
+        }
+    }
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    private final Expression expression;
+    private final Op root;
+    private final boolean deterministic;
+    private final boolean selfContained;
+    private final boolean usesVariables;
+
+    private CompiledExpression(Expression expression, Op root, boolean deterministic, boolean selfContained,
+                               boolean usesVariables) {
+        this.expression = expression;
+        this.root = root;
+        this.deterministic = deterministic;
+        this.selfContained = selfContained;
+        this.usesVariables = usesVariables;
+    }
+
+    /**
+     * Compiles the given expression.
+     *
+     * @param expression The expression.
+     * @param slots      The slot in which each variable's value will be found.
+     * @param constants  Values for names that are fixed, such as parameters. These take precedence over slots, as
+     *                   parameters take precedence over variables in the simulations of GeneralizedSemIm.
+     * @return the compiled expression.
+     */
+    public static CompiledExpression compile(Expression expression, Map<String, Integer> slots,
+                                             Map<String, Double> constants) {
+        if (expression == null) {
+            throw new NullPointerException("Expression must not be null.");
+        }
+
+        Compiler compiler = new Compiler(slots, constants);
+        Op root = compiler.compile(expression);
+        return new CompiledExpression(expression, root, compiler.deterministic, compiler.selfContained,
+                compiler.usesVariables);
+    }
+
+    /**
+     * @return the expression that was compiled.
+     */
+    public Expression getExpression() {
+        return expression;
+    }
+
+    /**
+     * @return true iff the expression draws no random numbers and is wholly compiled, so that evaluating it in
+     * column mode gives the same values as evaluating it row by row.
+     */
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
+    /**
+     * @return true iff every random number the expression draws is drawn from the generator it is given. If false,
+     * some part of it is evaluated through the original expression and may draw from the generator in RandomUtil.
+     */
+    public boolean isSelfContained() {
+        return selfContained;
+    }
+
+    /**
+     * @return true iff the value of the expression may depend on the values in the slots.
+     */
+    public boolean usesVariables() {
+        return usesVariables;
+    }
+
+    /**
+     * @return the value of the expression for one row.
+     *
+     * @param values The value of each variable, by slot.
+     * @param random The generator from which random draws are made.
+     */
+    public double evaluate(double[] values, RandomGenerator random) {
+        return root.evaluate(values, random);
+    }
+
+    /**
+     * Evaluates the expression for the first n rows of the given columns. Random draws are made one column at a
+     * time, so they are made in a different order than they would be row by row.
+     *
+     * @param columns The column of values of each variable, by slot.
+     * @param n       The number of rows.
+     * @param out     The array into which the n values are written.
+     * @param random  The generator from which random draws are made.
+     */
+    public void evaluate(double[][] columns, int n, double[] out, RandomGenerator random) {
+        if (out.length < n) {
+            throw new IllegalArgumentException("Output array has fewer than " + n + " entries.");
+        }
+
+        Buffers buffers = BUFFERS.get();
+        buffers.top = 0;
+        root.evaluate(columns, n, out, buffers, random);
+    }
+
+    public String toString() {
+        return expression.toString();
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    private static double sample(String kind, RandomGenerator random, double[] p) {
+        switch (kind) {
+            case "Beta":
+                return new BetaDistribution(random, p[0], p[1]).sample();
+            case "Cauchy":
+                return new CauchyDistribution(random, p[0], p[1]).sample();
+            case "ChiSquare":
+                return new ChiSquaredDistribution(random, p[0]).sample();
+            case "ExponentialDist":
+                return new ExponentialDistribution(random, p[0]).sample();
+            case "FDist":
+                return new FDistribution(random, p[0], p[1]).sample();
+            case "Gamma":
+                return new GammaDistribution(random, p[0], p[1]).sample();
+            case "Gumbel":
+                return new GumbelDistribution(random, p[0], p[1]).sample();
+            case "Laplace":
+                return new LaplaceDistribution(random, p[0], p[1]).sample();
+            case "Levy":
+                return new LevyDistribution(random, p[0], p[1]).sample();
+            case "LogNormal":
+                return new LogNormalDistribution(random, p[0], p[1]).sample();
+            case "Nakagami":
+                return new NakagamiDistribution(random, p[0], p[1], 1.0E-9D).sample();
+            case "Normal":
+            case "N":
+                return new NormalDistribution(random, p[0], p[1]).sample();
+            case "Pareto":
+                return new ParetoDistribution(random, p[0], p[1]).sample();
+            case "Poisson":
+                return new PoissonDistribution(random, p[0], 1.0E-12D, 10000000).sample();
+            case "StudentT":
+                return new TDistribution(random, p[0]).sample();
+            case "Triangular":
+                return new TriangularDistribution(random, p[0], p[1], p[2]).sample();
+            case "Uniform":
+            case "U":
+                return new UniformRealDistribution(random, p[0], p[1]).sample();
+            case "Weibull":
+                return new WeibullDistribution(random, p[0], p[1]).sample();
+            case "random":
+                return random.nextDouble();
+            case "Indicator":
+                if (p[0] < 0 || p[0] > 1) throw new IllegalArgumentException("p must be in [0, 1]: " + p[0]);
+                return random.nextDouble() < p[0] ? 1 : 0;
+            case "TruncNormal":
+                return truncatedNormal(random, p[0], p[1], p[2], p[3]);
+            default:
+                throw new IllegalArgumentException("Not a distribution: " + kind);
+        }
+    }
+
+    // As RandomUtil.nextTruncatedNormal, with the checks of the TruncNormal expression.
+    private static double truncatedNormal(RandomGenerator random, double mean, double sd, double low, double high) {
+        if (sd < 0 || low >= high) {
+            return Double.NaN;
+        }
+
+        if (sd == 0) {
+            throw new IllegalArgumentException("Standard deviation must be non-negative: " + sd);
+        }
+
+        while (true) {
+            double d = random.nextGaussian() * sd + mean;
+            if (d >= low && d <= high) return d;
+        }
+    }
+
+    private static DoubleUnaryOperator unary(String kind) {
+        switch (kind) {
+            case "-":
+                return a -> -a;
+            case "exp":
+                return Math::exp;
+            case "sqrt":
+                return Math::sqrt;
+            case "cosh":
+                return Math::cosh;
+            case "sinh":
+                return Math::sinh;
+            case "tanh":
+                return Math::tanh;
+            case "cos":
+                return Math::cos;
+            case "sin":
+                return Math::sin;
+            case "tan":
+                return Math::tan;
+            case "acos":
+                return Math::acos;
+            case "asin":
+                return Math::asin;
+            case "atan":
+                return Math::atan;
+            case "logistic":
+                return t -> 1.0 / (1.0 + Math.exp(-t));
+            case "ln":
+                return Math::log;
+            case "log10":
+                return Math::log10;
+            case "round":
+                return a -> Math.round(a);
+            case "ceil":
+                return Math::ceil;
+            case "floor":
+                return Math::floor;
+            case "abs":
+                return Math::abs;
+            case "signum":
+                return Math::signum;
+            default:
+                return null;
+        }
+    }
+
+    private static DoubleBinaryOperator binary(String kind) {
+        switch (kind) {
+            case "-":
+                return (a, b) -> a - b;
+            case "/":
+                return (a, b) -> a / b;
+            case "pow":
+            case "^":
+                return Math::pow;
+            case "<":
+                return (a, b) -> a < b ? 1.0 : 0.0;
+            case "<=":
+                return (a, b) -> a <= b ? 1.0 : 0.0;
+            case "=":
+                return (a, b) -> a == b ? 1.0 : 0.0;
+            case ">":
+                return (a, b) -> a > b ? 1.0 : 0.0;
+            case ">=":
+                return (a, b) -> a >= b ? 1.0 : 0.0;
+            case "XOR":
+                return (a, b) -> (a == 1.0 ? 1.0 : 0.0) + (b == 1.0 ? 1.0 : 0.0) == 1.0 ? 1.0 : 0.0;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Turns an expression tree into a tree of operations, noting what sorts of operations are in it.
+     */
+    private static final class Compiler {
+        private final Map<String, Integer> slots;
+        private final Map<String, Double> constants;
+        private boolean deterministic = true;
+        private boolean selfContained = true;
+        private boolean usesVariables = false;
+
+        Compiler(Map<String, Integer> slots, Map<String, Double> constants) {
+            this.slots = slots == null ? Collections.emptyMap() : slots;
+            this.constants = constants == null ? Collections.emptyMap() : constants;
+        }
+
+        Op compile(Expression expression) {
+            if (expression instanceof ConstantExpression) {
+                return new Constant(expression.evaluate(null));
+            }
+
+            if (expression instanceof VariableExpression) {
+                String name = ((VariableExpression) expression).getVariable();
+                Double value = constants.get(name);
+
+                if (value != null) {
+                    return new Constant(value);
+                }
+
+                Integer slot = slots.get(name);
+
+                if (slot != null) {
+                    usesVariables = true;
+                    return new Slot(slot);
+                }
+
+                // Fails when evaluated, as a lookup in a Context would.
+                return opaque(expression);
+            }
+
+            String kind = KINDS.get(expression.getClass());
+
+            if (kind == null) {
+                return opaque(expression);
+            }
+
+            List<Expression> expressions = expression.getExpressions();
+            Op[] args = new Op[expressions.size()];
+
+            for (int i = 0; i < args.length; i++) {
+                args[i] = compile(expressions.get(i));
+            }
+
+            if (RANDOM.contains(kind)) {
+                deterministic = false;
+                return new Sample(kind, args);
+            }
+
+            Op op = combine(kind, args);
+
+            if (op == null) {
+                return opaque(expression);
+            }
+
+            // Constant folding.
+            for (Op arg : args) {
+                if (!(arg instanceof Constant)) {
+                    return op;
+                }
+            }
+
+            return new Constant(op.evaluate(null, null));
+        }
+
+        private Op combine(String kind, Op[] args) {
+            switch (kind) {
+                case "+":
+                    return new Sum(args);
+                case "*":
+                    return new Product(args);
+                case "max":
+                    return new Extreme(args, true);
+                case "min":
+                    return new Extreme(args, false);
+                case "AND":
+                    return new And(args);
+                case "OR":
+                    return new Or(args);
+                case "IF":
+                    return args.length == 3 ? new If(args[0], args[1], args[2]) : null;
+                default:
+                    if (args.length == 1 && unary(kind) != null) {
+                        return new Unary(unary(kind), args[0]);
+                    } else if (args.length == 2 && binary(kind) != null) {
+                        return new Binary(binary(kind), args[0], args[1]);
+                    } else {
+                        return null;
+                    }
+            }
+        }
+
+        private Op opaque(Expression expression) {
+            deterministic = false;
+            selfContained = false;
+            usesVariables = true;
+            return new Opaque(expression, slots, constants);
+        }
+    }
+
+    /**
+     * A stack of scratch columns, one per thread.
+     */
+    private static final class Buffers {
+        private double[][] stack = new double[8][];
+        private int top = 0;
+
+        double[] take(int n) {
+            if (top == stack.length) {
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+            }
+
+            double[] buffer = stack[top];
+
+            if (buffer == null || buffer.length < n) {
+                buffer = new double[n];
+                stack[top] = buffer;
+            }
+
+            top++;
+            return buffer;
+        }
+
+        void release() {
+            top--;
+        }
+    }
+
+    /**
+     * An operation; evaluates either a row or a column at a time.
+     */
+    private static abstract class Op {
+        abstract double evaluate(double[] values, RandomGenerator random);
+
+        abstract void evaluate(double[][] columns, int n, double[] out, Buffers buffers, RandomGenerator random);
+    }
+
+    private static final class Constant extends Op {
+        private final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        double evaluate(double[] values, RandomGenerator random) {
+            return value;
+        }
+
+        void evaluate(double[][] columns, int n, double[] out, Buffers buffers, RandomGenerator random) {
+            Arrays.fill(out, 0, n, value);
+        }
+    }
+
+    private static final class Slot extends Op {
+        private final int slot;
+
+        Slot(int slot) {
+            this.slot = slot;
+        }
+
+        double evaluate(double[] values, RandomGenerator random) {
+            return values[slot];
+        }
+
+        void evaluate(double[][] columns, int n, double[] out, Buffers buffers, RandomGenerator random) {
+            System.arraycopy(columns[slot], 0, out, 0, n);
+        }
+    }
+
+    private static final class Unary extends Op {
+        private final DoubleUnaryOperator f;
+        private final Op a;
+
+        Unary(DoubleUnaryOperator f, Op a) {
+            this.f = f;
+            this.a = a;
+        }
+
+        double evaluate(double[] values, RandomGenerator random) {
+            return f.applyAsDouble(a.evaluate(values, random));
+        }
+
+        void evaluate(double[][] columns, int n, double[] out, Buffers buffers, RandomGenerator random) {
+            a.evaluate(columns, n, out, buffers, random);
+
+            for (int i = 0; i < n; i++) {
+                out[i] = f.applyAsDouble(out[i]);
+            }
+        }
+    }
+
+    private static final class Binary extends Op {
+        private final DoubleBinaryOperator f;
+        private final Op a;
+        private final Op b;
+
+        Binary(DoubleBinaryOperator f, Op a, Op b) {
+            this.f = f;
+            this.a = a;
+            this.b = b;
+        }
+
+        double evaluate(double[] values, RandomGenerator random) {
+            double x = a.evaluate(values, random);
+            double y = b.evaluate(values, random);
+            return f.applyAsDouble(x, y);
+        }
+
+        void evaluate(double[][] columns, int n, double[] out, Buffers buffers, RandomGenerator random) {
+            a.evaluate(columns, n, out, buffers, random);
+            double[] y = buffers.take(n);
+            b.evaluate(columns, n, y, buffers, random);
+
+            for (int i = 0; i < n; i++) {
+                out[i] = f.applyAsDouble(out[i], y[i]);
+            }
+
+            buffers.release();
+        }
+    }
+
+    // A term of a sum that can't be evaluated counts as zero, as in the + expression.
+    private static final class Sum extends Op {
+        private final Op[] args;
+
+        Sum(Op[] args) {
+            this.args = args;
+        }
+
+        double evaluate(double[] values, RandomGenerator random) {
+            double value = 0.0;
+
+            for (Op arg : args) {
+                double evaluate = 0;
+
+                try {
+                    evaluate = arg.evaluate(values, random);
+                } catch (Exception e) {
+                    // Counts as zero.
+                }
+
+                value += evaluate;
+            }
+
+            return value;
+        }
+
+        void evaluate(double[][] columns, int n, double[] out, Buffers buffers, RandomGenerator random) {
+            Arrays.fill(out, 0, n, 0.0);
+            double[] x = buffers.take(n);
+
+            for (Op arg : args) {
+                int top = buffers.top;
+
+                try {
+                    arg.evaluate(columns, n, x, buffers, random);
+                } catch (Exception e) {
+                    buffers.top = top;
+
+                    // Some row failed; go back to doing this term row by row.
+                    double[] values = new double[columns.length];
+
+                    for (int i = 0; i < n; i++) {
+                        for (int k = 0; k < columns.length; k++) {
+                            values[k] = columns[k][i];
+                        }
+
+                        try {
+                            x[i] = arg.evaluate(values, random);
+                        } catch (Exception e2) {
+                            x[i] = 0;
+                        }
+                    }
+                }
+
+                for (int i = 0; i < n; i++) {
+                    out[i] += x[i];
+                }
+            }
+
+            buffers.release();
+        }
+    }
+
+    private static final class Product extends Op {
+        private final Op[] args;
+
+        Product(Op[] args) {
+            this.args = args;
+        }
+
+        double evaluate(double[] values, RandomGenerator random) {
+            double value = 1.0;
+
+            for (Op arg : args) {
+                value = value * arg.evaluate(values, random);
+            }
+
+            return value;
+        }
+
+        void evaluate(double[][] columns, int n, double[] out, Buffers buffers, RandomGenerator random) {
+            Arrays.fill(out, 0, n, 1.0);
+            double[] x = buffers.take(n);
+
+            for (Op arg : args) {
+                arg.evaluate(columns, n, x, buffers, random);
+
+                for (int i = 0; i < n; i++) {
+                    out[i] = out[i] * x[i];
+                }
+            }
+
+            buffers.release();
+        }
+    }
+
+    // Max or min, comparing as the max and min expressions do.
+    private static final class Extreme extends Op {
+        private final Op[] args;
+        private final boolean max;
+
+        Extreme(Op[] args, boolean max) {
+            this.args = args;
+            this.max = max;
+        }
+
+        double evaluate(double[] values, RandomGenerator random) {
+            double value = args[0].evaluate(values, random);
+
+            for (int k = 1; k < args.length; k++) {
+                double d = args[k].evaluate(values, random);
+
+                if (max ? value < d : value > d) {
+                    value = d;
+                }
+            }
+
+            return value;
+        }
+
+        void evaluate(double[][] columns, int n, double[] out, Buffers buffers, RandomGenerator random) {
+            args[0].evaluate(columns, n, out, buffers, random);
+            double[] x = buffers.take(n);
+
+            for (int k = 1; k < args.length; k++) {
+                args[k].evaluate(columns, n, x, buffers, random);
+
+                for (int i = 0; i < n; i++) {
+                    if (max ? out[i] < x[i] : out[i] > x[i]) {
+                        out[i] = x[i];
+                    }
+                }
+            }
+
+            buffers.release();
+        }
+    }
+
+    private static final class And extends Op {
+        private final Op[] args;
+
+        And(Op[] args) {
+            this.args = args;
+        }
+
+        double evaluate(double[] values, RandomGenerator random) {
+            boolean allOnes = true;
+
+            for (Op arg : args) {
+                if (arg.evaluate(values, random) != 1.0) {
+                    allOnes = false;
+                }
+            }
+
+            return allOnes ? 1.0 : 0.0;
+        }
+
+        void evaluate(double[][] columns, int n, double[] out, Buffers buffers, RandomGenerator random) {
+            Arrays.fill(out, 0, n, 1.0);
+            double[] x = buffers.take(n);
+
+            for (Op arg : args) {
+                arg.evaluate(columns, n, x, buffers, random);
+
+                for (int i = 0; i < n; i++) {
+                    if (x[i] != 1.0) out[i] = 0.0;
+                }
+            }
+
+            buffers.release();
+        }
+    }
+
+    // Row by row, stops at the first argument equal to 1, as the OR expression does.
+    private static final class Or extends Op {
+        private final Op[] args;
+
+        Or(Op[] args) {
+            this.args = args;
+        }
+
+        double evaluate(double[] values, RandomGenerator random) {
+            for (Op arg : args) {
+                if (arg.evaluate(values, random) == 1.0) {
+                    return 1.0;
+                }
+            }
+
+            return 0.0;
+        }
+
+        void evaluate(double[][] columns, int n, double[] out, Buffers buffers, RandomGenerator random) {
+            Arrays.fill(out, 0, n, 0.0);
+            double[] x = buffers.take(n);
+
+            for (Op arg : args) {
+                arg.evaluate(columns, n, x, buffers, random);
+
+                for (int i = 0; i < n; i++) {
+                    if (x[i] == 1.0) out[i] = 1.0;
+                }
+            }
+
+            buffers.release();
+        }
+    }
+
+    private static final class If extends Op {
+        private final Op a;
+        private final Op b;
+        private final Op c;
+
+        If(Op a, Op b, Op c) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+        }
+
+        double evaluate(double[] values, RandomGenerator random) {
+            double x = a.evaluate(values, random);
+            double y = b.evaluate(values, random);
+            double z = c.evaluate(values, random);
+            return x == 1.0 ? y : z;
+        }
+
+        void evaluate(double[][] columns, int n, double[] out, Buffers buffers, RandomGenerator random) {
+            a.evaluate(columns, n, out, buffers, random);
+            double[] y = buffers.take(n);
+            b.evaluate(columns, n, y, buffers, random);
+            double[] z = buffers.take(n);
+            c.evaluate(columns, n, z, buffers, random);
+
+            for (int i = 0; i < n; i++) {
+                out[i] = out[i] == 1.0 ? y[i] : z[i];
+            }
+
+            buffers.release();
+            buffers.release();
+        }
+    }
+
+    // A draw from a distribution whose parameters are given by the arguments.
+    private static final class Sample extends Op {
+        private final String kind;
+        private final Op[] args;
+
+        Sample(String kind, Op[] args) {
+            this.kind = kind;
+            this.args = args;
+        }
+
+        double evaluate(double[] values, RandomGenerator random) {
+            double[] p = new double[args.length];
+
+            for (int k = 0; k < args.length; k++) {
+                p[k] = args[k].evaluate(values, random);
+            }
+
+            return sample(kind, random, p);
+        }
+
+        void evaluate(double[][] columns, int n, double[] out, Buffers buffers, RandomGenerator random) {
+            double[][] x = new double[args.length][];
+
+            for (int k = 0; k < args.length; k++) {
+                x[k] = buffers.take(n);
+                args[k].evaluate(columns, n, x[k], buffers, random);
+            }
+
+            double[] p = new double[args.length];
+
+            for (int i = 0; i < n; i++) {
+                for (int k = 0; k < args.length; k++) {
+                    p[k] = x[k][i];
+                }
+
+                out[i] = sample(kind, random, p);
+            }
+
+            for (int k = 0; k < args.length; k++) {
+                buffers.release();
+            }
+        }
+    }
+
+    // Anything else is evaluated by the expression itself, looking up values by name.
+    private static final class Opaque extends Op {
+        private final Expression expression;
+        private final Map<String, Integer> slots;
+        private final Map<String, Double> constants;
+
+        Opaque(Expression expression, Map<String, Integer> slots, Map<String, Double> constants) {
+            this.expression = expression;
+            this.slots = slots;
+            this.constants = constants;
+        }
+
+        double evaluate(double[] values, RandomGenerator random) {
+            return expression.evaluate(term -> {
+                Double value = constants.get(term);
+
+                if (value != null) {
+                    return value;
+                }
+
+                Integer slot = slots.get(term);
+
+                if (slot != null) {
+                    return values[slot];
+                }
+
+                throw new IllegalArgumentException("No value recorded for '" + term + "'");
+            });
+        }
+
+        void evaluate(double[][] columns, int n, double[] out, Buffers buffers, RandomGenerator random) {
+            int[] row = new int[1];
+
+            Context context = term -> {
+                Double value = constants.get(term);
+
+                if (value != null) {
+                    return value;
+                }
+
+                Integer slot = slots.get(term);
+
+                if (slot != null) {
+                    return columns[slot][row[0]];
+                }
+
+                throw new IllegalArgumentException("No value recorded for '" + term + "'");
+            };
+
+            for (int i = 0; i < n; i++) {
+                row[0] = i;
+                out[i] = expression.evaluate(context);
+            }
+        }
+    }
+}
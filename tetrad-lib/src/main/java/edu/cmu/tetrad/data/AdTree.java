@@ -0,0 +1,638 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.SearchExecutor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * An AD-tree (Moore and Lee, "Cached Sufficient Statistics for Efficient Machine Learning with Large Datasets," JAIR
+ * 1998) over the discrete columns of a data set, for counting the rows that have given values of given variables, or
+ * whole contingency tables, without rereading the data.
+ * <p>
+ * A node of the tree stands for the rows with particular values of some variables, and for each later variable has a
+ * "vary" node with a child for each of its values. The child for the most common value is left out and its counts are
+ * found by subtraction, as are children with no rows, so the tree is sparse. Nodes are expanded only when a query
+ * reaches them, and nodes with few rows are not expanded at all but keep their rows, which are counted directly. An
+ * expanded node keeps its rows only until it has made a vary node for each later variable.
+ * Missing values are counted as a further category, so that subtraction stays exact, and left out of the answers.
+ * <p>
+ * Once built the tree only grows, lock free, so it may be queried from several threads at once. Large nodes are
+ * split in parallel, on the shared SearchExecutor.
+ *
+ * @author agent
+ */
+public final class AdTree {
+
+    // Nodes with at most this many rows keep their rows and aren't expanded.
+    private static final int DEFAULT_LEAF_SIZE = 16;
+
+    // Nodes with at least this many rows are split in parallel.
+    private static final int PARALLEL_ROWS = 1 << 16;
+
+    private static final int MISSING = DiscreteVariable.MISSING_VALUE;
+
+    private final List<Node> variables;
+
+    // The discrete columns, with the missing value replaced by the number of categories; null for other columns.
+    private final int[][] columns;
+
+    // The number of categories of each variable, 0 if it isn't discrete.
+    private final int[] dims;
+
+    // The number of times each row is counted, or null if once each.
+    private final int[] weights;
+
+    private final int leafSize;
+    private final AdNode root;
+
+    /**
+     * Makes a tree over the discrete columns of the given data set. Rows of a ResampledDataBox are counted with their
+     * multiplicities.
+     */
+    public AdTree(DataSet dataSet) {
+        this(dataSet, DEFAULT_LEAF_SIZE);
+    }
+
+    /**
+     * Makes a tree over the discrete columns of the given data set, in which nodes with at most leafSize rows are
+     * counted directly rather than expanded.
+     */
+    public AdTree(DataSet dataSet, int leafSize) {
+        if (dataSet == null) {
+            throw new NullPointerException("Data was not provided.");
+        }
+
+        if (leafSize < 1) {
+            throw new IllegalArgumentException("Leaf size must be at least 1: " + leafSize);
+        }
+
+        this.variables = dataSet.getVariables();
+        this.leafSize = leafSize;
+        this.dims = new int[variables.size()];
+
+        for (int j = 0; j < variables.size(); j++) {
+            if (variables.get(j) instanceof DiscreteVariable) {
+                dims[j] = ((DiscreteVariable) variables.get(j)).getNumCategories();
+            }
+        }
+
+        DataBox dataBox = dataSet instanceof BoxDataSet ? ((BoxDataSet) dataSet).getDataBox() : null;
+        int[][] data = null;
+
+        if (dataBox instanceof ResampledDataBox) {
+            DataBox original = ((ResampledDataBox) dataBox).getDataBox();
+
+            if (original instanceof VerticalIntDataBox) {
+                data = ((VerticalIntDataBox) original).getVariableVectors();
+                this.weights = ((ResampledDataBox) dataBox).getWeights();
+            } else {
+                this.weights = null;
+            }
+        } else {
+            if (dataBox instanceof VerticalIntDataBox) {
+                data = ((VerticalIntDataBox) dataBox).getVariableVectors();
+            }
+
+            this.weights = null;
+        }
+
+        int numRows = weights != null ? weights.length : dataSet.getNumRows();
+        this.columns = new int[dims.length][];
+
+        for (int j = 0; j < dims.length; j++) {
+            if (dims[j] == 0) continue;
+
+            int[] column = new int[numRows];
+
+            for (int i = 0; i < numRows; i++) {
+                int value = data != null ? data[j][i] : dataSet.getInt(i, j);
+                column[i] = value == MISSING ? dims[j] : value;
+            }
+
+            columns[j] = column;
+        }
+
+        int[] rows = IntStream.range(0, numRows).filter(i -> weights == null || weights[i] > 0).toArray();
+        this.root = new AdNode(0, count(rows), rows);
+    }
+
+    /**
+     * @return the number of rows with the given values of the given variables, which are column indices. Rows with a
+     * missing value of one of the variables are not counted.
+     */
+    public int count(int[] variables, int[] values) {
+        if (variables.length != values.length) {
+            throw new IllegalArgumentException("Expecting a value for each variable.");
+        }
+
+        int[] order = sortedOrder(variables);
+        int[] _variables = new int[variables.length];
+        int[] _values = new int[variables.length];
+
+        for (int i = 0; i < order.length; i++) {
+            _variables[i] = variables[order[i]];
+            _values[i] = values[order[i]];
+
+            if (_values[i] < 0 || _values[i] >= dims[_variables[i]]) {
+                throw new IllegalArgumentException("Not a category of " + this.variables.get(_variables[i]) + ": "
+                        + _values[i]);
+            }
+        }
+
+        return count(root, _variables, _values, 0);
+    }
+
+    /**
+     * @return the cells of the contingency table of the given variables, which are column indices, that have rows,
+     * in lexicographic order of their values, the first variable varying slowest. Rows with a missing value of one of
+     * the variables are not counted.
+     */
+    public Cells getCells(int[] variables) {
+        int[] order = sortedOrder(variables);
+        int[] sorted = new int[variables.length];
+
+        for (int i = 0; i < order.length; i++) {
+            sorted[i] = variables[order[i]];
+        }
+
+        Cells cells = table(root, sorted, 0).withoutMissing(sorted, dims);
+
+        // Put the values back in the order asked for.
+        int k = variables.length;
+        int[] values = new int[cells.values.length];
+
+        for (int c = 0; c < cells.size; c++) {
+            for (int i = 0; i < k; i++) {
+                values[c * k + order[i]] = cells.values[c * k + i];
+            }
+        }
+
+        return new Cells(k, cells.size, values, cells.counts).sorted();
+    }
+
+    /**
+     * @return the number of rows counted, with their multiplicities.
+     */
+    public int getSampleSize() {
+        return root.count;
+    }
+
+    /**
+     * @return the variables of the data, in order.
+     */
+    public List<Node> getVariables() {
+        return variables;
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    private int count(AdNode node, int[] variables, int[] values, int from) {
+        if (from == variables.length) return node.count;
+
+        if (node.isLeaf()) {
+            int count = 0;
+
+            ROW:
+            for (int i : node.rows) {
+                for (int v = from; v < variables.length; v++) {
+                    if (columns[variables[v]][i] != values[v]) continue ROW;
+                }
+
+                count += weight(i);
+            }
+
+            return count;
+        }
+
+        Vary vary = node.getVary(variables[from]);
+
+        if (values[from] != vary.mcv) {
+            AdNode child = vary.children[values[from]];
+            return child == null ? 0 : count(child, variables, values, from + 1);
+        }
+
+        int count = count(node, variables, values, from + 1);
+
+        for (AdNode child : vary.children) {
+            if (child != null) count -= count(child, variables, values, from + 1);
+        }
+
+        return count;
+    }
+
+    // The cells of the rows of node over variables[from], ..., with missing values as a category.
+    private Cells table(AdNode node, int[] variables, int from) {
+        int k = variables.length - from;
+
+        if (k == 0) {
+            return node.count == 0 ? new Cells(0, 0, new int[0], new int[0])
+                    : new Cells(0, 1, new int[0], new int[]{node.count});
+        }
+
+        if (node.isLeaf()) {
+            int[] values = new int[node.rows.length * k];
+            int[] counts = new int[node.rows.length];
+
+            for (int r = 0; r < node.rows.length; r++) {
+                for (int v = 0; v < k; v++) {
+                    values[r * k + v] = columns[variables[from + v]][node.rows[r]];
+                }
+
+                counts[r] = weight(node.rows[r]);
+            }
+
+            return new Cells(k, node.rows.length, values, counts).sorted();
+        }
+
+        Vary vary = node.getVary(variables[from]);
+        Cells[] parts = new Cells[vary.children.length];
+        Cells mcv = table(node, variables, from + 1);
+
+        for (int v = 0; v < parts.length; v++) {
+            if (vary.children[v] != null) {
+                parts[v] = table(vary.children[v], variables, from + 1);
+                mcv = mcv.minus(parts[v]);
+            }
+        }
+
+        parts[vary.mcv] = mcv;
+
+        int size = 0;
+
+        for (Cells part : parts) {
+            if (part != null) size += part.size;
+        }
+
+        int[] values = new int[size * k];
+        int[] counts = new int[size];
+        int c = 0;
+
+        for (int v = 0; v < parts.length; v++) {
+            Cells part = parts[v];
+            if (part == null) continue;
+
+            for (int d = 0; d < part.size; d++) {
+                values[c * k] = v;
+                System.arraycopy(part.values, d * (k - 1), values, c * k + 1, k - 1);
+                counts[c] = part.counts[d];
+                c++;
+            }
+        }
+
+        return new Cells(k, size, values, counts);
+    }
+
+    private int count(int[] rows) {
+        if (weights == null) return rows.length;
+
+        int count = 0;
+
+        for (int i : rows) {
+            count += weights[i];
+        }
+
+        return count;
+    }
+
+    private int weight(int row) {
+        return weights == null ? 1 : weights[row];
+    }
+
+    // The order in which to take the given variables to have them ascending, checking that they are distinct and
+    // discrete.
+    private int[] sortedOrder(int[] variables) {
+        Integer[] order = new Integer[variables.length];
+
+        for (int i = 0; i < variables.length; i++) {
+            if (dims[variables[i]] == 0) {
+                throw new IllegalArgumentException("Not a discrete variable: " + this.variables.get(variables[i]));
+            }
+
+            order[i] = i;
+        }
+
+        Arrays.sort(order, (i, j) -> Integer.compare(variables[i], variables[j]));
+
+        int[] _order = new int[variables.length];
+
+        for (int i = 0; i < variables.length; i++) {
+            _order[i] = order[i];
+
+            if (i > 0 && variables[order[i]] == variables[order[i - 1]]) {
+                throw new IllegalArgumentException("Variable listed twice: "
+                        + this.variables.get(variables[order[i]]));
+            }
+        }
+
+        return _order;
+    }
+
+    // The rows with each value of the given column, the missing value last, in order.
+    private int[][] split(int[] rows, int column) {
+        int[] data = columns[column];
+        int numValues = dims[column] + 1;
+
+        int numBlocks = rows.length < PARALLEL_ROWS ? 1
+                : Math.min(rows.length / (PARALLEL_ROWS / 4), 4 * SearchExecutor.getInstance().getParallelism());
+
+        // Count by block, so that blocks can be copied in parallel each to its own place.
+        int[][] blockCounts = new int[numBlocks][numValues];
+
+        forEachBlock(numBlocks, b -> {
+            for (int r = blockStart(rows, b, numBlocks); r < blockStart(rows, b + 1, numBlocks); r++) {
+                blockCounts[b][data[rows[r]]]++;
+            }
+        });
+
+        int[][] parts = new int[numValues][];
+
+        for (int v = 0; v < numValues; v++) {
+            int size = 0;
+
+            for (int b = 0; b < numBlocks; b++) {
+                int count = blockCounts[b][v];
+                blockCounts[b][v] = size;
+                size += count;
+            }
+
+            parts[v] = new int[size];
+        }
+
+        forEachBlock(numBlocks, b -> {
+            int[] next = blockCounts[b];
+
+            for (int r = blockStart(rows, b, numBlocks); r < blockStart(rows, b + 1, numBlocks); r++) {
+                int v = data[rows[r]];
+                parts[v][next[v]++] = rows[r];
+            }
+        });
+
+        return parts;
+    }
+
+    // Runs the action for each block, in parallel on the search executor if there is more than one.
+    private static void forEachBlock(int numBlocks, IntConsumer action) {
+        if (numBlocks == 1) {
+            action.accept(0);
+            return;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+
+        for (int b = 0; b < numBlocks; b++) {
+            final int _b = b;
+
+            tasks.add(() -> {
+                action.accept(_b);
+                return null;
+            });
+        }
+
+        SearchExecutor.getInstance().invokeAll("AdTree", tasks);
+    }
+
+    private static int blockStart(int[] rows, int b, int numBlocks) {
+        return (int) ((long) rows.length * b / numBlocks);
+    }
+
+    //==============================CLASSES=================================//
+
+    /**
+     * The nonempty cells of a contingency table, in lexicographic order of their values.
+     */
+    public static final class Cells {
+        private final int numVariables;
+        private final int size;
+        private final int[] values;
+        private final int[] counts;
+
+        private Cells(int numVariables, int size, int[] values, int[] counts) {
+            this.numVariables = numVariables;
+            this.size = size;
+            this.values = values;
+            this.counts = counts;
+        }
+
+        /**
+         * @return the number of cells.
+         */
+        public int getNumCells() {
+            return size;
+        }
+
+        /**
+         * @return the value of the given variable, by its position in the query, in the given cell.
+         */
+        public int getValue(int cell, int variable) {
+            return values[cell * numVariables + variable];
+        }
+
+        /**
+         * @return the number of rows in the given cell.
+         */
+        public int getCount(int cell) {
+            return counts[cell];
+        }
+
+        // These cells, with the counts of the given cells subtracted; both are sorted.
+        private Cells minus(Cells other) {
+            int k = numVariables;
+            int[] _values = new int[values.length];
+            int[] _counts = new int[size];
+            int n = 0;
+
+            for (int c = 0, d = 0; c < size; c++) {
+                while (d < other.size && compare(other, d, this, c) < 0) d++;
+
+                int count = counts[c];
+
+                if (d < other.size && compare(other, d, this, c) == 0) {
+                    count -= other.counts[d++];
+                }
+
+                if (count != 0) {
+                    System.arraycopy(values, c * k, _values, n * k, k);
+                    _counts[n++] = count;
+                }
+            }
+
+            return new Cells(k, n, Arrays.copyOf(_values, n * k), Arrays.copyOf(_counts, n));
+        }
+
+        // These cells, without those with a missing value of one of the given variables.
+        private Cells withoutMissing(int[] variables, int[] dims) {
+            int k = numVariables;
+            int[] _values = new int[values.length];
+            int[] _counts = new int[size];
+            int n = 0;
+
+            CELL:
+            for (int c = 0; c < size; c++) {
+                for (int i = 0; i < k; i++) {
+                    if (values[c * k + i] == dims[variables[i]]) continue CELL;
+                }
+
+                System.arraycopy(values, c * k, _values, n * k, k);
+                _counts[n++] = counts[c];
+            }
+
+            return new Cells(k, n, Arrays.copyOf(_values, n * k), Arrays.copyOf(_counts, n));
+        }
+
+        // These cells in order, with equal cells merged.
+        private Cells sorted() {
+            Integer[] order = new Integer[size];
+            for (int c = 0; c < size; c++) order[c] = c;
+            Arrays.sort(order, (c, d) -> compare(this, c, this, d));
+
+            int k = numVariables;
+            int[] _values = new int[values.length];
+            int[] _counts = new int[size];
+            int n = 0;
+
+            for (int c = 0; c < size; c++) {
+                if (n > 0 && compare(this, order[c], this, order[c - 1]) == 0) {
+                    _counts[n - 1] += counts[order[c]];
+                } else {
+                    System.arraycopy(values, order[c] * k, _values, n * k, k);
+                    _counts[n++] = counts[order[c]];
+                }
+            }
+
+            return new Cells(k, n, Arrays.copyOf(_values, n * k), Arrays.copyOf(_counts, n));
+        }
+
+        private static int compare(Cells a, int c, Cells b, int d) {
+            for (int i = 0; i < a.numVariables; i++) {
+                int diff = Integer.compare(a.values[c * a.numVariables + i], b.values[d * b.numVariables + i]);
+                if (diff != 0) return diff;
+            }
+
+            return 0;
+        }
+    }
+
+    // The rows with particular values of some variables.
+    private final class AdNode {
+
+        // The first variable this node may be varied by; earlier ones are fixed or varied above it.
+        private final int firstVariable;
+
+        // The number of rows, with their multiplicities.
+        private final int count;
+
+        // The rows, until every vary node has been made; then null, unless this is a leaf.
+        private volatile int[] rows;
+
+        // The vary nodes made so far, by variable from firstVariable on, or null for a leaf.
+        private final AtomicReferenceArray<Vary> varies;
+
+        // The number of vary nodes still to be made, one for each discrete variable from firstVariable on.
+        private final AtomicInteger numVariesLeft;
+
+        AdNode(int firstVariable, int count, int[] rows) {
+            this.firstVariable = firstVariable;
+            this.count = count;
+
+            if (rows.length <= leafSize) {
+                this.rows = rows;
+                this.varies = null;
+                this.numVariesLeft = null;
+            } else {
+                int numDiscrete = 0;
+
+                for (int j = firstVariable; j < dims.length; j++) {
+                    if (dims[j] > 0) numDiscrete++;
+                }
+
+                this.rows = numDiscrete == 0 ? null : rows;
+                this.varies = new AtomicReferenceArray<>(dims.length - firstVariable);
+                this.numVariesLeft = new AtomicInteger(numDiscrete);
+            }
+        }
+
+        boolean isLeaf() {
+            return varies == null;
+        }
+
+        // If two threads make the same vary node, one of them is kept. The rows are let go once the last is made.
+        Vary getVary(int variable) {
+            Vary vary = varies.get(variable - firstVariable);
+
+            if (vary == null) {
+                int[] rows = this.rows;
+
+                // The rows are only let go once every vary node has been made, this one included.
+                if (rows == null) return varies.get(variable - firstVariable);
+
+                if (varies.compareAndSet(variable - firstVariable, null, new Vary(rows, variable))
+                        && numVariesLeft.decrementAndGet() == 0) {
+                    this.rows = null;
+                }
+
+                vary = varies.get(variable - firstVariable);
+            }
+
+            return vary;
+        }
+    }
+
+    // The children of a node for each value of a variable.
+    private final class Vary {
+
+        // The most common value, whose child is left out.
+        private final int mcv;
+
+        // The child for each value, the missing value last; null for the most common value or a value with no rows.
+        private final AdNode[] children;
+
+        Vary(int[] rows, int variable) {
+            int[][] parts = split(rows, variable);
+            int[] counts = new int[parts.length];
+            int mcv = 0;
+
+            for (int v = 0; v < parts.length; v++) {
+                counts[v] = count(parts[v]);
+                if (counts[v] > counts[mcv]) mcv = v;
+            }
+
+            this.mcv = mcv;
+            this.children = new AdNode[parts.length];
+
+            for (int v = 0; v < parts.length; v++) {
+                if (v != mcv && counts[v] > 0) {
+                    children[v] = new AdNode(variable + 1, counts[v], parts[v]);
+                }
+            }
+        }
+    }
+}
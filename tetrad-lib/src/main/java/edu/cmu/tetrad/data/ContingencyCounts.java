@@ -0,0 +1,662 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.SearchExecutor;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Counts the values of a discrete variable in each configuration of values of a list of other discrete variables
+ * (its "parents"), for scores and tests of discrete data. Each row of the data is given the number of its parent
+ * configuration, in lexicographic order of the parent values, the first parent varying slowest; a configuration
+ * with a missing value is skipped, as is a row whose child value is missing.
+ * <p>
+ * If there are few enough configurations, all of them are numbered, and tables of counts are dense. Otherwise only
+ * the configurations that occur are numbered, still in lexicographic order, found by hashing, so that the size of a
+ * table is bounded by the sample size rather than the number of configurations.
+ * <p>
+ * The configuration numbers of each row are kept for recently used lists of parents, and those for a list are found
+ * from those for the list without its last member, so that tables that share parents share that work. Long columns
+ * are numbered and counted in blocks of rows in parallel, on the shared SearchExecutor.
+ * <p>
+ * The data may be kept in a VerticalIntDataBox (fastest), a MappedDataBox, whose columns are read in place, or a
+ * ResampledDataBox, whose rows are counted with their multiplicities. Other data is copied.
+ * <p>
+ * Alternatively, tables may be taken from an AD-tree over the same data, which for large samples is faster once the
+ * tree has grown, and may be shared by several scores and tests.
+ *
+ * @author agent
+ */
+public final class ContingencyCounts {
+
+    // Parent lists with at most this many configurations are numbered densely.
+    private static final long MAX_DENSE_CONFIGURATIONS = 1 << 18;
+
+    // The number of parent lists whose configuration numbers are kept.
+    private static final int NUM_CACHED_CONFIGURATIONS = 16;
+
+    // Rows are numbered and counted in parallel in blocks of this many, if there are at least two blocks.
+    private static final int BLOCK_SIZE = 1 << 15;
+
+    // Tables of more cells than this are counted in one block, to save memory.
+    private static final int MAX_PARALLEL_CELLS = 1 << 16;
+
+    private static final int MISSING = DiscreteVariable.MISSING_VALUE;
+
+    // Either columns or mappedColumns is set.
+    private final int[][] columns;
+    private final IntBuffer[] mappedColumns;
+
+    // The number of times each row is counted, or null if once each.
+    private final int[] weights;
+
+    // The number of rows of the columns.
+    private final int numRows;
+
+    private final int sampleSize;
+    private final int[] numCategories;
+
+    // If not null, tables are taken from this.
+    private volatile AdTree adTree = null;
+
+    private final Map<String, Configurations> configurations =
+            new LinkedHashMap<String, Configurations>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<String, Configurations> eldest) {
+                    return size() > NUM_CACHED_CONFIGURATIONS;
+                }
+            };
+
+    /**
+     * Counts the given data. Columns of variables that are not discrete may not be counted.
+     */
+    public ContingencyCounts(DataSet dataSet) {
+        if (dataSet == null) {
+            throw new NullPointerException("Data was not provided.");
+        }
+
+        List<Node> variables = dataSet.getVariables();
+        this.numCategories = new int[variables.size()];
+
+        for (int j = 0; j < variables.size(); j++) {
+            if (variables.get(j) instanceof DiscreteVariable) {
+                numCategories[j] = ((DiscreteVariable) variables.get(j)).getNumCategories();
+            }
+        }
+
+        DataBox dataBox = dataSet instanceof BoxDataSet ? ((BoxDataSet) dataSet).getDataBox() : null;
+
+        if (dataBox instanceof MappedDataBox) {
+            MappedDataBox box = (MappedDataBox) dataBox;
+            this.columns = null;
+            this.mappedColumns = new IntBuffer[box.numCols()];
+
+            for (int j = 0; j < box.numCols(); j++) {
+                if (numCategories[j] > 0) {
+                    mappedColumns[j] = box.getIntColumn(j);
+                }
+            }
+
+            this.weights = null;
+            this.numRows = box.numRows();
+        } else if (dataBox instanceof ResampledDataBox) {
+            ResampledDataBox box = (ResampledDataBox) dataBox;
+            DataBox original = box.getDataBox();
+
+            if (!(original instanceof VerticalIntDataBox)) {
+                original = new VerticalIntDataBox(original);
+            }
+
+            this.columns = ((VerticalIntDataBox) original).getVariableVectors();
+            this.mappedColumns = null;
+            this.weights = box.getWeights();
+            this.numRows = weights.length;
+        } else if (dataBox != null) {
+            if (!(dataBox instanceof VerticalIntDataBox)) {
+                dataBox = new VerticalIntDataBox(dataBox);
+            }
+
+            this.columns = ((VerticalIntDataBox) dataBox).getVariableVectors();
+            this.mappedColumns = null;
+            this.weights = null;
+            this.numRows = dataBox.numRows();
+        } else {
+            this.columns = new int[dataSet.getNumColumns()][dataSet.getNumRows()];
+
+            for (int j = 0; j < dataSet.getNumColumns(); j++) {
+                for (int i = 0; i < dataSet.getNumRows(); i++) {
+                    columns[j][i] = dataSet.getInt(i, j);
+                }
+            }
+
+            this.mappedColumns = null;
+            this.weights = null;
+            this.numRows = dataSet.getNumRows();
+        }
+
+        this.sampleSize = dataSet.getNumRows();
+    }
+
+    /**
+     * @return the counts of the values of child in each configuration of the parents.
+     */
+    public Table count(int child, int[] parents) {
+        checkDiscrete(child);
+
+        AdTree adTree = this.adTree;
+
+        if (adTree != null) {
+            return count(adTree, child, parents);
+        }
+
+        Configurations configurations = getConfigurations(parents);
+        int c = numCategories[child];
+        long numCells = (long) configurations.numRows * c;
+
+        if (numCells > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many cells to count: " + numCells);
+        }
+
+        int[] codes = configurations.codes;
+        int numBlocks = numBlocks();
+
+        if (numBlocks == 1 || numCells > MAX_PARALLEL_CELLS) {
+            return new Table(configurations, c, count(child, codes, 0, numRows, (int) numCells));
+        }
+
+        List<Callable<int[]>> tasks = new ArrayList<>();
+
+        for (int b = 0; b < numBlocks; b++) {
+            final int from = blockStart(b, numBlocks);
+            final int to = blockStart(b + 1, numBlocks);
+            tasks.add(() -> count(child, codes, from, to, (int) numCells));
+        }
+
+        int[] counts = new int[(int) numCells];
+
+        for (int[] blockCounts : SearchExecutor.getInstance().invokeAll("ContingencyCounts", tasks)) {
+            sum(counts, blockCounts);
+        }
+
+        return new Table(configurations, c, counts);
+    }
+
+    /**
+     * @return the number of categories of the given variable, or 0 if it is not discrete.
+     */
+    public int getNumCategories(int variable) {
+        return numCategories[variable];
+    }
+
+    /**
+     * @return the number of rows of the data.
+     */
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * @return the AD-tree tables are taken from, or null if they are counted from the data.
+     */
+    public AdTree getAdTree() {
+        return adTree;
+    }
+
+    /**
+     * Takes tables from the given AD-tree, which must be over the same data, or counts them from the data if null.
+     */
+    public void setAdTree(AdTree adTree) {
+        if (adTree != null && (adTree.getVariables().size() != numCategories.length
+                || adTree.getSampleSize() != sampleSize)) {
+            throw new IllegalArgumentException("The AD-tree is not over this data.");
+        }
+
+        this.adTree = adTree;
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    // The table from the cells of the tree over the parents and then the child.
+    private Table count(AdTree adTree, int child, int[] parents) {
+        int[] variables = Arrays.copyOf(parents, parents.length + 1);
+        variables[parents.length] = child;
+
+        AdTree.Cells cells = adTree.getCells(variables);
+
+        int c = numCategories[child];
+        int[] dims = new int[parents.length];
+        double numConfigurations = 1;
+
+        for (int p = 0; p < parents.length; p++) {
+            checkDiscrete(parents[p]);
+            dims[p] = numCategories[parents[p]];
+            numConfigurations *= dims[p];
+        }
+
+        if (numConfigurations <= MAX_DENSE_CONFIGURATIONS) {
+            int[] counts = new int[(int) numConfigurations * c];
+
+            for (int k = 0; k < cells.getNumCells(); k++) {
+                int row = 0;
+
+                for (int p = 0; p < parents.length; p++) {
+                    row = row * dims[p] + cells.getValue(k, p);
+                }
+
+                counts[row * c + cells.getValue(k, parents.length)] += cells.getCount(k);
+            }
+
+            return new Table(new Configurations(null, dims, numConfigurations), c, counts);
+        }
+
+        // The cells are in order, so those of each configuration that occurs are together.
+        int[] values = new int[cells.getNumCells() * parents.length];
+        int[] counts = new int[cells.getNumCells() * c];
+        int numRows = 0;
+
+        for (int k = 0; k < cells.getNumCells(); k++) {
+            boolean same = numRows > 0;
+
+            for (int p = 0; p < parents.length && same; p++) {
+                same = cells.getValue(k, p) == values[(numRows - 1) * parents.length + p];
+            }
+
+            if (!same) {
+                for (int p = 0; p < parents.length; p++) {
+                    values[numRows * parents.length + p] = cells.getValue(k, p);
+                }
+
+                numRows++;
+            }
+
+            counts[(numRows - 1) * c + cells.getValue(k, parents.length)] += cells.getCount(k);
+        }
+
+        return new Table(new Configurations(null, parents.length, numConfigurations,
+                Arrays.copyOf(values, numRows * parents.length)), c, Arrays.copyOf(counts, numRows * c));
+    }
+
+    private int[] count(int child, int[] codes, int from, int to, int numCells) {
+        int c = numCategories[child];
+        int[] counts = new int[numCells];
+
+        for (int i = from; i < to; i++) {
+            int code = codes[i];
+            if (code == -1) continue;
+
+            int value = value(child, i);
+            if (value == MISSING) continue;
+
+            counts[code * c + value] += weights == null ? 1 : weights[i];
+        }
+
+        return counts;
+    }
+
+    private static int[] sum(int[] a, int[] b) {
+        for (int i = 0; i < a.length; i++) a[i] += b[i];
+        return a;
+    }
+
+    private Configurations getConfigurations(int[] parents) {
+        String key = Arrays.toString(parents);
+
+        synchronized (configurations) {
+            Configurations cached = configurations.get(key);
+            if (cached != null) return cached;
+        }
+
+        Configurations result;
+
+        if (parents.length == 0) {
+            int[] codes = new int[numRows];
+
+            // Rows left out of a resampling aren't counted.
+            if (weights != null) {
+                for (int i = 0; i < numRows; i++) {
+                    if (weights[i] == 0) codes[i] = -1;
+                }
+            }
+
+            result = new Configurations(codes, new int[0], 1);
+        } else {
+            checkDiscrete(parents[parents.length - 1]);
+            Configurations prefix = getConfigurations(Arrays.copyOf(parents, parents.length - 1));
+            result = extend(prefix, parents[parents.length - 1]);
+        }
+
+        synchronized (configurations) {
+            configurations.put(key, result);
+        }
+
+        return result;
+    }
+
+    // The configurations of the parents of prefix followed by parent.
+    private Configurations extend(Configurations prefix, int parent) {
+        int dim = numCategories[parent];
+        int[] prefixCodes = prefix.codes;
+        int[] codes = new int[numRows];
+
+        int numBlocks = numBlocks();
+
+        if (numBlocks == 1) {
+            extend(prefixCodes, parent, codes, 0, numRows);
+        } else {
+            List<Callable<Void>> tasks = new ArrayList<>();
+
+            for (int b = 0; b < numBlocks; b++) {
+                final int from = blockStart(b, numBlocks);
+                final int to = blockStart(b + 1, numBlocks);
+
+                tasks.add(() -> {
+                    extend(prefixCodes, parent, codes, from, to);
+                    return null;
+                });
+            }
+
+            SearchExecutor.getInstance().invokeAll("ContingencyCounts", tasks);
+        }
+
+        double numConfigurations = prefix.numConfigurations * dim;
+
+        if (prefix.isDense() && numConfigurations <= MAX_DENSE_CONFIGURATIONS) {
+            return new Configurations(codes, prefix.dims(dim), numConfigurations);
+        }
+
+        // Number only the configurations that occur. Since the prefix numbers are in lexicographic order, so are
+        // these codes, so sorting them keeps the order.
+        int[] distinct = distinct(codes);
+        Arrays.sort(distinct);
+
+        IntIntMap index = new IntIntMap(distinct.length);
+
+        for (int k = 0; k < distinct.length; k++) {
+            index.put(distinct[k], k);
+        }
+
+        for (int i = 0; i < numRows; i++) {
+            if (codes[i] != -1) codes[i] = index.get(codes[i]);
+        }
+
+        int numParents = prefix.numParents + 1;
+        int[] values = new int[distinct.length * numParents];
+
+        for (int k = 0; k < distinct.length; k++) {
+            int prefixRow = distinct[k] / dim;
+
+            for (int p = 0; p < numParents - 1; p++) {
+                values[k * numParents + p] = prefix.getParentValue(prefixRow, p);
+            }
+
+            values[k * numParents + numParents - 1] = distinct[k] % dim;
+        }
+
+        return new Configurations(codes, numParents, numConfigurations, values);
+    }
+
+    // The codes of rows from, ..., to - 1 for the configurations of the prefix followed by parent.
+    private void extend(int[] prefixCodes, int parent, int[] codes, int from, int to) {
+        int dim = numCategories[parent];
+
+        for (int i = from; i < to; i++) {
+            int value = prefixCodes[i] == -1 ? MISSING : value(parent, i);
+            codes[i] = value == MISSING ? -1 : prefixCodes[i] * dim + value;
+        }
+    }
+
+    // The distinct codes other than -1.
+    private static int[] distinct(int[] codes) {
+        IntIntMap seen = new IntIntMap(16);
+        int[] distinct = new int[16];
+        int n = 0;
+
+        for (int code : codes) {
+            if (code == -1 || seen.get(code) != -1) continue;
+            seen.put(code, n);
+            if (n == distinct.length) distinct = Arrays.copyOf(distinct, 2 * n);
+            distinct[n++] = code;
+        }
+
+        return Arrays.copyOf(distinct, n);
+    }
+
+    private int value(int variable, int row) {
+        return columns != null ? columns[variable][row] : mappedColumns[variable].get(row);
+    }
+
+    private void checkDiscrete(int variable) {
+        if (numCategories[variable] == 0) {
+            throw new IllegalArgumentException("Not a discrete variable: " + variable);
+        }
+    }
+
+    private int numBlocks() {
+        return (int) Math.max(1, Math.min(numRows / BLOCK_SIZE, 4L * SearchExecutor.getInstance().getParallelism()));
+    }
+
+    private int blockStart(int b, int numBlocks) {
+        return (int) ((long) numRows * b / numBlocks);
+    }
+
+    //==============================CLASSES=================================//
+
+    /**
+     * Counts of the values of a child in the configurations of its parents. Rows of the table are configurations; if
+     * the table is dense these are all of the configurations, otherwise just those that occur, in either case in
+     * lexicographic order of the parent values.
+     */
+    public static final class Table {
+        private final Configurations configurations;
+        private final int numCategories;
+        private final int[] counts;
+        private final int[] rowTotals;
+
+        private Table(Configurations configurations, int numCategories, int[] counts) {
+            this.configurations = configurations;
+            this.numCategories = numCategories;
+            this.counts = counts;
+            this.rowTotals = new int[configurations.numRows];
+
+            for (int j = 0; j < rowTotals.length; j++) {
+                for (int k = 0; k < numCategories; k++) {
+                    rowTotals[j] += counts[j * numCategories + k];
+                }
+            }
+        }
+
+        /**
+         * @return the number of configurations of the parents, whether or not they occur.
+         */
+        public double getNumConfigurations() {
+            return configurations.numConfigurations;
+        }
+
+        /**
+         * @return the number of categories of the child.
+         */
+        public int getNumCategories() {
+            return numCategories;
+        }
+
+        /**
+         * @return true if every configuration of the parents is a row of the table.
+         */
+        public boolean isDense() {
+            return configurations.isDense();
+        }
+
+        /**
+         * @return the number of rows of the table.
+         */
+        public int getNumRows() {
+            return configurations.numRows;
+        }
+
+        /**
+         * @return the number of rows with the given row's configuration of parents and the given value of the child.
+         */
+        public int getCount(int row, int value) {
+            return counts[row * numCategories + value];
+        }
+
+        /**
+         * @return the number of rows with the given row's configuration of parents.
+         */
+        public int getRowTotal(int row) {
+            return rowTotals[row];
+        }
+
+        /**
+         * @return the value of the p'th parent in the given row's configuration.
+         */
+        public int getParentValue(int row, int p) {
+            return configurations.getParentValue(row, p);
+        }
+    }
+
+    // The number of the configuration of parent values in each row.
+    private static final class Configurations {
+
+        // For each row of the data, the number of its configuration, or -1 if a value is missing.
+        private final int[] codes;
+
+        private final int numParents;
+
+        // The number of configurations of the parents, whether or not they occur.
+        private final double numConfigurations;
+
+        // The number of configurations numbered.
+        private final int numRows;
+
+        // If dense, the numbers of categories of the parents; otherwise null.
+        private final int[] dims;
+
+        // If not dense, the parent values of each configuration numbered, in order; otherwise null.
+        private final int[] values;
+
+        // Dense.
+        Configurations(int[] codes, int[] dims, double numConfigurations) {
+            this.codes = codes;
+            this.numParents = dims.length;
+            this.numConfigurations = numConfigurations;
+            this.numRows = (int) numConfigurations;
+            this.dims = dims;
+            this.values = null;
+        }
+
+        // Sparse.
+        Configurations(int[] codes, int numParents, double numConfigurations, int[] values) {
+            this.codes = codes;
+            this.numParents = numParents;
+            this.numConfigurations = numConfigurations;
+            this.numRows = values.length / numParents;
+            this.dims = null;
+            this.values = values;
+        }
+
+        boolean isDense() {
+            return dims != null;
+        }
+
+        int[] dims(int dim) {
+            int[] _dims = Arrays.copyOf(dims, dims.length + 1);
+            _dims[dims.length] = dim;
+            return _dims;
+        }
+
+        int getParentValue(int row, int p) {
+            if (p < 0 || p >= numParents) throw new IllegalArgumentException("No parent " + p);
+
+            if (values != null) {
+                return values[row * numParents + p];
+            }
+
+            for (int q = numParents - 1; q > p; q--) {
+                row /= dims[q];
+            }
+
+            return row % dims[p];
+        }
+    }
+
+    // An open addressing map from non-negative ints to ints, with -1 for absent.
+    private static final class IntIntMap {
+        private int[] keys;
+        private int[] values;
+        private int size = 0;
+
+        IntIntMap(int capacity) {
+            int n = Integer.highestOneBit(Math.max(4, capacity) * 2 - 1) << 1;
+            keys = new int[n];
+            values = new int[n];
+            Arrays.fill(keys, -1);
+        }
+
+        int get(int key) {
+            int mask = keys.length - 1;
+
+            for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+                if (keys[i] == key) return values[i];
+                if (keys[i] == -1) return -1;
+            }
+        }
+
+        void put(int key, int value) {
+            if (2 * (size + 1) > keys.length) grow();
+
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+
+            while (keys[i] != -1 && keys[i] != key) i = (i + 1) & mask;
+
+            if (keys[i] == -1) size++;
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new int[2 * oldKeys.length];
+            values = new int[2 * oldKeys.length];
+            Arrays.fill(keys, -1);
+            size = 0;
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != -1) put(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.SearchExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+/**
+ * Accumulates the means and co-moments of continuous data one row or one chunk of rows at a time, so that a
+ * covariance matrix can be formed without holding the data in memory. Single rows are added by Welford's update;
+ * a chunk is summarized on its own (in parallel over columns, on the shared SearchExecutor) and folded in with the
+ * pairwise update of Chan et al., which is also used to merge accumulators built separately, say over different
+ * parts of a file.
+ * <p>
+ * Rows with a missing value (NaN) are skipped. Methods are synchronized, so chunks may be added from several
+ * threads.
+ *
+ * @author agent
+ */
+public class CovarianceAccumulator {
+
+    // Gives each accumulator a rank, so that two being merged are always locked in the same order.
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    private final long id = NEXT_ID.getAndIncrement();
+
+    private final int numVariables;
+
+    /**
+     * The number of rows added.
+     */
+    private long sampleSize = 0;
+
+    private final double[] means;
+
+    /**
+     * The sums of products of deviations from the means, in the lower triangle.
+     */
+    private final double[][] comoments;
+
+    /**
+     * Constructs an empty accumulator for the given number of variables.
+     */
+    public CovarianceAccumulator(int numVariables) {
+        if (numVariables < 0) throw new IllegalArgumentException("Number of variables must be >= 0: " + numVariables);
+
+        this.numVariables = numVariables;
+        this.means = new double[numVariables];
+        this.comoments = new double[numVariables][];
+
+        for (int i = 0; i < numVariables; i++) {
+            comoments[i] = new double[i + 1];
+        }
+    }
+
+    /**
+     * Adds one row of data.
+     */
+    public synchronized void add(double[] row) {
+        checkLength(row);
+
+        for (double x : row) {
+            if (Double.isNaN(x)) return;
+        }
+
+        sampleSize++;
+
+        double[] delta = new double[numVariables];
+
+        for (int i = 0; i < numVariables; i++) {
+            delta[i] = row[i] - means[i];
+            means[i] += delta[i] / sampleSize;
+        }
+
+        for (int i = 0; i < numVariables; i++) {
+            double d = row[i] - means[i];
+
+            for (int j = 0; j <= i; j++) {
+                comoments[i][j] += d * delta[j];
+            }
+        }
+    }
+
+    /**
+     * Adds the first numRows rows of the given array.
+     */
+    public void add(double[][] rows, int numRows) {
+        merge(summarize(rows, numRows));
+    }
+
+    /**
+     * Adds the rows of the given data set, which must be continuous.
+     */
+    public void add(DataSet dataSet) {
+        if (!dataSet.isContinuous()) {
+            throw new IllegalArgumentException("Not a continuous data set.");
+        }
+
+        add(dataSet.getDoubleData().toArray(), dataSet.getNumRows());
+    }
+
+    /**
+     * Folds the data summarized by the given accumulator into this one.
+     */
+    public void merge(CovarianceAccumulator other) {
+        if (other.numVariables != numVariables) {
+            throw new IllegalArgumentException("Expecting " + numVariables + " variables: " + other.numVariables);
+        }
+
+        if (other == this) {
+            throw new IllegalArgumentException("Can't merge an accumulator into itself.");
+        }
+
+        // Locking in the order of the ids means that a.merge(b) and b.merge(a) in two threads can't deadlock.
+        CovarianceAccumulator first = id < other.id ? this : other;
+        CovarianceAccumulator second = first == this ? other : this;
+
+        synchronized (first) {
+            synchronized (second) {
+                if (other.sampleSize == 0) return;
+
+                long n = sampleSize + other.sampleSize;
+                double f = sampleSize * (double) other.sampleSize / n;
+
+                double[] delta = new double[numVariables];
+
+                for (int i = 0; i < numVariables; i++) {
+                    delta[i] = other.means[i] - means[i];
+                }
+
+                forEachVariable(i -> {
+                    double[] a = comoments[i];
+                    double[] b = other.comoments[i];
+
+                    for (int j = 0; j <= i; j++) {
+                        a[j] += b[j] + delta[i] * delta[j] * f;
+                    }
+                });
+
+                for (int i = 0; i < numVariables; i++) {
+                    means[i] += delta[i] * other.sampleSize / n;
+                }
+
+                sampleSize = n;
+            }
+        }
+    }
+
+    /**
+     * @return the number of rows added.
+     */
+    public synchronized long getSampleSize() {
+        return sampleSize;
+    }
+
+    public int getNumVariables() {
+        return numVariables;
+    }
+
+    /**
+     * @return the means of the variables.
+     */
+    public synchronized double[] getMeans() {
+        return means.clone();
+    }
+
+    /**
+     * @return the covariance matrix of the rows added, divided by n - 1 if biasCorrected, by n if not.
+     */
+    public synchronized double[][] getCovariances(boolean biasCorrected) {
+        if (sampleSize < (biasCorrected ? 2 : 1)) {
+            throw new IllegalStateException("Too few rows for covariances: " + sampleSize);
+        }
+
+        double divisor = biasCorrected ? sampleSize - 1 : sampleSize;
+        double[][] covariances = new double[numVariables][numVariables];
+
+        for (int i = 0; i < numVariables; i++) {
+            for (int j = 0; j <= i; j++) {
+                covariances[i][j] = comoments[i][j] / divisor;
+                covariances[j][i] = covariances[i][j];
+            }
+        }
+
+        return covariances;
+    }
+
+    /**
+     * @return the (bias corrected) covariance matrix of the rows added, over the given variables, for use for
+     * instance in SemBicScore or IndTestFisherZ.
+     */
+    public ICovarianceMatrix getCovarianceMatrix(List<Node> variables) {
+        if (variables.size() != numVariables) {
+            throw new IllegalArgumentException("Expecting " + numVariables + " variables: " + variables.size());
+        }
+
+        long sampleSize = getSampleSize();
+
+        if (sampleSize > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Sample size too large for a covariance matrix: " + sampleSize);
+        }
+
+        return new CovarianceMatrix(variables, getCovariances(true), (int) sampleSize);
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    // Means and co-moments of a chunk by themselves, two-pass, over the complete rows.
+    private CovarianceAccumulator summarize(double[][] rows, int numRows) {
+        CovarianceAccumulator chunk = new CovarianceAccumulator(numVariables);
+
+        int[] complete = new int[numRows];
+        int n = 0;
+
+        ROW:
+        for (int r = 0; r < numRows; r++) {
+            checkLength(rows[r]);
+
+            for (double x : rows[r]) {
+                if (Double.isNaN(x)) continue ROW;
+            }
+
+            complete[n++] = r;
+        }
+
+        if (n == 0) return chunk;
+
+        final int _n = n;
+        final double[][] centered = new double[numVariables][n];
+
+        forEachVariable(i -> {
+            double sum = 0;
+            for (int r = 0; r < _n; r++) sum += rows[complete[r]][i];
+            double mean = sum / _n;
+
+            double[] x = centered[i];
+            for (int r = 0; r < _n; r++) x[r] = rows[complete[r]][i] - mean;
+
+            chunk.means[i] = mean;
+        });
+
+        forEachVariable(i -> {
+            double[] x = centered[i];
+
+            for (int j = 0; j <= i; j++) {
+                double[] y = centered[j];
+                double sum = 0;
+                for (int r = 0; r < _n; r++) sum += x[r] * y[r];
+                chunk.comoments[i][j] = sum;
+            }
+        });
+
+        chunk.sampleSize = n;
+        return chunk;
+    }
+
+    // Runs the action for each variable on the search executor. Task t takes variables t, t + k, t + 2k, ...,
+    // for k tasks, which evens out the rows of the lower triangle, whose lengths grow with the variable.
+    private void forEachVariable(IntConsumer action) {
+        int numTasks = Math.min(numVariables, SearchExecutor.getInstance().getParallelism());
+
+        if (numTasks <= 1) {
+            for (int i = 0; i < numVariables; i++) action.accept(i);
+            return;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+
+        for (int t = 0; t < numTasks; t++) {
+            final int _t = t;
+
+            tasks.add(() -> {
+                for (int i = _t; i < numVariables; i += numTasks) action.accept(i);
+                return null;
+            });
+        }
+
+        SearchExecutor.getInstance().invokeAll("CovarianceAccumulator", tasks);
+    }
+
+    private void checkLength(double[] row) {
+        if (row.length != numVariables) {
+            throw new IllegalArgumentException("Expecting a row of length " + numVariables + ": " + row.length);
+        }
+    }
+}
@@ -22,13 +22,17 @@ package edu.cmu.tetrad.data;
 
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.NumberFormatUtil;
+import edu.cmu.tetrad.util.SearchExecutor;
 import edu.cmu.tetrad.util.TetradAlgebra;
 import edu.cmu.tetrad.util.TetradMatrix;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.nio.DoubleBuffer;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 
 /**
@@ -102,10 +106,19 @@ public class CovarianceMatrix implements ICovarianceMatrix {
             throw new IllegalArgumentException("Not a continuous data set.");
         }
 
-        CovariancesDoubleForkJoin covariances = new CovariancesDoubleForkJoin(dataSet.getDoubleData().toArray(), biasCorrected);
         this.variables = Collections.unmodifiableList(dataSet.getVariables());
         this.sampleSize = dataSet.getNumRows();
-        this._covariancesMatrix = new TetradMatrix(covariances.getMatrix());
+
+        DataBox box = dataSet instanceof BoxDataSet ? ((BoxDataSet) dataSet).getDataBox() : null;
+
+        if (box instanceof MappedDataBox) {
+            this._covariancesMatrix = new TetradMatrix(covariances((MappedDataBox) box, biasCorrected));
+        } else if (box instanceof ResampledDataBox) {
+            this._covariancesMatrix = new TetradMatrix(covariances((ResampledDataBox) box, biasCorrected));
+        } else {
+            CovariancesDoubleForkJoin covariances = new CovariancesDoubleForkJoin(dataSet.getDoubleData().toArray(), biasCorrected);
+            this._covariancesMatrix = new TetradMatrix(covariances.getMatrix());
+        }
     }
 
     /**
@@ -460,6 +473,123 @@ public class CovarianceMatrix implements ICovarianceMatrix {
 
     //========================PRIVATE METHODS============================//
 
+    // Calculates covariances column by column from a mapped data box, without copying the data onto the heap.
+    // Only one column per worker thread is held on the heap at a time.
+    private static double[][] covariances(final MappedDataBox box, final boolean biasCorrected) {
+        final int numRows = box.numRows();
+        final int numCols = box.numCols();
+        final double[] means = new double[numCols];
+        final double[][] covariances = new double[numCols][numCols];
+
+        forEachColumn(numCols, col -> {
+            DoubleBuffer column = box.getDoubleColumn(col);
+            double sum = 0;
+            for (int row = 0; row < numRows; row++) sum += column.get(row);
+            means[col] = sum / numRows;
+        });
+
+        forEachColumn(numCols, col -> {
+            double[] x = new double[numRows];
+            box.getDoubleColumn(col).get(x);
+
+            for (int col2 = 0; col2 <= col; col2++) {
+                DoubleBuffer y = box.getDoubleColumn(col2);
+                double variance = 0;
+
+                for (int row = 0; row < numRows; row++) {
+                    variance += ((x[row] - means[col]) * (y.get(row) - means[col2]) - variance) / (row + 1);
+                }
+
+                variance = biasCorrected ? variance * ((double) numRows / (double) (numRows - 1)) : variance;
+                covariances[col][col2] = variance;
+                covariances[col2][col] = variance;
+            }
+        });
+
+        return covariances;
+    }
+
+    // Calculates weighted covariances of a resample from the columns of the data it was drawn from,
+    // visiting each distinct row once with its multiplicity.
+    private static double[][] covariances(final ResampledDataBox box, final boolean biasCorrected) {
+        DataBox original = box.getDataBox();
+
+        final double[][] columns = original instanceof VerticalDoubleDataBox
+                ? ((VerticalDoubleDataBox) original).getVariableVectors()
+                : new VerticalDoubleDataBox(original).getVariableVectors();
+
+        final int[] weights = box.getWeights();
+        final int numCols = box.numCols();
+        final int n = box.numRows();
+
+        int numDistinct = 0;
+        for (int weight : weights) if (weight > 0) numDistinct++;
+
+        final int[] rows = new int[numDistinct];
+        final double[] w = new double[numDistinct];
+
+        for (int r = 0, i = 0; r < weights.length; r++) {
+            if (weights[r] > 0) {
+                rows[i] = r;
+                w[i++] = weights[r];
+            }
+        }
+
+        final double[] means = new double[numCols];
+        final double[][] covariances = new double[numCols][numCols];
+
+        forEachColumn(numCols, col -> {
+            double[] x = columns[col];
+            double sum = 0;
+            for (int i = 0; i < rows.length; i++) sum += w[i] * x[rows[i]];
+            means[col] = sum / n;
+        });
+
+        forEachColumn(numCols, col -> {
+            double[] x = new double[rows.length];
+            for (int i = 0; i < rows.length; i++) x[i] = w[i] * (columns[col][rows[i]] - means[col]);
+
+            for (int col2 = 0; col2 <= col; col2++) {
+                double[] y = columns[col2];
+                double sum = 0;
+
+                for (int i = 0; i < rows.length; i++) {
+                    sum += x[i] * (y[rows[i]] - means[col2]);
+                }
+
+                double variance = sum / (biasCorrected ? n - 1 : n);
+                covariances[col][col2] = variance;
+                covariances[col2][col] = variance;
+            }
+        });
+
+        return covariances;
+    }
+
+    // Runs the action for each column on the search executor. Task t takes columns t, t + k, t + 2k, ..., for
+    // k tasks, which evens out the rows of the lower triangle, whose lengths grow with the column.
+    private static void forEachColumn(int numCols, IntConsumer action) {
+        int numTasks = Math.min(numCols, SearchExecutor.getInstance().getParallelism());
+
+        if (numTasks <= 1) {
+            for (int col = 0; col < numCols; col++) action.accept(col);
+            return;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+
+        for (int t = 0; t < numTasks; t++) {
+            final int _t = t;
+
+            tasks.add(() -> {
+                for (int col = _t; col < numCols; col += numTasks) action.accept(col);
+                return null;
+            });
+        }
+
+        SearchExecutor.getInstance().invokeAll("CovarianceMatrix", tasks);
+    }
+
     private Set<Node> getSelectedVariables() {
         return selectedVariables;
     }
@@ -0,0 +1,488 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Stores a 2D array of data in a column-major binary file that is memory-mapped rather than read onto the heap,
+ * so that data sets larger than the heap can be searched over, and a data set written once can be reopened
+ * without parsing. Continuous columns are stored as doubles, with Double.NaN for missing values, and discrete
+ * columns as ints, with -99 for missing values. The variables, with their categories, are stored in the file
+ * header. Files are written with <code>MappedDataBoxWriter</code>.
+ * <p>
+ * Column views may be obtained with <code>getDoubleColumn</code> and <code>getIntColumn</code>, so that
+ * calculations can stream over columns without copying them.
+ *
+ * @author agent
+ * @see MappedDataBoxWriter
+ */
+public class MappedDataBox implements DataBox {
+    static final long serialVersionUID = 23L;
+
+    static final int MAGIC = 0x54445842;
+    static final int VERSION = 1;
+    static final byte CONTINUOUS = 0;
+    static final byte DISCRETE = 1;
+
+    // The largest region mapped at once; columns are grouped into regions no larger than this.
+    private static final long MAX_REGION_BYTES = 1L << 30;
+
+    /**
+     * The path of the file.
+     *
+     * @serial
+     */
+    private final String path;
+
+    /**
+     * True if the file is mapped for writing.
+     *
+     * @serial
+     */
+    private final boolean writable;
+
+    private transient int numRows;
+    private transient List<Node> variables;
+    private transient DoubleBuffer[] doubleColumns;
+    private transient IntBuffer[] intColumns;
+
+    /**
+     * Maps the given file, read-only.
+     */
+    public MappedDataBox(File file) throws IOException {
+        this(file, false);
+    }
+
+    /**
+     * Maps the given file, for writing if <code>writable</code> is true.
+     */
+    public MappedDataBox(File file, boolean writable) throws IOException {
+        this.path = file.getAbsolutePath();
+        this.writable = writable;
+        map();
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static BoxDataSet serializableInstance() {
+        List<Node> vars = new ArrayList<>();
+        for (int i = 0; i < 4; i++) vars.add(new ContinuousVariable("X" + i));
+        return new BoxDataSet(new ShortDataBox(4, 4), vars);
+    }
+
+    /**
+     * @return the number of rows in this data box.
+     */
+    public int numRows() {
+        return numRows;
+    }
+
+    /**
+     * @return the number of columns in this data box.
+     */
+    public int numCols() {
+        return variables.size();
+    }
+
+    /**
+     * Sets the value at the given row/column to the given Number value, written through to the file.
+     *
+     * @throws UnsupportedOperationException if the file was mapped read-only.
+     */
+    public void set(int row, int col, Number value) {
+        if (!writable) {
+            throw new UnsupportedOperationException("This data box was opened read-only: " + path);
+        }
+
+        if (intColumns[col] != null) {
+            intColumns[col].put(row, value == null ? DiscreteVariable.MISSING_VALUE : value.intValue());
+        } else {
+            doubleColumns[col].put(row, value == null ? Double.NaN : value.doubleValue());
+        }
+    }
+
+    /**
+     * @return the Number value at the given row and column. If a discrete value is missing (-99), null is
+     * returned.
+     */
+    public Number get(int row, int col) {
+        if (intColumns[col] != null) {
+            int datum = intColumns[col].get(row);
+            return datum == DiscreteVariable.MISSING_VALUE ? null : datum;
+        } else {
+            return doubleColumns[col].get(row);
+        }
+    }
+
+    /**
+     * @return the value at the given row and column as a double, without boxing.
+     */
+    public double getDouble(int row, int col) {
+        if (intColumns[col] != null) {
+            return intColumns[col].get(row);
+        } else {
+            return doubleColumns[col].get(row);
+        }
+    }
+
+    /**
+     * @return the value at the given row and column of a discrete column, without boxing.
+     */
+    public int getInt(int row, int col) {
+        return intColumns[col].get(row);
+    }
+
+    /**
+     * @return true if the given column is stored as ints.
+     */
+    public boolean isDiscrete(int col) {
+        return intColumns[col] != null;
+    }
+
+    /**
+     * @return a read-only view of the given continuous column, backed by the file.
+     */
+    public DoubleBuffer getDoubleColumn(int col) {
+        if (doubleColumns[col] == null) {
+            throw new IllegalArgumentException("Not a continuous column: " + col);
+        }
+
+        return doubleColumns[col].asReadOnlyBuffer();
+    }
+
+    /**
+     * @return a read-only view of the given discrete column, backed by the file.
+     */
+    public IntBuffer getIntColumn(int col) {
+        if (intColumns[col] == null) {
+            throw new IllegalArgumentException("Not a discrete column: " + col);
+        }
+
+        return intColumns[col].asReadOnlyBuffer();
+    }
+
+    /**
+     * @return the variables stored in the file header, in column order.
+     */
+    public List<Node> getVariables() {
+        return Collections.unmodifiableList(variables);
+    }
+
+    /**
+     * @return the mapped file.
+     */
+    public File getFile() {
+        return new File(path);
+    }
+
+    /**
+     * @return a copy of this data box, on the heap.
+     */
+    public DataBox copy() {
+        return like();
+    }
+
+    /**
+     * @return a copy of this data box, on the heap.
+     */
+    public DataBox like() {
+        int[] rows = new int[numRows()];
+        int[] cols = new int[numCols()];
+
+        for (int i = 0; i < numRows(); i++) rows[i] = i;
+        for (int j = 0; j < numCols(); j++) cols[j] = j;
+
+        return viewSelection(rows, cols);
+    }
+
+    /**
+     * @return the given rows and columns of this data box, copied onto the heap.
+     */
+    @Override
+    public DataBox viewSelection(int[] rows, int[] cols) {
+        boolean allContinuous = true;
+        boolean allDiscrete = true;
+
+        for (int col : cols) {
+            if (isDiscrete(col)) {
+                allContinuous = false;
+            } else {
+                allDiscrete = false;
+            }
+        }
+
+        if (allContinuous) {
+            double[][] data = new double[cols.length][rows.length];
+
+            for (int j = 0; j < cols.length; j++) {
+                DoubleBuffer column = doubleColumns[cols[j]];
+                for (int i = 0; i < rows.length; i++) data[j][i] = column.get(rows[i]);
+            }
+
+            return cols.length == 0 ? new VerticalDoubleDataBox(rows.length, 0) : new VerticalDoubleDataBox(data);
+        } else if (allDiscrete) {
+            int[][] data = new int[cols.length][rows.length];
+
+            for (int j = 0; j < cols.length; j++) {
+                IntBuffer column = intColumns[cols[j]];
+                for (int i = 0; i < rows.length; i++) data[j][i] = column.get(rows[i]);
+            }
+
+            return new VerticalIntDataBox(data);
+        } else {
+            List<Node> selected = new ArrayList<>();
+            for (int col : cols) selected.add(variables.get(col));
+            DataBox box = new MixedDataBox(selected, rows.length);
+
+            for (int i = 0; i < rows.length; i++) {
+                for (int j = 0; j < cols.length; j++) {
+                    box.set(i, j, get(rows[i], cols[j]));
+                }
+            }
+
+            return box;
+        }
+    }
+
+    //=============================PRIVATE METHODS=========================//
+
+    private void map() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path, writable ? "rw" : "r")) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+            Header header;
+
+            try {
+                header = Header.read(in);
+            } finally {
+                in.close();
+            }
+
+            this.numRows = header.numRows;
+            this.variables = header.variables;
+
+            int numCols = variables.size();
+            this.doubleColumns = new DoubleBuffer[numCols];
+            this.intColumns = new IntBuffer[numCols];
+
+            FileChannel channel = file.getChannel();
+            FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+
+            if (channel.size() < header.dataOffset + header.dataBytes()) {
+                throw new IOException("File is truncated: " + path);
+            }
+
+            int col = 0;
+
+            while (col < numCols) {
+                long start = header.columnOffset(col);
+                int end = col + 1;
+
+                while (end < numCols && header.columnOffset(end + 1) - start <= MAX_REGION_BYTES) {
+                    end++;
+                }
+
+                MappedByteBuffer region = channel.map(mode, start, header.columnOffset(end) - start);
+                region.order(ByteOrder.LITTLE_ENDIAN);
+
+                for (int j = col; j < end; j++) {
+                    region.limit((int) (header.columnOffset(j) - start) + numRows * header.width(j));
+                    region.position((int) (header.columnOffset(j) - start));
+
+                    if (header.types[j] == DISCRETE) {
+                        intColumns[j] = region.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+                    } else {
+                        doubleColumns[j] = region.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+                    }
+
+                    region.clear();
+                }
+
+                col = end;
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream s) throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        map();
+    }
+
+    /**
+     * The file header: magic number, version, number of rows, number of columns, then for each column its type,
+     * name and, if discrete, its categories. Column data starts at the next multiple of 8 bytes, each column
+     * padded to a multiple of 8 bytes.
+     */
+    static final class Header {
+        final int numRows;
+        final List<Node> variables;
+        final byte[] types;
+        final long dataOffset;
+        private final long[] offsets;
+
+        Header(int numRows, List<Node> variables, long headerBytes) {
+            this.numRows = numRows;
+            this.variables = variables;
+            this.types = new byte[variables.size()];
+
+            for (int j = 0; j < types.length; j++) {
+                Node node = variables.get(j);
+
+                if (node instanceof DiscreteVariable) {
+                    types[j] = DISCRETE;
+                } else if (node instanceof ContinuousVariable) {
+                    types[j] = CONTINUOUS;
+                } else {
+                    throw new IllegalArgumentException("Expecting continuous or discrete variables: " + node);
+                }
+
+                if (align((long) numRows * width(j)) > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Column too long to map: " + node);
+                }
+            }
+
+            this.dataOffset = align(headerBytes);
+            this.offsets = new long[types.length + 1];
+            offsets[0] = dataOffset;
+
+            for (int j = 0; j < types.length; j++) {
+                offsets[j + 1] = offsets[j] + align((long) numRows * width(j));
+            }
+        }
+
+        int width(int col) {
+            return types[col] == DISCRETE ? 4 : 8;
+        }
+
+        long columnOffset(int col) {
+            return offsets[col];
+        }
+
+        long dataBytes() {
+            return columnOffset(types.length) - dataOffset;
+        }
+
+        static long align(long bytes) {
+            return (bytes + 7) & ~7L;
+        }
+
+        static byte[] toBytes(int numRows, List<Node> variables) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(numRows);
+            out.writeInt(variables.size());
+
+            for (Node node : variables) {
+                if (node instanceof DiscreteVariable) {
+                    out.writeByte(DISCRETE);
+                    out.writeUTF(node.getName());
+
+                    List<String> categories = ((DiscreteVariable) node).getCategories();
+                    out.writeInt(categories.size());
+                    for (String category : categories) out.writeUTF(category);
+                } else {
+                    out.writeByte(CONTINUOUS);
+                    out.writeUTF(node.getName());
+                }
+            }
+
+            out.close();
+            return bytes.toByteArray();
+        }
+
+        static Header read(DataInputStream in) throws IOException {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a mapped data file.");
+            }
+
+            int version = in.readInt();
+
+            if (version != VERSION) {
+                throw new IOException("Unsupported mapped data file version: " + version);
+            }
+
+            int numRows = in.readInt();
+            int numCols = in.readInt();
+            long headerBytes = 16;
+            List<Node> variables = new ArrayList<>();
+
+            for (int j = 0; j < numCols; j++) {
+                byte type = in.readByte();
+                String name = in.readUTF();
+                headerBytes += 1 + 2 + utfLength(name);
+
+                if (type == DISCRETE) {
+                    int numCategories = in.readInt();
+                    headerBytes += 4;
+                    List<String> categories = new ArrayList<>();
+
+                    for (int k = 0; k < numCategories; k++) {
+                        String category = in.readUTF();
+                        headerBytes += 2 + utfLength(category);
+                        categories.add(category);
+                    }
+
+                    variables.add(new DiscreteVariable(name, categories));
+                } else if (type == CONTINUOUS) {
+                    variables.add(new ContinuousVariable(name));
+                } else {
+                    throw new IOException("Unknown column type: " + type);
+                }
+            }
+
+            return new Header(numRows, variables, headerBytes);
+        }
+
+        // The length of the modified UTF-8 encoding written by DataOutput.writeUTF.
+        private static int utfLength(String s) {
+            int length = 0;
+
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+
+                if (c >= 0x0001 && c <= 0x007F) {
+                    length++;
+                } else if (c > 0x07FF) {
+                    length += 3;
+                } else {
+                    length += 2;
+                }
+            }
+
+            return length;
+        }
+    }
+}
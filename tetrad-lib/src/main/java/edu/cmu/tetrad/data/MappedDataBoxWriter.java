@@ -0,0 +1,213 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * Writes the column-major binary files read by <code>MappedDataBox</code>. The header is written when the
+ * writer is constructed; columns may then be written in any order, one at a time, or continuous data may be
+ * written a block of rows at a time, so that a data set need never be held on the heap in full. Values that are
+ * not written read back as zeros.
+ *
+ * @author agent
+ * @see MappedDataBox
+ */
+public class MappedDataBoxWriter implements Closeable {
+
+    // The size of the buffer through which columns are written.
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final File file;
+    private final RandomAccessFile out;
+    private final FileChannel channel;
+    private final MappedDataBox.Header header;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Creates the given file, overwriting it if it exists, for a data set over the given variables, which must
+     * be continuous or discrete, with the given number of rows.
+     */
+    public MappedDataBoxWriter(File file, List<Node> variables, int numRows) throws IOException {
+        if (numRows < 0) {
+            throw new IllegalArgumentException("Number of rows must be non-negative: " + numRows);
+        }
+
+        byte[] headerBytes = MappedDataBox.Header.toBytes(numRows, variables);
+
+        this.file = file;
+        this.header = new MappedDataBox.Header(numRows, variables, headerBytes.length);
+        this.out = new RandomAccessFile(file, "rw");
+        this.channel = out.getChannel();
+
+        out.setLength(0);
+        out.write(headerBytes);
+        out.setLength(header.dataOffset + header.dataBytes());
+    }
+
+    /**
+     * Writes a whole data set, which must be continuous, discrete or mixed, and maps the result.
+     */
+    public static MappedDataBox write(File file, DataSet dataSet) throws IOException {
+        int numRows = dataSet.getNumRows();
+
+        try (MappedDataBoxWriter writer = new MappedDataBoxWriter(file, dataSet.getVariables(), numRows)) {
+            DataBox box = dataSet instanceof BoxDataSet ? ((BoxDataSet) dataSet).getDataBox() : null;
+
+            for (int j = 0; j < dataSet.getNumColumns(); j++) {
+                if (box instanceof VerticalDoubleDataBox && numRows > 0) {
+                    writer.writeColumn(j, ((VerticalDoubleDataBox) box).getVariableVectors()[j]);
+                } else if (box instanceof VerticalIntDataBox) {
+                    writer.writeColumn(j, ((VerticalIntDataBox) box).getVariableVectors()[j]);
+                } else if (writer.isDiscrete(j)) {
+                    int[] column = new int[numRows];
+                    for (int i = 0; i < numRows; i++) column[i] = dataSet.getInt(i, j);
+                    writer.writeColumn(j, column);
+                } else {
+                    double[] column = new double[numRows];
+                    for (int i = 0; i < numRows; i++) column[i] = dataSet.getDouble(i, j);
+                    writer.writeColumn(j, column);
+                }
+            }
+        }
+
+        return new MappedDataBox(file);
+    }
+
+    /**
+     * @return true if the given column is discrete.
+     */
+    public boolean isDiscrete(int col) {
+        return header.types[col] == MappedDataBox.DISCRETE;
+    }
+
+    /**
+     * Writes the values of the given continuous column.
+     */
+    public void writeColumn(int col, double[] values) throws IOException {
+        if (isDiscrete(col)) {
+            throw new IllegalArgumentException("Column " + col + " is discrete.");
+        }
+
+        checkLength(values.length);
+        long position = header.columnOffset(col);
+        buffer.clear();
+
+        for (double value : values) {
+            if (!buffer.hasRemaining()) position = flush(position);
+            buffer.putDouble(value);
+        }
+
+        flush(position);
+    }
+
+    /**
+     * Writes the values of the given discrete column.
+     */
+    public void writeColumn(int col, int[] values) throws IOException {
+        if (!isDiscrete(col)) {
+            throw new IllegalArgumentException("Column " + col + " is continuous.");
+        }
+
+        checkLength(values.length);
+        long position = header.columnOffset(col);
+        buffer.clear();
+
+        for (int value : values) {
+            if (!buffer.hasRemaining()) position = flush(position);
+            buffer.putInt(value);
+        }
+
+        flush(position);
+    }
+
+    /**
+     * Writes a block of rows, starting at the given row, into the continuous columns, so that data read a chunk of
+     * rows at a time can be written without first being collected into columns. Only the first numRows rows of the
+     * given array are written.
+     */
+    public void writeRows(int firstRow, double[][] rows, int numRows) throws IOException {
+        if (firstRow < 0 || numRows < 0 || (long) firstRow + numRows > header.numRows) {
+            throw new IllegalArgumentException("Rows " + firstRow + " to " + ((long) firstRow + numRows)
+                    + " are out of range; expecting " + header.numRows + " rows.");
+        }
+
+        for (int col = 0; col < header.types.length; col++) {
+            if (isDiscrete(col)) {
+                throw new IllegalArgumentException("Column " + col + " is discrete.");
+            }
+        }
+
+        for (int col = 0; col < header.types.length; col++) {
+            long position = header.columnOffset(col) + (long) firstRow * Double.BYTES;
+            buffer.clear();
+
+            for (int i = 0; i < numRows; i++) {
+                if (!buffer.hasRemaining()) position = flush(position);
+                buffer.putDouble(rows[i][col]);
+            }
+
+            flush(position);
+        }
+    }
+
+    /**
+     * @return the file being written.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.force(false);
+        out.close();
+    }
+
+    //=============================PRIVATE METHODS=========================//
+
+    private void checkLength(int length) {
+        if (length != header.numRows) {
+            throw new IllegalArgumentException("Expecting " + header.numRows + " values, got " + length);
+        }
+    }
+
+    private long flush(long position) throws IOException {
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+
+        buffer.clear();
+        return position;
+    }
+}
@@ -0,0 +1,231 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.RandomUtil;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A resample of another data box, stored as a multiplicity for each of its rows rather than as
+ * a copy of the resampled rows. A bootstrap sample of n rows costs one int per original row
+ * this way, and every resample of the same data shares that data's columns.
+ * <p>
+ * Read as an ordinary data box, row i of the resample is original row r repeated weight(r)
+ * times, in order of r. CovarianceMatrix and ContingencyCounts recognize this box and compute their
+ * weighted statistics straight from the original columns; this is fastest if the original is
+ * a VerticalDoubleDataBox (continuous) or a VerticalIntDataBox (discrete). The box is read-only.
+ *
+ * @author agent
+ */
+public class ResampledDataBox implements DataBox {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * The data box that was resampled.
+     */
+    private final DataBox dataBox;
+
+    /**
+     * The number of times each row of dataBox occurs in the resample.
+     */
+    private final int[] weights;
+
+    /**
+     * The sum of the weights.
+     */
+    private final int numRows;
+
+    /**
+     * The original row for each row of the resample, built when first needed.
+     */
+    private transient volatile int[] rows;
+
+    /**
+     * Constructs a resample of the given data box with the given row multiplicities.
+     */
+    public ResampledDataBox(DataBox dataBox, int[] weights) {
+        if (dataBox == null) throw new NullPointerException("Data box not provided.");
+        if (weights == null) throw new NullPointerException("Weights not provided.");
+
+        if (weights.length != dataBox.numRows()) {
+            throw new IllegalArgumentException("Expecting one weight for each of the " + dataBox.numRows()
+                    + " rows: " + weights.length);
+        }
+
+        int sum = 0;
+
+        for (int weight : weights) {
+            if (weight < 0) throw new IllegalArgumentException("Weights must be >= 0: " + weight);
+            sum += weight;
+        }
+
+        this.dataBox = dataBox;
+        this.weights = weights;
+        this.numRows = sum;
+    }
+
+    /**
+     * @return a sample of sampleSize rows of the given data box, drawn with replacement. The rows
+     * are drawn from RandomUtil as DataUtils.getBootstrapSample draws them, so for a given seed the
+     * two give the same sample.
+     */
+    public static ResampledDataBox bootstrap(DataBox dataBox, int sampleSize) {
+        int[] weights = new int[dataBox.numRows()];
+        RandomUtil random = RandomUtil.getInstance();
+
+        for (int i = 0; i < sampleSize; i++) {
+            weights[random.nextInt(weights.length)]++;
+        }
+
+        return new ResampledDataBox(dataBox, weights);
+    }
+
+    /**
+     * @return a sample of sampleSize rows of the given data box, drawn without replacement (or all
+     * of the rows, if there are fewer than sampleSize). The rows are chosen by a partial Fisher-Yates
+     * shuffle drawn from RandomUtil, so the sample is reproducible from RandomUtil's seed. It is not
+     * the sample DataUtils.getResamplingDataset would draw for that seed, since that method also
+     * shuffles with an unseeded java.util.Random.
+     */
+    public static ResampledDataBox subsample(DataBox dataBox, int sampleSize) {
+        int n = dataBox.numRows();
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+
+        int[] weights = new int[n];
+        RandomUtil random = RandomUtil.getInstance();
+
+        for (int i = 0; i < Math.min(sampleSize, n); i++) {
+            int j = i + random.nextInt(n - i);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+            weights[order[i]] = 1;
+        }
+
+        return new ResampledDataBox(dataBox, weights);
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static BoxDataSet serializableInstance() {
+        List<Node> vars = new ArrayList<>();
+        for (int i = 0; i < 4; i++) vars.add(new ContinuousVariable("X" + i));
+        return new BoxDataSet(new ResampledDataBox(new VerticalDoubleDataBox(4, 4), new int[]{2, 0, 1, 1}), vars);
+    }
+
+    /**
+     * @return the data box that was resampled.
+     */
+    public DataBox getDataBox() {
+        return dataBox;
+    }
+
+    /**
+     * @return the number of times each row of getDataBox() occurs in the resample. This is the
+     * box's own array, so it should not be modified.
+     */
+    public int[] getWeights() {
+        return weights;
+    }
+
+    /**
+     * @return the size of the resample, that is, the sum of the weights.
+     */
+    public int numRows() {
+        return numRows;
+    }
+
+    public int numCols() {
+        return dataBox.numCols();
+    }
+
+    /**
+     * Not supported; a resample is a view of its data.
+     */
+    public void set(int row, int col, Number value) {
+        throw new UnsupportedOperationException("A resampled data box is read-only.");
+    }
+
+    public Number get(int row, int col) {
+        return dataBox.get(rows()[row], col);
+    }
+
+    /**
+     * @return the resample, copied out into a data box like the original.
+     */
+    public DataBox copy() {
+        return like();
+    }
+
+    /**
+     * @return the resample, copied out into a data box like the original.
+     */
+    public DataBox like() {
+        int[] cols = new int[numCols()];
+        for (int j = 0; j < cols.length; j++) cols[j] = j;
+        return dataBox.viewSelection(rows(), cols);
+    }
+
+    /**
+     * @return the given rows and columns of the resample, copied out into a data box like the original.
+     */
+    public DataBox viewSelection(int[] rows, int[] cols) {
+        int[] _rows = rows();
+        int[] selected = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) selected[i] = _rows[rows[i]];
+        return dataBox.viewSelection(selected, cols);
+    }
+
+    private int[] rows() {
+        int[] rows = this.rows;
+
+        if (rows == null) {
+            rows = new int[numRows];
+            int i = 0;
+
+            for (int r = 0; r < weights.length; r++) {
+                for (int k = 0; k < weights[r]; k++) {
+                    rows[i++] = r;
+                }
+            }
+
+            this.rows = rows;
+        }
+
+        return rows;
+    }
+
+    private void readObject(ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+
+        if (dataBox == null) throw new NullPointerException();
+        if (weights == null) throw new NullPointerException();
+    }
+}
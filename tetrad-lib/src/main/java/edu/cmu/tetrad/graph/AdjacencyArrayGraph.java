@@ -0,0 +1,1842 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+package edu.cmu.tetrad.graph;
+
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Stores a graph as, for each node, a sorted array of the integer indices of
+ * the nodes adjacent to it, together with the edges to those nodes. Nodes are
+ * given indices in the order they are added. Adjacency checks and edge lookups
+ * are binary searches over the int array of one node, and the ancestor,
+ * descendant and path methods work over node indices, so that searches on
+ * graphs of many thousands of nodes (FGES, PC, FCI, MeekRules) avoid walking
+ * lists of Edge objects and hashing nodes.</p>
+ * <p>
+ * Unlike EdgeListGraph, at most one edge may connect a pair of nodes; adding a
+ * different edge between nodes that are already adjacent returns false. The
+ * edges are stored as given, so properties and edge type probabilities set on
+ * them are kept.</p>
+ *
+ * @author agent
+ * @see EdgeListGraph
+ */
+public class AdjacencyArrayGraph implements Graph, TripleClassifier {
+
+    static final long serialVersionUID = 23L;
+
+    /**
+     * A list of the nodes in the graph, in the order in which they were added.
+     *
+     * @serial
+     */
+    private List<Node> nodes;
+
+    /**
+     * The node with each index, or null if that node has been removed.
+     *
+     * @serial
+     */
+    private Node[] nodesByIndex;
+
+    /**
+     * Map from each node to its index.
+     *
+     * @serial
+     */
+    private Map<Node, Integer> indices;
+
+    /**
+     * For each node index, the sorted indices of the adjacent nodes, in the
+     * first degrees[i] places.
+     *
+     * @serial
+     */
+    private int[][] adjacencies;
+
+    /**
+     * For each node index, the edges to the nodes in adjacencies, in the same
+     * order.
+     *
+     * @serial
+     */
+    private Edge[][] edges;
+
+    /**
+     * For each node index, the number of adjacent nodes.
+     *
+     * @serial
+     */
+    private int[] degrees;
+
+    /**
+     * The number of indices given out so far.
+     *
+     * @serial
+     */
+    private int numIndices = 0;
+
+    /**
+     * The number of edges in the graph.
+     *
+     * @serial
+     */
+    private int numEdges = 0;
+
+    /**
+     * Fires property change events.
+     */
+    private transient PropertyChangeSupport pcs;
+
+    /**
+     * Set of ambiguous triples.
+     */
+    private Set<Triple> ambiguousTriples = Collections.newSetFromMap(new ConcurrentHashMap<Triple, Boolean>());
+
+    /**
+     * @serial
+     */
+    private Set<Triple> underLineTriples = Collections.newSetFromMap(new ConcurrentHashMap<Triple, Boolean>());
+
+    /**
+     * @serial
+     */
+    private Set<Triple> dottedUnderLineTriples = Collections.newSetFromMap(new ConcurrentHashMap<Triple, Boolean>());
+
+    /**
+     * True iff nodes were removed since the last call to an accessor for
+     * ambiguous, underline, or dotted underline triples.
+     */
+    private boolean stuffRemovedSinceLastTripleAccess = false;
+
+    /**
+     * The set of highlighted edges.
+     */
+    private Set<Edge> highlightedEdges = new HashSet<>();
+
+    /**
+     * A hash from node names to nodes;
+     */
+    private Map<String, Node> namesHash = new HashMap<>();
+
+    private boolean pattern = false;
+
+    private boolean pag = false;
+
+    private Map<String, Object> attributes = new HashMap<>();
+
+    //==============================CONSTUCTORS===========================//
+
+    /**
+     * Constructs a new (empty) AdjacencyArrayGraph.
+     */
+    public AdjacencyArrayGraph() {
+        this.nodes = new ArrayList<>();
+        this.indices = new HashMap<>();
+        this.nodesByIndex = new Node[8];
+        this.adjacencies = new int[8][];
+        this.edges = new Edge[8][];
+        this.degrees = new int[8];
+    }
+
+    /**
+     * Constructs an AdjacencyArrayGraph using the nodes and edges of the given
+     * graph.
+     *
+     * @param graph the graph from which nodes and edges are is to be extracted.
+     * @throws IllegalArgumentException if the given graph has more than one
+     *                                  edge between some pair of nodes.
+     */
+    public AdjacencyArrayGraph(Graph graph) throws IllegalArgumentException {
+        this();
+
+        if (graph == null) {
+            throw new NullPointerException("Graph must not be null.");
+        }
+
+        transferNodesAndEdges(graph);
+        transferAttributes(graph);
+
+        this.ambiguousTriples = graph.getAmbiguousTriples();
+        this.underLineTriples = graph.getUnderLines();
+        this.dottedUnderLineTriples = graph.getDottedUnderlines();
+
+        for (Edge edge : graph.getEdges()) {
+            if (graph.isHighlighted(edge)) {
+                setHighlighted(edge, true);
+            }
+        }
+
+        this.pag = graph.isPag();
+        this.pattern = graph.isPattern();
+    }
+
+    /**
+     * Constructs a new graph, with no edges, using the the given variable
+     * names.
+     */
+    public AdjacencyArrayGraph(List<Node> nodes) {
+        this();
+
+        if (nodes == null) {
+            throw new NullPointerException();
+        }
+
+        for (Node node : nodes) {
+            if (!addNode(node)) {
+                throw new IllegalArgumentException();
+            }
+        }
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static AdjacencyArrayGraph serializableInstance() {
+        return new AdjacencyArrayGraph();
+    }
+
+    //===============================PUBLIC METHODS========================//
+
+    @Override
+    public boolean addDirectedEdge(Node node1, Node node2) {
+        return addEdge(Edges.directedEdge(node1, node2));
+    }
+
+    @Override
+    public boolean addUndirectedEdge(Node node1, Node node2) {
+        return addEdge(Edges.undirectedEdge(node1, node2));
+    }
+
+    @Override
+    public boolean addNondirectedEdge(Node node1, Node node2) {
+        return addEdge(Edges.nondirectedEdge(node1, node2));
+    }
+
+    @Override
+    public boolean addPartiallyOrientedEdge(Node node1, Node node2) {
+        return addEdge(Edges.partiallyOrientedEdge(node1, node2));
+    }
+
+    @Override
+    public boolean addBidirectedEdge(Node node1, Node node2) {
+        return addEdge(Edges.bidirectedEdge(node1, node2));
+    }
+
+    /**
+     * Adds an edge to the graph.
+     *
+     * @param edge the edge to be added
+     * @return true if the edge was added or is already in the graph, false if
+     * a different edge connects its nodes.
+     */
+    @Override
+    public synchronized boolean addEdge(Edge edge) {
+        if (edge == null) {
+            throw new NullPointerException();
+        }
+
+        int i = index(edge.getNode1());
+        int j = index(edge.getNode2());
+
+        if (i == -1 || j == -1) {
+            throw new NullPointerException("Can't add an edge unless both "
+                    + "nodes are in the graph: " + edge);
+        }
+
+        int k = find(i, j);
+
+        if (k >= 0) {
+            return edges[i][k].equals(edge);
+        }
+
+        insert(i, j, -k - 1, edge);
+
+        if (i != j) {
+            insert(j, i, -find(j, i) - 1, edge);
+        }
+
+        numEdges++;
+
+        if (pcs != null) {
+            pcs.firePropertyChange("edgeAdded", null, edge);
+        }
+
+        return true;
+    }
+
+    @Override
+    public void addPropertyChangeListener(PropertyChangeListener l) {
+        getPcs().addPropertyChangeListener(l);
+    }
+
+    /**
+     * Adds a node to the graph, giving it the next index.
+     *
+     * @param node the node to be added.
+     * @return true if the the node was added or is already in the graph.
+     */
+    @Override
+    public synchronized boolean addNode(Node node) {
+        if (node == null) {
+            throw new NullPointerException();
+        }
+
+        if (indices.containsKey(node)) {
+            return true;
+        }
+
+        if (numIndices == nodesByIndex.length) {
+            int capacity = 2 * numIndices;
+            nodesByIndex = Arrays.copyOf(nodesByIndex, capacity);
+            adjacencies = Arrays.copyOf(adjacencies, capacity);
+            edges = Arrays.copyOf(edges, capacity);
+            degrees = Arrays.copyOf(degrees, capacity);
+        }
+
+        int i = numIndices++;
+
+        nodesByIndex[i] = node;
+        adjacencies[i] = new int[4];
+        edges[i] = new Edge[4];
+        degrees[i] = 0;
+
+        indices.put(node, i);
+        nodes.add(node);
+        namesHash.put(node.getName(), node);
+
+        if (pcs != null && node.getNodeType() != NodeType.ERROR) {
+            pcs.firePropertyChange("nodeAdded", null, node);
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes all nodes (and therefore all edges) from the graph.
+     */
+    @Override
+    public synchronized void clear() {
+        for (Edge edge : getEdges()) {
+            if (pcs != null) {
+                pcs.firePropertyChange("edgeRemoved", edge, null);
+            }
+        }
+
+        for (Node node : nodes) {
+            if (pcs != null) {
+                pcs.firePropertyChange("nodeRemoved", node, null);
+            }
+        }
+
+        nodes.clear();
+        indices.clear();
+        namesHash.clear();
+
+        Arrays.fill(nodesByIndex, null);
+        Arrays.fill(adjacencies, null);
+        Arrays.fill(edges, null);
+        Arrays.fill(degrees, 0);
+
+        numIndices = 0;
+        numEdges = 0;
+    }
+
+    @Override
+    public boolean containsEdge(Edge edge) {
+        Edge _edge = getEdge(edge.getNode1(), edge.getNode2());
+        return _edge != null && _edge.equals(edge);
+    }
+
+    @Override
+    public boolean containsNode(Node node) {
+        return indices.containsKey(node);
+    }
+
+    @Override
+    public boolean existsDirectedCycle() {
+        int[] color = new int[numIndices];
+
+        for (int i = 0; i < numIndices; i++) {
+            if (nodesByIndex[i] != null && color[i] == 0 && existsDirectedCycleVisit(i, color)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return true iff there is a directed path from node1 to node2.
+     */
+    @Override
+    public boolean existsDirectedPathFromTo(Node node1, Node node2) {
+        int i = index(node1);
+        int j = index(node2);
+
+        if (i == -1 || j == -1) {
+            return false;
+        }
+
+        boolean[] visited = new boolean[numIndices];
+        Queue<Integer> queue = new ArrayDeque<>();
+        queue.add(i);
+
+        while (!queue.isEmpty()) {
+            int t = queue.remove();
+
+            for (int k = 0; k < degrees[t]; k++) {
+                int c = adjacencies[t][k];
+
+                if (!visited[c] && isDirectedOut(t, k)) {
+                    if (c == j) {
+                        return true;
+                    }
+
+                    visited[c] = true;
+                    queue.add(c);
+                }
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean existsUndirectedPathFromTo(Node node1, Node node2) {
+        int i = index(node1);
+        int j = index(node2);
+
+        if (i == -1 || j == -1) {
+            return false;
+        }
+
+        boolean[] visited = new boolean[numIndices];
+        Queue<Integer> queue = new ArrayDeque<>();
+        queue.add(i);
+        visited[i] = true;
+
+        while (!queue.isEmpty()) {
+            int t = queue.remove();
+
+            for (int k = 0; k < degrees[t]; k++) {
+                int c = adjacencies[t][k];
+
+                if (c == j) {
+                    return true;
+                }
+
+                if (!visited[c]) {
+                    visited[c] = true;
+                    queue.add(c);
+                }
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean existsSemiDirectedPathFromTo(Node node1, Set<Node> nodes) {
+        int i = index(node1);
+
+        if (i == -1) {
+            return false;
+        }
+
+        boolean[] visited = new boolean[numIndices];
+        Queue<Integer> queue = new ArrayDeque<>();
+        queue.add(i);
+        visited[i] = true;
+
+        while (!queue.isEmpty()) {
+            int t = queue.remove();
+            Node from = nodesByIndex[t];
+
+            for (int k = 0; k < degrees[t]; k++) {
+                Node child = Edges.traverseSemiDirected(from, edges[t][k]);
+
+                if (child == null) {
+                    continue;
+                }
+
+                if (nodes.contains(child)) {
+                    return true;
+                }
+
+                int c = adjacencies[t][k];
+
+                if (!visited[c]) {
+                    visited[c] = true;
+                    queue.add(c);
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Determines whether an inducing path exists between node1 and node2, as
+     * in EdgeListGraph.
+     */
+    @Override
+    public boolean existsInducingPath(Node node1, Node node2) {
+        return node1 == node2 || existsDirectedPathFromTo(node2, node1);
+    }
+
+    /**
+     * Determines whether a trek exists between two nodes in the graph, that
+     * is, whether they have a common ancestor.
+     */
+    @Override
+    public boolean existsTrek(Node node1, Node node2) {
+        int i = index(node1);
+        int j = index(node2);
+
+        if (i == -1 || j == -1) {
+            return false;
+        }
+
+        boolean[] ancestors1 = ancestors(i);
+        boolean[] ancestors2 = ancestors(j);
+
+        for (int k = 0; k < numIndices; k++) {
+            if (ancestors1[k] && ancestors2[k]) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Resets the graph so that it is fully connects it using #-# edges, where #
+     * is the given endpoint.
+     */
+    @Override
+    public synchronized void fullyConnect(Endpoint endpoint) {
+        for (int i = 0; i < numIndices; i++) {
+            degrees[i] = 0;
+
+            if (edges[i] != null) {
+                Arrays.fill(edges[i], null);
+            }
+        }
+
+        numEdges = 0;
+        highlightedEdges.clear();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = i + 1; j < nodes.size(); j++) {
+                addEdge(new Edge(nodes.get(i), nodes.get(j), endpoint, endpoint));
+            }
+        }
+    }
+
+    @Override
+    public void reorientAllWith(Endpoint endpoint) {
+        for (Edge edge : getEdges()) {
+            Node a = edge.getNode1();
+            Node b = edge.getNode2();
+
+            setEndpoint(a, b, endpoint);
+            setEndpoint(b, a, endpoint);
+        }
+    }
+
+    @Override
+    public List<Node> getAdjacentNodes(Node node) {
+        int i = index(node);
+
+        if (i == -1) {
+            return new ArrayList<>();
+        }
+
+        List<Node> adj = new ArrayList<>(degrees[i]);
+
+        for (int k = 0; k < degrees[i]; k++) {
+            adj.add(nodesByIndex[adjacencies[i][k]]);
+        }
+
+        return adj;
+    }
+
+    @Override
+    public List<Node> getAncestors(List<Node> nodes) {
+        boolean[] ancestors = new boolean[numIndices];
+
+        for (Node node : nodes) {
+            int i = index(node);
+
+            if (i != -1 && !ancestors[i]) {
+                collectAncestors(i, ancestors);
+            }
+        }
+
+        return toNodes(ancestors);
+    }
+
+    @Override
+    public List<Node> getChildren(Node node) {
+        int i = index(node);
+        List<Node> children = new ArrayList<>();
+
+        if (i == -1) {
+            return children;
+        }
+
+        for (int k = 0; k < degrees[i]; k++) {
+            if (isDirectedOut(i, k)) {
+                children.add(nodesByIndex[adjacencies[i][k]]);
+            }
+        }
+
+        return children;
+    }
+
+    @Override
+    public int getConnectivity() {
+        int connectivity = 0;
+
+        for (int i = 0; i < numIndices; i++) {
+            if (degrees[i] > connectivity) {
+                connectivity = degrees[i];
+            }
+        }
+
+        return connectivity;
+    }
+
+    @Override
+    public List<Node> getDescendants(List<Node> nodes) {
+        boolean[] descendants = new boolean[numIndices];
+        Queue<Integer> queue = new ArrayDeque<>();
+
+        for (Node node : nodes) {
+            int i = index(node);
+
+            if (i != -1 && !descendants[i]) {
+                descendants[i] = true;
+                queue.add(i);
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            int t = queue.remove();
+
+            for (int k = 0; k < degrees[t]; k++) {
+                int c = adjacencies[t][k];
+
+                if (!descendants[c] && isDirectedOut(t, k)) {
+                    descendants[c] = true;
+                    queue.add(c);
+                }
+            }
+        }
+
+        return toNodes(descendants);
+    }
+
+    /**
+     * @return the edge connecting node1 and node2, or null if they are not
+     * adjacent.
+     */
+    @Override
+    public Edge getEdge(Node node1, Node node2) {
+        int i = index(node1);
+        int j = index(node2);
+
+        if (i == -1 || j == -1) {
+            return null;
+        }
+
+        int k = find(i, j);
+        return k >= 0 ? edges[i][k] : null;
+    }
+
+    @Override
+    public Edge getDirectedEdge(Node node1, Node node2) {
+        Edge edge = getEdge(node1, node2);
+
+        if (edge != null && Edges.isDirectedEdge(edge) && edge.getProximalEndpoint(node2) == Endpoint.ARROW) {
+            return edge;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the edges connected to a particular node, ordered by the index of
+     * the node at the other end.
+     */
+    @Override
+    public List<Edge> getEdges(Node node) {
+        int i = index(node);
+
+        if (i == -1) {
+            return new ArrayList<>();
+        }
+
+        return new ArrayList<>(Arrays.asList(edges[i]).subList(0, degrees[i]));
+    }
+
+    /**
+     * @return the edge connecting node1 and node2, in a list, or an empty list
+     * if there is none.
+     */
+    @Override
+    public List<Edge> getEdges(Node node1, Node node2) {
+        List<Edge> _edges = new ArrayList<>(1);
+        Edge edge = getEdge(node1, node2);
+
+        if (edge != null) {
+            _edges.add(edge);
+        }
+
+        return _edges;
+    }
+
+    @Override
+    public Set<Edge> getEdges() {
+        Set<Edge> _edges = new HashSet<>(2 * numEdges);
+
+        for (int i = 0; i < numIndices; i++) {
+            for (int k = 0; k < degrees[i]; k++) {
+                if (adjacencies[i][k] >= i) {
+                    _edges.add(edges[i][k]);
+                }
+            }
+        }
+
+        return _edges;
+    }
+
+    /**
+     * @return the endpoint along the edge from node to node2 at the node2 end.
+     */
+    @Override
+    public Endpoint getEndpoint(Node node1, Node node2) {
+        Edge edge = getEdge(node1, node2);
+        return edge == null ? null : edge.getProximalEndpoint(node2);
+    }
+
+    /**
+     * @return a matrix of endpoints for the nodes in this graph, with nodes in
+     * the same order as getNodes().
+     */
+    @Override
+    public Endpoint[][] getEndpointMatrix() {
+        int size = nodes.size();
+        Endpoint[][] endpoints = new Endpoint[size][size];
+
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                if (i == j) {
+                    continue;
+                }
+
+                endpoints[i][j] = getEndpoint(nodes.get(i), nodes.get(j));
+            }
+        }
+
+        return endpoints;
+    }
+
+    /**
+     * @return the number of edges into the given node.
+     */
+    @Override
+    public int getIndegree(Node node) {
+        return getParents(node).size();
+    }
+
+    @Override
+    public int getDegree(Node node) {
+        return getNumEdges(node);
+    }
+
+    @Override
+    public Node getNode(String name) {
+        return namesHash.get(name);
+    }
+
+    @Override
+    public List<Node> getNodes() {
+        return new ArrayList<>(nodes);
+    }
+
+    @Override
+    public List<String> getNodeNames() {
+        List<String> names = new ArrayList<>();
+
+        for (Node node : nodes) {
+            names.add(node.getName());
+        }
+
+        return names;
+    }
+
+    @Override
+    public int getNumEdges() {
+        return numEdges;
+    }
+
+    @Override
+    public int getNumEdges(Node node) {
+        int i = index(node);
+        return i == -1 ? 0 : degrees[i];
+    }
+
+    @Override
+    public int getNumNodes() {
+        return nodes.size();
+    }
+
+    /**
+     * @return the number of edges out of the given node.
+     */
+    @Override
+    public int getOutdegree(Node node) {
+        return getChildren(node).size();
+    }
+
+    @Override
+    public List<Node> getParents(Node node) {
+        int i = index(node);
+        List<Node> parents = new ArrayList<>();
+
+        if (i == -1) {
+            return parents;
+        }
+
+        for (int k = 0; k < degrees[i]; k++) {
+            if (isDirectedIn(i, k)) {
+                parents.add(nodesByIndex[adjacencies[i][k]]);
+            }
+        }
+
+        return parents;
+    }
+
+    /**
+     * Determines whether some edge or other exists between two nodes.
+     */
+    @Override
+    public boolean isAdjacentTo(Node node1, Node node2) {
+        int i = index(node1);
+        int j = index(node2);
+
+        return i != -1 && j != -1 && find(i, j) >= 0;
+    }
+
+    @Override
+    public boolean isAncestorOf(Node node1, Node node2) {
+        int i = index(node1);
+        int j = index(node2);
+
+        if (i == -1 || j == -1) {
+            return false;
+        }
+
+        if (i == j) {
+            return true;
+        }
+
+        boolean[] visited = new boolean[numIndices];
+        Queue<Integer> queue = new ArrayDeque<>();
+        queue.add(j);
+        visited[j] = true;
+
+        while (!queue.isEmpty()) {
+            int t = queue.remove();
+
+            for (int k = 0; k < degrees[t]; k++) {
+                int p = adjacencies[t][k];
+
+                if (!visited[p] && isDirectedIn(t, k)) {
+                    if (p == i) {
+                        return true;
+                    }
+
+                    visited[p] = true;
+                    queue.add(p);
+                }
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean possibleAncestor(Node node1, Node node2) {
+        return existsSemiDirectedPathFromTo(node1, Collections.singleton(node2));
+    }
+
+    @Override
+    public boolean isChildOf(Node node1, Node node2) {
+        return isParentOf(node2, node1);
+    }
+
+    @Override
+    public boolean isParentOf(Node node1, Node node2) {
+        Edge edge = getEdge(node1, node2);
+        return edge != null && Edges.traverseDirected(node1, edge) == node2;
+    }
+
+    @Override
+    public boolean isProperAncestorOf(Node node1, Node node2) {
+        return node1 != node2 && isAncestorOf(node1, node2);
+    }
+
+    @Override
+    public boolean isProperDescendentOf(Node node1, Node node2) {
+        return node1 != node2 && isDescendentOf(node1, node2);
+    }
+
+    @Override
+    public boolean isDescendentOf(Node node1, Node node2) {
+        return node1 == node2 || existsDirectedPathFromTo(node2, node1);
+    }
+
+    /**
+     * @return true iff node2 is a definite nondecendent of node1
+     */
+    @Override
+    public boolean defNonDescendent(Node node1, Node node2) {
+        return !(possibleAncestor(node1, node2));
+    }
+
+    /**
+     * As in EdgeListGraph.
+     */
+    @Override
+    public boolean isDefNoncollider(Node node1, Node node2, Node node3) {
+        boolean circle12 = false;
+        boolean circle32 = false;
+
+        for (Edge edge : getEdges(node2)) {
+            boolean _node1 = edge.getDistalNode(node2) == node1;
+            boolean _node3 = edge.getDistalNode(node2) == node3;
+
+            if (_node1 && edge.pointsTowards(node1)) {
+                return true;
+            }
+            if (_node3 && edge.pointsTowards(node3)) {
+                return true;
+            }
+
+            if (_node1 && edge.getProximalEndpoint(node2) == Endpoint.CIRCLE) {
+                circle12 = true;
+            }
+            if (_node3 && edge.getProximalEndpoint(node2) == Endpoint.CIRCLE) {
+                circle32 = true;
+            }
+            if (circle12 && circle32 && !isAdjacentTo(node1, node2)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean isDefCollider(Node node1, Node node2, Node node3) {
+        Edge edge1 = getEdge(node1, node2);
+        Edge edge2 = getEdge(node2, node3);
+
+        return !(edge1 == null || edge2 == null) && edge1.getProximalEndpoint(node2) == Endpoint.ARROW
+                && edge2.getProximalEndpoint(node2) == Endpoint.ARROW;
+    }
+
+    @Override
+    public boolean isDConnectedTo(Node node1, Node node2, List<Node> z) {
+        return GraphUtils.isDConnectedTo(node1, node2, z, this);
+    }
+
+    @Override
+    public boolean isPattern() {
+        return pattern;
+    }
+
+    @Override
+    public void setPattern(boolean pattern) {
+        this.pattern = pattern;
+    }
+
+    @Override
+    public boolean isPag() {
+        return pag;
+    }
+
+    @Override
+    public void setPag(boolean pag) {
+        this.pag = pag;
+    }
+
+    @Override
+    public boolean isDSeparatedFrom(Node node1, Node node2, List<Node> z) {
+        return !isDConnectedTo(node1, node2, z);
+    }
+
+    /**
+     * As in EdgeListGraph, over node indices.
+     */
+    @Override
+    public boolean possDConnectedTo(Node node1, Node node2, List<Node> condNodes) {
+        int n1x = index(node1);
+        int n2x = index(node2);
+
+        if (n1x == -1 || n2x == -1) {
+            return false;
+        }
+
+        int[][] edgeStage = new int[numIndices][numIndices];
+        int stage = 1;
+
+        edgeStage[n1x][n1x] = 1;
+        edgeStage[n2x][n2x] = 1;
+
+        List<int[]> currEdges;
+        List<int[]> nextEdges = new ArrayList<>();
+
+        nextEdges.add(new int[]{n1x, n1x});
+        nextEdges.add(new int[]{n2x, n2x});
+
+        while (true) {
+            currEdges = nextEdges;
+            nextEdges = new ArrayList<>();
+
+            for (int[] edge : currEdges) {
+                int center = edge[1];
+
+                for (int k = 0; k < degrees[center]; k++) {
+                    int testIndex = adjacencies[center][k];
+
+                    // check if we've hit this edge before
+                    if (edgeStage[center][testIndex] != 0) {
+                        continue;
+                    }
+
+                    Node x = nodesByIndex[edge[0]];
+                    Node y = nodesByIndex[center];
+                    Node z = nodesByIndex[testIndex];
+
+                    if (!((isDefNoncollider(x, y, z) && !(condNodes.contains(y)))
+                            || (isDefCollider(x, y, z) && possibleAncestorSet(y, condNodes)))) {
+                        continue;
+                    }
+
+                    if (z.equals(node2)) {
+                        return true;
+                    }
+
+                    nextEdges.add(new int[]{center, testIndex});
+
+                    edgeStage[center][testIndex] = stage;
+                    edgeStage[testIndex][center] = stage;
+                }
+            }
+
+            if (nextEdges.size() == 0) {
+                break;
+            }
+
+            stage++;
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean isDirectedFromTo(Node node1, Node node2) {
+        Edge edge = getEdge(node1, node2);
+        return edge != null && edge.pointsTowards(node2);
+    }
+
+    @Override
+    public boolean isUndirectedFromTo(Node node1, Node node2) {
+        Edge edge = getEdge(node1, node2);
+        return edge != null && edge.getEndpoint1() == Endpoint.TAIL && edge.getEndpoint2() == Endpoint.TAIL;
+    }
+
+    /**
+     * @return true if the given edge is definitely visible (Jiji, pg 25); see
+     * EdgeListGraph.
+     * @throws IllegalArgumentException if the given edge is not a directed edge
+     *                                  in the graph
+     */
+    @Override
+    public boolean defVisible(Edge edge) {
+        if (containsEdge(edge)) {
+            Node A = Edges.getDirectedEdgeTail(edge);
+            Node B = Edges.getDirectedEdgeHead(edge);
+
+            for (Node C : getAdjacentNodes(A)) {
+                if (C != B && !isAdjacentTo(C, B)) {
+                    Edge e = getEdge(C, A);
+
+                    if (e.getProximalEndpoint(A) == Endpoint.ARROW) {
+                        return true;
+                    }
+                }
+            }
+
+            return visibleEdgeHelper(A, B);
+        } else {
+            throw new IllegalArgumentException("Given edge is not in the graph.");
+        }
+    }
+
+    @Override
+    public boolean isExogenous(Node node) {
+        return getIndegree(node) == 0;
+    }
+
+    /**
+     * Nodes adjacent to the given node with the given proximal endpoint.
+     */
+    @Override
+    public List<Node> getNodesInTo(Node node, Endpoint endpoint) {
+        int i = index(node);
+        List<Node> nodes = new ArrayList<>(4);
+
+        if (i == -1) {
+            return nodes;
+        }
+
+        for (int k = 0; k < degrees[i]; k++) {
+            if (edges[i][k].getProximalEndpoint(node) == endpoint) {
+                nodes.add(nodesByIndex[adjacencies[i][k]]);
+            }
+        }
+
+        return nodes;
+    }
+
+    /**
+     * Nodes adjacent to the given node with the given distal endpoint.
+     */
+    @Override
+    public List<Node> getNodesOutTo(Node node, Endpoint endpoint) {
+        int i = index(node);
+        List<Node> nodes = new ArrayList<>(4);
+
+        if (i == -1) {
+            return nodes;
+        }
+
+        for (int k = 0; k < degrees[i]; k++) {
+            if (edges[i][k].getDistalEndpoint(node) == endpoint) {
+                nodes.add(nodesByIndex[adjacencies[i][k]]);
+            }
+        }
+
+        return nodes;
+    }
+
+    @Override
+    public synchronized boolean removeEdge(Edge edge) {
+        int i = index(edge.getNode1());
+        int j = index(edge.getNode2());
+
+        if (i == -1 || j == -1) {
+            return false;
+        }
+
+        int k = find(i, j);
+
+        if (k < 0 || !edges[i][k].equals(edge)) {
+            return false;
+        }
+
+        Edge removed = edges[i][k];
+
+        delete(i, k);
+
+        if (i != j) {
+            delete(j, find(j, i));
+        }
+
+        numEdges--;
+
+        highlightedEdges.remove(removed);
+        stuffRemovedSinceLastTripleAccess = true;
+
+        if (pcs != null) {
+            pcs.firePropertyChange("edgeRemoved", removed, null);
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes the edge connecting the two given nodes.
+     */
+    @Override
+    public boolean removeEdge(Node node1, Node node2) {
+        return removeEdges(getEdges(node1, node2));
+    }
+
+    @Override
+    public boolean removeEdges(Node node1, Node node2) {
+        return removeEdges(getEdges(node1, node2));
+    }
+
+    @Override
+    public boolean removeEdges(Collection<Edge> edges) {
+        boolean change = false;
+
+        for (Edge edge : edges) {
+            boolean _change = removeEdge(edge);
+            change = change || _change;
+        }
+
+        return change;
+    }
+
+    /**
+     * Removes a node from the graph. Its index is not given out again.
+     */
+    @Override
+    public synchronized boolean removeNode(Node node) {
+        int i = index(node);
+
+        if (i == -1) {
+            return false;
+        }
+
+        for (Edge edge : getEdges(node)) {
+            removeEdge(edge);
+        }
+
+        nodesByIndex[i] = null;
+        adjacencies[i] = null;
+        edges[i] = null;
+
+        indices.remove(node);
+        nodes.remove(node);
+        namesHash.remove(node.getName());
+        stuffRemovedSinceLastTripleAccess = true;
+
+        if (pcs != null) {
+            pcs.firePropertyChange("nodeRemoved", node, null);
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean removeNodes(List<Node> nodes) {
+        boolean changed = false;
+
+        for (Node node : nodes) {
+            boolean _changed = removeNode(node);
+            changed = changed || _changed;
+        }
+
+        return changed;
+    }
+
+    /**
+     * If there is currently an edge from node1 to node2, sets the endpoint at
+     * node2 to the given endpoint; if there is no such edge, adds an edge --#
+     * where # is the given endpoint.
+     */
+    @Override
+    public synchronized boolean setEndpoint(Node from, Node to, Endpoint endPoint) throws IllegalArgumentException {
+        if (endPoint == null) {
+            throw new NullPointerException();
+        }
+
+        Edge edge = getEdge(from, to);
+
+        if (edge == null) {
+            return addEdge(new Edge(from, to, Endpoint.TAIL, endPoint));
+        }
+
+        removeEdge(edge);
+        return addEdge(new Edge(from, to, edge.getProximalEndpoint(from), endPoint));
+    }
+
+    @Override
+    public Graph subgraph(List<Node> nodes) {
+        Graph graph = new AdjacencyArrayGraph(nodes);
+        Set<Node> _nodes = new HashSet<>(nodes);
+
+        for (Edge edge : getEdges()) {
+            if (_nodes.contains(edge.getNode1()) && _nodes.contains(edge.getNode2())) {
+                graph.addEdge(edge);
+            }
+        }
+
+        return graph;
+    }
+
+    @Override
+    public String toString() {
+        return GraphUtils.graphToText(this).toString();
+    }
+
+    /**
+     * Transfers nodes and edges from one graph to another.
+     *
+     * @param graph the graph from which nodes and edges are to be pilfered.
+     * @throws IllegalArgumentException if some edge cannot be added, for
+     *                                  example because another edge connects
+     *                                  its nodes.
+     */
+    @Override
+    public void transferNodesAndEdges(Graph graph) throws IllegalArgumentException {
+        if (graph == null) {
+            throw new NullPointerException("No graph was provided.");
+        }
+
+        for (Node node : graph.getNodes()) {
+            if (!addNode(node)) {
+                throw new IllegalArgumentException();
+            }
+        }
+
+        for (Edge edge : graph.getEdges()) {
+            if (!addEdge(edge)) {
+                throw new IllegalArgumentException("Only one edge may connect two nodes: " + edge);
+            }
+        }
+    }
+
+    @Override
+    public void transferAttributes(Graph graph) throws IllegalArgumentException {
+        if (graph == null) {
+            throw new NullPointerException("No graph was provided.");
+        }
+
+        this.attributes.putAll(graph.getAllAttributes());
+    }
+
+    @Override
+    public Set<Triple> getAmbiguousTriples() {
+        return new HashSet<>(ambiguousTriples);
+    }
+
+    @Override
+    public Set<Triple> getUnderLines() {
+        return new HashSet<>(underLineTriples);
+    }
+
+    @Override
+    public Set<Triple> getDottedUnderlines() {
+        return new HashSet<>(dottedUnderLineTriples);
+    }
+
+    @Override
+    public boolean isAmbiguousTriple(Node x, Node y, Node z) {
+        return ambiguousTriples.contains(new Triple(x, y, z));
+    }
+
+    @Override
+    public boolean isUnderlineTriple(Node x, Node y, Node z) {
+        return underLineTriples.contains(new Triple(x, y, z));
+    }
+
+    @Override
+    public boolean isDottedUnderlineTriple(Node x, Node y, Node z) {
+        return dottedUnderLineTriples.contains(new Triple(x, y, z));
+    }
+
+    @Override
+    public void addAmbiguousTriple(Node x, Node y, Node z) {
+        ambiguousTriples.add(new Triple(x, y, z));
+    }
+
+    @Override
+    public void addUnderlineTriple(Node x, Node y, Node z) {
+        Triple triple = new Triple(x, y, z);
+
+        if (!triple.alongPathIn(this)) {
+            return;
+        }
+
+        underLineTriples.add(triple);
+    }
+
+    @Override
+    public void addDottedUnderlineTriple(Node x, Node y, Node z) {
+        Triple triple = new Triple(x, y, z);
+
+        if (!triple.alongPathIn(this)) {
+            return;
+        }
+
+        dottedUnderLineTriples.add(triple);
+    }
+
+    @Override
+    public void removeAmbiguousTriple(Node x, Node y, Node z) {
+        ambiguousTriples.remove(new Triple(x, y, z));
+    }
+
+    @Override
+    public void removeUnderlineTriple(Node x, Node y, Node z) {
+        underLineTriples.remove(new Triple(x, y, z));
+    }
+
+    @Override
+    public void removeDottedUnderlineTriple(Node x, Node y, Node z) {
+        dottedUnderLineTriples.remove(new Triple(x, y, z));
+    }
+
+    @Override
+    public void setAmbiguousTriples(Set<Triple> triples) {
+        ambiguousTriples.clear();
+
+        for (Triple triple : triples) {
+            addAmbiguousTriple(triple.getX(), triple.getY(), triple.getZ());
+        }
+    }
+
+    @Override
+    public void setUnderLineTriples(Set<Triple> triples) {
+        underLineTriples.clear();
+
+        for (Triple triple : triples) {
+            addUnderlineTriple(triple.getX(), triple.getY(), triple.getZ());
+        }
+    }
+
+    @Override
+    public void setDottedUnderLineTriples(Set<Triple> triples) {
+        dottedUnderLineTriples.clear();
+
+        for (Triple triple : triples) {
+            addDottedUnderlineTriple(triple.getX(), triple.getY(), triple.getZ());
+        }
+    }
+
+    @Override
+    public List<Node> getCausalOrdering() {
+        return GraphUtils.getCausalOrdering(this);
+    }
+
+    @Override
+    public void setHighlighted(Edge edge, boolean highlighted) {
+        highlightedEdges.add(edge);
+    }
+
+    @Override
+    public boolean isHighlighted(Edge edge) {
+        return highlightedEdges != null && highlightedEdges.contains(edge);
+    }
+
+    @Override
+    public boolean isParameterizable(Node node) {
+        return true;
+    }
+
+    @Override
+    public boolean isTimeLagModel() {
+        return false;
+    }
+
+    @Override
+    public TimeLagGraph getTimeLagGraph() {
+        return null;
+    }
+
+    @Override
+    public void removeTriplesNotInGraph() {
+        for (Set<Triple> triples : Arrays.asList(ambiguousTriples, underLineTriples, dottedUnderLineTriples)) {
+            for (Triple triple : new HashSet<>(triples)) {
+                if (!containsNode(triple.getX()) || !containsNode(triple.getY()) || !containsNode(triple.getZ())) {
+                    triples.remove(triple);
+                    continue;
+                }
+
+                if (!isAdjacentTo(triple.getX(), triple.getY()) || !isAdjacentTo(triple.getY(), triple.getZ())) {
+                    triples.remove(triple);
+                }
+            }
+        }
+
+        stuffRemovedSinceLastTripleAccess = false;
+    }
+
+    @Override
+    public List<Node> getSepset(Node x, Node y) {
+        return GraphUtils.getSepset(x, y, this);
+    }
+
+    /**
+     * Replaces the nodes of the graph, position by position in getNodes(),
+     * keeping their indices.
+     */
+    @Override
+    public synchronized void setNodes(List<Node> nodes) {
+        if (nodes.size() != this.nodes.size()) {
+            throw new IllegalArgumentException("Sorry, there is a mismatch in the number of variables "
+                    + "you are trying to set.");
+        }
+
+        Map<Node, Integer> indices = new HashMap<>();
+        namesHash.clear();
+
+        for (int k = 0; k < nodes.size(); k++) {
+            int i = this.indices.get(this.nodes.get(k));
+            Node node = nodes.get(k);
+
+            nodesByIndex[i] = node;
+            indices.put(node, i);
+            namesHash.put(node.getName(), node);
+        }
+
+        this.indices = indices;
+        this.nodes = new ArrayList<>(nodes);
+    }
+
+    @Override
+    public Map<String, Object> getAllAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public Object getAttribute(String key) {
+        return attributes.get(key);
+    }
+
+    @Override
+    public void removeAttribute(String key) {
+        attributes.remove(key);
+    }
+
+    @Override
+    public void addAttribute(String key, Object value) {
+        attributes.put(key, value);
+    }
+
+    /**
+     * @return the names of the triple classifications. Coordinates with
+     * <code>getTriplesList</code>
+     */
+    @Override
+    public List<String> getTriplesClassificationTypes() {
+        List<String> names = new ArrayList<>();
+        names.add("Underlines");
+        names.add("Dotted Underlines");
+        names.add("Ambiguous Triples");
+        return names;
+    }
+
+    /**
+     * @return the list of triples corresponding to
+     * <code>getTripleClassificationNames</code> for the given node.
+     */
+    @Override
+    public List<List<Triple>> getTriplesLists(Node node) {
+        List<List<Triple>> triplesList = new ArrayList<>();
+        triplesList.add(GraphUtils.getUnderlinedTriplesFromGraph(node, this));
+        triplesList.add(GraphUtils.getDottedUnderlinedTriplesFromGraph(node, this));
+        triplesList.add(GraphUtils.getAmbiguousTriplesFromGraph(node, this));
+        return triplesList;
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = 0;
+        int sum = 0;
+
+        for (Node node : getNodes()) {
+            sum += node.hashCode();
+        }
+
+        hashCode += 23 * sum;
+        sum = 0;
+
+        for (Edge edge : getEdges()) {
+            sum += edge.hashCode();
+        }
+
+        hashCode += 41 * sum;
+
+        return hashCode;
+    }
+
+    /**
+     * @return true iff the given object is a graph that is equal to this graph,
+     * in the sense that it contains the same nodes and the edges are
+     * isomorphic.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Graph)) {
+            return false;
+        }
+
+        Graph graph = (Graph) o;
+        return new HashSet<>(graph.getNodeNames()).equals(new HashSet<>(getNodeNames()))
+                && new HashSet<>(graph.getEdges()).equals(getEdges());
+    }
+
+    //===============================PRIVATE METHODS======================//
+
+    private int index(Node node) {
+        Integer i = node == null ? null : indices.get(node);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * @return the position of j among the nodes adjacent to i, or (-(insertion
+     * point) - 1) if j is not adjacent to i.
+     */
+    private int find(int i, int j) {
+        return Arrays.binarySearch(adjacencies[i], 0, degrees[i], j);
+    }
+
+    private void insert(int i, int j, int position, Edge edge) {
+        int degree = degrees[i];
+
+        if (degree == adjacencies[i].length) {
+            adjacencies[i] = Arrays.copyOf(adjacencies[i], 2 * degree);
+            edges[i] = Arrays.copyOf(edges[i], 2 * degree);
+        }
+
+        System.arraycopy(adjacencies[i], position, adjacencies[i], position + 1, degree - position);
+        System.arraycopy(edges[i], position, edges[i], position + 1, degree - position);
+
+        adjacencies[i][position] = j;
+        edges[i][position] = edge;
+        degrees[i]++;
+    }
+
+    private void delete(int i, int position) {
+        int degree = --degrees[i];
+
+        System.arraycopy(adjacencies[i], position + 1, adjacencies[i], position, degree - position);
+        System.arraycopy(edges[i], position + 1, edges[i], position, degree - position);
+
+        edges[i][degree] = null;
+    }
+
+    // True if the k'th edge of i is directed out of i.
+    private boolean isDirectedOut(int i, int k) {
+        Edge edge = edges[i][k];
+        Node node = nodesByIndex[i];
+        return edge.getProximalEndpoint(node) == Endpoint.TAIL && edge.getDistalEndpoint(node) == Endpoint.ARROW;
+    }
+
+    // True if the k'th edge of i is directed into i.
+    private boolean isDirectedIn(int i, int k) {
+        Edge edge = edges[i][k];
+        Node node = nodesByIndex[i];
+        return edge.getProximalEndpoint(node) == Endpoint.ARROW && edge.getDistalEndpoint(node) == Endpoint.TAIL;
+    }
+
+    // Depth first, coloring nodes 1 while on the path and 2 when finished.
+    private boolean existsDirectedCycleVisit(int i, int[] color) {
+        color[i] = 1;
+
+        for (int k = 0; k < degrees[i]; k++) {
+            if (!isDirectedOut(i, k)) {
+                continue;
+            }
+
+            int c = adjacencies[i][k];
+
+            if (color[c] == 1) {
+                return true;
+            }
+
+            if (color[c] == 0 && existsDirectedCycleVisit(c, color)) {
+                return true;
+            }
+        }
+
+        color[i] = 2;
+        return false;
+    }
+
+    private boolean[] ancestors(int i) {
+        boolean[] ancestors = new boolean[numIndices];
+        collectAncestors(i, ancestors);
+        return ancestors;
+    }
+
+    private void collectAncestors(int i, boolean[] ancestors) {
+        Queue<Integer> queue = new ArrayDeque<>();
+        queue.add(i);
+        ancestors[i] = true;
+
+        while (!queue.isEmpty()) {
+            int t = queue.remove();
+
+            for (int k = 0; k < degrees[t]; k++) {
+                int p = adjacencies[t][k];
+
+                if (!ancestors[p] && isDirectedIn(t, k)) {
+                    ancestors[p] = true;
+                    queue.add(p);
+                }
+            }
+        }
+    }
+
+    private List<Node> toNodes(boolean[] selected) {
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < selected.length; i++) {
+            if (selected[i]) {
+                nodes.add(nodesByIndex[i]);
+            }
+        }
+
+        return nodes;
+    }
+
+    /**
+     * @return true iff node1 is a possible ancestor of at least one member of
+     * nodes2
+     */
+    private boolean possibleAncestorSet(Node node1, List<Node> nodes2) {
+        for (Node node2 : nodes2) {
+            if (possibleAncestor(node1, node2)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean visibleEdgeHelper(Node A, Node B) {
+        if (A.getNodeType() != NodeType.MEASURED) {
+            throw new IllegalArgumentException();
+        }
+        if (B.getNodeType() != NodeType.MEASURED) {
+            throw new IllegalArgumentException();
+        }
+
+        final LinkedList<Node> path = new LinkedList<>();
+        path.add(A);
+
+        for (Node C : getNodesInTo(A, Endpoint.ARROW)) {
+            if (isParentOf(C, A)) {
+                return true;
+            }
+
+            if (visibleEdgeHelperVisit(C, A, B, path)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean visibleEdgeHelperVisit(Node c, Node a, Node b, LinkedList<Node> path) {
+        if (path.contains(a)) {
+            return false;
+        }
+
+        path.addLast(a);
+
+        if (a == b) {
+            return true;
+        }
+
+        for (Node D : getNodesInTo(a, Endpoint.ARROW)) {
+            if (isParentOf(D, c)) {
+                return true;
+            }
+
+            if (a.getNodeType() == NodeType.MEASURED) {
+                if (!isDefCollider(D, c, a)) {
+                    continue;
+                }
+            }
+
+            if (isDefCollider(D, c, a)) {
+                if (!isParentOf(c, b)) {
+                    continue;
+                }
+            }
+
+            if (visibleEdgeHelperVisit(D, c, b, path)) {
+                return true;
+            }
+        }
+
+        path.removeLast();
+        return false;
+    }
+
+    private PropertyChangeSupport getPcs() {
+        if (pcs == null) {
+            pcs = new PropertyChangeSupport(this);
+        }
+        return pcs;
+    }
+
+    /**
+     * Adds semantic checks to the default deserialization method. This method
+     * must have the standard signature for a readObject method, and the body of
+     * the method must begin with "s.defaultReadObject();". Other than that, any
+     * semantic checks can be specified and do not need to stay the same from
+     * version to version. A readObject method of this form may be added to any
+     * class, even if Tetrad sessions were previously saved out using a version
+     * of the class that didn't include it. (That's what the
+     * "s.defaultReadObject();" is for. See J. Bloch, Effective Java, for help.
+     */
+    private void readObject(ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+
+        if (nodes == null) {
+            throw new NullPointerException();
+        }
+
+        if (indices == null || nodesByIndex == null) {
+            throw new NullPointerException();
+        }
+
+        if (adjacencies == null || edges == null || degrees == null) {
+            throw new NullPointerException();
+        }
+
+        if (ambiguousTriples == null) {
+            ambiguousTriples = new HashSet<>();
+        }
+
+        if (highlightedEdges == null) {
+            highlightedEdges = new HashSet<>();
+        }
+
+        if (underLineTriples == null) {
+            underLineTriples = new HashSet<>();
+        }
+
+        if (dottedUnderLineTriples == null) {
+            dottedUnderLineTriples = new HashSet<>();
+        }
+    }
+}
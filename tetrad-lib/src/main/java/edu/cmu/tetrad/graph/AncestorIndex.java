@@ -0,0 +1,226 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.graph;
+
+import java.util.*;
+
+/**
+ * Keeps, for each node of a graph, the set of nodes reachable from it along directed paths, as a bit set, so that
+ * ancestor and directed path questions are answered by looking up a bit. The index doesn't watch the graph; the graph
+ * tells it of each directed edge added or removed, and it updates itself as follows.
+ * <p>
+ * When a -&gt; b is added, every node known to reach a (and a itself) now reaches b and whatever b reaches, so those
+ * rows are or'd with b's row. When a -&gt; b is removed, only rows that reach both a and b can change; just those rows
+ * are marked stale. A stale row is recomputed when next asked for, by a search along directed edges of the graph
+ * that stops at nodes whose rows are current and takes their rows whole. Nothing is computed until asked for.
+ * <p>
+ * The nodes are fixed when the index is made; if nodes are added or removed, make a new index. Methods are
+ * synchronized, so the index may be queried from several threads, though not while the graph is being changed.
+ *
+ * @author agent
+ */
+public final class AncestorIndex {
+
+    /**
+     * Graphs with more nodes than this aren't indexed by EdgeListGraph, since the index takes n^2 / 8 bytes.
+     */
+    public static final int MAX_NODES = 5000;
+
+    private final Graph graph;
+    private final Node[] nodes;
+    private final Map<Node, Integer> indices;
+
+    // reach[i] has bit j set iff there is a directed path of length at least one from node i to node j. It is
+    // only to be trusted if stale[i] is false.
+    private final long[][] reach;
+    private final boolean[] stale;
+
+    // Scratch space for recomputing rows.
+    private final int[] queue;
+
+    /**
+     * Makes an index of the directed paths in the given graph. Rows are computed as they're needed.
+     */
+    public AncestorIndex(Graph graph) {
+        if (graph == null) {
+            throw new NullPointerException("Graph must not be null.");
+        }
+
+        this.graph = graph;
+        this.nodes = graph.getNodes().toArray(new Node[0]);
+        this.indices = new HashMap<>();
+
+        for (int i = 0; i < nodes.length; i++) {
+            indices.put(nodes[i], i);
+        }
+
+        int words = (nodes.length + 63) >>> 6;
+        this.reach = new long[nodes.length][words];
+        this.stale = new boolean[nodes.length];
+        this.queue = new int[nodes.length];
+
+        Arrays.fill(stale, true);
+    }
+
+    /**
+     * @return true iff the given node was in the graph when the index was made.
+     */
+    public boolean contains(Node node) {
+        return indices.containsKey(node);
+    }
+
+    /**
+     * @return true iff there is a directed path of length at least one from node1 to node2.
+     */
+    public synchronized boolean existsDirectedPathFromTo(Node node1, Node node2) {
+        int i = index(node1);
+        int j = index(node2);
+        return has(row(i), j);
+    }
+
+    /**
+     * @return true iff node1 is an ancestor of node2, a node being an ancestor of itself.
+     */
+    public boolean isAncestorOf(Node node1, Node node2) {
+        return node1 == node2 || existsDirectedPathFromTo(node1, node2);
+    }
+
+    /**
+     * @return true iff node1 is a descendant of node2, a node being a descendant of itself.
+     */
+    public boolean isDescendentOf(Node node1, Node node2) {
+        return node1 == node2 || existsDirectedPathFromTo(node2, node1);
+    }
+
+    /**
+     * Records that the directed edge node1 --&gt; node2 has been added to the graph.
+     */
+    public synchronized void directedEdgeAdded(Node node1, Node node2) {
+        int a = index(node1);
+        int b = index(node2);
+
+        if (!stale[a] && has(reach[a], b)) {
+            return;
+        }
+
+        if (stale[b]) {
+
+            // Without b's row there's nothing to or in, so whatever reaches a will be recomputed.
+            for (int u = 0; u < nodes.length; u++) {
+                if (u == a || (!stale[u] && has(reach[u], a))) {
+                    stale[u] = true;
+                }
+            }
+
+            return;
+        }
+
+        long[] added = reach[b].clone();
+        added[b >>> 6] |= 1L << b;
+
+        for (int u = 0; u < nodes.length; u++) {
+            if (stale[u] || !(u == a || has(reach[u], a))) {
+                continue;
+            }
+
+            long[] row = reach[u];
+
+            for (int w = 0; w < row.length; w++) {
+                row[w] |= added[w];
+            }
+        }
+    }
+
+    /**
+     * Records that the directed edge node1 --&gt; node2 has been removed from the graph.
+     */
+    public synchronized void directedEdgeRemoved(Node node1, Node node2) {
+        int a = index(node1);
+        int b = index(node2);
+
+        for (int u = 0; u < nodes.length; u++) {
+            if (!stale[u] && (u == a || has(reach[u], a)) && has(reach[u], b)) {
+                stale[u] = true;
+            }
+        }
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    private long[] row(int i) {
+        if (stale[i]) {
+            recompute(i);
+        }
+
+        return reach[i];
+    }
+
+    // Searches from node i along directed edges. A node whose row is current needn't be searched past, since its
+    // row already holds everything reachable from it.
+    private void recompute(int i) {
+        long[] row = reach[i];
+        Arrays.fill(row, 0L);
+
+        int head = 0, tail = 0;
+        queue[tail++] = i;
+
+        while (head < tail) {
+            Node t = nodes[queue[head++]];
+
+            for (Node child : graph.getChildren(t)) {
+                int c = index(child);
+
+                if (has(row, c)) {
+                    continue;
+                }
+
+                row[c >>> 6] |= 1L << c;
+
+                if (c != i && !stale[c]) {
+                    long[] _row = reach[c];
+
+                    for (int w = 0; w < row.length; w++) {
+                        row[w] |= _row[w];
+                    }
+                } else if (c != i) {
+                    queue[tail++] = c;
+                }
+            }
+        }
+
+        stale[i] = false;
+    }
+
+    private int index(Node node) {
+        Integer i = indices.get(node);
+
+        if (i == null) {
+            throw new IllegalArgumentException("Node not in the index: " + node);
+        }
+
+        return i;
+    }
+
+    private static boolean has(long[] row, int j) {
+        return (row[j >>> 6] & (1L << j)) != 0;
+    }
+}
@@ -0,0 +1,418 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.graph;
+
+import java.util.*;
+
+/**
+ * Answers d-separation queries for a fixed graph, with the same results as GraphUtils.isDConnectedTo. The graph is
+ * copied once into arrays, with the edges of each node in one block, and a query is a breadth first search over
+ * edges, taken in the direction they are traversed, which is linear in the size of the graph. Edges are collider
+ * edges at a node when both have arrowheads there, so the search works for graphs with bidirected edges as well as
+ * DAGs; underlined triples are honored as in GraphUtils.
+ * <p>
+ * The ancestors of the conditioning set are kept from one query to the next as long as the conditioning set doesn't
+ * change, and all scratch space is allocated once per thread, so a query allocates nothing. To test many nodes
+ * against one node given the same conditioning set, use getDConnectedNodes or the batch isDSeparatedFrom, which
+ * search once for all of them.
+ * <p>
+ * The oracle doesn't see changes made to the graph after it is constructed; make a new one for the changed graph.
+ * Queries may be made from several threads at once.
+ *
+ * @author agent
+ */
+public final class DSeparationOracle {
+
+    // Endpoints, as marks at the near end of an edge.
+    private static final byte TAIL = 0;
+    private static final byte ARROW = 1;
+    private static final byte OTHER = 2;
+
+    private final Node[] nodes;
+    private final Map<Node, Integer> indices;
+
+    // The edges of node i, as seen from i, are the slots start[i] to start[i + 1] - 1. For slot s, other[s] is the
+    // node at the far end, marks[s] is the endpoint at the near end, and reverse[s] is the slot for the same edge
+    // seen from the far end.
+    private final int[] start;
+    private final int[] owner;
+    private final int[] other;
+    private final byte[] marks;
+    private final int[] reverse;
+
+    // Underlined triples a-b-c, with a < c, as keys, or null if there are none.
+    private final Set<Long> underlines;
+
+    private final ThreadLocal<Scratch> scratch;
+
+    /**
+     * Copies the given graph.
+     */
+    public DSeparationOracle(Graph graph) {
+        if (graph == null) {
+            throw new NullPointerException("Graph must not be null.");
+        }
+
+        List<Node> nodeList = new ArrayList<>(graph.getNodes());
+        this.indices = new HashMap<>();
+
+        for (int i = 0; i < nodeList.size(); i++) {
+            indices.put(nodeList.get(i), i);
+        }
+
+        List<Edge> edges = new ArrayList<>();
+
+        for (Edge edge : graph.getEdges()) {
+            if (edge.getNode1() == edge.getNode2()) {
+                continue;
+            }
+
+            for (Node node : new Node[]{edge.getNode1(), edge.getNode2()}) {
+                if (!indices.containsKey(node)) {
+                    indices.put(node, nodeList.size());
+                    nodeList.add(node);
+                }
+            }
+
+            edges.add(edge);
+        }
+
+        this.nodes = nodeList.toArray(new Node[0]);
+
+        int n = nodes.length;
+        int numSlots = 2 * edges.size();
+
+        this.start = new int[n + 1];
+        this.owner = new int[numSlots];
+        this.other = new int[numSlots];
+        this.marks = new byte[numSlots];
+        this.reverse = new int[numSlots];
+
+        for (Edge edge : edges) {
+            start[indices.get(edge.getNode1()) + 1]++;
+            start[indices.get(edge.getNode2()) + 1]++;
+        }
+
+        for (int i = 0; i < n; i++) {
+            start[i + 1] += start[i];
+        }
+
+        int[] next = Arrays.copyOf(start, n);
+
+        for (Edge edge : edges) {
+            int i = indices.get(edge.getNode1());
+            int j = indices.get(edge.getNode2());
+            int s = next[i]++;
+            int t = next[j]++;
+
+            owner[s] = i;
+            other[s] = j;
+            marks[s] = mark(edge.getEndpoint1());
+            reverse[s] = t;
+
+            owner[t] = j;
+            other[t] = i;
+            marks[t] = mark(edge.getEndpoint2());
+            reverse[t] = s;
+        }
+
+        Set<Triple> triples = graph.getUnderLines();
+
+        if (triples == null || triples.isEmpty()) {
+            this.underlines = null;
+        } else {
+            this.underlines = new HashSet<>();
+
+            for (Triple triple : triples) {
+                Integer a = indices.get(triple.getX());
+                Integer b = indices.get(triple.getY());
+                Integer c = indices.get(triple.getZ());
+
+                if (a != null && b != null && c != null) {
+                    underlines.add(key(a, b, c));
+                }
+            }
+        }
+
+        this.scratch = ThreadLocal.withInitial(Scratch::new);
+    }
+
+    /**
+     * @return true iff x is d-connected to y given z.
+     */
+    public boolean isDConnectedTo(Node x, Node y, List<Node> z) {
+        Scratch s = prepare(z);
+        return search(s, index(x), index(y));
+    }
+
+    /**
+     * @return true iff x is d-separated from y given z.
+     */
+    public boolean isDSeparatedFrom(Node x, Node y, List<Node> z) {
+        return !isDConnectedTo(x, y, z);
+    }
+
+    /**
+     * @return for each of the given nodes y, whether x is d-separated from y given z, from one search.
+     */
+    public boolean[] isDSeparatedFrom(Node x, List<Node> y, List<Node> z) {
+        int[] _y = new int[y.size()];
+
+        for (int k = 0; k < _y.length; k++) {
+            _y[k] = index(y.get(k));
+        }
+
+        int _x = index(x);
+        Scratch s = prepare(z);
+        search(s, _x, -1);
+
+        boolean[] separated = new boolean[_y.length];
+
+        for (int k = 0; k < _y.length; k++) {
+            separated[k] = _y[k] != _x && s.reached[_y[k]] != s.searchStamp;
+        }
+
+        return separated;
+    }
+
+    /**
+     * @return the nodes other than x that are d-connected to x given z, in the order of the graph's nodes.
+     */
+    public List<Node> getDConnectedNodes(Node x, List<Node> z) {
+        int _x = index(x);
+        Scratch s = prepare(z);
+        search(s, _x, -1);
+
+        List<Node> connected = new ArrayList<>();
+
+        for (int i = 0; i < nodes.length; i++) {
+            if (i != _x && s.reached[i] == s.searchStamp) {
+                connected.add(nodes[i]);
+            }
+        }
+
+        return connected;
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    // Marks z and its ancestors, unless z is the conditioning set of the last query in this thread.
+    private Scratch prepare(List<Node> z) {
+        if (z == null) {
+            throw new NullPointerException("Conditioning set must not be null.");
+        }
+
+        Scratch s = scratch.get();
+
+        if (sameAsLast(s, z)) {
+            return s;
+        }
+
+        if (s.zStamp == Integer.MAX_VALUE) {
+            Arrays.fill(s.inZ, 0);
+            Arrays.fill(s.inAncestors, 0);
+            s.zStamp = 0;
+        }
+
+        s.zStamp++;
+        s.lastZSize = -1;
+
+        if (s.lastZ.length < z.size()) {
+            s.lastZ = new int[Math.max(z.size(), 2 * s.lastZ.length)];
+        }
+
+        // Nodes not in the graph can't be on a path, so they're passed over.
+        for (int k = 0; k < z.size(); k++) {
+            Integer i = indices.get(z.get(k));
+            s.lastZ[k] = i == null ? -1 : i;
+
+            if (i != null) {
+                s.inZ[i] = s.zStamp;
+            }
+        }
+
+        s.lastZSize = z.size();
+
+        // The ancestors of z, z included, following edges back from child to parent.
+        int head = 0, tail = 0;
+
+        for (int k = 0; k < s.lastZSize; k++) {
+            int i = s.lastZ[k];
+
+            if (i != -1 && s.inAncestors[i] != s.zStamp) {
+                s.inAncestors[i] = s.zStamp;
+                s.queue[tail++] = i;
+            }
+        }
+
+        while (head < tail) {
+            int b = s.queue[head++];
+
+            for (int t = start[b]; t < start[b + 1]; t++) {
+                int c = other[t];
+
+                if (marks[t] == ARROW && marks[reverse[t]] == TAIL && s.inAncestors[c] != s.zStamp) {
+                    s.inAncestors[c] = s.zStamp;
+                    s.queue[tail++] = c;
+                }
+            }
+        }
+
+        return s;
+    }
+
+    private boolean sameAsLast(Scratch s, List<Node> z) {
+        if (s.lastZSize != z.size()) {
+            return false;
+        }
+
+        for (int k = 0; k < s.lastZSize; k++) {
+            Integer i = indices.get(z.get(k));
+
+            if ((i == null ? -1 : i) != s.lastZ[k]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Searches from x along edges by which a path may be extended, as GraphUtils.isDConnectedTo does, marking in
+    // s.reached the nodes reached. Stops early with true if y is reached; pass y = -1 to mark every node reachable.
+    private boolean search(Scratch s, int x, int y) {
+        if (x == y) {
+            return true;
+        }
+
+        if (s.searchStamp == Integer.MAX_VALUE) {
+            Arrays.fill(s.reached, 0);
+            Arrays.fill(s.visited, 0);
+            s.searchStamp = 0;
+        }
+
+        int stamp = ++s.searchStamp;
+        int head = 0, tail = 0;
+
+        for (int t = start[x]; t < start[x + 1]; t++) {
+            int c = other[t];
+
+            if (c == y) {
+                return true;
+            }
+
+            s.reached[c] = stamp;
+
+            int u = reverse[t];
+
+            if (s.visited[u] != stamp) {
+                s.visited[u] = stamp;
+                s.queue[tail++] = u;
+            }
+        }
+
+        while (head < tail) {
+            int e = s.queue[head++];
+            int b = owner[e];
+            int a = other[e];
+            boolean into = marks[e] == ARROW;
+
+            for (int t = start[b]; t < start[b + 1]; t++) {
+                int c = other[t];
+
+                if (c == a) {
+                    continue;
+                }
+
+                if (!passes(s, a, b, c, into && marks[t] == ARROW)) {
+                    continue;
+                }
+
+                if (c == y) {
+                    return true;
+                }
+
+                s.reached[c] = stamp;
+
+                int u = reverse[t];
+
+                if (s.visited[u] != stamp) {
+                    s.visited[u] = stamp;
+                    s.queue[tail++] = u;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    // Whether a path through a, b, c is open at b.
+    private boolean passes(Scratch s, int a, int b, int c, boolean collider) {
+        if ((!collider || isUnderlined(a, b, c)) && s.inZ[b] != s.zStamp) {
+            return true;
+        }
+
+        return collider && s.inAncestors[b] == s.zStamp;
+    }
+
+    private boolean isUnderlined(int a, int b, int c) {
+        return underlines != null && underlines.contains(key(a, b, c));
+    }
+
+    private long key(int a, int b, int c) {
+        long n = nodes.length;
+        return (Math.min(a, c) * n + b) * n + Math.max(a, c);
+    }
+
+    private int index(Node node) {
+        Integer i = indices.get(node);
+
+        if (i == null) {
+            throw new IllegalArgumentException("Node not in graph: " + node);
+        }
+
+        return i;
+    }
+
+    private static byte mark(Endpoint endpoint) {
+        if (endpoint == Endpoint.TAIL) {
+            return TAIL;
+        } else if (endpoint == Endpoint.ARROW) {
+            return ARROW;
+        } else {
+            return OTHER;
+        }
+    }
+
+    // Per thread working space. Entries are current when they equal the matching stamp, so nothing is cleared
+    // between queries.
+    private final class Scratch {
+        final int[] inZ = new int[nodes.length];
+        final int[] inAncestors = new int[nodes.length];
+        final int[] reached = new int[nodes.length];
+        final int[] visited = new int[marks.length];
+        final int[] queue = new int[Math.max(nodes.length, marks.length)];
+        int zStamp = 0;
+        int searchStamp = 0;
+        int[] lastZ = new int[8];
+        int lastZSize = -1;
+    }
+}
@@ -41,27 +41,6 @@ public final class Dag implements Graph {
      */
     private final Graph graph;
 
-    /**
-     * A dpath matrix for the DAG. If used, it is updated (where necessary) each
-     * time the getDirectedPath method is called with whatever edges are stored
-     * in the dpathNewEdges list. New edges that are added are appended to the
-     * dpathNewEdges list. When edges are removed and when nodes are added or
-     * removed, dpath is set to null.
-     */
-    private transient byte[][] dpath;
-
-    /**
-     * New edges that need to be added to the dpath matrix.
-     */
-    private transient LinkedList<Edge> dpathNewEdges = new LinkedList<>();
-
-    /**
-     * The order of nodes used for dpath.
-     */
-    private transient List<Node> dpathNodes;
-
-    private Map<Node, Integer> nodesHash = new HashMap<>();
-
     private boolean pag;
     private boolean pattern;
     
@@ -77,13 +56,10 @@ public final class Dag implements Graph {
         // Must use EdgeListGraph because property change events are correctly implemeted. Don't change it!
         // unless you fix that or the interface will break the interface! jdramsey 2015-6-5
         this.graph = new EdgeListGraph();
-
-        reconstituteDpath();
     }
 
     public Dag(List<Node> nodes) {
         this.graph = new EdgeListGraphSingleConnections(nodes);
-        reconstituteDpath();
     }
 
     /**
@@ -105,9 +81,6 @@ public final class Dag implements Graph {
         for (Node node : this.graph.getNodes()) {
         	node.getAllAttributes().clear();
         }
-        
-        resetDPath();
-        reconstituteDpath();
 
         for (Edge edge : graph.getEdges()) {
             if (graph.isHighlighted(edge)) {
@@ -133,26 +106,14 @@ public final class Dag implements Graph {
     }
 
     public boolean addEdge(Edge edge) {
-        reconstituteDpath();
         Node _node1 = Edges.getDirectedEdgeTail(edge);
         Node _node2 = Edges.getDirectedEdgeHead(edge);
 
-        int i = dpathNodes.indexOf(_node1);
-        int j = dpathNodes.indexOf(_node2);
-
-        if (dpath[j][i] == 1) {
+        if (getGraph().existsDirectedPathFromTo(_node2, _node1)) {
             return false;
         }
 
-        adjustDPath(i, j);
-
-        boolean added = getGraph().addEdge(edge);
-
-        if (added) {
-            dpathNewEdges().add(edge);
-        }
-
-        return added;
+        return getGraph().addEdge(edge);
     }
 
     public boolean addDirectedEdge(Node node1, Node node2) {
@@ -164,14 +125,7 @@ public final class Dag implements Graph {
     }
 
     public boolean addNode(Node node) {
-        boolean added = getGraph().addNode(node);
-
-        if (added) {
-            resetDPath();
-            reconstituteDpath();
-        }
-
-        return added;
+        return getGraph().addNode(node);
     }
 
     public void addPropertyChangeListener(PropertyChangeListener l) {
@@ -227,22 +181,7 @@ public final class Dag implements Graph {
     }
 
     public boolean existsDirectedPathFromTo(Node node1, Node node2) {
-//        resetDPath();
-//        reconstituteDpath();
-
-//        node1 = graph.getNode(node1.getNode());
-//        node2 = graph.getNode(node2.getNode());
-
-        //System.out.println(MatrixUtils.toString(dpath));
-
-
-        int index1 = nodesHash.get(node1);
-        int index2 = nodesHash.get(node2);
-
-//        int index1 = dpathNodes.indexOf(node1);
-//        int index2 = dpathNodes.indexOf(node2);
-
-        return dpath[index1][index2] == 1;
+        return getGraph().existsDirectedPathFromTo(node1, node2);
     }
 
     public boolean existsUndirectedPathFromTo(Node node1, Node node2) {
@@ -404,7 +343,7 @@ public final class Dag implements Graph {
     }
 
     public boolean isAncestorOf(Node node1, Node node2) {
-        return node1 == node2 || GraphUtils.existsDirectedPathFromToBreathFirst(node1, node2, this);
+        return getGraph().isAncestorOf(node1, node2);
     }
 
     public boolean isDirectedFromTo(Node node1, Node node2) {
@@ -445,38 +384,19 @@ public final class Dag implements Graph {
     }
 
     public boolean isDescendentOf(Node node1, Node node2) {
-        return node1 == node2 || GraphUtils.existsDirectedPathFromToBreathFirst(node2, node1, this);
+        return getGraph().isDescendentOf(node1, node2);
     }
 
     public boolean removeEdge(Node node1, Node node2) {
-        boolean removed = getGraph().removeEdge(node1, node2);
-
-        if (removed) {
-            resetDPath();
-            reconstituteDpath();
-        }
-
-        return removed;
+        return getGraph().removeEdge(node1, node2);
     }
 
     public boolean removeEdges(Node node1, Node node2) {
-        boolean removed = getGraph().removeEdges(node1, node2);
-
-        if (removed) {
-            resetDPath();
-            reconstituteDpath();
-        }
-
-        return removed;
+        return getGraph().removeEdges(node1, node2);
     }
 
     public boolean setEndpoint(Node node1, Node node2, Endpoint endpoint) {
-        boolean ret = getGraph().setEndpoint(node1, node2, endpoint);
-
-        resetDPath();
-        reconstituteDpath();
-
-        return ret;
+        return getGraph().setEndpoint(node1, node2, endpoint);
     }
 
     public Graph subgraph(List<Node> nodes) {
@@ -484,10 +404,7 @@ public final class Dag implements Graph {
     }
 
     public boolean removeEdge(Edge edge) {
-        boolean removed = getGraph().removeEdge(edge);
-        resetDPath();
-        reconstituteDpath();
-        return removed;
+        return getGraph().removeEdge(edge);
     }
 
     public boolean removeEdges(Collection<Edge> edges) {
@@ -504,14 +421,7 @@ public final class Dag implements Graph {
     }
 
     public boolean removeNode(Node node) {
-        boolean removed = getGraph().removeNode(node);
-
-        if (removed) {
-            resetDPath();
-            reconstituteDpath();
-        }
-
-        return removed;
+        return getGraph().removeNode(node);
     }
 
     public boolean removeNodes(List<Node> nodes) {
@@ -535,49 +445,6 @@ public final class Dag implements Graph {
         return getGraph().possDConnectedTo(node1, node2, z);
     }
 
-    private void resetDPath() {
-        dpath = null;
-        dpathNewEdges().clear();
-        dpathNewEdges().addAll(getEdges());
-    }
-
-    private void reconstituteDpath() {
-        if (dpath == null) {
-            dpathNodes = getNodes();
-            int numNodes = dpathNodes.size();
-            dpath = new byte[numNodes][numNodes];
-        }
-
-        while (!dpathNewEdges().isEmpty()) {
-            Edge edge = dpathNewEdges().removeFirst();
-            Node _node1 = Edges.getDirectedEdgeTail(edge);
-            Node _node2 = Edges.getDirectedEdgeHead(edge);
-            int i = dpathNodes.indexOf(_node1);
-            int j = dpathNodes.indexOf(_node2);
-            adjustDPath(i, j);
-        }
-
-        nodesHash = new HashMap<>();
-
-        for (int i = 0; i < dpathNodes.size(); i++) {
-            nodesHash.put(dpathNodes.get(i), i);
-        }
-    }
-
-    private void adjustDPath(int i, int j) {
-        dpath[i][j] = 1;
-
-        for (int k = 0; k < dpathNodes.size(); k++) {
-            if (dpath[k][i] == 1) {
-                dpath[k][j] = 1;
-            }
-
-            if (dpath[j][k] == 1) {
-                dpath[i][k] = 1;
-            }
-        }
-    }
-
     public final void transferNodesAndEdges(Graph graph)
             throws IllegalArgumentException {
         this.getGraph().transferNodesAndEdges(graph);
@@ -671,13 +538,6 @@ public final class Dag implements Graph {
         return getGraph().toString();
     }
 
-    private LinkedList<Edge> dpathNewEdges() {
-        if (dpathNewEdges == null) {
-            dpathNewEdges = new LinkedList<>();
-        }
-        return dpathNewEdges;
-    }
-
     /**
      * Adds semantic checks to the default deserialization method. This method
      * must have the standard signature for a readObject method, and the body of
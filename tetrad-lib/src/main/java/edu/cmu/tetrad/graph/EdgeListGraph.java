@@ -480,6 +480,12 @@ public class EdgeListGraph implements Graph, TripleClassifier {
      */
     @Override
     public boolean existsDirectedPathFromTo(Node node1, Node node2) {
+        AncestorIndex index = getAncestorIndex();
+
+        if (index != null && index.contains(node1) && index.contains(node2)) {
+            return index.existsDirectedPathFromTo(node1, node2);
+        }
+
         return existsDirectedPathVisit(node1, node2, new HashSet<Node>());
     }
 
@@ -675,11 +681,22 @@ public class EdgeListGraph implements Graph, TripleClassifier {
 //    }
     protected Map<Node, Set<Node>> ancestors = null;
 
+    /**
+     * Answers directed path questions, made when first needed and told of changes to directed edges after that.
+     */
+    private transient AncestorIndex ancestorIndex;
+
     /**
      * Determines whether one node is an ancestor of another.
      */
     @Override
     public boolean isAncestorOf(Node node1, Node node2) {
+        AncestorIndex index = getAncestorIndex();
+
+        if (index != null && index.contains(node1) && index.contains(node2)) {
+            return index.isAncestorOf(node1, node2);
+        }
+
         return getAncestors(Collections.singletonList(node2)).contains(node1);
 //        if (ancestors == null) {
 //            ancestors = new HashMap<>();
@@ -746,6 +763,12 @@ public class EdgeListGraph implements Graph, TripleClassifier {
      */
     @Override
     public boolean isDescendentOf(Node node1, Node node2) {
+        AncestorIndex index = getAncestorIndex();
+
+        if (index != null && index.contains(node1) && index.contains(node2)) {
+            return index.isDescendentOf(node1, node2);
+        }
+
         return node1 == node2 || GraphUtils.existsDirectedPathFromToBreathFirst(node2, node1, this);
     }
 
@@ -827,6 +850,7 @@ public class EdgeListGraph implements Graph, TripleClassifier {
         }
 
         this.nodes = nodes;
+        forgetAncestorIndex();
     }
 
     protected Set<Node> zAncestors(List<Node> z) {
@@ -1371,6 +1395,7 @@ public class EdgeListGraph implements Graph, TripleClassifier {
         }
 
         ancestors = null;
+        indexEdgeAdded(edge);
         getPcs().firePropertyChange("edgeAdded", null, edge);
         return true;
     }
@@ -1415,6 +1440,7 @@ public class EdgeListGraph implements Graph, TripleClassifier {
         edgeLists.put(node, new ArrayList<Edge>(4));
         nodes.add(node);
         namesHash.put(node.getName(), node);
+        forgetAncestorIndex();
 
         if (node.getNodeType() != NodeType.ERROR) {
             getPcs().firePropertyChange("nodeAdded", null, node);
@@ -1514,6 +1540,7 @@ public class EdgeListGraph implements Graph, TripleClassifier {
     public void fullyConnect(Endpoint endpoint) {
         edgesSet.clear();
         edgeLists.clear();
+        forgetAncestorIndex();
 
         for (Node node : nodes) {
             edgeLists.put(node, new ArrayList<Edge>(4));
@@ -1602,6 +1629,7 @@ public class EdgeListGraph implements Graph, TripleClassifier {
         }
 
         edgeLists.clear();
+        forgetAncestorIndex();
     }
 
     /**
@@ -1638,6 +1666,7 @@ public class EdgeListGraph implements Graph, TripleClassifier {
         stuffRemovedSinceLastTripleAccess = true;
 
         ancestors = null;
+        indexEdgeRemoved(edge);
         getPcs().firePropertyChange("edgeRemoved", edge, null);
         return true;
     }
@@ -1704,6 +1733,7 @@ public class EdgeListGraph implements Graph, TripleClassifier {
         nodes.remove(node);
         namesHash.remove(node.getName());
         stuffRemovedSinceLastTripleAccess = true;
+        forgetAncestorIndex();
 
         getPcs().firePropertyChange("nodeRemoved", node, null);
         return changed;
@@ -1953,6 +1983,58 @@ public class EdgeListGraph implements Graph, TripleClassifier {
         stuffRemovedSinceLastTripleAccess = false;
     }
 
+    /**
+     * @return the ancestor index, made if need be, or null if the graph is too large to index.
+     */
+    synchronized AncestorIndex getAncestorIndex() {
+        if (ancestorIndex == null && nodes.size() <= AncestorIndex.MAX_NODES) {
+            ancestorIndex = new AncestorIndex(this);
+        }
+
+        return ancestorIndex;
+    }
+
+    /**
+     * Tells the ancestor index, if there is one, that the given edge has been added.
+     */
+    void indexEdgeAdded(Edge edge) {
+        AncestorIndex index = ancestorIndex;
+
+        if (index == null || !Edges.isDirectedEdge(edge)) {
+            return;
+        }
+
+        if (index.contains(edge.getNode1()) && index.contains(edge.getNode2())) {
+            index.directedEdgeAdded(Edges.getDirectedEdgeTail(edge), Edges.getDirectedEdgeHead(edge));
+        } else {
+            forgetAncestorIndex();
+        }
+    }
+
+    /**
+     * Tells the ancestor index, if there is one, that the given edge has been removed.
+     */
+    void indexEdgeRemoved(Edge edge) {
+        AncestorIndex index = ancestorIndex;
+
+        if (index == null || !Edges.isDirectedEdge(edge)) {
+            return;
+        }
+
+        if (index.contains(edge.getNode1()) && index.contains(edge.getNode2())) {
+            index.directedEdgeRemoved(Edges.getDirectedEdgeTail(edge), Edges.getDirectedEdgeHead(edge));
+        } else {
+            forgetAncestorIndex();
+        }
+    }
+
+    /**
+     * Drops the ancestor index, to be made again when next needed, as when nodes are added or removed.
+     */
+    void forgetAncestorIndex() {
+        ancestorIndex = null;
+    }
+
     private void collectAncestorsVisit(Node node, Set<Node> ancestors) {
         if (ancestors.contains(node)) {
             return;
@@ -212,14 +212,6 @@ public class EdgeListGraphSingleConnections extends EdgeListGraph implements Tri
         return false;
     }
 
-    /**
-     * @return true iff there is a directed path from node1 to node2.
-     * a
-     */
-    public boolean existsDirectedPathFromTo(Node node1, Node node2) {
-        return existsDirectedPathVisit(node1, node2, new HashSet<Node>());
-    }
-
     public boolean existsUndirectedPathFromTo(Node node1, Node node2) {
         return existsUndirectedPathVisit(node1, node2, new HashSet<Node>());
     }
@@ -242,14 +234,6 @@ public class EdgeListGraphSingleConnections extends EdgeListGraph implements Tri
         return null;
     }
 
-    /**
-     * Determines whether one node is a descendent of another.
-     */
-    public boolean isDescendentOf(Node node1, Node node2) {
-        return node1 == node2 || GraphUtils.existsDirectedPathFromToBreathFirst(node2, node1, this);
-//        return (node1 == node2) || isProperDescendentOf(node1, node2);
-    }
-
     /**
      * @return the endpoint along the edge from node to node2 at the node2 end.
      */
@@ -294,6 +278,7 @@ public class EdgeListGraphSingleConnections extends EdgeListGraph implements Tri
         }
 
         this.nodes = nodes;
+        forgetAncestorIndex();
     }
 
     /**
@@ -327,6 +312,7 @@ public class EdgeListGraphSingleConnections extends EdgeListGraph implements Tri
         edgeLists.put(edge.getNode2(), edgeList2);
 
         edgesSet.add(edge);
+        indexEdgeAdded(edge);
 
         return true;
     }
@@ -359,6 +345,7 @@ public class EdgeListGraphSingleConnections extends EdgeListGraph implements Tri
         edgeLists.put(node, new ArrayList<Edge>());
         nodes.add(node);
         namesHash.put(node.getName(), node);
+        forgetAncestorIndex();
 
         return true;
     }
@@ -416,6 +403,7 @@ public class EdgeListGraphSingleConnections extends EdgeListGraph implements Tri
 
         edgeLists.put(edge.getNode1(), edgeList1);
         edgeLists.put(edge.getNode2(), edgeList2);
+        indexEdgeRemoved(edge);
 
         getPcs().firePropertyChange("edgeRemoved", edge, null);
         return true;
@@ -450,6 +438,7 @@ public class EdgeListGraphSingleConnections extends EdgeListGraph implements Tri
         nodes.remove(node);
         namesHash.remove(node.getName());
         stuffRemovedSinceLastTripleAccess = true;
+        forgetAncestorIndex();
 
         getPcs().firePropertyChange("nodeRemoved", node, null);
         return changed;
@@ -50,7 +50,7 @@ public final class IndependenceFact implements Comparable, TetradSerializable {
 
         this.x = x;
         this.y = y;
-        this._z = new HashSet<>(z);
+        this._z = new LinkedHashSet<>(z);
     }
 
     public IndependenceFact(Node x, Node y, Node... z) {
@@ -61,7 +61,7 @@ public final class IndependenceFact implements Comparable, TetradSerializable {
         this.x = x;
         this.y = y;
 
-        Set<Node> cond = new HashSet<>();
+        Set<Node> cond = new LinkedHashSet<>();
 
         Collections.addAll(cond, z);
 
@@ -1,9 +1,11 @@
 package edu.cmu.tetrad.search;
 
+import edu.cmu.tetrad.data.AdTree;
 import edu.cmu.tetrad.data.DataSet;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * Stores AD trees for data sets for reuse.
@@ -12,7 +14,10 @@ import java.util.Map;
 public class AdTrees {
     private static Map<DataSet, AdLeafTree> adTrees = new HashMap<>();
 
-    public static AdLeafTree getAdLeafTree(DataSet dataSet) {
+    // Held weakly, so a tree goes once its data set is no longer used; trees don't refer back to their data sets.
+    private static Map<DataSet, AdTree> countTrees = new WeakHashMap<>();
+
+    public static synchronized AdLeafTree getAdLeafTree(DataSet dataSet) {
         AdLeafTree tree = adTrees.get(dataSet);
 
         if (tree == null) {
@@ -22,4 +27,20 @@ public class AdTrees {
 
         return tree;
     }
+
+    /**
+     * @return the counting AD tree for the given data set, made the first time it's asked for. The tree grows as it's
+     * queried, so sharing it among the scores and tests of a data set saves counting. The tree is kept only as long
+     * as the data set is reachable elsewhere.
+     */
+    public static synchronized AdTree getAdTree(DataSet dataSet) {
+        AdTree tree = countTrees.get(dataSet);
+
+        if (tree == null) {
+            tree = new AdTree(dataSet);
+            countTrees.put(dataSet, tree);
+        }
+
+        return tree;
+    }
 }
@@ -34,112 +34,47 @@ import java.util.List;
  */
 public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
     private List<Node> variables;
-    private int[][] data;
+    private final ContingencyCounts counts;
     private int sampleSize;
 
     private double samplePrior = 1;
     private double structurePrior = 1;
 
-    private int[] numCategories;
+    // Optional cache of local scores, possibly shared with other threads.
+    private LocalScoreCache cache = null;
 
     public BDeuScore(DataSet dataSet) {
         if (dataSet == null) {
             throw new NullPointerException("Data was not provided.");
         }
 
-        if (dataSet instanceof BoxDataSet) {
-            DataBox dataBox = ((BoxDataSet) dataSet).getDataBox();
-
-            this.variables = dataSet.getVariables();
-
-            if (!(dataBox instanceof VerticalIntDataBox)) {
-                dataBox = new VerticalIntDataBox(dataBox);
-            }
-
-            VerticalIntDataBox box = (VerticalIntDataBox) dataBox;
-
-            data = box.getVariableVectors();
-            this.sampleSize = box.numRows();
-        } else {
-            data = new int[dataSet.getNumColumns()][];
-            this.variables = dataSet.getVariables();
-
-            for (int j = 0; j < dataSet.getNumColumns(); j++) {
-                data[j] = new int[dataSet.getNumRows()];
-
-                for (int i = 0; i < dataSet.getNumRows(); i++) {
-                    data[j][i] = dataSet.getInt(i, j);
-                }
-            }
-
-            this.sampleSize = dataSet.getNumRows();
-        }
-
-        final List<Node> variables = dataSet.getVariables();
-        numCategories = new int[variables.size()];
-        for (int i = 0; i < variables.size(); i++) {
-            numCategories[i] = (getVariable(i)).getNumCategories();
-        }
-    }
-
-    private DiscreteVariable getVariable(int i) {
-        return (DiscreteVariable) variables.get(i);
+        this.variables = dataSet.getVariables();
+        this.counts = new ContingencyCounts(dataSet);
+        this.sampleSize = dataSet.getNumRows();
     }
 
     @Override
     public double localScore(int node, int parents[]) {
-
-        // Number of categories for node.
-        int c = numCategories[node];
-
-        // Numbers of categories of parents.
-        int[] dims = new int[parents.length];
-
-        for (int p = 0; p < parents.length; p++) {
-            dims[p] = numCategories[parents[p]];
+        if (cache != null) {
+            double cached = cache.get(node, parents);
+            if (!Double.isNaN(cached)) return cached;
         }
 
-        // Number of parent states.
-        int r = 1;
+        double score = computeLocalScore(node, parents);
+        if (cache != null) cache.add(node, parents, score);
+        return score;
+    }
 
-        for (int p = 0; p < parents.length; p++) {
-            r *= dims[p];
-        }
+    private double computeLocalScore(int node, int[] parents) {
 
         // Conditional cell coefs of data for node given parents(node).
-        int n_jk[][] = new int[r][c];
-        int n_j[] = new int[r];
-
-        int[] parentValues = new int[parents.length];
-
-        int[][] myParents = new int[parents.length][];
-        for (int i = 0; i < parents.length; i++) {
-            myParents[i] = data[parents[i]];
-        }
-
-        int[] myChild = data[node];
-
+        ContingencyCounts.Table table = counts.count(node, parents);
 
-        ROW:
-        for (int i = 0; i < sampleSize; i++) {
-            for (int p = 0; p < parents.length; p++) {
-                if (myParents[p][i] == -99) continue ROW;
-                parentValues[p] = myParents[p][i];
-            }
-
-            int childValue = myChild[i];
-
-            if (childValue == -99) {
-                continue ROW;
-//                throw new IllegalStateException("Please remove or impute missing " +
-//                        "values (record " + i + " column " + i + ")");
-            }
-
-            int rowIndex = getRowIndex(dims, parentValues);
+        // Number of categories for node.
+        int c = table.getNumCategories();
 
-            n_jk[rowIndex][childValue]++;
-            n_j[rowIndex]++;
-        }
+        // Number of parent states.
+        double r = table.getNumConfigurations();
 
         //Finally, compute the score
         double score = 0.0;
@@ -149,23 +84,39 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
         final double cellPrior = getSamplePrior() / (c * r);
         final double rowPrior = getSamplePrior() / r;
 
-        for (int j = 0; j < r; j++) {
-            score -= Gamma.logGamma(rowPrior + n_j[j]);
+        if (table.isDense()) {
+            for (int j = 0; j < r; j++) {
+                score -= Gamma.logGamma(rowPrior + table.getRowTotal(j));
 
-            for (int k = 0; k < c; k++) {
-                score += Gamma.logGamma(cellPrior + n_jk[j][k]);
+                for (int k = 0; k < c; k++) {
+                    score += Gamma.logGamma(cellPrior + table.getCount(j, k));
+                }
             }
-        }
 
-        score += r * Gamma.logGamma(rowPrior);
-        score -= c * r * Gamma.logGamma(cellPrior);
+            score += r * Gamma.logGamma(rowPrior);
+            score -= c * r * Gamma.logGamma(cellPrior);
+        } else {
+
+            // Parent states that don't occur contribute nothing, so only those that do are summed over.
+            final double logGammaRowPrior = Gamma.logGamma(rowPrior);
+            final double logGammaCellPrior = Gamma.logGamma(cellPrior);
+
+            for (int j = 0; j < table.getNumRows(); j++) {
+                score += logGammaRowPrior - Gamma.logGamma(rowPrior + table.getRowTotal(j));
+
+                for (int k = 0; k < c; k++) {
+                    int n_jk = table.getCount(j, k);
+                    if (n_jk > 0) score += Gamma.logGamma(cellPrior + n_jk) - logGammaCellPrior;
+                }
+            }
+        }
 
         return score;
     }
 
     private double getPriorForStructure(int numParents) {
         double e = getStructurePrior();
-        int vm = data.length - 1;
+        int vm = variables.size() - 1;
         return numParents * Math.log(e / (vm)) + (vm - numParents) * Math.log(1.0 - (e / (vm)));
     }
 
@@ -217,15 +168,6 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
         throw new UnsupportedOperationException();
     }
 
-    private static int getRowIndex(int[] dim, int[] values) {
-        int rowIndex = 0;
-        for (int i = 0; i < dim.length; i++) {
-            rowIndex *= dim[i];
-            rowIndex += values[i];
-        }
-        return rowIndex;
-    }
-
     @Override
     public double getStructurePrior() {
         return structurePrior;
@@ -239,11 +181,32 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
     @Override
     public void setStructurePrior(double structurePrior) {
         this.structurePrior = structurePrior;
+        if (cache != null) cache.clear();
     }
 
     @Override
     public void setSamplePrior(double samplePrior) {
         this.samplePrior = samplePrior;
+        if (cache != null) cache.clear();
+    }
+
+    public LocalScoreCache getLocalScoreCache() {
+        return cache;
+    }
+
+    /**
+     * Sets a cache for local scores, or null for none. The cache is cleared whenever a prior changes.
+     */
+    public void setLocalScoreCache(LocalScoreCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Takes counts from the given AD-tree over the same data, which may be shared with other scores and tests, or
+     * from the data if null. Scores are the same either way.
+     */
+    public void setAdTree(AdTree adTree) {
+        counts.setAdTree(adTree);
     }
 
     public void setVariables(List<Node> variables) {
@@ -26,70 +26,24 @@ import edu.cmu.tetrad.graph.Node;
 
 import java.util.List;
 
-import static edu.cmu.tetrad.search.XdslXmlConstants.ROW;
-
 /**
  * Calculates the discrete BIC score.
  */
 public class BicScore implements LocalDiscreteScore, IBDeuScore {
     private List<Node> variables;
-    private int[][] data;
+    private final ContingencyCounts counts;
     private int sampleSize;
 
     private double penaltyDiscount = 1;
 
-    private int[] numCategories;
-
     public BicScore(DataSet dataSet) {
         if (dataSet == null) {
             throw new NullPointerException();
         }
 
-        if (dataSet instanceof BoxDataSet) {
-            DataBox dataBox = ((BoxDataSet) dataSet).getDataBox();
-
-            this.variables = dataSet.getVariables();
-
-            if (!(((BoxDataSet) dataSet).getDataBox() instanceof VerticalIntDataBox)) {
-                throw new IllegalArgumentException();
-            }
-
-            VerticalIntDataBox box = (VerticalIntDataBox) dataBox;
-
-            data = box.getVariableVectors();
-            this.sampleSize = dataSet.getNumRows();
-        } else {
-            data = new int[dataSet.getNumColumns()][];
-            this.variables = dataSet.getVariables();
-
-            for (int j = 0; j < dataSet.getNumColumns(); j++) {
-                data[j] = new int[dataSet.getNumRows()];
-
-                for (int i = 0; i < dataSet.getNumRows(); i++) {
-                    data[j][i] = dataSet.getInt(i, j);
-                }
-            }
-
-            this.sampleSize = dataSet.getNumRows();
-        }
-
-        final List<Node> variables = dataSet.getVariables();
-        numCategories = new int[variables.size()];
-        for (int i = 0; i < variables.size(); i++) {
-            DiscreteVariable variable = getVariable(i);
-
-            if (variable != null) {
-                numCategories[i] = variable.getNumCategories();
-            }
-        }
-    }
-
-    private DiscreteVariable getVariable(int i) {
-        if (variables.get(i) instanceof DiscreteVariable) {
-            return (DiscreteVariable) variables.get(i);
-        } else {
-            return null;
-        }
+        this.variables = dataSet.getVariables();
+        this.counts = new ContingencyCounts(dataSet);
+        this.sampleSize = dataSet.getNumRows();
     }
 
     @Override
@@ -105,71 +59,29 @@ public class BicScore implements LocalDiscreteScore, IBDeuScore {
             }
         }
 
-        // Number of categories for node.
-        int c = numCategories[node];
-
-        // Numbers of categories of parents.
-        int[] dims = new int[parents.length];
-
-        for (int p = 0; p < parents.length; p++) {
-            dims[p] = numCategories[parents[p]];
-        }
-
-        // Number of parent states.
-        int r = 1;
-
-        for (int p = 0; p < parents.length; p++) {
-            r *= dims[p];
-        }
-
         // Conditional cell coefs of data for node given parents(node).
-        int n_jk[][] = new int[r][c];
-        int n_j[] = new int[r];
-
-        int[] parentValues = new int[parents.length];
-
-        int[][] myParents = new int[parents.length][];
-        for (int i = 0; i < parents.length; i++) {
-            myParents[i] = data[parents[i]];
-        }
-
-        int[] myChild = data[node];
-
-        ROW:
-        for (int i = 0; i < sampleSize; i++) {
-            for (int p = 0; p < parents.length; p++) {
-                if (myParents[p][i] == -99) continue ROW;
-                parentValues[p] = myParents[p][i];
-            }
-
-            int childValue = myChild[i];
+        ContingencyCounts.Table table = counts.count(node, parents);
 
-            if (childValue == -99) {
-                continue ROW;
-//                throw new IllegalStateException("Please remove or impute missing " +
-//                        "values (record " + i + " column " + i + ")");
-            }
-
-            int rowIndex = getRowIndex(dims, parentValues);
+        // Number of categories for node.
+        int c = table.getNumCategories();
 
-            n_jk[rowIndex][childValue]++;
-            n_j[rowIndex]++;
-        }
+        // Number of parent states.
+        double r = table.getNumConfigurations();
 
         //Finally, compute the score
         double lik = 0.0;
 
-        for (int rowIndex = 0; rowIndex < r; rowIndex++) {
+        for (int rowIndex = 0; rowIndex < table.getNumRows(); rowIndex++) {
             for (int childValue = 0; childValue < c; childValue++) {
-                int cellCount = n_jk[rowIndex][childValue];
-                int rowCount = n_j[rowIndex];
+                int cellCount = table.getCount(rowIndex, childValue);
+                int rowCount = table.getRowTotal(rowIndex);
 
                 if (cellCount == 0) continue;
                 lik += cellCount * Math.log(cellCount / (double) rowCount);
             }
         }
 
-        int params = r * (c - 1);
+        double params = r * (c - 1);
         int n = getSampleSize();
 
         return 2 * lik - penaltyDiscount * params * Math.log(n);
@@ -177,7 +89,7 @@ public class BicScore implements LocalDiscreteScore, IBDeuScore {
 
     private double getPriorForStructure(int numParents) {
         double e = getStructurePrior();
-        int vm = data.length - 1;
+        int vm = variables.size() - 1;
         return numParents * Math.log(e / (vm)) + (vm - numParents) * Math.log(1.0 - (e / (vm)));
     }
 
@@ -229,15 +141,6 @@ public class BicScore implements LocalDiscreteScore, IBDeuScore {
         throw new UnsupportedOperationException();
     }
 
-    private static int getRowIndex(int[] dim, int[] values) {
-        int rowIndex = 0;
-        for (int i = 0; i < dim.length; i++) {
-            rowIndex *= dim[i];
-            rowIndex += values[i];
-        }
-        return rowIndex;
-    }
-
     @Override
     public double getStructurePrior() {
         throw new UnsupportedOperationException();
@@ -277,6 +180,14 @@ public class BicScore implements LocalDiscreteScore, IBDeuScore {
         this.penaltyDiscount = penaltyDiscount;
     }
 
+    /**
+     * Takes counts from the given AD-tree over the same data, which may be shared with other scores and tests, or
+     * from the data if null. Scores are the same either way.
+     */
+    public void setAdTree(AdTree adTree) {
+        counts.setAdTree(adTree);
+    }
+
     @Override
     public Node getVariable(String targetName) {
         for (Node node : variables) {
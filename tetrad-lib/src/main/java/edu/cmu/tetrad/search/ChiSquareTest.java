@@ -21,13 +21,14 @@
 
 package edu.cmu.tetrad.search;
 
-import edu.cmu.tetrad.data.CellTable;
+import edu.cmu.tetrad.data.AdTree;
+import edu.cmu.tetrad.data.ContingencyCounts;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DiscreteVariable;
-import edu.cmu.tetrad.util.CombinationIterator;
 import org.apache.commons.math3.distribution.ChiSquaredDistribution;
 
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Calculates marginal chi square test results for a discrete dataset.
@@ -48,14 +49,14 @@ public class ChiSquareTest {
     private final int[] dims;
 
     /**
-     * Stores the data in the form of a cell table.
+     * The significance level of the test.
      */
-    private final CellTable cellTable;
+    private double alpha;
 
     /**
-     * The significance level of the test.
+     * Counts the data for the tests.
      */
-    private double alpha;
+    private final ContingencyCounts counts;
 
     //==============================CONSTRUCTORS=========================//
 
@@ -81,106 +82,18 @@ public class ChiSquareTest {
 
         this.dataSet = dataSet;
         this.alpha = alpha;
-        this.cellTable = new CellTable(null);
-        this.getCellTable().setMissingValue(DiscreteVariable.MISSING_VALUE);
+        this.counts = new ContingencyCounts(dataSet);
     }
 
     /**
      * Calculates chi square for a conditional crosstabulation table for independence question 0 _||_ 1 | 2, 3, ...max
      * by summing up chi square and degrees of freedom for each conditional table in turn, where rows or columns that
-     * consist entirely of zeros have been removed.
+     * consist entirely of zeros have been removed. This may be called from several threads at once.
      */
-    public synchronized ChiSquareTest.Result calcChiSquare(int[] testIndices) {
-
-        // Reset the cell table for the columns referred to in
-        // 'testIndices.' Do cell coefs for those columns.
-        this.getCellTable().addToTable(getDataSet(), testIndices);
-
-        // Indicator arrays to tell the cell table which margins
-        // to calculate. For x _||_ y | z1, z2, ..., we want to
-        // calculate the margin for x, the margin for y, and the
-        // margin for x and y. (These will be used later.)
-        int[] firstVar = new int[]{0};
-        int[] secondVar = new int[]{1};
-        int[] bothVars = new int[]{0, 1};
-
-        double xSquare = 0.0;
-        int df = 0;
-
-        int[] condDims = new int[testIndices.length - 2];
-        System.arraycopy(selectFromArray(getDims(), testIndices), 2, condDims, 0,
-                condDims.length);
-
-        int[] coords = new int[testIndices.length];
-        int numRows = this.getCellTable().getNumValues(0);
-        int numCols = this.getCellTable().getNumValues(1);
-
-        CombinationIterator combinationIterator =
-                new CombinationIterator(condDims);
-
-        // Make a chi square table for each condition combination, strike zero rows and columns and calculate
-        // chi square and degrees of freedom for the remaining rows and columns in the table. See Friedman.
-        while (combinationIterator.hasNext()) {
-            boolean[] attestedRows = new boolean[numRows];
-            boolean[] attestedCols = new boolean[numCols];
-
-            Arrays.fill(attestedRows, true);
-            Arrays.fill(attestedCols, true);
-
-            int[] combination = combinationIterator.next();
-
-            System.arraycopy(combination, 0, coords, 2, combination.length);
-
-            long total = getCellTable().calcMargin(coords, bothVars);
-
-            if (total == 0) continue;
-
-            double _xSquare = 0.0;
-
-            for (int i = 0; i < numRows; i++) {
-                for (int j = 0; j < numCols; j++) {
-                    coords[0] = i;
-                    coords[1] = j;
-
-                    long sumRow = getCellTable().calcMargin(coords, firstVar);
-                    long sumCol = getCellTable().calcMargin(coords, secondVar);
-                    long observed = getCellTable().getValue(coords);
-
-                    if (sumRow == 0L) {
-                        attestedRows[i] = false;
-                        continue;
-                    }
-
-                    if (sumCol == 0L) {
-                        attestedCols[j] = false;
-                        continue;
-                    }
-
-                    double expected = (sumRow * sumCol) / (double) total;
-                    _xSquare += Math.pow(observed - expected, 2.0) / expected;
-                }
-            }
-
-            int numAttestedRows = 0;
-            int numAttestedCols = 0;
-
-            for (boolean attestedRow : attestedRows) {
-                if (attestedRow) {
-                    numAttestedRows++;
-                }
-            }
-
-            for (boolean attestedCol : attestedCols) {
-                if (attestedCol) {
-                    numAttestedCols++;
-                }
-            }
-
-            if (numAttestedRows > 0 && numAttestedCols > 0) {
-                df += (numAttestedRows - 1) * (numAttestedCols - 1);
-                xSquare += _xSquare;
-            }
-        }
+    public ChiSquareTest.Result calcChiSquare(int[] testIndices) {
+        ChiSquareTest.Result sum = sumConditionalTables(testIndices);
+        double xSquare = sum.getXSquare();
+        int df = sum.getDf();
 
         // If df == 0, this is definitely an indepedent table.
         if (df == 0) {
@@ -193,38 +106,33 @@ public class ChiSquareTest {
         return new ChiSquareTest.Result(xSquare, pValue, df, indep);
     }
 
+    /**
+     * Calculates chi square for each of the given independence questions, each given as for calcChiSquare, with the
+     * same results.
+     */
+    public ChiSquareTest.Result[] calcChiSquares(List<int[]> testIndices) {
+        ChiSquareTest.Result[] results = new ChiSquareTest.Result[testIndices.size()];
+
+        for (int k = 0; k < testIndices.size(); k++) {
+            results[k] = calcChiSquare(testIndices.get(k));
+        }
+
+        return results;
+    }
+
     /**
      * @param testIndices An array of indices for variables in the dataset supplied in the constructor.
      * @param p           The probability that some marginal for some table dominates. A good value is 0.99.
      * @return True if the variable at index 0 is determined by the variables at the other indices.
      */
     public boolean isDetermined(int[] testIndices, double p) {
+        int[] parents = Arrays.copyOfRange(testIndices, 1, testIndices.length);
+        ContingencyCounts.Table table = counts.count(testIndices[0], parents);
 
-        // Reset the cell table for the columns referred to in
-        // 'testIndices.' Do cell coefs for those columns.
-        this.getCellTable().addToTable(getDataSet(), testIndices);
-
-        // Indicator arrays to tell the cell table which margins
-        // to calculate. For x _||_ y | z1, z2, ..., we want to
-        // calculate the margin for x, the margin for y, and the
-        // margin for x and y. (These will be used later.)
-        int[] firstVar = new int[]{0};
-
-        int[] condDims = new int[testIndices.length - 1];
-        System.arraycopy(selectFromArray(getDims(), testIndices), 1, condDims, 0,
-                condDims.length);
-
-        int[] coords = new int[testIndices.length];
-        int numValues = this.getCellTable().getNumValues(0);
-
-        CombinationIterator combinationIterator =
-                new CombinationIterator(condDims);
-
-        while (combinationIterator.hasNext()) {
-            int[] combination = combinationIterator.next();
-            System.arraycopy(combination, 0, coords, 1, combination.length);
-
-            long total = this.getCellTable().calcMargin(coords, firstVar);
+        // Each combination of values of the other variables that occurs must have some value of the first variable
+        // that dominates.
+        for (int row = 0; row < table.getNumRows(); row++) {
+            long total = table.getRowTotal(row);
 
             if (total == 0) {
                 continue;
@@ -232,12 +140,8 @@ public class ChiSquareTest {
 
             boolean dominates = false;
 
-            for (int i = 0; i < numValues; i++) {
-                coords[0] = i;
-
-                long numi = this.getCellTable().getValue(coords);
-
-                if ((double) numi / total >= p) {
+            for (int i = 0; i < table.getNumCategories(); i++) {
+                if ((double) table.getCount(row, i) / total >= p) {
                     dominates = true;
                 }
             }
@@ -271,6 +175,118 @@ public class ChiSquareTest {
 
     //================================PRIVATE==============================//
 
+    /**
+     * Sums (observed - expected)^2 / expected and the degrees of freedom over the conditional tables of the question
+     * 0 _||_ 1 | 2, 3, ..., max, one for each combination of values of the conditioning variables, striking rows and
+     * columns of each that consist entirely of zeros. See Friedman. The p value of the result is left as NaN for the
+     * caller to fill in. This may be called from several threads at once.
+     */
+    protected final ChiSquareTest.Result sumConditionalTables(int[] testIndices) {
+        ContingencyCounts.Table table = crossTable(testIndices);
+        int numZ = testIndices.length - 2;
+
+        long[] sumRows = new long[getDims()[testIndices[0]]];
+        long[] sumCols = new long[getDims()[testIndices[1]]];
+
+        double xSquare = 0.0;
+        int df = 0;
+
+        for (int from = 0, to; from < table.getNumRows(); from = to) {
+            to = endOfCondition(table, from, numZ);
+            long total = margins(table, from, to, numZ, sumRows, sumCols);
+
+            if (total == 0) continue;
+
+            double _xSquare = 0.0;
+
+            for (int row = from; row < to; row++) {
+                long sumRow = sumRows[table.getParentValue(row, numZ)];
+                if (sumRow == 0L) continue;
+
+                for (int j = 0; j < sumCols.length; j++) {
+                    if (sumCols[j] == 0L) continue;
+
+                    long observed = table.getCount(row, j);
+                    double expected = (sumRow * sumCols[j]) / (double) total;
+                    _xSquare += Math.pow(observed - expected, 2.0) / expected;
+                }
+            }
+
+            // A table with a single attested row or column contributes nothing to either sum.
+            int _df = (numNonzero(sumRows) - 1) * (numNonzero(sumCols) - 1);
+
+            if (_df > 0) {
+                df += _df;
+                xSquare += _xSquare;
+            }
+        }
+
+        return new ChiSquareTest.Result(xSquare, Double.NaN, df, false);
+    }
+
+    /**
+     * @return the counts of the values of testIndices[1] for each combination of values of the conditioning variables
+     * testIndices[2], testIndices[3], ... and of testIndices[0], in that order. Rows of the data with missing values
+     * are skipped.
+     */
+    private ContingencyCounts.Table crossTable(int[] testIndices) {
+        int[] parents = new int[testIndices.length - 1];
+        System.arraycopy(testIndices, 2, parents, 0, testIndices.length - 2);
+        parents[parents.length - 1] = testIndices[0];
+        return counts.count(testIndices[1], parents);
+    }
+
+    /**
+     * @return the first row of the given cross table after row from with a different combination of values of the
+     * numZ conditioning variables, or the number of rows of the table if there is none.
+     */
+    private static int endOfCondition(ContingencyCounts.Table table, int from, int numZ) {
+        int to = from + 1;
+
+        ROW:
+        for (; to < table.getNumRows(); to++) {
+            for (int p = 0; p < numZ; p++) {
+                if (table.getParentValue(to, p) != table.getParentValue(from, p)) break ROW;
+            }
+        }
+
+        return to;
+    }
+
+    /**
+     * Sums the rows from, ..., to - 1 of the given cross table, which share a combination of values of the numZ
+     * conditioning variables, into margins for the first variable (sumRows) and the second (sumCols).
+     *
+     * @return the total of the rows.
+     */
+    private static long margins(ContingencyCounts.Table table, int from, int to, int numZ, long[] sumRows,
+                                long[] sumCols) {
+        Arrays.fill(sumRows, 0L);
+        Arrays.fill(sumCols, 0L);
+        long total = 0;
+
+        for (int row = from; row < to; row++) {
+            for (int j = 0; j < sumCols.length; j++) {
+                int count = table.getCount(row, j);
+                sumRows[table.getParentValue(row, numZ)] += count;
+                sumCols[j] += count;
+                total += count;
+            }
+        }
+
+        return total;
+    }
+
+    private static int numNonzero(long[] sums) {
+        int n = 0;
+
+        for (long sum : sums) {
+            if (sum != 0L) n++;
+        }
+
+        return n;
+    }
+
     public int[] selectFromArray(int[] arr, int[] indices) {
         int[] retArr = new int[indices.length];
 
@@ -289,8 +305,12 @@ public class ChiSquareTest {
         return dims;
     }
 
-    public CellTable getCellTable() {
-        return cellTable;
+    /**
+     * Takes counts from the given AD-tree over the same data, which may be shared with other tests and scores, or
+     * from the data if null. Results are the same either way.
+     */
+    public void setAdTree(AdTree adTree) {
+        counts.setAdTree(adTree);
     }
 
     //===============================CLASSES==============================//
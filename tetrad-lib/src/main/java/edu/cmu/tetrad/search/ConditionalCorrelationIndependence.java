@@ -23,11 +23,14 @@ package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.KdTree;
 import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.SearchExecutor;
 import edu.cmu.tetrad.util.StatUtils;
 import org.apache.commons.math3.distribution.NormalDistribution;
 
 import java.util.*;
+import java.util.concurrent.Callable;
 
 import static edu.cmu.tetrad.util.StatUtils.*;
 import static java.lang.Math.*;
@@ -49,7 +52,8 @@ import static java.lang.Math.pow;
  * Daudin, J. J. (1980). Partial association measures and a  application to qualitative regression.
  * Biometrika, 67(3), 581-590.
  * <p>
- * We use Nadaraya-Watson kernel regression, though we further restrict the sample size to nearby points.
+ * We use Nadaraya-Watson kernel regression, though we further restrict the sample size to nearby points. These
+ * are found using a k-d tree over the conditioning variables, which is kept for reuse.
  *
  * @author Joseph Ramsey
  */
@@ -65,11 +69,6 @@ public final class ConditionalCorrelationIndependence {
      */
     private final double[][] data;
 
-    /**
-     * The ith array gives indices into the ith variables in sorted order.
-     */
-    private final ArrayList<List<Integer>> sortedIndices;
-
     /**
      * The significance level of the independence tests.
      */
@@ -81,9 +80,20 @@ public final class ConditionalCorrelationIndependence {
     private final double[] h;
 
     /**
-     * Looks up the index of a record in the the sorted order for each variable z.
+     * The number of k-d trees over conditioning sets to keep.
      */
-    private final List<Map<Integer, Integer>> reverseLookup;
+    private static final int NUM_Z_INDICES = 64;
+
+    /**
+     * k-d trees over the most recently used conditioning sets, keyed by their sorted column indices.
+     */
+    private final Map<String, KdTree> zIndices = Collections.synchronizedMap(
+            new LinkedHashMap<String, KdTree>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, KdTree> eldest) {
+                    return size() > NUM_Z_INDICES;
+                }
+            });
 
     /**
      * Depth 0 residuals for reuse.
@@ -189,16 +199,6 @@ public final class ConditionalCorrelationIndependence {
 
         this.cutoff = getZForAlpha(alpha);
 
-        sortedIndices = new ArrayList<>();
-
-        for (double[] x : data) {
-            List<Integer> sorted = new ArrayList<>();
-            for (int t = 0; t < x.length; t++) sorted.add(t);
-
-            sorted.sort(Comparator.comparingDouble(o -> x[o]));
-            sortedIndices.add(sorted);
-        }
-
         double[] means = new double[data.length];
 
         for (int r = 0; r < data.length; r++) {
@@ -214,18 +214,6 @@ public final class ConditionalCorrelationIndependence {
                 depth0Residuals[z][i] = data[z][i] - means[z];
             }
         }
-
-        reverseLookup = new ArrayList<>();
-
-        for (int z2 = 0; z2 < data.length; z2++) {
-            Map<Integer, Integer> m = new HashMap<>();
-
-            for (int j = 0; j < data[z2].length; j++) {
-                m.put(sortedIndices.get(z2).get(j), j);
-            }
-
-            reverseLookup.add(m);
-        }
     }
 
     //=================PUBLIC METHODS====================//
@@ -260,15 +248,14 @@ public final class ConditionalCorrelationIndependence {
 
                 // X _||_ Y | Z ? Look for a dependence rx ~_||_ ry | Z = _z
                 for (int i = 0; i < numDependenceSpotChecks; i++) {
-                    List<Integer> js = new ArrayList<>(getCloseZs(data, _z,
-                            RandomUtil.getInstance().nextInt(N), kernelRegressionSampleSize));
+                    int[] js = getCloseZs(_z, RandomUtil.getInstance().nextInt(N), kernelRegressionSampleSize);
 
-                    double[] rx2 = new double[js.size()];
-                    double[] ry2 = new double[js.size()];
+                    double[] rx2 = new double[js.length];
+                    double[] ry2 = new double[js.length];
 
-                    for (int k = 0; k < js.size(); k++) {
-                        rx2[k] = rx[js.get(k)];
-                        ry2[k] = ry[js.get(k)];
+                    for (int k = 0; k < js.length; k++) {
+                        rx2[k] = rx[js[k]];
+                        ry2[k] = ry[js[k]];
                     }
 
                     double _score = independent(rx2, ry2);
@@ -307,11 +294,7 @@ public final class ConditionalCorrelationIndependence {
 
         double[] residualsx = new double[N];
 
-        double[] xdata = Arrays.copyOf(data[_x], data[_x].length);
-
-        double[] sumx = new double[N];
-
-        double[] totalWeightx = new double[N];
+        double[] xdata = data[_x];
 
         int[] _z = new int[z.size()];
 
@@ -320,39 +303,61 @@ public final class ConditionalCorrelationIndependence {
         }
 
         double h = getH(_z);
+        final Kernel kernel = getKernelMultiplier();
 
-        for (int i = 0; i < N; i++) {
-            Set<Integer> js = getCloseZs(data, _z, i, kernelRegressionSampleSize);
+        if (kernel != Kernel.Epinechnikov && kernel != Kernel.Gaussian) {
+            throw new IllegalStateException("Unsupported kernel type: " + kernel);
+        }
 
-            for (int j : js) {
-                double xj = xdata[j];
-                double d = distance(data, _z, i, j);
+        // Fetch the index once, outside the parallel loop.
+        getZIndex(_z);
 
-                double k;
+        // Rows are split into one contiguous block per thread of the shared search executor.
+        int numTasks = Math.max(1, Math.min(N, SearchExecutor.getInstance().getParallelism()));
+        List<Callable<Void>> tasks = new ArrayList<>();
 
-                if (getKernelMultiplier() == Kernel.Epinechnikov) {
-                    k = kernelEpinechnikov(d, h);
-                } else if (getKernelMultiplier() == Kernel.Gaussian) {
-                    k = kernelGaussian(d, h);
-                } else {
-                    throw new IllegalStateException("Unsupported kernel type: " + getKernelMultiplier());
-                }
+        for (int t = 0; t < numTasks; t++) {
+            final int from = (int) ((long) N * t / numTasks);
+            final int to = (int) ((long) N * (t + 1) / numTasks);
 
-                sumx[i] += k * xj;
-                totalWeightx[i] += k;
-            }
-        }
+            tasks.add(() -> {
+                for (int i = from; i < to; i++) {
+                    int[] js = getCloseZs(_z, i, kernelRegressionSampleSize);
 
-        for (int i = 0; i < N; i++) {
-            if (totalWeightx[i] == 0) totalWeightx[i] = 1;
+                    double sumx = 0.0;
+                    double totalWeightx = 0.0;
 
-            residualsx[i] = xdata[i] - sumx[i] / totalWeightx[i];
+                    for (int j : js) {
+                        double xj = xdata[j];
+                        double d = distance(data, _z, i, j);
 
-            if (Double.isNaN(residualsx[i])) {
-                residualsx[i] = 0;
-            }
+                        double k;
+
+                        if (kernel == Kernel.Epinechnikov) {
+                            k = kernelEpinechnikov(d, h);
+                        } else {
+                            k = kernelGaussian(d, h);
+                        }
+
+                        sumx += k * xj;
+                        totalWeightx += k;
+                    }
+
+                    if (totalWeightx == 0) totalWeightx = 1;
+
+                    residualsx[i] = xdata[i] - sumx / totalWeightx;
+
+                    if (Double.isNaN(residualsx[i])) {
+                        residualsx[i] = 0;
+                    }
+                }
+
+                return null;
+            });
         }
 
+        SearchExecutor.getInstance().invokeAll("ConditionalCorrelationIndependence", tasks);
+
         return residualsx;
     }
 
@@ -599,85 +604,29 @@ public final class ConditionalCorrelationIndependence {
         return data;
     }
 
-//    private Set<Integer> getCloseZs(double[][] data, int[] _z, int i, int sampleSize) {
-//        try {
-//            Set<Integer> js = new HashSet<>();
-//
-//            if (sampleSize > data[0].length) sampleSize = (int) ceil(0.8 * data.length);
-//            if (_z.length == 0) return new HashSet<>();
-//
-//            int[] left = new int[_z.length];
-//            int[] right = new int[_z.length];
-//
-//            while (true) {
-//                for (int k = 0; k < _z.length; k++) {
-//                    int z1 = _z[k];
-//                    int l = -1, r = -1;
-//
-//                    int q = reverseLookup.get(z1).get(k);
-//                    int qq = sortedIndices.get(z1).get(q);
-//
-//                    if (q - left[k] >= 0 && q - left[k] < data[z1].length) {
-//                        l = sortedIndices.get(z1).get(q - left[k]);
-//                    }
-//
-//                    if (q + right[k] >= 0 && q + right[k] < data[z1].length) {
-//                        r = sortedIndices.get(z1).get(q + right[k]);
-//                    }
-//
-//                    final double L = l == -1 ? 0 : data[z1][qq] - data[z1][l];
-//                    final double R = r == -1 ? 0 : data[z1][r] - data[z1][qq];
-//
-//                    if (L == 0 && R == 0) {
-//                        js.add(qq);
-//                        if (js.size() >= sampleSize) return js;
-//                        left[k]++;
-//                        right[k]++;
-//                    } else if (L > R) {
-//                        js.add(l);
-//                        if (js.size() >= sampleSize) return js;
-//                        left[k]++;
-//                    } else {
-//                        js.add(r);
-//                        if (js.size() >= sampleSize) return js;
-//                        right[k]++;
-//                    }
-//                }
-//            }
-//        } catch (Exception e) {
-//            e.printStackTrace();
-//            throw new RuntimeException(e);
-//        }
-//    }
-
-    private Set<Integer> getCloseZs(double[][] data, int[] _z, int i, int sampleSize) {
-        Set<Integer> js = new HashSet<>();
-
-        if (sampleSize > data[0].length) sampleSize = (int) ceil(0.8 * data.length);
-        if (_z.length == 0) return new HashSet<>();
-
-        int radius = 0;
-
-        while (true) {
-            for (int z1 : _z) {
-                int q = reverseLookup.get(z1).get(i);
-
-                if (q - radius >= 0 && q - radius < data[z1].length) {
-                    final int r2 = sortedIndices.get(z1).get(q - radius);
-                    js.add(r2);
-                }
+    // The sampleSize rows nearest row i in the z variables.
+    private int[] getCloseZs(int[] _z, int i, int sampleSize) {
+        if (_z.length == 0) return new int[0];
 
-                if (q + radius >= 0 && q + radius < data[z1].length) {
-                    final int r2 = sortedIndices.get(z1).get(q + radius);
-                    js.add(r2);
-                }
+        final int N = data[0].length;
+        if (sampleSize > N) sampleSize = (int) ceil(0.8 * N);
 
-            }
+        return getZIndex(_z).nearest(i, sampleSize);
+    }
 
-            if (js.size() >= sampleSize) return js;
+    private KdTree getZIndex(int[] _z) {
+        int[] sorted = Arrays.copyOf(_z, _z.length);
+        Arrays.sort(sorted);
+        String key = Arrays.toString(sorted);
 
-            radius++;
+        KdTree index = zIndices.get(key);
+
+        if (index == null) {
+            index = new KdTree(data, sorted);
+            zIndices.put(key, index);
         }
+
+        return index;
     }
 
     private double getH(int[] _z) {
@@ -47,6 +47,9 @@ public class ConditionalGaussianScore implements Score {
     private int numCategoriesToDiscretize = 3;
     private double sp;
 
+    // Optional cache of local scores, possibly shared with other threads.
+    private LocalScoreCache cache = null;
+
     /**
      * Constructs the score using a covariance matrix.
      */
@@ -68,6 +71,17 @@ public class ConditionalGaussianScore implements Score {
      * Calculates the sample likelihood and BIC score for i given its parents in a simple SEM model
      */
     public double localScore(int i, int... parents) {
+        if (cache != null) {
+            double cached = cache.get(i, parents);
+            if (!Double.isNaN(cached)) return cached;
+        }
+
+        double score = computeLocalScore(i, parents);
+        if (cache != null) cache.add(i, parents, score);
+        return score;
+    }
+
+    private double computeLocalScore(int i, int[] parents) {
         likelihood.setNumCategoriesToDiscretize(numCategoriesToDiscretize);
         likelihood.setPenaltyDiscount(penaltyDiscount);
 
@@ -161,10 +175,24 @@ public class ConditionalGaussianScore implements Score {
 
     public void setPenaltyDiscount(double penaltyDiscount) {
         this.penaltyDiscount = penaltyDiscount;
+        if (cache != null) cache.clear();
     }
 
     public void setNumCategoriesToDiscretize(int numCategoriesToDiscretize) {
         this.numCategoriesToDiscretize = numCategoriesToDiscretize;
+        if (cache != null) cache.clear();
+    }
+
+    public LocalScoreCache getLocalScoreCache() {
+        return cache;
+    }
+
+    /**
+     * Sets a cache for local scores, or null for none. The cache is cleared whenever a parameter of the
+     * score changes.
+     */
+    public void setLocalScoreCache(LocalScoreCache cache) {
+        this.cache = cache;
     }
 
     @Override
@@ -25,7 +25,7 @@ import edu.cmu.tetrad.data.IKnowledge;
 import edu.cmu.tetrad.data.Knowledge2;
 import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.util.ChoiceGenerator;
-import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.SearchExecutor;
 import edu.cmu.tetrad.util.TetradLogger;
 
 import java.io.PrintStream;
@@ -92,9 +92,6 @@ public class FasConcurrent implements IFas {
      */
     private boolean verbose = false;
 
-    // The concurrency pool.
-    private ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
-
     /**
      * Where verbose output is sent.
      */
@@ -225,16 +222,7 @@ public class FasConcurrent implements IFas {
             tasks.add(new Depth0Task(i));
         }
 
-        ExecutorService pool = Executors.newWorkStealingPool(Runtime.getRuntime().availableProcessors());
-
-        try {
-            List<Future<Boolean>> futures = pool.invokeAll(tasks);
-        } catch (InterruptedException exception) {
-            this.out.print("Task has been interrupted");
-            Thread.currentThread().interrupt();
-        }
-
-        shutdownAndAwaitTermination(pool);
+        SearchExecutor.getInstance().invokeAll("FasConcurrent", tasks);
 
         return freeDegree(nodes, adjacencies) > depth;
     }
@@ -284,16 +272,7 @@ public class FasConcurrent implements IFas {
             tasks.add(new DepthTask(i, depth));
         }
 
-        ExecutorService pool = Executors.newWorkStealingPool(Runtime.getRuntime().availableProcessors());
-
-        try {
-            List<Future<Boolean>> futures = pool.invokeAll(tasks);
-        } catch (InterruptedException exception) {
-            this.out.printf("Task has been interrupted");//, dateTimeNow(), task.run.index + 1);
-            Thread.currentThread().interrupt();
-        }
-
-        shutdownAndAwaitTermination(pool);
+        SearchExecutor.getInstance().invokeAll("FasConcurrent", tasks);
 
         return freeDegree(nodes, adjacencies) > depth;
     }
@@ -579,25 +558,6 @@ public class FasConcurrent implements IFas {
         return out;
     }
 
-    private void shutdownAndAwaitTermination(ExecutorService pool) {
-        pool.shutdown(); // Disable new tasks from being submitted
-        try {
-            // Wait a while for existing tasks to terminate
-            if (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
-                pool.shutdownNow(); // Cancel currently executing tasks
-                // Wait a while for tasks to respond to being cancelled
-                if (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
-                    System.err.println("Pool did not terminate");
-                }
-            }
-        } catch (InterruptedException ie) {
-            // (Re-)Cancel if current thread also interrupted
-            pool.shutdownNow();
-            // Preserve interrupt status
-            Thread.currentThread().interrupt();
-        }
-    }
-
     public void setStable(boolean stable) {
         this.stable = stable;
     }
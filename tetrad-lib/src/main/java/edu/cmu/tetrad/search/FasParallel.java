@@ -0,0 +1,828 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.IKnowledge;
+import edu.cmu.tetrad.data.Knowledge2;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.util.SearchExecutor;
+import edu.cmu.tetrad.util.TetradLogger;
+
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Implements the "fast adjacency search" used in several causal algorithm in this package. In the fast adjacency
+ * search, at a given stage of the search, an edge X*-*Y is removed from the graph if X _||_ Y | S, where S is a subset
+ * of size d either of adj(X) or of adj(Y), where d is the depth of the search. The fast adjacency search performs this
+ * procedure for each pair of adjacent edges in the graph and for each depth d = 0, 1, 2, ..., d1, where d1 is either
+ * the maximum depth or else the first such depth at which no edges can be removed. The interpretation of this adjacency
+ * search is different for different algorithm, depending on the assumptions of the algorithm. A mapping from {x, y} to
+ * S({x, y}) is returned for edges x *-* y that have been removed.
+ * </p>
+ * This variant gives the same adjacencies and sepsets as FasStable, but does the tests at each depth in parallel.
+ * Nodes are referred to by their indices in the list of variables. The work at a depth is made up of the conditioning
+ * sets of each adjacent pair, numbered in the order FasStable tries them; pairs with many sets are split into ranges
+ * of sets and pairs with few are grouped, so that the tasks are of about the same size. For each pair, the number of
+ * the first set found to make it independent is kept, so that ranges past it can stop early. Conditioning sets are
+ * handed to the test in batches, so that tests able to share work among them may do so. Sepsets are kept as arrays of
+ * node indices in a map keyed by pair, only for the pairs that have been separated.
+ *
+ * @author agent
+ */
+public class FasParallel implements IFas {
+
+    // Stands for the empty sepset.
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * The independence test. This should be appropriate to the types
+     */
+    private final IndependenceTest test;
+
+    /**
+     * Specification of which edges are forbidden or required.
+     */
+    private IKnowledge knowledge = new Knowledge2();
+
+    /**
+     * The maximum number of variables conditioned on in any conditional independence test. If the depth is -1, it will
+     * be taken to be the maximum value, which is 1000. Otherwise, it should be set to a non-negative integer.
+     */
+    private int depth = 1000;
+
+    /**
+     * The number of independence tests.
+     */
+    private final AtomicInteger numIndependenceTests = new AtomicInteger();
+
+    private TetradLogger logger = TetradLogger.getInstance();
+
+    /**
+     * The depth 0 graph, specified initially.
+     */
+    private Graph initialGraph;
+
+    /**
+     * Set to true if verbose output is desired.
+     */
+    private boolean verbose = false;
+
+    /**
+     * Where verbose output is sent.
+     */
+    private PrintStream out = System.out;
+
+    /**
+     * The number of conditioning sets handed to the test at a time.
+     */
+    private int batchSize = 16;
+
+    /**
+     * The variables of the test.
+     */
+    private List<Node> nodes;
+
+    /**
+     * For each node, the indices of the nodes adjacent to it, in increasing order.
+     */
+    private int[][] adjacencies;
+
+    /**
+     * The sepsets found, by pair index (see pair()), as arrays of node indices, for the pairs that have been
+     * separated. Only removed edges have entries, so the map grows with those rather than with n^2.
+     */
+    private Map<Long, int[]> sepsets;
+
+    /**
+     * The sepsets as a SepsetMap, made when asked for.
+     */
+    private SepsetMap sepsetMap;
+
+    private long elapsedTime = 0;
+
+    //==========================CONSTRUCTORS=============================//
+
+    /**
+     * Constructs a new FastAdjacencySearch.
+     */
+    public FasParallel(IndependenceTest test) {
+        this.test = test;
+    }
+
+    /**
+     * Constructs a new FastAdjacencySearch. Only pairs adjacent in the initial graph, if it is not null, are tested.
+     */
+    public FasParallel(Graph initialGraph, IndependenceTest test) {
+        this.test = test;
+        this.initialGraph = initialGraph;
+    }
+
+    //==========================PUBLIC METHODS===========================//
+
+    /**
+     * Discovers all adjacencies in data.  The procedure is to remove edges in the graph which connect pairs of
+     * variables which are independent conditional on some other set of variables in the graph (the "sepset"). These are
+     * removed in tiers.  First, edges which are independent conditional on zero other variables are removed, then edges
+     * which are independent conditional on one other variable are removed, then two, then three, and so on, until no
+     * more edges can be removed from the graph.  The edges which remain in the graph after this procedure are the
+     * adjacencies in the data.
+     *
+     * @return the graph of adjacencies found.
+     */
+    public Graph search() {
+        this.logger.log("info", "Starting Fast Adjacency Search.");
+        long start = System.currentTimeMillis();
+
+        nodes = new ArrayList<>(test.getVariables());
+        int n = nodes.size();
+
+        sepsets = new ConcurrentHashMap<>();
+        sepsetMap = null;
+        numIndependenceTests.set(0);
+
+        int _depth = depth;
+
+        if (_depth == -1) {
+            _depth = 1000;
+        }
+
+        for (int d = 0; d <= _depth; d++) {
+            if (verbose) {
+                out.println("Searching at depth " + d);
+            }
+
+            if (d == 0) {
+                searchAtDepth0();
+            } else {
+                searchAtDepth(d);
+            }
+
+            if (freeDegree() <= d) {
+                break;
+            }
+        }
+
+        Graph graph = new EdgeListGraphSingleConnections(nodes);
+
+        for (int i = 0; i < n; i++) {
+            for (int j : adjacencies[i]) {
+                if (j > i) {
+                    graph.addUndirectedEdge(nodes.get(i), nodes.get(j));
+                }
+            }
+        }
+
+        this.elapsedTime = System.currentTimeMillis() - start;
+        this.logger.log("info", "Finishing Fast Adjacency Search.");
+
+        return graph;
+    }
+
+    @Override
+    public Graph search(List<Node> nodes) {
+        return null;
+    }
+
+    @Override
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public void setDepth(int depth) {
+        if (depth < -1) {
+            throw new IllegalArgumentException(
+                    "Depth must be -1 (unlimited) or >= 0.");
+        }
+
+        this.depth = depth;
+    }
+
+    @Override
+    public boolean isAggressivelyPreventCycles() {
+        return false;
+    }
+
+    @Override
+    public void setAggressivelyPreventCycles(boolean aggressivelyPreventCycles) {
+
+    }
+
+    @Override
+    public IndependenceTest getIndependenceTest() {
+        return test;
+    }
+
+    public IKnowledge getKnowledge() {
+        return knowledge;
+    }
+
+    public void setKnowledge(IKnowledge knowledge) {
+        if (knowledge == null) {
+            throw new NullPointerException("Cannot set knowledge to null");
+        }
+        this.knowledge = knowledge;
+    }
+
+    public int getNumIndependenceTests() {
+        return numIndependenceTests.get();
+    }
+
+    @Override
+    public void setTrueGraph(Graph trueGraph) {
+
+    }
+
+    @Override
+    public List<Node> getNodes() {
+        return test.getVariables();
+    }
+
+    @Override
+    public List<Triple> getAmbiguousTriples(Node node) {
+        return null;
+    }
+
+    /**
+     * @return the sepset found for {x, y}, or null if x and y were not separated.
+     */
+    public List<Node> getSepset(Node x, Node y) {
+        int i = nodes.indexOf(x);
+        int j = nodes.indexOf(y);
+
+        if (i == -1 || j == -1 || i == j) {
+            return null;
+        }
+
+        return asList(sepsets.get(pair(i, j)));
+    }
+
+    public SepsetMap getSepsets() {
+        if (sepsetMap == null && sepsets != null) {
+            SepsetMap map = new SepsetMap();
+
+            int n = nodes.size();
+
+            for (Map.Entry<Long, int[]> entry : sepsets.entrySet()) {
+                long pair = entry.getKey();
+                map.set(nodes.get((int) (pair / n)), nodes.get((int) (pair % n)), asList(entry.getValue()));
+            }
+
+            sepsetMap = map;
+        }
+
+        return sepsetMap;
+    }
+
+    public void setInitialGraph(Graph initialGraph) {
+        this.initialGraph = initialGraph;
+    }
+
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    @Override
+    public int getNumFalseDependenceJudgments() {
+        return 0;
+    }
+
+    @Override
+    public int getNumDependenceJudgments() {
+        return 0;
+    }
+
+    public void setOut(PrintStream out) {
+        if (out == null) throw new NullPointerException();
+        this.out = out;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of conditioning sets for a pair handed to the test at a time. Larger batches may let a test
+     * share work among the sets but may waste tests past the first one to separate the pair.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+        this.batchSize = batchSize;
+    }
+
+    //==============================PRIVATE METHODS======================/
+
+    private void searchAtDepth0() {
+        final int n = nodes.size();
+        final List<Node> empty = Collections.emptyList();
+
+        // Written by one task each.
+        final int[][] adjacent = new int[n][];
+        final int[][] separated = new int[n][];
+
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        long target = Math.max(1, (long) n * (n - 1) / 2 / numTasks());
+        int from = 0;
+        long cost = 0;
+
+        for (int i = 0; i < n; i++) {
+            cost += n - 1 - i;
+
+            if (cost >= target || i == n - 1) {
+                final int _from = from;
+                final int _to = i + 1;
+
+                tasks.add(() -> {
+                    for (int x = _from; x < _to; x++) {
+                        if (SearchExecutor.isCanceled()) return false;
+                        doNodeAtDepth0(x, empty, adjacent, separated);
+                    }
+
+                    return true;
+                });
+
+                from = i + 1;
+                cost = 0;
+            }
+        }
+
+        SearchExecutor.getInstance().invokeAll("FasParallel", tasks);
+
+        List<List<Integer>> _adjacencies = new ArrayList<>();
+        for (int i = 0; i < n; i++) _adjacencies.add(new ArrayList<>());
+
+        for (int i = 0; i < n; i++) {
+            if (adjacent[i] == null) continue;
+
+            for (int j : adjacent[i]) {
+                _adjacencies.get(i).add(j);
+                _adjacencies.get(j).add(i);
+            }
+
+            for (int j : separated[i]) {
+                sepsets.put(pair(i, j), EMPTY);
+            }
+        }
+
+        adjacencies = new int[n][];
+
+        for (int i = 0; i < n; i++) {
+            adjacencies[i] = toSortedArray(_adjacencies.get(i));
+        }
+    }
+
+    private void doNodeAtDepth0(int i, List<Node> empty, int[][] adjacent, int[][] separated) {
+        Node x = nodes.get(i);
+
+        List<Integer> _adjacent = new ArrayList<>();
+        List<Integer> _separated = new ArrayList<>();
+
+        for (int j = i + 1; j < nodes.size(); j++) {
+            Node y = nodes.get(j);
+
+            if (initialGraph != null) {
+                Node x2 = initialGraph.getNode(x.getName());
+                Node y2 = initialGraph.getNode(y.getName());
+
+                if (!initialGraph.isAdjacentTo(x2, y2)) {
+                    continue;
+                }
+            }
+
+            boolean independent;
+
+            try {
+                numIndependenceTests.incrementAndGet();
+                independent = test.isIndependent(x, y, empty);
+            } catch (Exception e) {
+                e.printStackTrace();
+                independent = false;
+            }
+
+            boolean noEdgeRequired = knowledge.noEdgeRequired(x.getName(), y.getName());
+
+            if (independent && noEdgeRequired) {
+                _separated.add(j);
+            } else if (!forbiddenEdge(x, y)) {
+                _adjacent.add(j);
+            }
+        }
+
+        adjacent[i] = toSortedArray(_adjacent);
+        separated[i] = toSortedArray(_separated);
+    }
+
+    private void searchAtDepth(final int depth) {
+        final int n = nodes.size();
+        int[][] order = visitingOrder();
+
+        // The conditioning sets of each pair, from the side of the first node of the pair.
+        List<PairSets> pairs = new ArrayList<>();
+        long totalCost = 0;
+
+        for (int x = 0; x < n; x++) {
+            int[] ppx = possibleParents(x, order[x]);
+
+            for (int y : order[x]) {
+                if (!knowledge.noEdgeRequired(nodes.get(x).getName(), nodes.get(y).getName())) {
+                    continue;
+                }
+
+                int[] _ppx = without(ppx, y);
+
+                if (_ppx.length >= depth) {
+                    PairSets pair = new PairSets(x, y, _ppx, depth);
+                    pairs.add(pair);
+                    totalCost = saturatedAdd(totalCost, pair.numSets);
+                }
+            }
+        }
+
+        // Make tasks of about the same number of sets, splitting pairs with many sets and grouping those with few.
+        int numTasks = numTasks();
+        long target = Math.max(batchSize, totalCost / numTasks);
+
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        List<Range> ranges = new ArrayList<>();
+        long cost = 0;
+
+        for (PairSets pair : pairs) {
+            long numSets = pair.numSets;
+            long size = numSets;
+
+            if (numSets > target && numSets < Long.MAX_VALUE) {
+                size = Math.max(target, (numSets + numTasks - 1) / numTasks);
+            }
+
+            for (long from = 0; from < numSets; from += size) {
+                long to = numSets - from > size ? from + size : numSets;
+                ranges.add(new Range(pair, from, to));
+                cost = saturatedAdd(cost, to - from);
+
+                if (cost >= target) {
+                    tasks.add(rangeTask(ranges));
+                    ranges = new ArrayList<>();
+                    cost = 0;
+                }
+            }
+        }
+
+        if (!ranges.isEmpty()) {
+            tasks.add(rangeTask(ranges));
+        }
+
+        SearchExecutor.getInstance().invokeAll("FasParallel", tasks);
+
+        // Record the sepsets in the order FasStable does, so that the same one is kept for each pair.
+        boolean removed = false;
+
+        for (PairSets pair : pairs) {
+            long first = pair.firstIndependent.get();
+
+            if (first == Long.MAX_VALUE) continue;
+
+            int[] choice = unrank(first, pair.ppx.length, depth);
+            int[] sepset = new int[depth];
+
+            for (int k = 0; k < depth; k++) {
+                sepset[k] = pair.ppx[choice[k]];
+            }
+
+            sepsets.put(pair(pair.x, pair.y), sepset);
+            removed = true;
+
+            if (verbose) {
+                out.println(SearchLogUtils.independenceFact(nodes.get(pair.x), nodes.get(pair.y), asList(sepset)));
+            }
+        }
+
+        if (!removed) return;
+
+        // Adjacent pairs have sepsets only if they were separated at this depth.
+        for (int x = 0; x < n; x++) {
+            List<Integer> _adjacencies = new ArrayList<>();
+
+            for (int y : adjacencies[x]) {
+                if (!sepsets.containsKey(pair(x, y))) {
+                    _adjacencies.add(y);
+                }
+            }
+
+            adjacencies[x] = toSortedArray(_adjacencies);
+        }
+    }
+
+    private Callable<Boolean> rangeTask(final List<Range> ranges) {
+        return () -> {
+            for (Range range : ranges) {
+                if (SearchExecutor.isCanceled()) return false;
+                doRange(range);
+            }
+
+            return true;
+        };
+    }
+
+    // Tries the sets in the range in order, in batches, until one is found to separate the pair or a set earlier in
+    // the order has already been found to.
+    private void doRange(Range range) {
+        PairSets pair = range.pair;
+        Node x = nodes.get(pair.x);
+        Node y = nodes.get(pair.y);
+        int depth = pair.depth;
+
+        int[] choice = unrank(range.from, pair.ppx.length, depth);
+        long rank = range.from;
+
+        List<List<Node>> batch = new ArrayList<>(batchSize);
+
+        while (rank < range.to) {
+            if (rank > pair.firstIndependent.get() || SearchExecutor.isCanceled()) {
+                return;
+            }
+
+            long batchStart = rank;
+            batch.clear();
+
+            while (rank < range.to && batch.size() < batchSize) {
+                List<Node> condSet = new ArrayList<>(depth);
+
+                for (int k = 0; k < depth; k++) {
+                    condSet.add(nodes.get(pair.ppx[choice[k]]));
+                }
+
+                batch.add(condSet);
+                rank++;
+
+                if (rank < range.to) {
+                    nextChoice(choice, pair.ppx.length);
+                }
+            }
+
+            int k = firstIndependent(x, y, batch);
+
+            if (k != -1) {
+                long found = batchStart + k;
+                pair.firstIndependent.accumulateAndGet(found, Math::min);
+                return;
+            }
+        }
+    }
+
+    // The index of the first of the given conditioning sets conditional on which x and y are judged independent, or
+    // -1 if there is none. The sets are handed to the test together; if that fails, they are tried one at a time,
+    // and any that fails is taken as a judgment of dependence.
+    private int firstIndependent(Node x, Node y, List<List<Node>> condSets) {
+        List<IndependenceFact> facts = new ArrayList<>(condSets.size());
+
+        for (List<Node> condSet : condSets) {
+            facts.add(new IndependenceFact(x, y, condSet));
+        }
+
+        numIndependenceTests.addAndGet(facts.size());
+
+        boolean[] independent;
+
+        try {
+            independent = test.isIndependent(facts);
+        } catch (Exception e) {
+            independent = new boolean[facts.size()];
+
+            for (int k = 0; k < facts.size(); k++) {
+                try {
+                    independent[k] = test.isIndependent(x, y, condSets.get(k));
+                } catch (Exception e2) {
+                    independent[k] = false;
+                }
+            }
+        }
+
+        for (int k = 0; k < independent.length; k++) {
+            if (independent[k]) return k;
+        }
+
+        return -1;
+    }
+
+    // For each node, the nodes adjacent to it in the order FasStable takes them, which is that of a HashSet copied
+    // from a sorted set of the nodes.
+    private int[][] visitingOrder() {
+        Map<Node, Integer> indices = new HashMap<>();
+        for (int i = 0; i < nodes.size(); i++) indices.put(nodes.get(i), i);
+
+        int[][] order = new int[nodes.size()][];
+
+        for (int x = 0; x < nodes.size(); x++) {
+            Set<Node> adjx = new TreeSet<>();
+            for (int y : adjacencies[x]) adjx.add(nodes.get(y));
+
+            order[x] = new int[adjx.size()];
+            int k = 0;
+
+            for (Node y : new HashSet<>(adjx)) {
+                order[x][k++] = indices.get(y);
+            }
+        }
+
+        return order;
+    }
+
+    private int[] possibleParents(int x, int[] adjx) {
+        String _x = nodes.get(x).getName();
+        int[] possibleParents = new int[adjx.length];
+        int count = 0;
+
+        for (int z : adjx) {
+            String _z = nodes.get(z).getName();
+
+            if (!knowledge.isForbidden(_z, _x) && !knowledge.isRequired(_x, _z)) {
+                possibleParents[count++] = z;
+            }
+        }
+
+        return Arrays.copyOf(possibleParents, count);
+    }
+
+    private boolean forbiddenEdge(Node x, Node y) {
+        String name1 = x.getName();
+        String name2 = y.getName();
+
+        if (knowledge.isForbidden(name1, name2) &&
+                knowledge.isForbidden(name2, name1)) {
+            if (verbose) {
+                this.logger.log("edgeRemoved", "Removed " + Edges.undirectedEdge(x, y) + " because it was " +
+                        "forbidden by background knowledge.");
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    private int freeDegree() {
+        int max = 0;
+
+        for (int[] adjx : adjacencies) {
+            if (adjx.length - 1 > max) {
+                max = adjx.length - 1;
+            }
+        }
+
+        return max;
+    }
+
+    private int numTasks() {
+        return 8 * SearchExecutor.getInstance().getParallelism();
+    }
+
+    private List<Node> asList(int[] indices) {
+        if (indices == null) return null;
+
+        List<Node> list = new ArrayList<>(indices.length);
+        for (int i : indices) list.add(nodes.get(i));
+        return list;
+    }
+
+    // The index of the unordered pair {i, j}, i != j, as min(i, j) n + max(i, j) for n nodes.
+    private long pair(int i, int j) {
+        return (long) Math.min(i, j) * nodes.size() + Math.max(i, j);
+    }
+
+    private static int[] toSortedArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) array[i] = list.get(i);
+        Arrays.sort(array);
+        return array;
+    }
+
+    private static int[] without(int[] array, int y) {
+        int[] _array = new int[array.length];
+        int count = 0;
+
+        for (int z : array) {
+            if (z != y) _array[count++] = z;
+        }
+
+        return count == array.length ? array : Arrays.copyOf(_array, count);
+    }
+
+    // a choose b, or Long.MAX_VALUE if that is too large for a long.
+    private static long choose(int a, int b) {
+        if (b < 0 || b > a) return 0;
+
+        long c = 1;
+
+        for (int i = 0; i < b; i++) {
+            if (c > Long.MAX_VALUE / (a - i)) return Long.MAX_VALUE;
+            c = c * (a - i) / (i + 1);
+        }
+
+        return c;
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long c = a + b;
+        return c < 0 ? Long.MAX_VALUE : c;
+    }
+
+    // The choice of b of a things with the given rank, in the order of ChoiceGenerator.
+    private static int[] unrank(long rank, int a, int b) {
+        int[] choice = new int[b];
+        int v = 0;
+
+        for (int k = 0; k < b; k++) {
+            while (true) {
+                long count = choose(a - v - 1, b - k - 1);
+
+                if (rank < count) {
+                    choice[k] = v++;
+                    break;
+                }
+
+                rank -= count;
+                v++;
+            }
+        }
+
+        return choice;
+    }
+
+    // Advances the choice to the next in the order of ChoiceGenerator; the choice must not be the last.
+    private static void nextChoice(int[] choice, int a) {
+        int b = choice.length;
+        int i = b - 1;
+
+        while (choice[i] == a - b + i) i--;
+
+        choice[i]++;
+
+        for (int j = i + 1; j < b; j++) {
+            choice[j] = choice[j - 1] + 1;
+        }
+    }
+
+    // The conditioning sets of size depth from the possible parents of x, for removing x *-* y.
+    private static class PairSets {
+        private final int x;
+        private final int y;
+        private final int[] ppx;
+        private final int depth;
+        private final long numSets;
+
+        // The rank of the first set found to separate x and y, or Long.MAX_VALUE if none has been found.
+        private final AtomicLong firstIndependent = new AtomicLong(Long.MAX_VALUE);
+
+        private PairSets(int x, int y, int[] ppx, int depth) {
+            this.x = x;
+            this.y = y;
+            this.ppx = ppx;
+            this.depth = depth;
+            this.numSets = choose(ppx.length, depth);
+        }
+    }
+
+    // The sets of a pair with ranks from, inclusive, to to, exclusive.
+    private static class Range {
+        private final PairSets pair;
+        private final long from;
+        private final long to;
+
+        private Range(PairSets pair, long from, long to) {
+            this.pair = pair;
+            this.from = from;
+            this.to = to;
+        }
+    }
+}
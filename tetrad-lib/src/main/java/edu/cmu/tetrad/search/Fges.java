@@ -130,9 +130,6 @@ public final class Fges implements GraphSearch, GraphScorer {
     // Map from variables to their column indices in the data set.
     private ConcurrentMap<Node, Integer> hashIndices;
 
-    // The static ForkJoinPool instance.
-    private final ForkJoinPool pool;
-
     // A graph where X--Y means that X and Y have non-zero total effect on one another.
     private Graph effectEdgesGraph;
 
@@ -185,6 +182,8 @@ public final class Fges implements GraphSearch, GraphScorer {
 
     /**
      * Lets one construct with a score and a parallelism, that is, the number of threads to effectively use.
+     * Threads are taken from the shared SearchExecutor, so this sets how finely the work is divided;
+     * the number of threads actually running is bounded by the executor's parallelism.
      */
     public Fges(Score score, int parallelism) {
         if (score == null) {
@@ -192,7 +191,6 @@ public final class Fges implements GraphSearch, GraphScorer {
         }
         setScore(score);
         this.maxThreads = parallelism;
-        this.pool = new ForkJoinPool(parallelism);
         this.graph = new EdgeListGraphSingleConnections(getVariables());
     }
 
@@ -543,7 +541,7 @@ public final class Fges implements GraphSearch, GraphScorer {
                 Node y = nodes.get(i);
                 neighbors.put(y, emptySet);
 
-                for (int j = i + 1; j < nodes.size() && !Thread.currentThread().isInterrupted(); j++) {
+                for (int j = i + 1; j < nodes.size() && !SearchExecutor.isCanceled(); j++) {
                     Node x = nodes.get(j);
 
                     if (existsKnowledge()) {
@@ -710,7 +708,7 @@ public final class Fges implements GraphSearch, GraphScorer {
             tasks.add(task);
         }
 
-        pool.invokeAll(tasks);
+        SearchExecutor.getInstance().invokeAll("Fges", tasks);
 
         long stop = System.currentTimeMillis();
 
@@ -754,12 +752,12 @@ public final class Fges implements GraphSearch, GraphScorer {
 
             @Override
             protected Boolean compute() {
-                if (TaskManager.getInstance().isCanceled()) {
+                if (SearchExecutor.isCanceled()) {
                     return false;
                 }
 
                 if (to - from <= chunk) {
-                    for (int i = from; i < to && !Thread.currentThread().isInterrupted(); i++) {
+                    for (int i = from; i < to && !SearchExecutor.isCanceled(); i++) {
                         if ((i + 1) % 1000 == 0) {
                             count[0] += 1000;
                             out.println("Initializing effect edges: " + (count[0]));
@@ -771,7 +769,7 @@ public final class Fges implements GraphSearch, GraphScorer {
 
                         for (Node n : graph.getAdjacentNodes(y)) {
                             for (Node m : graph.getAdjacentNodes(n)) {
-                                if (Thread.currentThread().isInterrupted()) {
+                                if (SearchExecutor.isCanceled()) {
                                     break;
                                 }
 
@@ -792,7 +790,7 @@ public final class Fges implements GraphSearch, GraphScorer {
                         }
 
                         for (Node x : g) {
-                            if (Thread.currentThread().isInterrupted()) {
+                            if (SearchExecutor.isCanceled()) {
                                 break;
                             }
 
@@ -834,7 +832,8 @@ public final class Fges implements GraphSearch, GraphScorer {
             }
         }
 
-        pool.invoke(new InitializeFromExistingGraphTask(getMinChunk(nodes.size()), 0, nodes.size()));
+        SearchExecutor.getInstance().invoke("Fges",
+                new InitializeFromExistingGraphTask(getMinChunk(nodes.size()), 0, nodes.size()));
     }
 
     private void initializeForwardEdgesFromExistingGraph(final List<Node> nodes) {
@@ -876,12 +875,12 @@ public final class Fges implements GraphSearch, GraphScorer {
 
             @Override
             protected Boolean compute() {
-                if (TaskManager.getInstance().isCanceled()) {
+                if (SearchExecutor.isCanceled()) {
                     return false;
                 }
 
                 if (to - from <= chunk) {
-                    for (int i = from; i < to && !Thread.currentThread().isInterrupted(); i++) {
+                    for (int i = from; i < to && !SearchExecutor.isCanceled(); i++) {
                         if ((i + 1) % 1000 == 0) {
                             count[0] += 1000;
                             out.println("Initializing effect edges: " + (count[0]));
@@ -896,7 +895,7 @@ public final class Fges implements GraphSearch, GraphScorer {
                         D.removeAll(effectEdgesGraph.getAdjacentNodes(y));
 
                         for (Node x : D) {
-                            if (Thread.currentThread().isInterrupted()) {
+                            if (SearchExecutor.isCanceled()) {
                                 break;
                             }
 
@@ -934,7 +933,8 @@ public final class Fges implements GraphSearch, GraphScorer {
             }
         }
 
-        pool.invoke(new InitializeFromExistingGraphTask(getMinChunk(nodes.size()), 0, nodes.size()));
+        SearchExecutor.getInstance().invoke("Fges",
+                new InitializeFromExistingGraphTask(getMinChunk(nodes.size()), 0, nodes.size()));
     }
 
     private void fes() {
@@ -1130,7 +1130,7 @@ public final class Fges implements GraphSearch, GraphScorer {
 
             @Override
             public Boolean call() {
-                for (int _w = from; _w < to; _w++) {
+                for (int _w = from; _w < to && !SearchExecutor.isCanceled(); _w++) {
                     Node x = nodes.get(_w);
 
                     List<Node> adj;
@@ -1191,7 +1191,7 @@ public final class Fges implements GraphSearch, GraphScorer {
             tasks.add(task);
         }
 
-        pool.invokeAll(tasks);
+        SearchExecutor.getInstance().invokeAll("Fges", tasks);
     }
 
     // Calculates the new arrows for an a->b edge.
@@ -1307,7 +1307,7 @@ public final class Fges implements GraphSearch, GraphScorer {
             @Override
             protected Boolean compute() {
                 if (to - from <= chunk) {
-                    for (int _w = from; _w < to; _w++) {
+                    for (int _w = from; _w < to && !SearchExecutor.isCanceled(); _w++) {
                         final Node w = adj.get(_w);
                         Edge e = graph.getEdge(w, r);
 
@@ -1342,8 +1342,8 @@ public final class Fges implements GraphSearch, GraphScorer {
         for (Node r : toProcess) {
             this.neighbors.put(r, getNeighbors(r));
             List<Node> adjacentNodes = graph.getAdjacentNodes(r);
-            pool.invoke(new BackwardTask(r, adjacentNodes, getMinChunk(adjacentNodes.size()), 0,
-                    adjacentNodes.size(), hashIndices));
+            SearchExecutor.getInstance().invoke("Fges", new BackwardTask(r, adjacentNodes,
+                    getMinChunk(adjacentNodes.size()), 0, adjacentNodes.size(), hashIndices));
         }
     }
 
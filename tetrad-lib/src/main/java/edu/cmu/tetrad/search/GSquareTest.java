@@ -22,11 +22,8 @@
 package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.DataSet;
-import edu.cmu.tetrad.util.CombinationIterator;
 import edu.cmu.tetrad.util.ProbUtils;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -82,114 +79,12 @@ public final class GSquareTest extends ChiSquareTest {
     /**
      * Calculates g square for a conditional crosstabulation table for independence question 0 _||_ 1 | 2, 3, ...max by
      * summing up g square and degrees of freedom for each conditional table in turn, where rows or columns that consist
-     * entirely of zeros have been removed.
+     * entirely of zeros have been removed. This may be called from several threads at once.
      */
-    public synchronized GSquareTest.Result calcGSquare(int[] testIndices) {
-
-        // Reset the cell table for the columns referred to in
-        // 'testIndices.' Do cell coefs for those columns.
-        getCellTable().addToTable(getDataSet(), testIndices);
-
-        // Indicator arrays to tell the cell table which margins
-        // to calculate. For x _||_ y | z1, z2, ..., we want to
-        // calculate the margin for x, the margin for y, and the
-        // margin for x and y. (These will be used later.)
-        int[] firstVar = new int[]{0};
-        int[] secondVar = new int[]{1};
-        int[] bothVars = new int[]{0, 1};
-
-        double g2 = 0.0;
-        int df = 0;
-
-        int[] condDims = new int[testIndices.length - 2];
-        System.arraycopy(selectFromArray(getDims(), testIndices), 2, condDims, 0,
-                condDims.length);
-
-        int[] coords = new int[testIndices.length];
-        int numRows = this.getCellTable().getNumValues(0);
-        int numCols = this.getCellTable().getNumValues(1);
-
-        boolean[] attestedRows = new boolean[numRows];
-        boolean[] attestedCols = new boolean[numCols];
-
-        CombinationIterator combinationIterator =
-                new CombinationIterator(condDims);
-
-        while (combinationIterator.hasNext()) {
-            int[] combination = (int[]) combinationIterator.next();
-
-            System.arraycopy(combination, 0, coords, 2, combination.length);
-            Arrays.fill(attestedRows, true);
-            Arrays.fill(attestedCols, true);
-
-            long total = this.getCellTable().calcMargin(coords, bothVars);
-
-            double _gSquare = 0.0;
-
-            List<Double> e = new ArrayList<>();
-            List<Long> o = new ArrayList<>();
-
-            for (int i = 0; i < numRows; i++) {
-                for (int j = 0; j < numCols; j++) {
-                    coords[0] = i;
-                    coords[1] = j;
-
-                    long sumRow = this.getCellTable().calcMargin(coords, secondVar);
-                    long sumCol = this.getCellTable().calcMargin(coords, firstVar);
-                    long observed = (int) this.getCellTable().getValue(coords);
-
-                    boolean skip = false;
-
-                    if (sumRow == 0) {
-                        attestedRows[i] = false;
-                        skip = true;
-                    }
-
-                    if (sumCol == 0) {
-                        attestedCols[j] = false;
-                        skip = true;
-                    }
-
-                    if (skip) {
-                        continue;
-                    }
-
-                    e.add((double) sumCol * sumRow);
-                    o.add(observed);
-                }
-            }
-
-            for (int i = 0; i < o.size(); i++) {
-                double expected = e.get(i) / (double) total;
-                _gSquare += Math.pow(o.get(i) - expected, 2.0) / expected;
-            }
-
-            if (total == 0) {
-                continue;
-            }
-
-            int numAttestedRows = 0;
-            int numAttestedCols = 0;
-
-            for (boolean attestedRow : attestedRows) {
-                if (attestedRow) {
-                    numAttestedRows++;
-                }
-            }
-
-            for (boolean attestedCol : attestedCols) {
-                if (attestedCol) {
-                    numAttestedCols++;
-                }
-            }
-
-            int _df = (numAttestedRows - 1) * (numAttestedCols - 1);
-
-            if (_df > 0) {
-                df += _df;
-                g2 += _gSquare;
-            }
-        }
+    public GSquareTest.Result calcGSquare(int[] testIndices) {
+        ChiSquareTest.Result sum = sumConditionalTables(testIndices);
+        double g2 = sum.getXSquare();
+        int df = sum.getDf();
 
         // If df == 0, return indep.
         if (df == 0) {
@@ -201,6 +96,20 @@ public final class GSquareTest extends ChiSquareTest {
         return new GSquareTest.Result(g2, pValue, df, indep);
     }
 
+    /**
+     * Calculates g square for each of the given independence questions, each given as for calcGSquare, with the same
+     * results.
+     */
+    public GSquareTest.Result[] calcGSquares(List<int[]> testIndices) {
+        GSquareTest.Result[] results = new GSquareTest.Result[testIndices.size()];
+
+        for (int k = 0; k < testIndices.size(); k++) {
+            results[k] = calcGSquare(testIndices.get(k));
+        }
+
+        return results;
+    }
+
 //    public boolean isDetermined(int[] testIndices, double p) {
 //
 //        // Reset the cell table for the columns referred to in
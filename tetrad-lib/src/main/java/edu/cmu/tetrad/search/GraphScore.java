@@ -22,6 +22,8 @@
 package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.DSeparationOracle;
+import edu.cmu.tetrad.graph.EdgeListGraph;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.graph.NodeType;
@@ -31,6 +33,9 @@ import java.util.List;
 
 /**
  * Implements Chickering and Meek's (2002) locally consistent score criterion.
+ * <p>
+ * The score keeps its own copy of the dag, made when it is constructed, and answers d-separation queries from that
+ * copy. Edits made afterward to the graph that was passed in are not seen; construct a new score for an edited graph.
  *
  * @author Joseph Ramsey
  */
@@ -38,6 +43,9 @@ public class GraphScore implements Score {
 
     private final Graph dag;
 
+    // Answers the d-separation queries for the dag.
+    private final DSeparationOracle oracle;
+
     // The variables of the covariance matrix.
     private List<Node> variables;
 
@@ -45,14 +53,15 @@ public class GraphScore implements Score {
     private boolean verbose = false;
 
     /**
-     * Constructs the score using a covariance matrix.
+     * Constructs the score for a copy of the given dag, with the same nodes.
      */
     public GraphScore(Graph dag) {
-        this.dag = dag;
+        this.dag = new EdgeListGraph(dag);
+        this.oracle = new DSeparationOracle(this.dag);
 
         this.variables = new ArrayList<>();
 
-        for (Node node : dag.getNodes()) {
+        for (Node node : this.dag.getNodes()) {
             if (node.getNodeType() == NodeType.MEASURED) {
                 this.variables.add(node);
             }
@@ -91,7 +100,7 @@ public class GraphScore implements Score {
         Node _y = variables.get(y);
         Node _x = variables.get(x);
         List<Node> _z = getVariableList(z);
-        boolean dSeparatedFrom = dag.isDSeparatedFrom(_x, _y, _z);
+        boolean dSeparatedFrom = oracle.isDSeparatedFrom(_x, _y, _z);
 
 //        if (dSeparatedFrom) {
 //            System.out.println(SearchLogUtils.independenceFact(_x, _y, _z));
@@ -106,13 +115,13 @@ public class GraphScore implements Score {
         Node _y = variables.get(y);
         Node _x = variables.get(x);
         List<Node> _z = getVariableList(z);
-        boolean dsep = dag.isDSeparatedFrom(_x, _y, _z);
+        boolean dsep = oracle.isDSeparatedFrom(_x, _y, _z);
         int count = 0;
 
         if (!dsep) count++;
 
         for (Node z0 : _z) {
-            if (dag.isDSeparatedFrom(_x, z0, _z)) {
+            if (oracle.isDSeparatedFrom(_x, z0, _z)) {
                 count += 1;
             }
         }
@@ -205,6 +214,9 @@ public class GraphScore implements Score {
         throw new UnsupportedOperationException("No alpha can be set when searching usign d-separation.");
     }
 
+    /**
+     * @return the score's copy of the dag, which should not be edited.
+     */
     public Graph getDag() {
         return dag;
     }
@@ -0,0 +1,666 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.DataModel;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.graph.IndependenceFact;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Wraps an independence test, keeping the result of each test in a file so that later runs on the same data with the
+ * same test can look it up rather than doing the test again. Results are kept for a fingerprint of the data, the class
+ * of the test and a string of any other settings of the test that affect its results (such as a kernel width) that
+ * the caller supplies; the significance level is not part of this, so runs that vary only the significance level
+ * share results.
+ * <p>
+ * For each test done, x, y and the (unordered) conditioning set are recorded together with the p value, the
+ * significance level and the wrapped test's own judgment, both got from its getPValues(facts, independent). x and y
+ * are kept in order, since a test may residualize them differently; for tests known to be symmetric in x and y, the
+ * cache may be told so, and x _||_ y | z and y _||_ x | z then share a result. A result is used as it stands if the
+ * significance level is unchanged. If it has changed, the judgment is made again from the p value if the wrapped
+ * test judges by its p value (see IndependenceTest.judgesByPValue()), and otherwise the test is done again. The batch
+ * methods look up each question and hand the ones not found to the wrapped test together.
+ * <p>
+ * The file is appended to and is read into memory in full when first opened. Results are buffered and written to it
+ * on flush(), when the buffer fills and when the JVM exits; one shutdown hook flushes all of the files open. A partly
+ * written last record, left by a crash, is dropped when the file is next opened. Any number of these tests may share
+ * a file, from any number of threads. If the wrapped test has neither a data set nor a covariance matrix to
+ * fingerprint, results are not cached.
+ *
+ * @author agent
+ */
+public final class IndTestCache implements IndependenceTest {
+
+    // "TCIC", for "Tetrad conditional independence cache".
+    private static final int MAGIC = 0x54434943;
+    private static final int VERSION = 1;
+
+    // Stores open, by canonical path.
+    private static final Map<File, Store> stores = new HashMap<>();
+
+    // Whether the hook that flushes the open stores at exit has been added.
+    private static boolean shutdownHookAdded = false;
+
+    private final IndependenceTest test;
+    private final Store store;
+    private final Map<Node, Integer> indices = new HashMap<>();
+
+    // Identifies the data, test and settings; 0 if results are not cached.
+    private final long context;
+
+    // True if x _||_ y | z and y _||_ x | z share a result.
+    private final boolean symmetric;
+
+    private final AtomicInteger numHits = new AtomicInteger();
+    private final AtomicInteger numMisses = new AtomicInteger();
+    private volatile double pValue = Double.NaN;
+
+    /**
+     * Wraps the given test, caching its results in the given file.
+     */
+    public IndTestCache(IndependenceTest test, File file) {
+        this(test, file, "");
+    }
+
+    /**
+     * Wraps the given test, caching its results in the given file. The settings string should describe any settings
+     * of the test, other than its significance level, that affect its results.
+     */
+    public IndTestCache(IndependenceTest test, File file, String settings) {
+        this(test, file, settings, false);
+    }
+
+    /**
+     * Wraps the given test, caching its results in the given file. The settings string should describe any settings
+     * of the test, other than its significance level, that affect its results. If symmetric is true, the test must
+     * give the same result for x _||_ y | z as for y _||_ x | z, and the two share a result; Fisher Z, chi-square and
+     * G-square do, but tests that residualize x and y differently, such as KCI and CCI, do not.
+     */
+    public IndTestCache(IndependenceTest test, File file, String settings, boolean symmetric) {
+        if (test == null) throw new NullPointerException("Test not provided.");
+        if (file == null) throw new NullPointerException("File not provided.");
+        if (settings == null) throw new NullPointerException("Settings not provided.");
+
+        this.test = test;
+        this.store = openStore(file);
+        this.symmetric = symmetric;
+
+        List<Node> variables = test.getVariables();
+
+        for (int i = 0; i < variables.size(); i++) {
+            indices.put(variables.get(i), i);
+        }
+
+        long fingerprint = fingerprint(test);
+
+        if (fingerprint == 0) {
+            this.context = 0;
+        } else {
+            long h = mix(fingerprint, hash(test.getClass().getName()));
+            h = mix(h, hash(settings));
+            h = mix(h, symmetric ? 1 : 2);
+
+            for (Node node : variables) {
+                h = mix(h, hash(node.getName()));
+            }
+
+            this.context = h == 0 ? 1 : h;
+        }
+    }
+
+    //==========================PUBLIC METHODS=============================//
+
+    public IndependenceTest indTestSubset(List<Node> vars) {
+        throw new UnsupportedOperationException();
+    }
+
+    public boolean isIndependent(Node x, Node y, List<Node> z) {
+        if (context == 0) {
+            boolean independent = test.isIndependent(x, y, z);
+            this.pValue = test.getPValue();
+            return independent;
+        }
+
+        Result result = lookUp(Collections.singletonList(new IndependenceFact(x, y, z)), test.getAlpha())[0];
+        this.pValue = result.pValue;
+        return result.independent;
+    }
+
+    public boolean isIndependent(Node x, Node y, Node... z) {
+        return isIndependent(x, y, Arrays.asList(z));
+    }
+
+    public boolean isDependent(Node x, Node y, List<Node> z) {
+        return !isIndependent(x, y, z);
+    }
+
+    public boolean isDependent(Node x, Node y, Node... z) {
+        return !isIndependent(x, y, z);
+    }
+
+    /**
+     * @return for each of the given questions, in order, true if it is judged true. Questions not in the cache are
+     * handed to the wrapped test together.
+     */
+    public boolean[] isIndependent(List<IndependenceFact> facts) {
+        if (context == 0) {
+            return test.isIndependent(facts);
+        }
+
+        Result[] results = lookUp(facts, test.getAlpha());
+        boolean[] independent = new boolean[results.length];
+
+        for (int i = 0; i < results.length; i++) {
+            independent[i] = results[i].independent;
+        }
+
+        return independent;
+    }
+
+    /**
+     * @return the p values of the given questions, in order, putting the judgment of each in independent. Questions
+     * not in the cache are handed to the wrapped test together.
+     */
+    public double[] getPValues(List<IndependenceFact> facts, boolean[] independent) {
+        if (context == 0) {
+            return test.getPValues(facts, independent);
+        }
+
+        if (independent.length != facts.size()) {
+            throw new IllegalArgumentException("Expecting a judgment for each fact.");
+        }
+
+        Result[] results = lookUp(facts, test.getAlpha());
+        double[] pValues = new double[results.length];
+
+        for (int i = 0; i < results.length; i++) {
+            pValues[i] = results[i].pValue;
+            independent[i] = results[i].independent;
+        }
+
+        return pValues;
+    }
+
+    /**
+     * @return true if the wrapped test judges by its p value.
+     */
+    public boolean judgesByPValue() {
+        return test.judgesByPValue();
+    }
+
+    /**
+     * @return true if x _||_ y | z and y _||_ x | z share a result.
+     */
+    public boolean isSymmetric() {
+        return symmetric;
+    }
+
+    /**
+     * @return the p value of the most recent test, whether looked up or done.
+     */
+    public double getPValue() {
+        return pValue;
+    }
+
+    public List<Node> getVariables() {
+        return test.getVariables();
+    }
+
+    public Node getVariable(String name) {
+        return test.getVariable(name);
+    }
+
+    public List<String> getVariableNames() {
+        return test.getVariableNames();
+    }
+
+    public boolean determines(List<Node> z, Node y) {
+        return test.determines(z, y);
+    }
+
+    public double getAlpha() {
+        return test.getAlpha();
+    }
+
+    public void setAlpha(double alpha) {
+        test.setAlpha(alpha);
+    }
+
+    public DataModel getData() {
+        return test.getData();
+    }
+
+    @Override
+    public ICovarianceMatrix getCov() {
+        return test.getCov();
+    }
+
+    @Override
+    public List<DataSet> getDataSets() {
+        return test.getDataSets();
+    }
+
+    @Override
+    public int getSampleSize() {
+        return test.getSampleSize();
+    }
+
+    @Override
+    public List<TetradMatrix> getCovMatrices() {
+        return test.getCovMatrices();
+    }
+
+    @Override
+    public double getScore() {
+        return test.getScore();
+    }
+
+    public boolean isVerbose() {
+        return test.isVerbose();
+    }
+
+    public void setVerbose(boolean verbose) {
+        test.setVerbose(verbose);
+    }
+
+    /**
+     * @return the test wrapped.
+     */
+    public IndependenceTest getTest() {
+        return test;
+    }
+
+    /**
+     * @return the number of tests looked up.
+     */
+    public int getNumHits() {
+        return numHits.get();
+    }
+
+    /**
+     * @return the number of tests done.
+     */
+    public int getNumMisses() {
+        return numMisses.get();
+    }
+
+    /**
+     * Writes any buffered results to the file.
+     */
+    public void flush() {
+        store.flush();
+    }
+
+    public String toString() {
+        return "Cached " + test.toString();
+    }
+
+    /**
+     * Writes out and closes the given cache file, if it is open. Tests already using it may not be used afterward; a
+     * test made later opens it again.
+     */
+    public static synchronized void close(File file) {
+        try {
+            Store store = stores.remove(file.getCanonicalFile());
+            if (store != null) store.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not close independence cache " + file, e);
+        }
+    }
+
+    //======================PRIVATE==========================//
+
+    // The results for the given questions, looked up where they can be, and otherwise got from the wrapped test,
+    // all at once, and stored.
+    private Result[] lookUp(List<IndependenceFact> facts, double alpha) {
+        Result[] results = new Result[facts.size()];
+        Key[] keys = new Key[facts.size()];
+        List<Integer> missing = new ArrayList<>();
+
+        for (int i = 0; i < facts.size(); i++) {
+            IndependenceFact fact = facts.get(i);
+            keys[i] = key(fact.getX(), fact.getY(), fact.getZ());
+            Result result = store.get(keys[i]);
+
+            if (result != null) {
+                if (result.alpha == alpha || Double.isNaN(result.alpha) && Double.isNaN(alpha)) {
+                    results[i] = result;
+                } else if (!Double.isNaN(result.pValue) && test.judgesByPValue()) {
+                    results[i] = new Result(result.pValue, alpha, result.pValue > alpha);
+                }
+            }
+
+            if (results[i] == null) {
+                missing.add(i);
+            }
+        }
+
+        numHits.addAndGet(facts.size() - missing.size());
+        numMisses.addAndGet(missing.size());
+
+        if (missing.isEmpty()) return results;
+
+        List<IndependenceFact> _facts = new ArrayList<>(missing.size());
+        for (int i : missing) _facts.add(facts.get(i));
+
+        boolean[] independent = new boolean[_facts.size()];
+        double[] pValues = test.getPValues(_facts, independent);
+
+        for (int k = 0; k < missing.size(); k++) {
+            int i = missing.get(k);
+            results[i] = new Result(pValues[k], alpha, independent[k]);
+            store.put(keys[i], results[i]);
+        }
+
+        return results;
+    }
+
+    // x and y, in order of index if the test is symmetric, so that x _||_ y | z and y _||_ x | z share a key; then z,
+    // sorted.
+    private Key key(Node x, Node y, List<Node> z) {
+        int[] vars = new int[2 + z.size()];
+        vars[0] = index(x);
+        vars[1] = index(y);
+
+        if (symmetric && vars[0] > vars[1]) {
+            vars[0] = vars[1];
+            vars[1] = index(x);
+        }
+
+        for (int i = 0; i < z.size(); i++) {
+            vars[i + 2] = index(z.get(i));
+        }
+
+        Arrays.sort(vars, 2, vars.length);
+        return new Key(context, vars);
+    }
+
+    private int index(Node node) {
+        Integer index = indices.get(node);
+
+        if (index == null) {
+            throw new IllegalArgumentException("Variable " + node + " is not a variable of the test.");
+        }
+
+        return index;
+    }
+
+    private static synchronized Store openStore(File file) {
+        File canonical;
+
+        try {
+            canonical = file.getCanonicalFile();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not open independence cache " + file, e);
+        }
+
+        Store store = stores.get(canonical);
+
+        if (store == null) {
+            store = new Store(canonical);
+            stores.put(canonical, store);
+        }
+
+        if (!shutdownHookAdded) {
+            Runtime.getRuntime().addShutdownHook(new Thread(IndTestCache::flushAll));
+            shutdownHookAdded = true;
+        }
+
+        return store;
+    }
+
+    // Writes out the stores open, at exit.
+    private static synchronized void flushAll() {
+        for (Store store : stores.values()) {
+            try {
+                store.flush();
+            } catch (IllegalStateException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // A fingerprint of the data of the test, or 0 if it has none.
+    private static long fingerprint(IndependenceTest test) {
+        DataModel data = test.getData();
+        ICovarianceMatrix cov = null;
+
+        if (!(data instanceof DataSet)) {
+            try {
+                cov = test.getCov();
+            } catch (UnsupportedOperationException e) {
+                cov = null;
+            }
+
+            if (cov == null && data instanceof ICovarianceMatrix) {
+                cov = (ICovarianceMatrix) data;
+            }
+        }
+
+        long h;
+
+        if (data instanceof DataSet) {
+            DataSet dataSet = (DataSet) data;
+            h = mix(1, dataSet.getNumRows());
+            h = mix(h, dataSet.getNumColumns());
+
+            for (int j = 0; j < dataSet.getNumColumns(); j++) {
+                for (int i = 0; i < dataSet.getNumRows(); i++) {
+                    h = mix(h, Double.doubleToLongBits(dataSet.getDouble(i, j)));
+                }
+            }
+        } else if (cov != null) {
+            h = mix(2, cov.getSampleSize());
+            h = mix(h, cov.getDimension());
+
+            for (int i = 0; i < cov.getDimension(); i++) {
+                for (int j = 0; j < cov.getDimension(); j++) {
+                    h = mix(h, Double.doubleToLongBits(cov.getValue(i, j)));
+                }
+            }
+        } else {
+            return 0;
+        }
+
+        return h == 0 ? 1 : h;
+    }
+
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+
+        return h;
+    }
+
+    private static long mix(long h, long v) {
+        long z = h * 0x9e3779b97f4a7c15L + v;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    //======================PRIVATE CLASSES==========================//
+
+    private static final class Key {
+        private final long context;
+        private final int[] vars;
+        private final int hash;
+
+        Key(long context, int[] vars) {
+            this.context = context;
+            this.vars = vars;
+            this.hash = 31 * Long.hashCode(context) + Arrays.hashCode(vars);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return context == key.context && Arrays.equals(vars, key.vars);
+        }
+    }
+
+    private static final class Result {
+        private final double pValue;
+        private final double alpha;
+        private final boolean independent;
+
+        Result(double pValue, double alpha, boolean independent) {
+            this.pValue = pValue;
+            this.alpha = alpha;
+            this.independent = independent;
+        }
+    }
+
+    // The results in a file, with the file open for appending. A record is the context, x, y, the size of z, z, the p
+    // value, alpha and the judgment.
+    private static final class Store {
+        private final File file;
+        private final Map<Key, Result> results = new HashMap<>();
+        private DataOutputStream out;
+
+        Store(File file) {
+            this.file = file;
+
+            try {
+                long end = read();
+
+                if (end < file.length()) {
+                    try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+                        channel.truncate(end);
+                    }
+                }
+
+                boolean isNew = end == 0;
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 1 << 16));
+
+                if (isNew) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Could not open independence cache " + file, e);
+            }
+        }
+
+        synchronized Result get(Key key) {
+            return results.get(key);
+        }
+
+        synchronized void put(Key key, Result result) {
+            results.put(key, result);
+
+            try {
+                out.writeLong(key.context);
+                out.writeInt(key.vars[0]);
+                out.writeInt(key.vars[1]);
+                out.writeInt(key.vars.length - 2);
+
+                for (int i = 2; i < key.vars.length; i++) {
+                    out.writeInt(key.vars[i]);
+                }
+
+                out.writeDouble(result.pValue);
+                out.writeDouble(result.alpha);
+                out.writeBoolean(result.independent);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not write to independence cache " + file, e);
+            }
+        }
+
+        synchronized void close() throws IOException {
+            out.close();
+        }
+
+        synchronized void flush() {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not write to independence cache " + file, e);
+            }
+        }
+
+        // Reads the records in the file, returning the length of the complete records read.
+        private long read() throws IOException {
+            if (!file.exists() || file.length() == 0) return 0;
+
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+                long end;
+
+                try {
+                    if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                        throw new IllegalArgumentException("Not an independence cache: " + file);
+                    }
+
+                    end = 8;
+                } catch (EOFException e) {
+                    throw new IllegalArgumentException("Not an independence cache: " + file);
+                }
+
+                while (true) {
+                    try {
+                        long context = in.readLong();
+                        int[] vars = new int[2];
+                        vars[0] = in.readInt();
+                        vars[1] = in.readInt();
+                        int k = in.readInt();
+
+                        if (k < 0 || k > 0xffff) break;
+
+                        vars = Arrays.copyOf(vars, 2 + k);
+
+                        for (int i = 2; i < vars.length; i++) {
+                            vars[i] = in.readInt();
+                        }
+
+                        double pValue = in.readDouble();
+                        double alpha = in.readDouble();
+                        boolean independent = in.readBoolean();
+
+                        results.put(new Key(context, vars), new Result(pValue, alpha, independent));
+                        end += 8 + 4 * 3 + 4 * k + 8 + 8 + 1;
+                    } catch (EOFException e) {
+                        break;
+                    }
+                }
+
+                return end;
+            }
+        }
+    }
+}
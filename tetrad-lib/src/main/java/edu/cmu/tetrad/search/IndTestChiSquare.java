@@ -180,8 +180,6 @@ public final class IndTestChiSquare implements IndependenceTest {
      * @return true iff x _||_ y | z.
      */
     public boolean isIndependent(Node x, Node y, List<Node> z) {
-        NumberFormat nf = NumberFormatUtil.getInstance().getNumberFormat();
-
         if (z == null) {
             throw new NullPointerException();
         }
@@ -192,53 +190,14 @@ public final class IndTestChiSquare implements IndependenceTest {
             }
         }
 
-        // For testing x, y given z1,...,zn, set up an array of length
-        // n + 2 containing the indices of these variables in order.
-        int[] testIndices = new int[2 + z.size()];
-
-        testIndices[0] = variables.indexOf(x);
-        testIndices[1] = variables.indexOf(y);
-
-        for (int i = 0; i < z.size(); i++) {
-            testIndices[i + 2] = variables.indexOf(z.get(i));
-        }
-
-        // the following is lame code--need a better test
-        for (int i = 0; i < testIndices.length; i++) {
-            if (testIndices[i] < 0) {
-                throw new IllegalArgumentException("Variable " + i +
-                        " was not used in the constructor.");
-            }
-        }
+        int[] testIndices = testIndices(x, y, z);
 
         ChiSquareTest.Result result = chiSquareTest.calcChiSquare(testIndices);
         this.xSquare = result.getXSquare();
         this.df = result.getDf();
         this.pValue = result.getPValue();
 
-        if (result.isIndep()) {
-            StringBuilder sb = new StringBuilder();
-            sb.append("INDEPENDENCE ACCEPTED: ");
-            sb.append(SearchLogUtils.independenceFact(x, y, z));
-            sb.append("\tp = ").append(nf.format(result.getPValue())).append(
-                    "\tx^2 = ").append(nf.format(result.getXSquare())).append(
-                    "\tdf = ").append(result.getDf());
-
-            TetradLogger.getInstance().log("independencies", sb.toString());
-        }
-//        else {
-//            StringBuilder sb = new StringBuilder();
-//            sb.append("Not independent: ");
-//            sb.append(SearchLogUtils.independenceFact(x, y, z));
-//            sb.append("\tp = ").append(nf.format(result.getLikelihoodRatioP())).append(
-//                    "\tx^2 = ").append(nf.format(result.getXSquare())).append(
-//                    "\tdf = ").append(result.getDof());
-//            TetradLogger.getInstance().independenceDetails(sb.toString());
-//        }
-
-        if (facts != null) {
-            this.facts.add(new IndependenceFact(x, y, z));
-        }
+        record(x, y, z, result);
 
         return result.isIndep();
     }
@@ -248,6 +207,35 @@ public final class IndTestChiSquare implements IndependenceTest {
         return isIndependent(x, y, zList);
     }
 
+    /**
+     * Determines for each of the given facts whether it holds. The facts are tabulated one at a time; facts whose
+     * conditioning variables were tabulated recently share only the numbering of their configurations, which
+     * ContingencyCounts keeps. Does not change the result of getPValue().
+     */
+    public boolean[] isIndependent(List<IndependenceFact> facts) {
+        boolean[] independent = new boolean[facts.size()];
+        getPValues(facts, independent);
+        return independent;
+    }
+
+    /**
+     * @return the p values of the given facts, putting the judgment of each in independent. The facts are tabulated
+     * as in isIndependent(facts). Does not change the result of getPValue().
+     */
+    public double[] getPValues(List<IndependenceFact> facts, boolean[] independent) {
+        ChiSquareTest.Result[] results = calcChiSquares(facts);
+        double[] pValues = new double[results.length];
+
+        for (int i = 0; i < results.length; i++) {
+            IndependenceFact fact = facts.get(i);
+            record(fact.getX(), fact.getY(), fact.getZ(), results[i]);
+            independent[i] = results[i].isIndep();
+            pValues[i] = results[i].getPValue();
+        }
+
+        return pValues;
+    }
+
     public boolean isDependent(Node x, Node y, List<Node> z) {
         return !isIndependent(x, y, z);
     }
@@ -320,6 +308,13 @@ public final class IndTestChiSquare implements IndependenceTest {
         return chiSquareTest.getAlpha();
     }
 
+    /**
+     * @return true; a question is judged independent when its p value is greater than alpha.
+     */
+    public boolean judgesByPValue() {
+        return true;
+    }
+
     /**
      * Sets the significance level at which independence judgments should be made.  Affects the cutoff for partial
      * correlations to be considered statistically equal to zero.
@@ -366,6 +361,58 @@ public final class IndTestChiSquare implements IndependenceTest {
         return "Chi Square, alpha = " + nf.format(getAlpha());
     }
 
+    private ChiSquareTest.Result[] calcChiSquares(List<IndependenceFact> facts) {
+        List<int[]> testIndices = new ArrayList<>();
+
+        for (IndependenceFact fact : facts) {
+            testIndices.add(testIndices(fact.getX(), fact.getY(), fact.getZ()));
+        }
+
+        return chiSquareTest.calcChiSquares(testIndices);
+    }
+
+    // For testing x, y given z1,...,zn, set up an array of length
+    // n + 2 containing the indices of these variables in order.
+    private int[] testIndices(Node x, Node y, List<Node> z) {
+        int[] testIndices = new int[2 + z.size()];
+
+        testIndices[0] = variables.indexOf(x);
+        testIndices[1] = variables.indexOf(y);
+
+        for (int i = 0; i < z.size(); i++) {
+            testIndices[i + 2] = variables.indexOf(z.get(i));
+        }
+
+        // the following is lame code--need a better test
+        for (int i = 0; i < testIndices.length; i++) {
+            if (testIndices[i] < 0) {
+                throw new IllegalArgumentException("Variable " + i +
+                        " was not used in the constructor.");
+            }
+        }
+
+        return testIndices;
+    }
+
+    private void record(Node x, Node y, List<Node> z, ChiSquareTest.Result result) {
+        if (result.isIndep()) {
+            NumberFormat nf = NumberFormatUtil.getInstance().getNumberFormat();
+
+            StringBuilder sb = new StringBuilder();
+            sb.append("INDEPENDENCE ACCEPTED: ");
+            sb.append(SearchLogUtils.independenceFact(x, y, z));
+            sb.append("\tp = ").append(nf.format(result.getPValue())).append(
+                    "\tx^2 = ").append(nf.format(result.getXSquare())).append(
+                    "\tdf = ").append(result.getDf());
+
+            TetradLogger.getInstance().log("independencies", sb.toString());
+        }
+
+        if (facts != null) {
+            this.facts.add(new IndependenceFact(x, y, z));
+        }
+    }
+
     private double getDeterminationP() {
         return determinationP;
     }
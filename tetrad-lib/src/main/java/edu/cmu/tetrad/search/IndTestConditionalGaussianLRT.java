@@ -23,6 +23,7 @@ package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.graph.IndependenceFact;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.TetradMatrix;
 import org.apache.commons.collections4.map.HashedMap;
@@ -86,75 +87,43 @@ public class IndTestConditionalGaussianLRT implements IndependenceTest {
      */
     public boolean isIndependent(Node x, Node y, List<Node> z) {
         likelihood.setNumCategoriesToDiscretize(numCategoriesToDiscretize);
+        this.pValue = getPValue(x, y, z, null);
+        return isIndependent(this.pValue, z.size());
+    }
 
-        int _x = nodesHash.get(x);
-        int _y = nodesHash.get(y);
-
-        int[] list0 = new int[z.size() + 1];
-        int[] list1 = new int[z.size() + 1];
-        int[] list2 = new int[z.size()];
-
-        list0[0] = _x;
-        list1[0] = _y;
-
-        for (int i = 0; i < z.size(); i++) {
-            int _z = nodesHash.get(z.get(i));
-            list0[i + 1] = _z;
-            list1[i + 1] = _z;
-            list2[i] = _z;
-        }
-
-        ConditionalGaussianLikelihood.Ret ret1 = likelihood.getLikelihood(_y, list0);
-        ConditionalGaussianLikelihood.Ret ret2 = likelihood.getLikelihood(_y, list2);
-        ConditionalGaussianLikelihood.Ret ret3 = likelihood.getLikelihood(_x, list1);
-        ConditionalGaussianLikelihood.Ret ret4 = likelihood.getLikelihood(_x, list2);
-
-        double lik0 = ret1.getLik() - ret2.getLik();
-        double dof0 = ret1.getDof() - ret2.getDof();
-        double lik1 = ret3.getLik() - ret4.getLik();
-        double dof1 = ret3.getDof() - ret4.getDof();
-
-        if (dof0 <= 0) {
-            dof0 = 1;
-//            throw new IllegalArgumentException("DOF must be >= 1");
-        }
-        if (dof1 <= 0) {
-            dof1 = 1;
-//            throw new IllegalArgumentException("DOF must be >= 1");
-        }
-
-        double p0 = 0;
-        double p1 = 0;
-        try {
-            p0 = 1.0 - new ChiSquaredDistribution(dof0).cumulativeProbability(2.0 * lik0);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        try {
-            p1 = 1.0 - new ChiSquaredDistribution(dof1).cumulativeProbability(2.0 * lik1);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    public boolean isIndependent(Node x, Node y, Node... z) {
+        List<Node> zList = Arrays.asList(z);
+        return isIndependent(x, y, zList);
+    }
 
-        this.pValue = Math.min(p0, p1);
+    /**
+     * Determines for each of the given facts whether it holds. Likelihoods needed by more than one of the facts, such
+     * as those of x and of y given a shared conditioning set, are calculated once. Does not change the result of
+     * getPValue().
+     */
+    public boolean[] isIndependent(List<IndependenceFact> facts) {
+        boolean[] independent = new boolean[facts.size()];
+        getPValues(facts, independent);
+        return independent;
+    }
 
-//        return this.pValue > alpha;
+    /**
+     * @return the p values of the given facts, putting the judgment of each in independent. Likelihoods needed by more
+     * than one of the facts are calculated once. Does not change the result of getPValue().
+     */
+    public double[] getPValues(List<IndependenceFact> facts, boolean[] independent) {
+        likelihood.setNumCategoriesToDiscretize(numCategoriesToDiscretize);
 
-        if(fastFDR) {
-            final int d1 = 0; // reference
-            final int d2 = z.size();
-            final int v = data.getNumColumns() - 2;
+        Map<String, ConditionalGaussianLikelihood.Ret> rets = new HashMap<>();
+        double[] pValues = new double[facts.size()];
 
-            double alpha2 = (exp(log(alpha) + logChoose(v, d1) - logChoose(v, d2)));
-            return this.pValue > alpha2;
-        } else {
-            return this.pValue > alpha;
+        for (int i = 0; i < facts.size(); i++) {
+            IndependenceFact fact = facts.get(i);
+            pValues[i] = getPValue(fact.getX(), fact.getY(), fact.getZ(), rets);
+            independent[i] = isIndependent(pValues[i], fact.getZ().size());
         }
-    }
 
-    public boolean isIndependent(Node x, Node y, Node... z) {
-        List<Node> zList = Arrays.asList(z);
-        return isIndependent(x, y, zList);
+        return pValues;
     }
 
     /**
@@ -287,4 +256,88 @@ public class IndTestConditionalGaussianLRT implements IndependenceTest {
     public void setFastFDR(boolean fastFDR) {
         this.fastFDR = fastFDR;
     }
-}
\ No newline at end of file
+
+    // The p value of x _||_ y | z. If rets is not null, the likelihoods are looked up there first and stored there.
+    private double getPValue(Node x, Node y, List<Node> z, Map<String, ConditionalGaussianLikelihood.Ret> rets) {
+        int _x = nodesHash.get(x);
+        int _y = nodesHash.get(y);
+
+        int[] list0 = new int[z.size() + 1];
+        int[] list1 = new int[z.size() + 1];
+        int[] list2 = new int[z.size()];
+
+        list0[0] = _x;
+        list1[0] = _y;
+
+        for (int i = 0; i < z.size(); i++) {
+            int _z = nodesHash.get(z.get(i));
+            list0[i + 1] = _z;
+            list1[i + 1] = _z;
+            list2[i] = _z;
+        }
+
+        ConditionalGaussianLikelihood.Ret ret1 = getLikelihood(_y, list0, rets);
+        ConditionalGaussianLikelihood.Ret ret2 = getLikelihood(_y, list2, rets);
+        ConditionalGaussianLikelihood.Ret ret3 = getLikelihood(_x, list1, rets);
+        ConditionalGaussianLikelihood.Ret ret4 = getLikelihood(_x, list2, rets);
+
+        double lik0 = ret1.getLik() - ret2.getLik();
+        double dof0 = ret1.getDof() - ret2.getDof();
+        double lik1 = ret3.getLik() - ret4.getLik();
+        double dof1 = ret3.getDof() - ret4.getDof();
+
+        if (dof0 <= 0) {
+            dof0 = 1;
+//            throw new IllegalArgumentException("DOF must be >= 1");
+        }
+        if (dof1 <= 0) {
+            dof1 = 1;
+//            throw new IllegalArgumentException("DOF must be >= 1");
+        }
+
+        double p0 = 0;
+        double p1 = 0;
+        try {
+            p0 = 1.0 - new ChiSquaredDistribution(dof0).cumulativeProbability(2.0 * lik0);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        try {
+            p1 = 1.0 - new ChiSquaredDistribution(dof1).cumulativeProbability(2.0 * lik1);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return Math.min(p0, p1);
+    }
+
+    private ConditionalGaussianLikelihood.Ret getLikelihood(int child, int[] parents,
+                                                            Map<String, ConditionalGaussianLikelihood.Ret> rets) {
+        if (rets == null) return likelihood.getLikelihood(child, parents);
+
+        String key = child + " " + Arrays.toString(parents);
+        ConditionalGaussianLikelihood.Ret ret = rets.get(key);
+
+        if (ret == null) {
+            ret = likelihood.getLikelihood(child, parents);
+            rets.put(key, ret);
+        }
+
+        return ret;
+    }
+
+    private boolean isIndependent(double pValue, int numConditioningVariables) {
+//        return pValue > alpha;
+
+        if(fastFDR) {
+            final int d1 = 0; // reference
+            final int d2 = numConditioningVariables;
+            final int v = data.getNumColumns() - 2;
+
+            double alpha2 = (exp(log(alpha) + logChoose(v, d1) - logChoose(v, d2)));
+            return pValue > alpha2;
+        } else {
+            return pValue > alpha;
+        }
+    }
+}
@@ -23,6 +23,7 @@ package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.graph.DSeparationOracle;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.IndependenceFact;
 import edu.cmu.tetrad.graph.Node;
@@ -35,6 +36,11 @@ import java.util.*;
  * Checks independence facts for variables associated with the nodes in a given graph by checking d-separation facts on
  * the underlying nodes.
  *
+ * <p>
+ * The graph is not watched. It is copied into a d-separation oracle when the test is first queried, and later
+ * queries answer from that copy, so edits made to the graph after that point are not seen. To test against an edited
+ * graph, pass it to setGraph, which drops the copy; the next query makes a new one.
+ *
  * @author Joseph Ramsey
  */
 public class IndTestDSep implements IndependenceTest {
@@ -53,6 +59,9 @@ public class IndTestDSep implements IndependenceTest {
     private boolean verbose = false;
     private double pvalue = 0;
 
+    // Answers the d-separation queries, made from the graph when first needed.
+    private volatile DSeparationOracle oracle;
+
     public IndTestDSep(Graph graph) {
         this(graph, false);
     }
@@ -128,55 +137,45 @@ public class IndTestDSep implements IndependenceTest {
      * @return true iff x _||_ y | z
      */
     public boolean isIndependent(Node x, Node y, List<Node> z) {
-        if (z == null) {
-            throw new NullPointerException();
-        }
+        checkObserved(x, y, z);
 
-        for (Node node : z) {
-            if (node == null) {
-                throw new NullPointerException();
-            }
-        }
+        boolean dSeparated = getOracle().isDSeparatedFrom(x, y, z);
 
-        if (!observedVars.contains(x)) {
-            throw new IllegalArgumentException("Not an observed variable: " + x);
-        }
+        record(x, y, z, dSeparated);
+        pvalue = dSeparated ? 1.0 : 0.0;
 
-        if (!observedVars.contains(y)) {
-            throw new IllegalArgumentException("Not an observed variable: " + y);
-        }
-
-        for (Node _z : z) {
-            if (!observedVars.contains(_z)) {
-                throw new IllegalArgumentException("Not an observed variable: " + _z);
-            }
-        }
+        return dSeparated;
+    }
 
-        boolean dSeparated = !getGraph().isDConnectedTo(x, y, z);
+    /**
+     * Determines for each of the given facts whether it holds. Facts with the same first node and conditioning set are
+     * decided by a single search of the graph. Does not change the result of getPValue().
+     */
+    public boolean[] isIndependent(List<IndependenceFact> facts) {
+        boolean[] independent = dSeparated(facts);
 
-        if (verbose) {
-            if (dSeparated) {
-                double pValue = 1.0;
-                TetradLogger.getInstance().log("independencies", SearchLogUtils.independenceFactMsg(x, y, z, pValue));
-                System.out.println(SearchLogUtils.independenceFactMsg(x, y, z, pValue));
-            } else {
-                double pValue = 0.0;
-                TetradLogger.getInstance().log("dependencies", SearchLogUtils.dependenceFactMsg(x, y, z, pValue));
-                System.out.println(SearchLogUtils.dependenceFactMsg(x, y, z, pValue));
-            }
+        for (int i = 0; i < facts.size(); i++) {
+            IndependenceFact fact = facts.get(i);
+            record(fact.getX(), fact.getY(), fact.getZ(), independent[i]);
         }
 
-        if (dSeparated) {
-            if (this.facts != null) {
-                this.facts.add(new IndependenceFact(x, y, z));
-            }
+        return independent;
+    }
 
-            pvalue = 1.0;
-        } else {
-            pvalue = 0.0;
+    /**
+     * @return the p values of the given facts, 1.0 for d-separation facts and 0.0 for others, putting the judgment of
+     * each in independent. Does not change the result of getPValue().
+     */
+    public double[] getPValues(List<IndependenceFact> facts, boolean[] independent) {
+        boolean[] dSeparated = dSeparated(facts);
+        double[] pValues = new double[dSeparated.length];
+
+        for (int i = 0; i < dSeparated.length; i++) {
+            independent[i] = dSeparated[i];
+            pValues[i] = dSeparated[i] ? 1.0 : 0.0;
         }
 
-        return dSeparated;
+        return pValues;
     }
 
     public boolean isIndependent(Node x, Node y, Node... z) {
@@ -207,7 +206,7 @@ public class IndTestDSep implements IndependenceTest {
             }
         }
 
-        return getGraph().isDSeparatedFrom(x, y, z);
+        return getOracle().isDSeparatedFrom(x, y, z);
     }
 
     /**
@@ -266,8 +265,13 @@ public class IndTestDSep implements IndependenceTest {
         return this.graph;
     }
     
+    /**
+     * Sets the graph. The test looks at the graph as it is when first queried, so a graph that has been changed since
+     * should be set again.
+     */
     public void setGraph(Graph graph) {
         this.graph = graph;
+        this.oracle = null;
     }
 
     public String toString() {
@@ -319,10 +323,100 @@ public class IndTestDSep implements IndependenceTest {
         this.verbose = verbose;
     }
 
-    
-}
+    //==============================PRIVATE METHODS=========================//
+
+    // Facts with the same first node and conditioning set are decided by one search.
+    private boolean[] dSeparated(List<IndependenceFact> facts) {
+        Map<List<Node>, List<Integer>> groups = new LinkedHashMap<>();
+
+        for (int i = 0; i < facts.size(); i++) {
+            IndependenceFact fact = facts.get(i);
+            checkObserved(fact.getX(), fact.getY(), fact.getZ());
+
+            List<Node> key = new ArrayList<>(fact.getZ().size() + 1);
+            key.add(fact.getX());
+            key.addAll(fact.getZ());
+
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+        }
+
+        boolean[] independent = new boolean[facts.size()];
 
+        for (List<Integer> group : groups.values()) {
+            IndependenceFact first = facts.get(group.get(0));
+            List<Node> y = new ArrayList<>(group.size());
 
+            for (int i : group) {
+                y.add(facts.get(i).getY());
+            }
+
+            boolean[] separated = getOracle().isDSeparatedFrom(first.getX(), y, first.getZ());
 
+            for (int k = 0; k < group.size(); k++) {
+                independent[group.get(k)] = separated[k];
+            }
+        }
 
+        return independent;
+    }
+
+    private void checkObserved(Node x, Node y, List<Node> z) {
+        if (z == null) {
+            throw new NullPointerException();
+        }
 
+        for (Node node : z) {
+            if (node == null) {
+                throw new NullPointerException();
+            }
+        }
+
+        if (!observedVars.contains(x)) {
+            throw new IllegalArgumentException("Not an observed variable: " + x);
+        }
+
+        if (!observedVars.contains(y)) {
+            throw new IllegalArgumentException("Not an observed variable: " + y);
+        }
+
+        for (Node _z : z) {
+            if (!observedVars.contains(_z)) {
+                throw new IllegalArgumentException("Not an observed variable: " + _z);
+            }
+        }
+    }
+
+    private void record(Node x, Node y, List<Node> z, boolean dSeparated) {
+        if (verbose) {
+            if (dSeparated) {
+                double pValue = 1.0;
+                TetradLogger.getInstance().log("independencies", SearchLogUtils.independenceFactMsg(x, y, z, pValue));
+                System.out.println(SearchLogUtils.independenceFactMsg(x, y, z, pValue));
+            } else {
+                double pValue = 0.0;
+                TetradLogger.getInstance().log("dependencies", SearchLogUtils.dependenceFactMsg(x, y, z, pValue));
+                System.out.println(SearchLogUtils.dependenceFactMsg(x, y, z, pValue));
+            }
+        }
+
+        if (dSeparated && this.facts != null) {
+            this.facts.add(new IndependenceFact(x, y, z));
+        }
+    }
+
+    private DSeparationOracle getOracle() {
+        DSeparationOracle oracle = this.oracle;
+
+        if (oracle == null) {
+            synchronized (this) {
+                if (this.oracle == null) {
+                    this.oracle = new DSeparationOracle(getGraph());
+                }
+
+                oracle = this.oracle;
+            }
+        }
+
+        return oracle;
+    }
+}
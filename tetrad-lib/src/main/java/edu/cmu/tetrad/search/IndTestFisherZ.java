@@ -22,6 +22,7 @@
 package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.IndependenceFact;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.*;
 import org.apache.commons.math3.distribution.NormalDistribution;
@@ -48,6 +49,11 @@ public final class IndTestFisherZ implements IndependenceTest {
      */
     private final CorrelationMatrix cor;
 
+    /**
+     * Calculates partial correlations from the correlation matrix, caching factors of conditioning sets.
+     */
+    private final PartialCorrelationEngine engine;
+
     /**
      * The variables of the covariance matrix, in order. (Unmodifiable list.)
      */
@@ -66,10 +72,10 @@ public final class IndTestFisherZ implements IndependenceTest {
     private final Map<Node, Integer> indexMap;
     private final Map<String, Node> nameMap;
     private boolean verbose = true;
-    private double p = Double.NaN;
+    private volatile double p = Double.NaN;
     private final NormalDistribution normal = new NormalDistribution(0, 1);
     private boolean sellke = false;
-    private double r = Double.NaN;
+    private volatile double r = Double.NaN;
 
     //==========================CONSTRUCTORS=============================//
 
@@ -90,6 +96,7 @@ public final class IndTestFisherZ implements IndependenceTest {
         }
 
         this.cor = new CorrelationMatrix(dataSet);
+        this.engine = new PartialCorrelationEngine(cor.getMatrix());
         List<Node> nodes = this.cor.getVariables();
 
         this.variables = Collections.unmodifiableList(nodes);
@@ -110,6 +117,7 @@ public final class IndTestFisherZ implements IndependenceTest {
     public IndTestFisherZ(TetradMatrix data, List<Node> variables, double alpha) {
         this.dataSet = new BoxDataSet(new VerticalDoubleDataBox(data.transpose().toArray()), variables);
         this.cor = new CorrelationMatrix(dataSet);
+        this.engine = new PartialCorrelationEngine(cor.getMatrix());
         this.variables = Collections.unmodifiableList(variables);
         this.indexMap = indexMap(variables);
         this.nameMap = nameMap(variables);
@@ -122,6 +130,7 @@ public final class IndTestFisherZ implements IndependenceTest {
      */
     public IndTestFisherZ(ICovarianceMatrix covMatrix, double alpha) {
         this.cor = new CorrelationMatrix(covMatrix);
+        this.engine = new PartialCorrelationEngine(cor.getMatrix());
         this.variables = covMatrix.getVariables();
         this.indexMap = indexMap(variables);
         this.nameMap = nameMap(variables);
@@ -166,7 +175,7 @@ public final class IndTestFisherZ implements IndependenceTest {
      * @return true iff x _||_ y | z.
      * @throws RuntimeException if a matrix singularity is encountered.
      */
-    public synchronized boolean isIndependent(Node x, Node y, List<Node> z) {
+    public boolean isIndependent(Node x, Node y, List<Node> z) {
         double p = getPValue(x, y, z);
 //        this.p = p;
 
@@ -199,11 +208,55 @@ public final class IndTestFisherZ implements IndependenceTest {
     }
 
     public double getPValue(Node x, Node y, List<Node> z) {
-        int n = sampleSize();
         double r = getR(x, y, z);
         this.r = r;
+        double p = getPValue(r, z.size());
+        this.p = p;
+        return p;
+    }
+
+    /**
+     * @return true for each of the given facts judged true. Facts with the same conditioning set are tested together,
+     * so that they share a factorization. Does not change the result of getPValue().
+     */
+    public boolean[] isIndependent(List<IndependenceFact> facts) {
+        boolean[] independent = new boolean[facts.size()];
+        getPValues(facts, independent);
+        return independent;
+    }
+
+    /**
+     * @return the p values of the given facts, putting the judgment of each in independent. Facts with the same
+     * conditioning set are tested together, so that they share a factorization. Does not change the result of
+     * getPValue().
+     */
+    public double[] getPValues(List<IndependenceFact> facts, boolean[] independent) {
+        Map<Set<Node>, List<Integer>> groups = new LinkedHashMap<>();
+
+        for (int i = 0; i < facts.size(); i++) {
+            groups.computeIfAbsent(new HashSet<>(facts.get(i).getZ()), z -> new ArrayList<>()).add(i);
+        }
+
+        double[] p = new double[facts.size()];
+
+        for (List<Integer> group : groups.values()) {
+            for (int i : group) {
+                IndependenceFact fact = facts.get(i);
+                List<Node> z = fact.getZ();
+                p[i] = getPValue(getR(fact.getX(), fact.getY(), z), z.size());
+                independent[i] = p[i] > alpha;
+            }
+        }
+
+        return p;
+    }
+
+    //======================PRIVATE==========================//
+
+    private double getPValue(double r, int numConditioningVariables) {
+        int n = sampleSize();
         double q = 0.5 * (log(1.0 + abs(r)) - log(1.0 - abs(r)));
-        double fisherZ = sqrt(n + 3 + z.size()) * q;
+        double fisherZ = sqrt(n + 3 + numConditioningVariables) * q;
         double p = 2.0 * (1.0 - normal.cumulativeProbability(abs(fisherZ)));
 
         if (Double.isNaN(p)) {
@@ -211,22 +264,18 @@ public final class IndTestFisherZ implements IndependenceTest {
             else p = 1;
         }
 
-        this.p = p;
         return p;
     }
 
-    //======================PRIVATE==========================//
-
     private double partialCorrelation(Node x, Node y, List<Node> z) throws SingularMatrixException {
-        int[] indices = new int[z.size() + 2];
-        indices[0] = indexMap.get(x);
-        indices[1] = indexMap.get(y);
+        int _x = indexMap.get(x);
+        int _y = indexMap.get(y);
 
-        if (z.isEmpty()) return cor.getValue(indices[0], indices[1]);
+        if (z.isEmpty()) return cor.getValue(_x, _y);
 
-        for (int i = 0; i < z.size(); i++) indices[i + 2] = indexMap.get(z.get(i));
-        TetradMatrix submatrix = cor.getSubmatrix(indices).getMatrix();
-        return StatUtils.partialCorrelation(submatrix);
+        int[] _z = new int[z.size()];
+        for (int i = 0; i < z.size(); i++) _z[i] = indexMap.get(z.get(i));
+        return engine.partialCorrelation(_x, _y, _z);
     }
 
     private double getR(Node x, Node y, List<Node> z) {
@@ -263,6 +312,13 @@ public final class IndTestFisherZ implements IndependenceTest {
         return this.alpha;
     }
 
+    /**
+     * @return true; a question is judged independent when its p value is greater than alpha.
+     */
+    public boolean judgesByPValue() {
+        return true;
+    }
+
     /**
      * @return the list of variables over which this independence checker is capable of determinine independence
      * relations-- that is, all the variables in the given graph or the given data set.
@@ -21,9 +21,11 @@
 
 package edu.cmu.tetrad.search;
 
+import edu.cmu.tetrad.data.AdTree;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DiscreteVariable;
 import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.graph.IndependenceFact;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.NumberFormatUtil;
 import edu.cmu.tetrad.util.TetradLogger;
@@ -190,48 +192,13 @@ public final class IndTestGSquare implements IndependenceTest {
             }
         }
 
-        // For testing x, y given z1,...,zn, set up an array of length
-        // n + 2 containing the indices of these variables in order.
-        int[] testIndices = new int[2 + z.size()];
-
-        testIndices[0] = variables.indexOf(x);
-        testIndices[1] = variables.indexOf(y);
-
-        for (int i = 0; i < z.size(); i++) {
-            testIndices[i + 2] = variables.indexOf(z.get(i));
-        }
-
-        // the following is lame code--need a better test
-        for (int i = 0; i < testIndices.length; i++) {
-            if (testIndices[i] < 0) {
-                throw new IllegalArgumentException(
-                        "Variable " + i + " was not used in the constructor.");
-            }
-        }
-
-        //        System.out.println("Testing " + x + " _||_ " + y + " | " + z);
+        int[] testIndices = testIndices(x, y, z);
 
         GSquareTest.Result result = gSquareTest.calcGSquare(testIndices);
         this.gSquare = result.getGSquare();
         this.pValue = result.getPValue();
 
-        if (result.isIndep()) {
-            StringBuilder sb = new StringBuilder();
-            sb.append("INDEPENDENCE ACCEPTED: ");
-            sb.append(SearchLogUtils.independenceFact(x, y, z));
-            sb.append("\tp = ").append(nf.format(result.getPValue())).append(
-                    "\tg^2 = ").append(nf.format(result.getGSquare())).append(
-                    "\tdf = ").append(result.getDf());
-            TetradLogger.getInstance().log("independencies", sb.toString());
-        } else {
-            StringBuilder sb = new StringBuilder();
-            sb.append("Not independent: ");
-            sb.append(SearchLogUtils.independenceFact(x, y, z));
-            sb.append("\tp = ").append(nf.format(result.getPValue())).append(
-                    "\tg^2 = ").append(nf.format(result.getGSquare())).append(
-                    "\tdf = ").append(result.getDf());
-            TetradLogger.getInstance().log("independencies", sb.toString());
-        }
+        log(x, y, z, result);
 
         return result.isIndep();
     }
@@ -241,6 +208,35 @@ public final class IndTestGSquare implements IndependenceTest {
         return isIndependent(x, y, zList);
     }
 
+    /**
+     * Determines for each of the given facts whether it holds. The facts are tabulated one at a time; facts whose
+     * conditioning variables were tabulated recently share only the numbering of their configurations, which
+     * ContingencyCounts keeps. Does not change the result of getPValue().
+     */
+    public boolean[] isIndependent(List<IndependenceFact> facts) {
+        boolean[] independent = new boolean[facts.size()];
+        getPValues(facts, independent);
+        return independent;
+    }
+
+    /**
+     * @return the p values of the given facts, putting the judgment of each in independent. The facts are tabulated
+     * as in isIndependent(facts). Does not change the result of getPValue().
+     */
+    public double[] getPValues(List<IndependenceFact> facts, boolean[] independent) {
+        GSquareTest.Result[] results = calcGSquares(facts);
+        double[] pValues = new double[results.length];
+
+        for (int i = 0; i < results.length; i++) {
+            IndependenceFact fact = facts.get(i);
+            log(fact.getX(), fact.getY(), fact.getZ(), results[i]);
+            independent[i] = results[i].isIndep();
+            pValues[i] = results[i].getPValue();
+        }
+
+        return pValues;
+    }
+
     public boolean isDependent(Node x, Node y, List<Node> z) {
         return !isIndependent(x, y, z);
     }
@@ -269,6 +265,13 @@ public final class IndTestGSquare implements IndependenceTest {
         return this.gSquareTest.getAlpha();
     }
 
+    /**
+     * @return true; a question is judged independent when its p value is greater than alpha.
+     */
+    public boolean judgesByPValue() {
+        return true;
+    }
+
     /**
      * @return the list of variables over which this independence checker is capable of determinine independence
      * relations-- that is, all the variables in the given graph or the given data set.
@@ -409,8 +412,64 @@ public final class IndTestGSquare implements IndependenceTest {
     public void setVerbose(boolean verbose) {
         this.verbose = verbose;
     }
-}
 
+    /**
+     * Takes counts from the given AD-tree over the data, or from the data itself if null.
+     */
+    public void setAdTree(AdTree adTree) {
+        gSquareTest.setAdTree(adTree);
+    }
+
+    private GSquareTest.Result[] calcGSquares(List<IndependenceFact> facts) {
+        List<int[]> testIndices = new ArrayList<>();
+
+        for (IndependenceFact fact : facts) {
+            testIndices.add(testIndices(fact.getX(), fact.getY(), fact.getZ()));
+        }
+
+        return gSquareTest.calcGSquares(testIndices);
+    }
+
+    // For testing x, y given z1,...,zn, set up an array of length
+    // n + 2 containing the indices of these variables in order.
+    private int[] testIndices(Node x, Node y, List<Node> z) {
+        int[] testIndices = new int[2 + z.size()];
+
+        testIndices[0] = variables.indexOf(x);
+        testIndices[1] = variables.indexOf(y);
+
+        for (int i = 0; i < z.size(); i++) {
+            testIndices[i + 2] = variables.indexOf(z.get(i));
+        }
 
+        // the following is lame code--need a better test
+        for (int i = 0; i < testIndices.length; i++) {
+            if (testIndices[i] < 0) {
+                throw new IllegalArgumentException(
+                        "Variable " + i + " was not used in the constructor.");
+            }
+        }
 
+        return testIndices;
+    }
 
+    private void log(Node x, Node y, List<Node> z, GSquareTest.Result result) {
+        if (result.isIndep()) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("INDEPENDENCE ACCEPTED: ");
+            sb.append(SearchLogUtils.independenceFact(x, y, z));
+            sb.append("\tp = ").append(nf.format(result.getPValue())).append(
+                    "\tg^2 = ").append(nf.format(result.getGSquare())).append(
+                    "\tdf = ").append(result.getDf());
+            TetradLogger.getInstance().log("independencies", sb.toString());
+        } else {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Not independent: ");
+            sb.append(SearchLogUtils.independenceFact(x, y, z));
+            sb.append("\tp = ").append(nf.format(result.getPValue())).append(
+                    "\tg^2 = ").append(nf.format(result.getGSquare())).append(
+                    "\tdf = ").append(result.getDf());
+            TetradLogger.getInstance().log("independencies", sb.toString());
+        }
+    }
+}
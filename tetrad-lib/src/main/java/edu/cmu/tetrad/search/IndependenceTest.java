@@ -24,6 +24,7 @@ package edu.cmu.tetrad.search;
 import edu.cmu.tetrad.data.DataModel;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.graph.IndependenceFact;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.TetradMatrix;
 
@@ -57,6 +58,23 @@ public interface IndependenceTest {
      */
     boolean isIndependent(Node x, Node y, Node... z);
 
+    /**
+     * @return for each of the given independence questions, in order, true if it is judged true, false if not. By
+     * default the questions are tested one at a time; tests that can share work among questions, for instance among
+     * those with the same conditioning set, override this, in which case the p value returned by getPValue() may not
+     * be changed.
+     */
+    default boolean[] isIndependent(List<IndependenceFact> facts) {
+        boolean[] independent = new boolean[facts.size()];
+
+        for (int i = 0; i < facts.size(); i++) {
+            IndependenceFact fact = facts.get(i);
+            independent[i] = isIndependent(fact.getX(), fact.getY(), fact.getZ());
+        }
+
+        return independent;
+    }
+
     /**
      * @return true if the given independence question is judged false, true if not. The independence question is of the
      * form x _||_ y | z, z = <z1,...,zn>, where x, y, z1,...,zn are variables in the list returned by
@@ -79,6 +97,50 @@ public interface IndependenceTest {
 
 //    double getPValue(Node x, Node y, List<Node> z);
 
+    /**
+     * @return the p values of the given independence questions, in order, with Double.NaN where a p value is not
+     * meaningful for this test. Same as getPValues(facts, independent), with the judgments thrown away.
+     */
+    default double[] getPValues(List<IndependenceFact> facts) {
+        return getPValues(facts, new boolean[facts.size()]);
+    }
+
+    /**
+     * @return the p values of the given independence questions, in order, with Double.NaN where a p value is not
+     * meaningful for this test; the judgment of each question, as isIndependent would make it, is put in independent.
+     * <p>
+     * By default the questions are tested one at a time, and each p value is read from getPValue(), which belongs to
+     * the whole test. The test is locked meanwhile, so that callers of this method on different threads get their own
+     * p values, but this does not guard against other threads calling isIndependent directly, and it tests one
+     * question at a time. Tests that can find p values without keeping them in the test, or that can share work among
+     * questions, override this.
+     */
+    default double[] getPValues(List<IndependenceFact> facts, boolean[] independent) {
+        if (independent.length != facts.size()) {
+            throw new IllegalArgumentException("Expecting a judgment for each fact.");
+        }
+
+        double[] pValues = new double[facts.size()];
+
+        synchronized (this) {
+            for (int i = 0; i < facts.size(); i++) {
+                IndependenceFact fact = facts.get(i);
+                independent[i] = isIndependent(fact.getX(), fact.getY(), fact.getZ());
+                pValues[i] = getPValue();
+            }
+        }
+
+        return pValues;
+    }
+
+    /**
+     * @return true if this test judges a question independent exactly when its p value is greater than getAlpha(), so
+     * that a judgment may be made again from the p value at another significance level. False by default.
+     */
+    default boolean judgesByPValue() {
+        return false;
+    }
+
     /**
      * @return the list of variables over which this independence checker is capable of determinining independence
      * relations.
@@ -636,10 +636,7 @@ public class Jcpc implements GraphSearch {
     }
 
     private void undirectedGraph(Graph graph) {
-        for (Edge edge : graph.getEdges()) {
-            edge.setEndpoint1(Endpoint.TAIL);
-            edge.setEndpoint2(Endpoint.TAIL);
-        }
+        graph.reorientAllWith(Endpoint.TAIL);
     }
 
     /**
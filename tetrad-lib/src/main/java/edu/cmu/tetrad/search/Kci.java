@@ -65,10 +65,10 @@ public class Kci implements IndependenceTest, ScoreForFact {
     // P value used to judge independence. This is the last p value calculated.
     private double p;
 
-    // Centering matrix.
+    // Centering matrix, made when first needed.
     private TetradMatrix H;
 
-    // Identity N x N
+    // Identity N x N, made when first needed.
     private TetradMatrix I;
 
     // A normal distribution with 1 degree of freedom.
@@ -105,6 +105,15 @@ public class Kci implements IndependenceTest, ScoreForFact {
     private boolean verbose = false;
     private boolean fastFDR = false;
 
+    // Rank of the Nystrom approximation to the kernel matrices; 0 if the full N x N matrices are to be used.
+    private int rank = 0;
+
+    // Rows of the data used as landmarks for the Nystrom approximation.
+    private int[] landmarks;
+
+    // For each variable, squared half-differences from each row to each landmark, N x rank, made when first needed.
+    private double[][][] landmarkDistances;
+
     /**
      * Constructor.
      *
@@ -116,12 +125,6 @@ public class Kci implements IndependenceTest, ScoreForFact {
         this.variables = data.getVariables();
         this._data = this.data.getDoubleData().transpose().toArray();
         this.N = this.data.getNumRows();
-        this.I = TetradMatrix.identity(N);
-
-        TetradMatrix Ones = new TetradMatrix(N, 1);
-        for (int j = 0; j < N; j++) Ones.set(j, 0, 1);
-
-        this.H = TetradMatrix.identity(N).minus(Ones.times(Ones.transpose()).scalarMult(1.0 / N));
 
         this.alpha = alpha;
         this.p = -1;
@@ -367,6 +370,30 @@ public class Kci implements IndependenceTest, ScoreForFact {
         this.epsilon = epsilon;
     }
 
+    public int getRank() {
+        return rank;
+    }
+
+    /**
+     * Sets the rank of the Nystrom approximation to the kernel matrices, or 0 (the default) to use the full N x N
+     * matrices. With rank r, kernel features over r landmark rows are used in place of the kernel matrices, so that
+     * unconditional tests take O(N r) memory and about O(N r^2) time, rather than O(N^2) and O(N^3). Conditional
+     * tests (Proposition 5) also need the eigenvalues of an m x m matrix, m = min(N, r^2), built in O(N r^4) time
+     * if r^2 <= N; so r should be kept well below sqrt(N), where they take O(N r + r^4) memory. Distances to the
+     * landmarks are cached by variable across tests.
+     */
+    public void setRank(int rank) {
+        if (rank < 0) throw new IllegalArgumentException("Rank must be >= 0: " + rank);
+
+        if (rank != this.rank) {
+            this.rank = rank;
+            this.landmarks = null;
+            this.landmarkDistances = null;
+            this.facts.clear();
+            this.pValues.clear();
+        }
+    }
+
     //====================================PRIVATE METHODS==================================//
 
     /**
@@ -375,52 +402,17 @@ public class Kci implements IndependenceTest, ScoreForFact {
      * @return true just in case independence holds.
      */
     private boolean isIndependentUnconditional(Node x, Node y, IndependenceFact fact) {
-        TetradMatrix kx = center(kernelMatrix(_data, x, null, getWidthMultiplier()));
-        TetradMatrix ky = center(kernelMatrix(_data, y, null, getWidthMultiplier()));
-
         try {
+            if (getRank() > 0) {
+                return isIndependentUnconditionalLowRank(x, y, fact);
+            }
+
+            TetradMatrix kx = center(kernelMatrix(_data, x, null, getWidthMultiplier()));
+            TetradMatrix ky = center(kernelMatrix(_data, y, null, getWidthMultiplier()));
+
             if (isApproximate()) {
-                double sta = kx.times(ky).trace();
-                double mean_appr = kx.trace() * ky.trace() / N;
-                double var_appr = 2 * kx.times(kx).trace() * ky.times(ky).trace() / (N * N);
-                double k_appr = mean_appr * mean_appr / var_appr;
-                double theta_appr = var_appr / mean_appr;
-                double p_appr = 1.0 - new GammaDistribution(k_appr, theta_appr).cumulativeProbability(sta);
-                p = p_appr;
-                pValues.put(fact, p);
-
-                if (fastFDR) {
-                    final int d1 = 0; // reference
-                    final int d2 = fact.getZ().size();
-                    final int v = variables.size() - 2;
-
-                    double alpha2 = (exp(log(alpha) + logChoose(v, d1) - logChoose(v, d2)));
-                    final boolean independent = p > alpha2;
-
-//                    if (independent) {
-//                        System.out.println(fact + " INDEPENDENT p = " + p);
-//                        TetradLogger.getInstance().log("info", fact + " Independent");
-//
-//                    } else {
-//                        System.out.println(fact + " dependent p = " + p);
-//                        TetradLogger.getInstance().log("info", fact.toString());
-//                    }
-
-                    return independent;
-                } else {
-                    final boolean independent = p > alpha;
-
-//                    if (independent) {
-//                        System.out.println(fact + " INDEPENDENT p = " + p);
-//                        TetradLogger.getInstance().log("info", fact + " Independent");
-//
-//                    } else {
-//                        System.out.println(fact + " dependent p = " + p);
-//                        TetradLogger.getInstance().log("info", fact.toString());
-//                    }
-
-                    return independent;
-                }
+                return gammaApproximation(kx.times(ky).trace(), kx.trace(), ky.trace(),
+                        kx.times(kx).trace(), ky.times(ky).trace(), fact);
             } else {
                 return theorem4(kx, ky, fact);
             }
@@ -432,6 +424,53 @@ public class Kci implements IndependenceTest, ScoreForFact {
         }
     }
 
+    /**
+     * Theorem 4 with the kernel matrices replaced by Nystrom features, kx = fx fx', ky = fy fy'. The traces and
+     * eigenvalues needed are got from the r x r products of the features.
+     */
+    private boolean isIndependentUnconditionalLowRank(Node x, Node y, IndependenceFact fact) {
+        TetradMatrix fx = features(x, null);
+        TetradMatrix fy = features(y, null);
+
+        TetradMatrix gx = fx.transpose().times(fx);
+        TetradMatrix gy = fy.transpose().times(fy);
+        double sta = sumOfSquares(fx.transpose().times(fy));
+
+        if (isApproximate()) {
+            return gammaApproximation(sta, gx.trace(), gy.trace(), sumOfSquares(gx), sumOfSquares(gy), fact);
+        } else {
+            List<Double> evx = new Eigendecomposition(gx).invoke().getTopEigenvalues();
+            List<Double> evy = new Eigendecomposition(gy).invoke().getTopEigenvalues();
+            return theorem4(sta / N, evx, evy, fact);
+        }
+    }
+
+    /**
+     * The gamma approximation to the null distribution in the unconditional case, given tr(kx ky), tr(kx), tr(ky),
+     * tr(kx kx) and tr(ky ky).
+     */
+    private boolean gammaApproximation(double sta, double traceX, double traceY, double traceXX, double traceYY,
+                                       IndependenceFact fact) {
+        double mean_appr = traceX * traceY / N;
+        double var_appr = 2 * traceXX * traceYY / ((double) N * N);
+        double k_appr = mean_appr * mean_appr / var_appr;
+        double theta_appr = var_appr / mean_appr;
+        double p_appr = 1.0 - new GammaDistribution(k_appr, theta_appr).cumulativeProbability(sta);
+        p = p_appr;
+        pValues.put(fact, p);
+
+        if (fastFDR) {
+            final int d1 = 0; // reference
+            final int d2 = fact.getZ().size();
+            final int v = variables.size() - 2;
+
+            double alpha2 = (exp(log(alpha) + logChoose(v, d1) - logChoose(v, d2)));
+            return p > alpha2;
+        } else {
+            return p > alpha;
+        }
+    }
+
     /**
      * KCI independence for the conditional case. Uses Theorem 3 from the paper.
      *
@@ -442,11 +481,15 @@ public class Kci implements IndependenceTest, ScoreForFact {
         TetradMatrix ky = null;
 
         try {
+            if (getRank() > 0) {
+                return isIndependentConditionalLowRank(x, y, z, fact);
+            }
+
             TetradMatrix KXZ = center(kernelMatrix(_data, x, z, getWidthMultiplier()));
             TetradMatrix Ky = center(kernelMatrix(_data, y, null, getWidthMultiplier()));
             TetradMatrix KZ = center(kernelMatrix(_data, null, z, getWidthMultiplier()));
 
-            TetradMatrix Rz = (KZ.plus(I.scalarMult(epsilon)).inverse().scalarMult(epsilon));
+            TetradMatrix Rz = (KZ.plus(getI().scalarMult(epsilon)).inverse().scalarMult(epsilon));
 
             kx = symmetrized(Rz.times(KXZ).times(Rz.transpose()));
             ky = symmetrized(Rz.times(Ky).times(Rz.transpose()));
@@ -460,6 +503,31 @@ public class Kci implements IndependenceTest, ScoreForFact {
         }
     }
 
+    /**
+     * Proposition 5 with the kernel matrices replaced by Nystrom features, kz = fz fz' and so on. By the Woodbury
+     * identity Rz = epsilon (kz + epsilon I)^-1 = I - fz (fz' fz + epsilon I)^-1 fz', so Rz kxz Rz = gx gx' with
+     * gx = Rz fxz, and likewise for y; the eigenvectors of these, times the square roots of their eigenvalues, are
+     * gx and gy times the eigenvectors of the r x r matrices gx' gx and gy' gy.
+     */
+    private boolean isIndependentConditionalLowRank(Node x, Node y, List<Node> z, IndependenceFact fact) {
+        TetradMatrix fxz = features(x, z);
+        TetradMatrix fy = features(y, null);
+        TetradMatrix fz = features(null, z);
+
+        TetradMatrix fzt = fz.transpose();
+        TetradMatrix A = fzt.times(fz).plus(TetradMatrix.identity(fz.columns()).scalarMult(epsilon)).inverse();
+
+        TetradMatrix gx = fxz.minus(fz.times(A.times(fzt.times(fxz))));
+        TetradMatrix gy = fy.minus(fz.times(A.times(fzt.times(fy))));
+
+        double T = (1.0 / N) * sumOfSquares(gx.transpose().times(gy));
+
+        TetradMatrix vdx = gx.times(new Eigendecomposition(gx.transpose().times(gx)).invoke().getV());
+        TetradMatrix vdy = gy.times(new Eigendecomposition(gy.transpose().times(gy)).invoke().getV());
+
+        return proposition5(T, vdx, vdy, fact);
+    }
+
     private boolean theorem4(TetradMatrix kx, TetradMatrix ky, IndependenceFact fact) {
 
         double T = (1.0 / N) * (kx.times(ky).trace());
@@ -471,6 +539,11 @@ public class Kci implements IndependenceTest, ScoreForFact {
         Eigendecomposition eigendecompositiony = new Eigendecomposition(ky).invoke();
         List<Double> evy = eigendecompositiony.getTopEigenvalues();
 
+        return theorem4(T, evx, evy, fact);
+    }
+
+    private boolean theorem4(double T, List<Double> evx, List<Double> evy, IndependenceFact fact) {
+
         // Calculate formula (9).
         int sum = 0;
 
@@ -483,7 +556,7 @@ public class Kci implements IndependenceTest, ScoreForFact {
                 }
             }
 
-            tui /= (double) (N * N);
+            tui /= (double) N * N;
 
             if (tui > T) sum++;
         }
@@ -541,22 +614,14 @@ public class Kci implements IndependenceTest, ScoreForFact {
         TetradMatrix vdx = vx.times(dx);
         TetradMatrix vdy = vy.times(dy);
 
-        final int prod = vx.columns() * vy.columns();
-        TetradMatrix UU = new TetradMatrix(N, prod);
-
-        // stack
-        for (int i = 0; i < vx.columns(); i++) {
-            for (int j = 0; j < vy.columns(); j++) {
-                for (int k = 0; k < N; k++) {
-                    UU.set(k, i * dy.columns() + j, vdx.get(k, i) * vdy.get(k, j));
-                }
-            }
-        }
+        return proposition5(T, vdx, vdy, fact);
+    }
 
-        TetradMatrix uuprod = prod > N ? UU.times(UU.transpose()) : UU.transpose().times(UU);
+    private boolean proposition5(double T, TetradMatrix vdx, TetradMatrix vdy, IndependenceFact fact) {
+        TetradMatrix uuprod = uuProduct(vdx, vdy);
 
         if (isApproximate()) {
-            double sta = kx.times(ky).trace();
+            double sta = N * T;
             double mean_appr = uuprod.trace();
             double var_appr = 2.0 * uuprod.times(uuprod).trace();
             double k_appr = mean_appr * mean_appr / var_appr;
@@ -626,6 +691,57 @@ public class Kci implements IndependenceTest, ScoreForFact {
         }
     }
 
+    /**
+     * For UU the N x (cx cy) matrix with UU(k, i cy + j) = vdx(k, i) vdy(k, j), returns the smaller of UU UU' and
+     * UU' UU, which have the same nonzero eigenvalues, without forming UU. UU UU' is the elementwise product of
+     * vdx vdx' and vdy vdy'; UU' UU is summed one row of UU at a time.
+     */
+    private TetradMatrix uuProduct(TetradMatrix vdx, TetradMatrix vdy) {
+        final int cx = vdx.columns();
+        final int cy = vdy.columns();
+        final int prod = cx * cy;
+
+        if (prod > N) {
+            TetradMatrix gx = vdx.times(vdx.transpose());
+            TetradMatrix gy = vdy.times(vdy.transpose());
+
+            for (int k = 0; k < N; k++) {
+                for (int m = 0; m < N; m++) {
+                    gx.set(k, m, gx.get(k, m) * gy.get(k, m));
+                }
+            }
+
+            return gx;
+        } else {
+            double[][] uuprod = new double[prod][prod];
+            double[] u = new double[prod];
+
+            for (int k = 0; k < N; k++) {
+                for (int i = 0; i < cx; i++) {
+                    for (int j = 0; j < cy; j++) {
+                        u[i * cy + j] = vdx.get(k, i) * vdy.get(k, j);
+                    }
+                }
+
+                for (int a = 0; a < prod; a++) {
+                    if (u[a] == 0) continue;
+
+                    for (int b = 0; b <= a; b++) {
+                        uuprod[a][b] += u[a] * u[b];
+                    }
+                }
+            }
+
+            for (int a = 0; a < prod; a++) {
+                for (int b = 0; b < a; b++) {
+                    uuprod[b][a] = uuprod[a][b];
+                }
+            }
+
+            return new TetradMatrix(uuprod);
+        }
+    }
+
     private List<Integer> series(int size) {
         List<Integer> series = new ArrayList<>();
         for (int i = 0; i < size; i++) series.add(i);
@@ -633,7 +749,164 @@ public class Kci implements IndependenceTest, ScoreForFact {
     }
 
     private TetradMatrix center(TetradMatrix K) {
-        return H.times(K).times(H);
+        return getH().times(K).times(getH());
+    }
+
+    private TetradMatrix getH() {
+        if (H == null) {
+            TetradMatrix Ones = new TetradMatrix(N, 1);
+            for (int j = 0; j < N; j++) Ones.set(j, 0, 1);
+
+            H = getI().minus(Ones.times(Ones.transpose()).scalarMult(1.0 / N));
+        }
+
+        return H;
+    }
+
+    private TetradMatrix getI() {
+        if (I == null) {
+            I = TetradMatrix.identity(N);
+        }
+
+        return I;
+    }
+
+    /**
+     * Centered Nystrom features f for the kernel over x and z, N x r, so that f f' approximates the centered kernel
+     * matrix H K H. For landmark rows m, K is approximated by K_Nm K_mm^-1 K_mN, so f = H K_Nm U S^-1/2 for
+     * K_mm = U S U'.
+     */
+    private TetradMatrix features(Node x, List<Node> z) {
+        List<Integer> _z = new ArrayList<>();
+
+        if (x != null) {
+            _z.add(hash.get(x));
+        }
+
+        if (z != null) {
+            for (Node z2 : z) {
+                _z.add(hash.get(z2));
+            }
+        }
+
+        double width = getWidthMultiplier() * getH(_z);
+
+        if (width == 0) {
+            throw new IllegalArgumentException("Width is zero.");
+        }
+
+        int[] landmarks = getLandmarks();
+        int m = landmarks.length;
+
+        // Squared distances to the landmarks add over the variables, so the kernel to the landmarks is got from
+        // the cached distances for each variable.
+        double[][] knm = new double[N][m];
+
+        for (int c : _z) {
+            double[][] d = getLandmarkDistances(c);
+
+            for (int i = 0; i < N; i++) {
+                for (int l = 0; l < m; l++) {
+                    knm[i][l] += d[i][l];
+                }
+            }
+        }
+
+        for (int i = 0; i < N; i++) {
+            for (int l = 0; l < m; l++) {
+                knm[i][l] = Math.exp(-knm[i][l] / (width * width));
+            }
+        }
+
+        TetradMatrix kmm = new TetradMatrix(m, m);
+
+        for (int a = 0; a < m; a++) {
+            for (int b = 0; b < m; b++) {
+                kmm.set(a, b, knm[landmarks[a]][b]);
+            }
+        }
+
+        EigenDecomposition ed = new EigenDecomposition(kmm.getRealMatrix());
+        double[] s = ed.getRealEigenvalues();
+
+        double max = 0.0;
+        for (double _s : s) max = Math.max(max, _s);
+
+        List<Integer> kept = new ArrayList<>();
+
+        for (int i = 0; i < s.length; i++) {
+            if (s[i] > max * 1e-10) kept.add(i);
+        }
+
+        TetradMatrix projection = new TetradMatrix(m, kept.size());
+
+        for (int i = 0; i < kept.size(); i++) {
+            int k = kept.get(i);
+            projection.assignColumn(i, new TetradVector(ed.getEigenvector(k).mapDivide(Math.sqrt(s[k])).toArray()));
+        }
+
+        TetradMatrix f = new TetradMatrix(knm).times(projection);
+
+        for (int j = 0; j < f.columns(); j++) {
+            double mean = 0.0;
+            for (int i = 0; i < N; i++) mean += f.get(i, j);
+            mean /= N;
+            for (int i = 0; i < N; i++) f.set(i, j, f.get(i, j) - mean);
+        }
+
+        return f;
+    }
+
+    // Rows used as landmarks, picked at random (but reproducibly) without replacement.
+    private int[] getLandmarks() {
+        if (landmarks == null) {
+            List<Integer> rows = series(N);
+            Collections.shuffle(rows, new Random(193924L));
+
+            landmarks = new int[Math.min(getRank(), N)];
+            for (int i = 0; i < landmarks.length; i++) landmarks[i] = rows.get(i);
+        }
+
+        return landmarks;
+    }
+
+    // Squared half-differences from each row to each landmark for the given column, as in distance(), cached.
+    private double[][] getLandmarkDistances(int c) {
+        if (landmarkDistances == null) {
+            landmarkDistances = new double[_data.length][][];
+        }
+
+        if (landmarkDistances[c] == null) {
+            int[] landmarks = getLandmarks();
+            double[] col = _data[c];
+            double[][] d = new double[N][landmarks.length];
+
+            for (int i = 0; i < N; i++) {
+                for (int l = 0; l < landmarks.length; l++) {
+                    double diff = (col[i] - col[landmarks[l]]) / 2;
+
+                    if (!Double.isNaN(diff)) {
+                        d[i][l] = diff * diff;
+                    }
+                }
+            }
+
+            landmarkDistances[c] = d;
+        }
+
+        return landmarkDistances[c];
+    }
+
+    private double sumOfSquares(TetradMatrix m) {
+        double sum = 0.0;
+
+        for (int i = 0; i < m.rows(); i++) {
+            for (int j = 0; j < m.columns(); j++) {
+                sum += m.get(i, j) * m.get(i, j);
+            }
+        }
+
+        return sum;
     }
 
     private double getChisqSample() {
@@ -21,48 +21,399 @@
 
 package edu.cmu.tetrad.search;
 
-import org.apache.commons.collections4.map.MultiKeyMap;
-
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Stores a map from (variable, parents) to score.
+ * <p>
+ * Keys are never boxed. Each (variable, parent set) pair is reduced to a 128-bit fingerprint made of two
+ * independent order-insensitive 64-bit hashes, so parents may be passed in any order and no sorting or
+ * copying is done on lookup. The fingerprints are kept in primitive open-addressing (linear probing) tables,
+ * split into segments guarded by stamped locks, so that the cache may be shared by the worker threads of
+ * a search; reads are optimistic and do not block one another.
+ * <p>
+ * A memory cap may be given. Once a segment has grown to its share of the cap, further insertions evict
+ * entries using the CLOCK (second chance) policy. Counts of hits, misses and evictions are kept.
  *
  * @author Joseph Ramsey
  */
 public class LocalScoreCache {
-    private MultiKeyMap map;
 
+    // Bytes taken per slot: two long keys, a double value and a reference flag.
+    private static final int BYTES_PER_SLOT = 8 + 8 + 8 + 1;
+
+    // The initial number of slots in each segment.
+    private static final int INITIAL_SEGMENT_CAPACITY = 16;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs a cache with no bound on its size.
+     */
     public LocalScoreCache() {
-        map = new MultiKeyMap();
+        this(Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a cache that will use at most about <code>maxBytes</code> bytes for its tables.
+     */
+    public LocalScoreCache(long maxBytes) {
+        this(maxBytes, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * Constructs a cache that will use at most about <code>maxBytes</code> bytes for its tables, split
+     * into at least <code>concurrencyLevel</code> independently locked segments.
+     */
+    public LocalScoreCache(long maxBytes, int concurrencyLevel) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Max bytes must be positive: " + maxBytes);
+        }
+
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("Concurrency level must be positive: " + concurrencyLevel);
+        }
+
+        int numSegments = Integer.highestOneBit(Math.min(concurrencyLevel, 1 << 16));
+        if (numSegments < concurrencyLevel && numSegments < (1 << 16)) numSegments <<= 1;
+
+        long slotsPerSegment = maxBytes / BYTES_PER_SLOT / numSegments;
+        int maxCapacity = (int) Long.highestOneBit(Math.max(INITIAL_SEGMENT_CAPACITY,
+                Math.min(slotsPerSegment, 1 << 30)));
+
+        this.segments = new Segment[numSegments];
+        this.segmentShift = 64 - Integer.numberOfTrailingZeros(numSegments);
+
+        for (int i = 0; i < numSegments; i++) {
+            segments[i] = new Segment(Math.min(INITIAL_SEGMENT_CAPACITY, maxCapacity), maxCapacity);
+        }
     }
 
+    /**
+     * Records the score for the given variable and parents. NaN scores are not recorded.
+     */
     public void add(int variable, int[] parents, double score) {
-        Set<Integer> _parents = new HashSet<>(parents.length);
+        if (Double.isNaN(score)) return;
+
+        long key1 = key1(variable, parents);
+        long key2 = key2(variable, parents);
+        segmentFor(key1).put(key1, key2, score);
+    }
+
+    /**
+     * @return the score recorded for the given variable and parents, or NaN if there is none.
+     */
+    public double get(int variable, int[] parents) {
+        long key1 = key1(variable, parents);
+        long key2 = key2(variable, parents);
+        double score = segmentFor(key1).get(key1, key2);
+
+        if (Double.isNaN(score)) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+
+        return score;
+    }
+
+    /**
+     * Removes all entries. The hit, miss and eviction counts are kept.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return the number of entries currently stored.
+     */
+    public long size() {
+        long size = 0;
+
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+
+        return size;
+    }
+
+    /**
+     * @return the number of lookups that found a score.
+     */
+    public long getNumHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that did not find a score.
+     */
+    public long getNumMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of entries dropped to stay within the memory cap.
+     */
+    public long getNumEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the proportion of lookups that found a score, or NaN if there have been none.
+     */
+    public double getHitRate() {
+        long hits = getNumHits();
+        long total = hits + getNumMisses();
+        return total == 0 ? Double.NaN : hits / (double) total;
+    }
+
+    public String toString() {
+        return "LocalScoreCache size = " + size() + " hits = " + getNumHits() + " misses = " + getNumMisses()
+                + " evictions = " + getNumEvictions();
+    }
+
+    //==============================PRIVATE METHODS=============================//
+
+    private Segment segmentFor(long key1) {
+        return segments.length == 1 ? segments[0] : segments[(int) (key1 >>> segmentShift)];
+    }
+
+    // The sum of mixed parent hashes is insensitive to the order of the parents.
+    private static long key1(int variable, int[] parents) {
+        long h = 0;
 
         for (int parent : parents) {
-            _parents.add(parent);
+            h += mix(parent + 0x9E3779B97F4A7C15L);
         }
 
-        map.put(variable, _parents, score);
+        long key = mix(h ^ mix(((long) variable << 32) | parents.length));
+
+        // Zero marks an empty slot.
+        return key == 0 ? 1 : key;
     }
 
-    public double get(int variable, int[] parents) {
-        Set<Integer> _parents = new HashSet<>(parents.length);
+    private static long key2(int variable, int[] parents) {
+        long h = 0;
 
         for (int parent : parents) {
-            _parents.add(parent);
+            h += mix(parent * 0xC2B2AE3D27D4EB4FL + 0x165667B19E3779F9L);
         }
 
-        Double _score = (Double) map.get(variable, _parents);
-        return _score == null ? Double.NaN : (_score);
+        return mix(h + mix(variable * 0xD6E8FEB86659FD93L + parents.length));
     }
 
-    public void clear() {
-        map.clear();
+    // The SplitMix64 finalizer.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
     }
-}
 
+    // The arrays of one segment, swapped as a unit when the segment grows.
+    private static final class Table {
+        final long[] keys1;
+        final long[] keys2;
+        final double[] values;
+        final boolean[] referenced;
+        final int mask;
+
+        Table(int capacity) {
+            keys1 = new long[capacity];
+            keys2 = new long[capacity];
+            values = new double[capacity];
+            referenced = new boolean[capacity];
+            mask = capacity - 1;
+        }
+    }
+
+    private final class Segment {
+        private final StampedLock lock = new StampedLock();
+        private final int initialCapacity;
+        private final int maxCapacity;
+        private volatile Table table;
+        private int size = 0;
+        private int hand = 0;
+
+        Segment(int initialCapacity, int maxCapacity) {
+            this.initialCapacity = initialCapacity;
+            this.maxCapacity = maxCapacity;
+            this.table = new Table(initialCapacity);
+        }
+
+        double get(long key1, long key2) {
+            long stamp = lock.tryOptimisticRead();
+            Table t = table;
+            int slot = find(t, key1, key2);
+            double value = slot == -1 ? Double.NaN : t.values[slot];
+
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+
+                try {
+                    t = table;
+                    slot = find(t, key1, key2);
+                    value = slot == -1 ? Double.NaN : t.values[slot];
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+
+            // A stale flag only affects which entry is evicted next, so it is set without the lock.
+            if (slot != -1) t.referenced[slot] = true;
+
+            return value;
+        }
+
+        void put(long key1, long key2, double value) {
+            long stamp = lock.writeLock();
+
+            try {
+                Table t = table;
+                int slot = find(t, key1, key2);
+
+                if (slot != -1) {
+                    t.values[slot] = value;
+                    t.referenced[slot] = true;
+                    return;
+                }
+
+                if (size >= threshold(t)) {
+                    if (t.keys1.length < maxCapacity) {
+                        t = grow(t);
+                    } else {
+                        evict(t);
+                    }
+                }
+
+                int i = (int) key1 & t.mask;
+                while (t.keys1[i] != 0) i = (i + 1) & t.mask;
+
+                t.keys2[i] = key2;
+                t.values[i] = value;
+                t.referenced[i] = true;
+                t.keys1[i] = key1;
+                size++;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void clear() {
+            long stamp = lock.writeLock();
+
+            try {
+                table = new Table(initialCapacity);
+                size = 0;
+                hand = 0;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        // Probes are bounded by the table length so that an optimistic read racing a writer terminates.
+        private int find(Table t, long key1, long key2) {
+            int i = (int) key1 & t.mask;
+
+            for (int n = 0; n <= t.mask; n++) {
+                long k = t.keys1[i];
+                if (k == 0) return -1;
+                if (k == key1 && t.keys2[i] == key2) return i;
+                i = (i + 1) & t.mask;
+            }
+
+            return -1;
+        }
+
+        private int threshold(Table t) {
+            return t.keys1.length - (t.keys1.length >>> 2);
+        }
+
+        private Table grow(Table t) {
+            Table u = new Table(t.keys1.length << 1);
+
+            for (int j = 0; j < t.keys1.length; j++) {
+                if (t.keys1[j] == 0) continue;
+
+                int i = (int) t.keys1[j] & u.mask;
+                while (u.keys1[i] != 0) i = (i + 1) & u.mask;
+
+                u.keys1[i] = t.keys1[j];
+                u.keys2[i] = t.keys2[j];
+                u.values[i] = t.values[j];
+                u.referenced[i] = t.referenced[j];
+            }
+
+            hand = 0;
+            table = u;
+            return u;
+        }
 
+        // Sweeps the clock hand, clearing reference flags, until an unreferenced entry is found.
+        private void evict(Table t) {
+            while (true) {
+                int slot = hand;
+                hand = (hand + 1) & t.mask;
 
+                if (t.keys1[slot] == 0) continue;
+
+                if (t.referenced[slot]) {
+                    t.referenced[slot] = false;
+                } else {
+                    remove(t, slot);
+                    size--;
+                    evictions.increment();
+                    return;
+                }
+            }
+        }
+
+        // Backward-shift deletion, so that no tombstones are needed.
+        private void remove(Table t, int slot) {
+            int i = slot;
+
+            while (true) {
+                int j = i;
+
+                while (true) {
+                    j = (j + 1) & t.mask;
+
+                    if (t.keys1[j] == 0) {
+                        t.keys1[i] = 0;
+                        t.referenced[i] = false;
+                        return;
+                    }
+
+                    int home = (int) t.keys1[j] & t.mask;
+
+                    if (i <= j ? (i >= home || home > j) : (i >= home && home > j)) {
+                        break;
+                    }
+                }
+
+                t.keys1[i] = t.keys1[j];
+                t.keys2[i] = t.keys2[j];
+                t.values[i] = t.values[j];
+                t.referenced[i] = t.referenced[j];
+                i = j;
+            }
+        }
+    }
+}
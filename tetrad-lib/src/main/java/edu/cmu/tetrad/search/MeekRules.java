@@ -40,6 +40,9 @@ import java.util.*;
  */
 public class MeekRules implements ImpliedOrientation {
 
+    // Graphs with at least this many edges are oriented by MeekRulesParallel, unless unforced edges are undirected.
+    private static final int MIN_PARALLEL_EDGES = 1000;
+
     private IKnowledge knowledge;
 
     //True if cycles are to be aggressively prevented. May be expensive for large graphs (but also useful for large
@@ -89,6 +92,15 @@ public class MeekRules implements ImpliedOrientation {
     }
 
     public void orientImplied(Graph graph, List<Node> nodes) {
+        if (!undirectUnforcedEdges && graph.getNumEdges() >= MIN_PARALLEL_EDGES) {
+            MeekRulesParallel rules = new MeekRulesParallel();
+            rules.setKnowledge(knowledge);
+            rules.setUseRule4(useRule4);
+            rules.orientImplied(graph, nodes);
+            this.visited.addAll(rules.getVisited());
+            return;
+        }
+
         this.nodes = nodes;
         this.visited.addAll(nodes);
 
@@ -0,0 +1,576 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.IKnowledge;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.util.SearchExecutor;
+import edu.cmu.tetrad.util.TetradLogger;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * Applies Meek's orientation rules as MeekRules does, for large graphs. The graph is copied once into arrays indexed by
+ * node, the rules are run on the copy, and the edges they orient are written back to the graph at the end. Since the
+ * rules only look at the neighbors of a node, connected components of the graph are oriented independently, in
+ * parallel on the search executor. As in MeekRules, a node is revisited only when an edge into it is oriented. Each
+ * edge oriented is logged, with the rule that oriented it, as it is written back.
+ * <p>
+ * For the pattern of a DAG with added orientations the rules have a unique result, which is what MeekRules finds.
+ * Where rules disagree, the one applied first wins, and the order of application may differ from MeekRules.
+ * Unforced edges are not undirected; use MeekRules for that.
+ *
+ * @author agent
+ */
+public final class MeekRulesParallel implements ImpliedOrientation {
+
+    // Components with fewer edges than this in all are oriented in the calling thread.
+    private static final int MIN_PARALLEL_EDGES = 1000;
+
+    // Endpoints, as marks at the near end of an edge.
+    private static final byte TAIL = 0;
+    private static final byte ARROW = 1;
+    private static final byte OTHER = 2;
+
+    private IKnowledge knowledge;
+
+    // As in MeekRules, rule 4 is off unless MeekRules turns it on.
+    private boolean useRule4 = false;
+
+    // The nodes looked at or changed in the last call.
+    private Set<Node> visited = new HashSet<>();
+
+    private Node[] nodes;
+
+    // The neighbors of each node, in ascending order.
+    private int[][] adj;
+
+    // marks[i][k] is the endpoint at i of the edge from i to adj[i][k].
+    private byte[][] marks;
+
+    // Ambiguous triples a-b-c, with a < c, as keys.
+    private Set<Long> ambiguous;
+
+    //======================== Public Methods ========================//
+
+    @Override
+    public void orientImplied(Graph graph) {
+        orientImplied(graph, graph.getNodes());
+    }
+
+    /**
+     * Orients edges implied by the rules, starting with the rules about the given nodes.
+     */
+    public void orientImplied(Graph graph, List<Node> start) {
+        TetradLogger.getInstance().log("impliedOrientations", "Starting Orientation Step D.");
+
+        snapshot(graph);
+
+        Map<Node, Integer> index = new HashMap<>();
+        for (int i = 0; i < nodes.length; i++) index.put(nodes[i], i);
+
+        int[] component = components();
+        Map<Integer, List<Integer>> starts = new LinkedHashMap<>();
+
+        for (Node node : start) {
+            Integer i = index.get(node);
+            if (i == null) continue;
+            starts.computeIfAbsent(component[i], c -> new ArrayList<>()).add(i);
+        }
+
+        List<List<Integer>> work = new ArrayList<>(starts.values());
+        List<Directed> results;
+
+        Thread caller = Thread.currentThread();
+
+        if (graph.getNumEdges() >= MIN_PARALLEL_EDGES && work.size() > 1) {
+            List<Callable<Directed>> tasks = new ArrayList<>();
+
+            for (List<Integer> _start : work) {
+                tasks.add(() -> orient(_start, caller));
+            }
+
+            results = SearchExecutor.getInstance().invokeAll("MeekRulesParallel", tasks);
+        } else {
+            results = new ArrayList<>();
+
+            for (List<Integer> _start : work) {
+                results.add(orient(_start, caller));
+            }
+        }
+
+        visited = new HashSet<>(start);
+
+        TetradLogger logger = TetradLogger.getInstance();
+        boolean log = logger.isLogging() && logger.isEventActive("impliedOrientations");
+
+        for (Directed directed : results) {
+            directed.writeTo(graph, log);
+        }
+
+        TetradLogger.getInstance().log("impliedOrientations", "Finishing Orientation Step D.");
+    }
+
+    @Override
+    public void setKnowledge(IKnowledge knowledge) {
+        this.knowledge = knowledge;
+    }
+
+    /**
+     * @return the nodes given to orientImplied, with the endpoints of the edges it oriented.
+     */
+    public Set<Node> getVisited() {
+        return visited;
+    }
+
+    //============================== Package Methods ===================================//
+
+    // For MeekRules, which decides this for itself.
+    void setUseRule4(boolean useRule4) {
+        this.useRule4 = useRule4;
+    }
+
+    //============================== Private Methods ===================================//
+
+    private void snapshot(Graph graph) {
+        List<Node> _nodes = graph.getNodes();
+        nodes = _nodes.toArray(new Node[0]);
+
+        Map<Node, Integer> index = new HashMap<>();
+        for (int i = 0; i < nodes.length; i++) index.put(nodes[i], i);
+
+        List<Edge> edges = new ArrayList<>(graph.getEdges());
+        int[] degree = new int[nodes.length];
+
+        for (Edge edge : edges) {
+            degree[index.get(edge.getNode1())]++;
+            degree[index.get(edge.getNode2())]++;
+        }
+
+        // Neighbors as (neighbor, edge) pairs, to be sorted by neighbor.
+        long[][] incident = new long[nodes.length][];
+        for (int i = 0; i < nodes.length; i++) incident[i] = new long[degree[i]];
+        Arrays.fill(degree, 0);
+
+        for (int e = 0; e < edges.size(); e++) {
+            int i = index.get(edges.get(e).getNode1());
+            int j = index.get(edges.get(e).getNode2());
+            incident[i][degree[i]++] = ((long) j << 32) | e;
+            incident[j][degree[j]++] = ((long) i << 32) | e;
+        }
+
+        adj = new int[nodes.length][];
+        marks = new byte[nodes.length][];
+
+        for (int i = 0; i < nodes.length; i++) {
+            long[] _incident = incident[i];
+            Arrays.sort(_incident);
+
+            int[] _adj = new int[_incident.length];
+            byte[] _marks = new byte[_incident.length];
+            int n = 0;
+
+            for (long pair : _incident) {
+                int j = (int) (pair >>> 32);
+                Edge edge = edges.get((int) pair);
+
+                if (n > 0 && _adj[n - 1] == j) {
+
+                    // More than one edge between the same nodes; the rules leave these alone.
+                    _marks[n - 1] = OTHER;
+                    continue;
+                }
+
+                _adj[n] = j;
+                _marks[n] = mark(edge.getProximalEndpoint(nodes[i]));
+                n++;
+            }
+
+            adj[i] = Arrays.copyOf(_adj, n);
+            marks[i] = Arrays.copyOf(_marks, n);
+        }
+
+        ambiguous = new HashSet<>();
+
+        for (Triple triple : graph.getAmbiguousTriples()) {
+            Integer x = index.get(triple.getX());
+            Integer y = index.get(triple.getY());
+            Integer z = index.get(triple.getZ());
+            if (x == null || y == null || z == null) continue;
+            ambiguous.add(key(x, y, z));
+        }
+    }
+
+    private static byte mark(Endpoint endpoint) {
+        if (endpoint == Endpoint.TAIL) return TAIL;
+        if (endpoint == Endpoint.ARROW) return ARROW;
+        return OTHER;
+    }
+
+    // The connected component of each node, numbered by its first node.
+    private int[] components() {
+        int[] component = new int[nodes.length];
+        Arrays.fill(component, -1);
+        int[] stack = new int[nodes.length];
+
+        for (int s = 0; s < nodes.length; s++) {
+            if (component[s] != -1) continue;
+
+            int top = 0;
+            stack[top++] = s;
+            component[s] = s;
+
+            while (top > 0) {
+                int i = stack[--top];
+
+                for (int j : adj[i]) {
+                    if (component[j] == -1) {
+                        component[j] = s;
+                        stack[top++] = j;
+                    }
+                }
+            }
+        }
+
+        return component;
+    }
+
+    // Runs the rules on one component, from the given nodes. Only this component's arrays are touched.
+    private Directed orient(List<Integer> start, Thread caller) {
+        Directed directed = new Directed();
+
+        for (int node : start) {
+            if (caller.isInterrupted() || SearchExecutor.isCanceled()) return directed;
+            runMeekRules(node, directed);
+        }
+
+        while (directed.hasNext()) {
+            if (caller.isInterrupted() || SearchExecutor.isCanceled()) break;
+            runMeekRules(directed.next(), directed);
+        }
+
+        return directed;
+    }
+
+    private void runMeekRules(int node, Directed directed) {
+        meekR1(node, directed);
+        meekR2(node, directed);
+        meekR3(node, directed);
+        meekR4(node, directed);
+    }
+
+    /**
+     * Meek's rule R1: if a-->b, b---c, and a not adj to c, then b-->c
+     */
+    private void meekR1(int b, Directed directed) {
+        int[] adjacent = adj[b];
+
+        for (int i = 0; i < adjacent.length; i++) {
+            for (int j = i + 1; j < adjacent.length; j++) {
+                r1Helper(adjacent[i], b, adjacent[j], directed);
+                r1Helper(adjacent[j], b, adjacent[i], directed);
+            }
+        }
+    }
+
+    private void r1Helper(int a, int b, int c, Directed directed) {
+        if (!isAdjacent(a, c) && isDirected(a, b) && isUndirected(b, c)) {
+            if (!isUnshieldedNoncollider(a, b, c)) {
+                return;
+            }
+
+            if (isArrowpointAllowed(b, c)) {
+                direct(b, c, 1, directed);
+            }
+        }
+    }
+
+    /**
+     * If a-->b-->c, a--c, then a-->c.
+     */
+    private void meekR2(int c, Directed directed) {
+        int[] adjacent = adj[c];
+
+        for (int i = 0; i < adjacent.length; i++) {
+            for (int j = i + 1; j < adjacent.length; j++) {
+                int a = adjacent[i];
+                int b = adjacent[j];
+
+                r2Helper(a, b, c, directed);
+                r2Helper(b, a, c, directed);
+                r2Helper(a, c, b, directed);
+                r2Helper(c, a, b, directed);
+            }
+        }
+    }
+
+    private void r2Helper(int a, int b, int c, Directed directed) {
+        if (isDirected(a, b) && isDirected(b, c) && isUndirected(a, c)) {
+            if (isArrowpointAllowed(a, c)) {
+                direct(a, c, 2, directed);
+            }
+        }
+    }
+
+    /**
+     * Meek's rule R3. If a--b, a--c, a--d, c-->b, d-->b, then orient a-->b.
+     */
+    private void meekR3(int a, Directed directed) {
+        int[] adjacent = adj[a];
+
+        if (adjacent.length < 3) {
+            return;
+        }
+
+        for (int d : adjacent) {
+            if (!isUndirected(a, d)) continue;
+
+            for (int i = 0; i < adjacent.length; i++) {
+                if (adjacent[i] == d) continue;
+
+                for (int j = i + 1; j < adjacent.length; j++) {
+                    if (adjacent[j] == d) continue;
+
+                    int b = adjacent[i];
+                    int c = adjacent[j];
+
+                    if (isKite(a, d, b, c)) {
+                        if (isArrowpointAllowed(d, a)) {
+                            if (!isUnshieldedNoncollider(c, d, b)) {
+                                continue;
+                            }
+
+                            direct(d, a, 3, directed);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean isKite(int a, int d, int b, int c) {
+        return isUndirected(d, c) && isUndirected(d, b) && isDirected(b, a) && isDirected(c, a)
+                && isUndirected(d, a);
+    }
+
+    // As in MeekRules.
+    private void meekR4(int a, Directed directed) {
+        if (!useRule4) {
+            return;
+        }
+
+        int[] adjacent = adj[a];
+
+        if (adjacent.length < 3) {
+            return;
+        }
+
+        for (int c : adjacent) {
+            for (int i = 0; i < adjacent.length; i++) {
+                if (adjacent[i] == c) continue;
+
+                for (int j = i + 1; j < adjacent.length; j++) {
+                    if (adjacent[j] == c) continue;
+
+                    int b = adjacent[i];
+                    int d = adjacent[j];
+
+                    if (isAdjacent(b, c) && isAdjacent(d, c)) continue;
+
+                    if (r4Helper(a, b, c, d, directed)) continue;
+                    r4Helper(a, d, c, b, directed);
+                }
+            }
+        }
+    }
+
+    // If b-->c-->d, a---d, and b-a-d is an unshielded noncollider, orients c-->d. Returns true if the rest of the
+    // pair should be skipped.
+    private boolean r4Helper(int a, int b, int c, int d, Directed directed) {
+        if (isDirected(b, c) && isDirected(c, d) && isUndirected(a, d)) {
+            if (isArrowpointAllowed(a, c)) {
+                if (!isUnshieldedNoncollider(b, a, d)) {
+                    return true;
+                }
+
+                if (isArrowpointAllowed(c, d)) {
+                    direct(c, d, 4, directed);
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    // Orients a-->c by the given rule.
+    private void direct(int a, int c, int rule, Directed directed) {
+        int k = indexOf(a, c);
+
+        // Multiple edges are left alone.
+        if (marks[a][k] == OTHER && marks[c][indexOf(c, a)] == OTHER) {
+            return;
+        }
+
+        if (knowledge != null) {
+            synchronized (knowledge) {
+                if (knowledge.isForbidden(nodes[a].getName(), nodes[c].getName())) {
+                    return;
+                }
+            }
+        }
+
+        marks[a][k] = TAIL;
+        marks[c][indexOf(c, a)] = ARROW;
+
+        directed.add(a, c, rule);
+    }
+
+    private boolean isUnshieldedNoncollider(int a, int b, int c) {
+        if (!isAdjacent(a, b)) {
+            return false;
+        }
+
+        if (!isAdjacent(c, b)) {
+            return false;
+        }
+
+        if (isAdjacent(a, c)) {
+            return false;
+        }
+
+        if (!ambiguous.isEmpty() && ambiguous.contains(key(a, b, c))) {
+            return false;
+        }
+
+        return !(mark(b, a) == ARROW && mark(b, c) == ARROW);
+    }
+
+    private boolean isArrowpointAllowed(int from, int to) {
+        if (knowledge == null) return true;
+
+        synchronized (knowledge) {
+            return !knowledge.isRequired(nodes[to].toString(), nodes[from].toString()) &&
+                    !knowledge.isForbidden(nodes[from].toString(), nodes[to].toString());
+        }
+    }
+
+    private boolean isAdjacent(int a, int b) {
+        return indexOf(a, b) >= 0;
+    }
+
+    // True if a-->b.
+    private boolean isDirected(int a, int b) {
+        int k = indexOf(a, b);
+        return k >= 0 && marks[a][k] == TAIL && mark(b, a) == ARROW;
+    }
+
+    // True if a---b.
+    private boolean isUndirected(int a, int b) {
+        int k = indexOf(a, b);
+        return k >= 0 && marks[a][k] == TAIL && mark(b, a) == TAIL;
+    }
+
+    // The endpoint at a of the edge from a to b, which are adjacent.
+    private byte mark(int a, int b) {
+        return marks[a][indexOf(a, b)];
+    }
+
+    private int indexOf(int a, int b) {
+        return Arrays.binarySearch(adj[a], b);
+    }
+
+    private long key(int a, int b, int c) {
+        long n = nodes.length;
+        return (Math.min(a, c) * n + b) * n + Math.max(a, c);
+    }
+
+    // The edges a component's rules have oriented, in order, by rule, with the stack of nodes still to be visited.
+    private final class Directed {
+        private int[] from = new int[16];
+        private int[] to = new int[16];
+        private byte[] rules = new byte[16];
+        private int size = 0;
+
+        private int[] stack = new int[16];
+        private int top = 0;
+
+        void add(int a, int c, int rule) {
+            if (size == from.length) {
+                from = Arrays.copyOf(from, 2 * size);
+                to = Arrays.copyOf(to, 2 * size);
+                rules = Arrays.copyOf(rules, 2 * size);
+            }
+
+            from[size] = a;
+            to[size] = c;
+            rules[size] = (byte) rule;
+            size++;
+
+            if (top == stack.length) stack = Arrays.copyOf(stack, 2 * top);
+            stack[top++] = c;
+        }
+
+        boolean hasNext() {
+            return top > 0;
+        }
+
+        int next() {
+            return stack[--top];
+        }
+
+        // Each edge is written as it ended up, once, and logged as in MeekRules if asked.
+        void writeTo(Graph graph, boolean log) {
+            Set<Long> written = new HashSet<>();
+
+            for (int e = 0; e < size; e++) {
+                int a = from[e];
+                int c = to[e];
+
+                visited.add(nodes[a]);
+                visited.add(nodes[c]);
+
+                if (!written.add(Math.min(a, c) * (long) nodes.length + Math.max(a, c))) continue;
+
+                if (!isDirected(a, c)) {
+                    int t = a;
+                    a = c;
+                    c = t;
+                }
+
+                Edge before = graph.getEdge(nodes[a], nodes[c]);
+                Edge after = Edges.directedEdge(nodes[a], nodes[c]);
+
+                if (!after.equals(before)) {
+                    graph.removeEdge(before);
+                    graph.addEdge(after);
+                }
+
+                if (log) {
+                    TetradLogger.getInstance().log("impliedOrientations",
+                            SearchLogUtils.edgeOrientedMsg("Meek R" + rules[e], after));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,308 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.util.TetradMatrix;
+import org.apache.commons.math3.linear.SingularMatrixException;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Calculates partial correlations from a correlation (or covariance) matrix by Cholesky factorization of the
+ * conditioning set. The factor of each conditioning set Z is cached, together with the solves against it of the
+ * variables most recently tested with it, so that the (x, y) pairs tested against the same Z at a given depth of
+ * an adjacency search share one factorization.
+ * <p>
+ * Caches are kept per thread, so no locking is needed and any number of threads may call in at once. Each
+ * thread keeps at most a fixed number of factors, dropping the least recently used. A thread's caches are held
+ * weakly by engine, so an engine that is no longer used may be collected along with them, even though the threads
+ * it ran on--the search executor's, say--live on.
+ *
+ * @author agent
+ */
+public class PartialCorrelationEngine {
+
+    // The number of conditioning sets whose factors are kept per thread.
+    private static final int DEFAULT_CACHE_SIZE = 1024;
+
+    // The number of solved variables kept for each conditioning set.
+    private static final int SOLVES_PER_FACTOR = 4;
+
+    // The matrix, row-major, and its dimension.
+    private final double[] cor;
+    private final int dim;
+
+    private final int cacheSize;
+
+    // Each thread's caches, by engine.
+    private static final ThreadLocal<Map<PartialCorrelationEngine, State>> states =
+            ThreadLocal.withInitial(WeakHashMap::new);
+
+    /**
+     * Constructs an engine over the given correlation or covariance matrix, which is copied.
+     */
+    public PartialCorrelationEngine(TetradMatrix cor) {
+        this(cor, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Constructs an engine over the given correlation or covariance matrix, which is copied, keeping the factors
+     * of at most <code>cacheSize</code> conditioning sets per thread.
+     */
+    public PartialCorrelationEngine(TetradMatrix cor, int cacheSize) {
+        if (cor.rows() != cor.columns()) {
+            throw new IllegalArgumentException("Expecting a square matrix.");
+        }
+
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Cache size must be non-negative: " + cacheSize);
+        }
+
+        this.dim = cor.rows();
+        this.cor = new double[dim * dim];
+        this.cacheSize = cacheSize;
+
+        for (int i = 0; i < dim; i++) {
+            for (int j = 0; j < dim; j++) {
+                this.cor[i * dim + j] = cor.get(i, j);
+            }
+        }
+    }
+
+    /**
+     * @return the partial correlation of x and y given z, where x, y and the members of z are indices into the
+     * matrix. The order of z does not matter.
+     * @throws SingularMatrixException if the covariance of x, y and z is singular.
+     */
+    public double partialCorrelation(int x, int y, int[] z) throws SingularMatrixException {
+        return partialCorrelation(x, y, z, z.length);
+    }
+
+    /**
+     * As <code>partialCorrelation(x, y, z)</code>, conditioning on the first k members of z only.
+     */
+    public double partialCorrelation(int x, int y, int[] z, int k) throws SingularMatrixException {
+        if (k == 0) {
+            return cor[x * dim + y] / Math.sqrt(cor[x * dim + x] * cor[y * dim + y]);
+        }
+
+        Factor factor = state().factor(cor, dim, z, k);
+
+        double[] a = factor.solve(cor, dim, x);
+        double[] b = factor.solve(cor, dim, y);
+
+        double sxy = cor[x * dim + y];
+        double sxx = cor[x * dim + x];
+        double syy = cor[y * dim + y];
+
+        for (int i = 0; i < k; i++) {
+            sxy -= a[i] * b[i];
+            sxx -= a[i] * a[i];
+            syy -= b[i] * b[i];
+        }
+
+        if (!(sxx > 0) || !(syy > 0)) {
+            throw new SingularMatrixException();
+        }
+
+        return sxy / Math.sqrt(sxx * syy);
+    }
+
+    /**
+     * @return the dimension of the matrix.
+     */
+    public int getDimension() {
+        return dim;
+    }
+
+    //==============================PRIVATE METHODS=============================//
+
+    // This thread's cache for this engine.
+    private State state() {
+        Map<PartialCorrelationEngine, State> _states = states.get();
+        State state = _states.get(this);
+
+        if (state == null) {
+            state = new State(cacheSize);
+            _states.put(this, state);
+        }
+
+        return state;
+    }
+
+    //==============================PRIVATE CLASSES=============================//
+
+    // A conditioning set, sorted. The probe instance is reused for lookups so that hits do not allocate.
+    private static final class Key {
+        int[] z;
+        int k;
+        int hash;
+
+        Key(int[] z, int k) {
+            this.z = z;
+            this.k = k;
+            rehash();
+        }
+
+        void rehash() {
+            int h = 1;
+            for (int i = 0; i < k; i++) h = 31 * h + z[i];
+            this.hash = h;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            if (other.k != k || other.hash != hash) return false;
+
+            for (int i = 0; i < k; i++) {
+                if (z[i] != other.z[i]) return false;
+            }
+
+            return true;
+        }
+    }
+
+    // The lower Cholesky factor of the matrix restricted to a conditioning set, with the most recent solves. The
+    // matrix is passed in, so that nothing cached refers back to the engine.
+    private static final class Factor {
+        final int[] z;
+        final int k;
+        final double[] l;
+        final int[] solvedVars = new int[SOLVES_PER_FACTOR];
+        final double[][] solved = new double[SOLVES_PER_FACTOR][];
+        int next = 0;
+        int lastUsed = -1;
+
+        Factor(double[] cor, int dim, int[] z, int k) throws SingularMatrixException {
+            this.z = z;
+            this.k = k;
+            this.l = new double[k * k];
+            Arrays.fill(solvedVars, -1);
+
+            for (int a = 0; a < k; a++) {
+                final int rowA = z[a] * dim;
+
+                for (int b = 0; b <= a; b++) {
+                    double sum = cor[rowA + z[b]];
+
+                    for (int c = 0; c < b; c++) {
+                        sum -= l[a * k + c] * l[b * k + c];
+                    }
+
+                    if (a == b) {
+                        if (!(sum > 0)) throw new SingularMatrixException();
+                        l[a * k + a] = Math.sqrt(sum);
+                    } else {
+                        l[a * k + b] = sum / l[b * k + b];
+                    }
+                }
+            }
+        }
+
+        // Returns L^-1 cov(z, v). The vector returned by the previous call is not overwritten.
+        double[] solve(double[] cor, int dim, int v) {
+            for (int i = 0; i < SOLVES_PER_FACTOR; i++) {
+                if (solvedVars[i] == v) {
+                    lastUsed = i;
+                    return solved[i];
+                }
+            }
+
+            if (next == lastUsed) next = (next + 1) % SOLVES_PER_FACTOR;
+
+            double[] w = solved[next];
+            if (w == null) w = new double[k];
+
+            for (int a = 0; a < k; a++) {
+                double sum = cor[z[a] * dim + v];
+
+                for (int c = 0; c < a; c++) {
+                    sum -= l[a * k + c] * w[c];
+                }
+
+                w[a] = sum / l[a * k + a];
+            }
+
+            solvedVars[next] = v;
+            solved[next] = w;
+            lastUsed = next;
+            next = (next + 1) % SOLVES_PER_FACTOR;
+            return w;
+        }
+    }
+
+    // A thread's factors for one engine.
+    private static final class State {
+        private final Key probe = new Key(new int[4], 0);
+        private final int cacheSize;
+        private final Map<Key, Factor> factors;
+
+        State(final int cacheSize) {
+            this.cacheSize = cacheSize;
+            this.factors = new LinkedHashMap<Key, Factor>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<Key, Factor> eldest) {
+                    return size() > cacheSize;
+                }
+            };
+        }
+
+        Factor factor(double[] cor, int dim, int[] z, int k) throws SingularMatrixException {
+            if (probe.z.length < k) probe.z = new int[Math.max(k, 2 * probe.z.length)];
+
+            // Insertion sort; conditioning sets are small.
+            int[] sorted = probe.z;
+
+            for (int i = 0; i < k; i++) {
+                int v = z[i];
+                int j = i - 1;
+
+                while (j >= 0 && sorted[j] > v) {
+                    sorted[j + 1] = sorted[j];
+                    j--;
+                }
+
+                sorted[j + 1] = v;
+            }
+
+            probe.k = k;
+            probe.rehash();
+
+            Factor factor = factors.get(probe);
+
+            if (factor == null) {
+                int[] copy = Arrays.copyOf(sorted, k);
+                factor = new Factor(cor, dim, copy, k);
+                if (cacheSize > 0) factors.put(new Key(copy, k), factor);
+            }
+
+            return factor;
+        }
+    }
+}
@@ -302,8 +302,7 @@ public final class PcAll implements GraphSearch {
             if (concurrent == Concurrent.NO) {
                 fas = new FasStable(initialGraph, getIndependenceTest());
             } else {
-                fas = new FasConcurrent(initialGraph, getIndependenceTest());
-                ((FasConcurrent) fas).setStable(true);
+                fas = new FasParallel(initialGraph, getIndependenceTest());
             }
         }
 
@@ -1237,17 +1237,15 @@ public final class SearchGraphUtils {
             undirectedEdges.add(edge);
         }
 
+        // Edges are replaced rather than having their endpoints set, even when
+        // orienting in place, so that the graph sees the change (EdgeListGraph
+        // keeps an ancestor index current from its edge changes).
         for (Edge nextUndirected : undirectedEdges) {
-            if (orientInPlace) {
-                nextUndirected.setEndpoint1(Endpoint.TAIL);
-                nextUndirected.setEndpoint2(Endpoint.TAIL);
-            } else {
-                Node node1 = nextUndirected.getNode1();
-                Node node2 = nextUndirected.getNode2();
+            Node node1 = nextUndirected.getNode1();
+            Node node2 = nextUndirected.getNode2();
 
-                graph.removeEdges(node1, node2);
-                graph.addUndirectedEdge(node1, node2);
-            }
+            graph.removeEdges(node1, node2);
+            graph.addUndirectedEdge(node1, node2);
         }
     }
 
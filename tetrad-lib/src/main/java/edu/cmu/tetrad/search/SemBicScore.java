@@ -28,7 +28,6 @@ import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.DepthChoiceGenerator;
 import edu.cmu.tetrad.util.StatUtils;
 import edu.cmu.tetrad.util.TetradMatrix;
-import edu.cmu.tetrad.util.TetradVector;
 import org.apache.commons.math3.linear.SingularMatrixException;
 
 import java.io.PrintStream;
@@ -75,6 +74,12 @@ public class SemBicScore implements Score {
     // The structure prior, 0 for standard BIC.
     private double structurePrior = 0.0;
 
+    // Optional cache of local scores, possibly shared with other threads.
+    private LocalScoreCache cache = null;
+
+    // Per-thread buffers for the family regressions, grown as needed.
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
     /**
      * Constructs the score using a covariance matrix.
      */
@@ -122,8 +127,33 @@ public class SemBicScore implements Score {
 
             return -n * Math.log(1.0 - r * r) - log(n)// - getErrorThreshold()
                     +  signum(getStructurePrior()) * (sp1 - sp2);
-        } else {
+        } else if (cache != null) {
             return (localScore(y, append(z, x)) - localScore(y, z));// - getErrorThreshold();
+        } else {
+
+            // Factors the covariance of z once and borders the factor with x, so that both families
+            // are scored from a single factorization.
+            final int p = z.length;
+            Scratch s = SCRATCH.get();
+            s.ensureCapacity(p + 1);
+
+            if (!cholesky(z, p, s.l, p + 1)) return Double.NaN;
+            forwardSolve(z, p, y, s.l, p + 1, s.w);
+            double s2z = residualVariance(y, p, s.w);
+
+            forwardSolve(z, p, x, s.l, p + 1, s.v);
+            double d2 = cov(x, x);
+            double wx = cov(x, y);
+
+            for (int a = 0; a < p; a++) {
+                d2 -= s.v[a] * s.v[a];
+                wx -= s.v[a] * s.w[a];
+            }
+
+            if (d2 <= 0) return Double.NaN;
+            wx /= Math.sqrt(d2);
+
+            return score(y, s2z - wx * wx, p + 1) - score(y, s2z, p);
         }
     }
 
@@ -133,41 +163,88 @@ public class SemBicScore implements Score {
     }
 
     public double localScore(int i, int... parents) {
+        if (cache != null) {
+            double cached = cache.get(i, parents);
+            if (!Double.isNaN(cached)) return cached;
+        }
 
-        try {
-            final int p = parents.length;
-            int k = p + 1;
-            double n = getSampleSize();
+        double score = computeLocalScore(i, parents);
+        if (cache != null) cache.add(i, parents, score);
+        return score;
+    }
 
-            int[] ii = {i};
-            TetradMatrix X = getCovariances().getSelection(parents, parents);
-            TetradMatrix Y = getCovariances().getSelection(parents, ii);
-            double s2 = getCovariances().getValue(i, i);
+    // Regresses i on its parents by Cholesky factorization of the parents' covariance, using scratch
+    // buffers local to the calling thread.
+    private double computeLocalScore(int i, int[] parents) {
+        final int p = parents.length;
+        Scratch s = SCRATCH.get();
+        s.ensureCapacity(p);
 
-            TetradVector coefs = getCoefs(X, Y).getColumn(0);
+        if (!cholesky(parents, p, s.l, p)) return Double.NaN;
+        forwardSolve(parents, p, i, s.l, p, s.w);
 
-            for (int q = 0; q < X.rows(); q++) {
-                for (int r = 0; r < X.columns(); r++) {
-                    s2 -= coefs.get(q) * coefs.get(r) * X.get(r, q);
-                }
+        return score(i, residualVariance(i, p, s.w), p);
+    }
+
+    private double score(int i, double s2, int p) {
+        int k = p + 1;
+        double n = getSampleSize();
+
+        if (s2 <= 0) {
+            if (isVerbose()) {
+                out.println("Nonpositive residual varianceY: resVar / varianceY = " + (s2 / cov(i, i)));
             }
+            return Double.NaN;
+        }
+
+        return -n * log(s2) - getPenaltyDiscount() * k * log(n)
+                + signum(getStructurePrior()) * getStructurePrior(p);
+    }
+
+    // Writes the lower Cholesky factor of the covariance of the first p of the given variables into l,
+    // row-major with the given stride. Returns false if that covariance is not positive definite.
+    private boolean cholesky(int[] vars, int p, double[] l, int stride) {
+        for (int a = 0; a < p; a++) {
+            for (int b = 0; b <= a; b++) {
+                double sum = cov(vars[a], vars[b]);
+
+                for (int c = 0; c < b; c++) {
+                    sum -= l[a * stride + c] * l[b * stride + c];
+                }
 
-            if (s2 <= 0) {
-                if (isVerbose()) {
-                    out.println("Nonpositive residual varianceY: resVar / varianceY = " + (s2 / getCovariances().getValue(i, i)));
+                if (a == b) {
+                    if (!(sum > 0)) return false;
+                    l[a * stride + a] = Math.sqrt(sum);
+                } else {
+                    l[a * stride + b] = sum / l[b * stride + b];
                 }
-                return Double.NaN;
             }
+        }
 
-            return -n * log(s2) - getPenaltyDiscount() * k * log(n)
-                    + signum(getStructurePrior()) * getStructurePrior(parents.length);
-        } catch (Exception e) {
-            return Double.NaN;
+        return true;
+    }
+
+    // Solves L w = cov(vars, y) for w.
+    private void forwardSolve(int[] vars, int p, int y, double[] l, int stride, double[] w) {
+        for (int a = 0; a < p; a++) {
+            double sum = cov(vars[a], y);
+
+            for (int c = 0; c < a; c++) {
+                sum -= l[a * stride + c] * w[c];
+            }
+
+            w[a] = sum / l[a * stride + a];
         }
     }
 
-    private TetradMatrix getCoefs(TetradMatrix x, TetradMatrix y) {
-        return (x.inverse()).times(y);
+    private double residualVariance(int y, int p, double[] w) {
+        double s2 = cov(y, y);
+
+        for (int a = 0; a < p; a++) {
+            s2 -= w[a] * w[a];
+        }
+
+        return s2;
     }
 
     /**
@@ -215,10 +292,24 @@ public class SemBicScore implements Score {
 
     public void setPenaltyDiscount(double penaltyDiscount) {
         this.penaltyDiscount = penaltyDiscount;
+        if (cache != null) cache.clear();
     }
 
     public void setStructurePrior(double structurePrior) {
         this.structurePrior = structurePrior;
+        if (cache != null) cache.clear();
+    }
+
+    public LocalScoreCache getLocalScoreCache() {
+        return cache;
+    }
+
+    /**
+     * Sets a cache for local scores, or null for none. The cache is cleared whenever a parameter of the
+     * score changes, so it should not be shared with a score of another kind.
+     */
+    public void setLocalScoreCache(LocalScoreCache cache) {
+        this.cache = cache;
     }
 
     public boolean isVerbose() {
@@ -274,6 +365,12 @@ public class SemBicScore implements Score {
         this.covariances = covariances;
     }
 
+    // Entries are read from the covariance matrix as each family needs them, rather than from a copy of the
+    // whole matrix.
+    private double cov(int i, int j) {
+        return covariances.getValue(i, j);
+    }
+
     private double getStructurePrior(int parents) {
         if (abs(getStructurePrior()) <= 0) {
             return 0;
@@ -349,6 +446,21 @@ public class SemBicScore implements Score {
         return all;
     }
 
+    private static class Scratch {
+        double[] l = new double[0];
+        double[] w = new double[0];
+        double[] v = new double[0];
+
+        void ensureCapacity(int p) {
+            if (w.length < p) {
+                int size = Math.max(p, 2 * w.length);
+                l = new double[size * size];
+                w = new double[size];
+                v = new double[size];
+            }
+        }
+    }
+
     /**
      * @return a string representation of this score.
      */
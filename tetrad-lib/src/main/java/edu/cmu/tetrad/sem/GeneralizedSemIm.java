@@ -21,6 +21,7 @@
 
 package edu.cmu.tetrad.sem;
 
+import edu.cmu.tetrad.calculator.expression.CompiledExpression;
 import edu.cmu.tetrad.calculator.expression.Context;
 import edu.cmu.tetrad.calculator.expression.Expression;
 import edu.cmu.tetrad.calculator.parser.ExpressionLexer;
@@ -36,9 +37,11 @@ import org.apache.commons.math3.optim.nonlinear.scalar.GoalType;
 import org.apache.commons.math3.optim.nonlinear.scalar.MultivariateOptimizer;
 import org.apache.commons.math3.optim.nonlinear.scalar.ObjectiveFunction;
 import org.apache.commons.math3.optim.nonlinear.scalar.noderiv.PowellOptimizer;
+import org.apache.commons.math3.random.RandomGenerator;
 
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static edu.cmu.tetrad.util.StatUtils.sd;
 
@@ -287,7 +290,7 @@ public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
         return buf.toString();
     }
 
-    public synchronized DataSet simulateData(int sampleSize, boolean latentDataSaved) {
+    public DataSet simulateData(int sampleSize, boolean latentDataSaved) {
         long seed = RandomUtil.getInstance().getSeed();
         TetradLogger.getInstance().log("info", "Seed = " + seed);
 
@@ -850,7 +853,7 @@ public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
      * @param sampleSize The number of samples to be drawn. Must be a positive
      *                   integer.
      */
-    public synchronized DataSet simulateDataFisher(int sampleSize) {
+    public DataSet simulateDataFisher(int sampleSize) {
         return simulateDataFisher(sampleSize, 50, 1e-10);
     }
 
@@ -861,127 +864,199 @@ public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
      * a data point is recorded and a new shock immediately applied. The model may be
      * cyclic. If cyclic, all eigenvalues for the coefficient matrix must be less than 1,
      * though this is not checked.
+     * <p>
+     * The expressions are compiled before the simulation (see CompiledExpression). Each row starts from
+     * the values of the row before it. If the model is acyclic and the interval between shocks is at least
+     * the number of variables, though, a row's values are settled by its own shocks, whatever it starts
+     * from, to within epsilon; in that case only, the rows are simulated in blocks, each starting from zero,
+     * the blocks after the first in parallel (see RowBlockSimulator), so that the data depend only on
+     * RandomUtil's seed. Otherwise the rows are simulated one after another, as they always have been.
      *
      * @param sampleSize            The number of samples to be drawn.
      * @param intervalBetweenShocks External shock is applied every this many steps.
      *                              Must be positive integer.
      * @param epsilon               The convergence criterion; |xi.t - xi.t-1| < epsilon.
      */
-    public synchronized DataSet simulateDataFisher(int sampleSize, int intervalBetweenShocks,
-                                                   double epsilon) {
-        boolean printedUndefined = false;
-        boolean printedInfinite = false;
-
+    public DataSet simulateDataFisher(int sampleSize, int intervalBetweenShocks, double epsilon) {
         if (intervalBetweenShocks < 1) throw new IllegalArgumentException(
                 "Interval between shocks must be >= 1: " + intervalBetweenShocks);
         if (epsilon <= 0.0) throw new IllegalArgumentException(
                 "Epsilon must be > 0: " + epsilon);
 
-        final Map<String, Double> variableValues = new HashMap<>();
-
-        final Context context = new Context() {
-            public Double getValue(String term) {
-                Double value = parameterValues.get(term);
+        final List<Node> variableNodes = pm.getVariableNodes();
+        final int numVars = variableNodes.size();
 
-                if (value != null) {
-                    return value;
-                }
+        // Variables take slots 0 to numVars - 1; their errors take the slots numVars on, in the same order.
+        Map<String, Integer> slots = new HashMap<>();
 
-                value = variableValues.get(term);
+        for (int j = 0; j < numVars; j++) {
+            slots.put(variableNodes.get(j).getName(), j);
+        }
 
-                if (value != null) {
-                    return value;
-                }
+        for (int j = 0; j < numVars; j++) {
+            Node error = pm.getErrorNode(variableNodes.get(j));
 
-                throw new IllegalArgumentException("No value recorded for '" + term + "'");
+            if (error == null) {
+                throw new NullPointerException();
             }
-        };
 
-        final List<Node> variableNodes = pm.getVariableNodes();
+            slots.put(error.getName(), numVars + j);
+        }
+
+        final CompiledExpression[] errors = new CompiledExpression[numVars];
+        final CompiledExpression[] expressions = new CompiledExpression[numVars];
+        boolean columns = true;
+        boolean selfContained = true;
+
+        for (int j = 0; j < numVars; j++) {
+            Node node = variableNodes.get(j);
+            errors[j] = CompiledExpression.compile(pm.getNodeExpression(pm.getErrorNode(node)), slots, parameterValues);
+            expressions[j] = CompiledExpression.compile(pm.getNodeExpression(node), slots, parameterValues);
+            columns &= !errors[j].usesVariables() && expressions[j].isDeterministic();
+            selfContained &= errors[j].isSelfContained() && expressions[j].isSelfContained();
+        }
 
-        double[] t1 = new double[variableNodes.size()];
-        double[] t2 = new double[variableNodes.size()];
-        double[] shocks = new double[variableNodes.size()];
-        double[][] all = new double[variableNodes.size()][sampleSize];
+        final double[][] all = new double[numVars][sampleSize];
+        final boolean _columns = columns;
+        final FisherWarnings warnings = new FisherWarnings();
 
-        // Do the simulation.
+        // Rows may be simulated apart only if each sweep settles at least one more variable for good, which is so
+        // for an acyclic model, and there are enough sweeps to settle them all.
+        boolean independentRows = intervalBetweenShocks >= numVars && !pm.getGraph().existsDirectedCycle();
 
-        for (int row = 0; row < sampleSize; row++) {
-            for (int j = 0; j < t1.length; j++) {
-                Node error = pm.getErrorNode(variableNodes.get(j));
+        if (independentRows) {
 
-                if (error == null) {
-                    throw new NullPointerException();
-                }
+            // Do the simulation, in blocks of rows; see RowBlockSimulator. Parts of the model that aren't compiled
+            // may draw from RandomUtil, so in that case the blocks are done in order.
+            RowBlockSimulator.simulate("GeneralizedSemIm", sampleSize, RandomUtil.getInstance().getRandomGenerator(),
+                    selfContained, (from, to, random) -> simulateFisherBlock(from, to, errors, expressions,
+                            intervalBetweenShocks, epsilon, _columns, random, all, warnings));
+        } else {
 
-                Expression expression = pm.getNodeExpression(error);
-                double value = expression.evaluate(context);
+            // Each row carries on from the one before, so the rows are done in order, a row at a time.
+            simulateFisherBlock(0, sampleSize, errors, expressions, intervalBetweenShocks, epsilon, false,
+                    RandomUtil.getInstance().getRandomGenerator(), all, warnings);
+        }
 
-                if (Double.isNaN(value)) {
-                    throw new IllegalArgumentException("Undefined value for expression: " + expression);
-                }
+        List<Node> continuousVars = new ArrayList<>();
 
-                variableValues.put(error.getName(), value);
-                shocks[j] = value;
-                t2[j] += shocks[j];
+        for (Node node : variableNodes) {
+            final ContinuousVariable var = new ContinuousVariable(node.getName());
+            var.setNodeType(node.getNodeType());
+            continuousVars.add(var);
+        }
+
+        BoxDataSet boxDataSet = new BoxDataSet(new VerticalDoubleDataBox(all), continuousVars);
+        return DataUtils.restrictToMeasured(boxDataSet);
+    }
+
+    // Simulates rows from to to - 1 of the Fisher simulation, starting from zero, each row carrying on from the
+    // values of the row before. If columns is true--for acyclic models with enough sweeps, whose expressions for the
+    // variables are deterministic and whose expressions for the errors don't depend on the variables--after the
+    // shocks are drawn a row at a time each iteration is done a column at a time, for all of the rows of the block
+    // together, each row starting from zero, until all of them have converged. For such models this gives values
+    // within epsilon of doing each row to convergence in turn.
+    private void simulateFisherBlock(int from, int to, CompiledExpression[] errors,
+                                     CompiledExpression[] expressions, int intervalBetweenShocks, double epsilon,
+                                     boolean columns, RandomGenerator random, double[][] all,
+                                     FisherWarnings warnings) {
+        int numVars = expressions.length;
+        int n = to - from;
+        double[] values = new double[2 * numVars];
+
+        if (columns) {
+            double[][] _columns = new double[2 * numVars][n];
+            double[] out = new double[n];
+
+            for (int row = 0; row < n; row++) {
+                for (int j = 0; j < numVars; j++) {
+                    _columns[numVars + j][row] = shock(errors[j], values, random);
+                }
             }
 
             for (int i = 0; i < intervalBetweenShocks; i++) {
-                for (int j = 0; j < t1.length; j++) {
-                    Node node = variableNodes.get(j);
-                    Expression expression = pm.getNodeExpression(node);
-                    t2[j] = expression.evaluate(context);
+                boolean converged = true;
 
-                    if (Double.isNaN(t2[j])) {
-                        if (!printedUndefined) {
-                            System.out.println("Undefined value.");
-                            printedUndefined = true;
-                        }
-                    }
+                for (int j = 0; j < numVars; j++) {
+                    expressions[j].evaluate(_columns, n, out, random);
+                    double[] previous = _columns[j];
+
+                    for (int row = 0; row < n; row++) {
+                        warnings.check(out[row]);
 
-                    if (Double.isInfinite(t2[j])) {
-                        if (!printedInfinite) {
-                            System.out.println("Infinite value.");
-                            printedInfinite = true;
+                        if (Math.abs(out[row] - previous[row]) > epsilon) {
+                            converged = false;
                         }
                     }
 
-                    variableValues.put(node.getName(), t2[j]);
+                    _columns[j] = out;
+                    out = previous;
                 }
 
-                boolean converged = true;
+                if (converged) {
+                    break;
+                }
+            }
 
-                for (int j = 0; j < t1.length; j++) {
-                    if (Math.abs(t2[j] - t1[j]) > epsilon) {
-                        converged = false;
-                        break;
-                    }
+            for (int j = 0; j < numVars; j++) {
+                System.arraycopy(_columns[j], 0, all[j], from, n);
+            }
+        } else {
+            for (int row = from; row < to; row++) {
+                for (int j = 0; j < numVars; j++) {
+                    values[numVars + j] = shock(errors[j], values, random);
                 }
 
-                double[] t3 = t1;
-                t1 = t2;
-                t2 = t3;
+                for (int i = 0; i < intervalBetweenShocks; i++) {
+                    boolean converged = true;
 
-                if (converged) {
-                    break;
+                    for (int j = 0; j < numVars; j++) {
+                        double value = expressions[j].evaluate(values, random);
+                        warnings.check(value);
+
+                        if (Math.abs(value - values[j]) > epsilon) {
+                            converged = false;
+                        }
+
+                        values[j] = value;
+                    }
+
+                    if (converged) {
+                        break;
+                    }
                 }
-            }
 
-            for (int j = 0; j < t1.length; j++) {
-                all[j][row] = t1[j];
+                for (int j = 0; j < numVars; j++) {
+                    all[j][row] = values[j];
+                }
             }
         }
+    }
 
-        List<Node> continuousVars = new ArrayList<>();
+    private double shock(CompiledExpression error, double[] values, RandomGenerator random) {
+        double value = error.evaluate(values, random);
 
-        for (Node node : variableNodes) {
-            final ContinuousVariable var = new ContinuousVariable(node.getName());
-            var.setNodeType(node.getNodeType());
-            continuousVars.add(var);
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("Undefined value for expression: " + error.getExpression());
         }
 
-        BoxDataSet boxDataSet = new BoxDataSet(new VerticalDoubleDataBox(all), continuousVars);
-        return DataUtils.restrictToMeasured(boxDataSet);
+        return value;
+    }
+
+    // Undefined and infinite values are reported once per simulation.
+    private static class FisherWarnings {
+        private final AtomicBoolean printedUndefined = new AtomicBoolean(false);
+        private final AtomicBoolean printedInfinite = new AtomicBoolean(false);
+
+        void check(double value) {
+            if (Double.isNaN(value) && printedUndefined.compareAndSet(false, true)) {
+                System.out.println("Undefined value.");
+            }
+
+            if (Double.isInfinite(value) && printedInfinite.compareAndSet(false, true)) {
+                System.out.println("Infinite value.");
+            }
+        }
     }
 
 
@@ -33,7 +33,6 @@ import static java.lang.Math.abs;
 import static java.lang.Math.sqrt;
 
 import java.util.*;
-import java.util.concurrent.RecursiveTask;
 
 import org.apache.commons.collections4.map.HashedMap;
 import org.apache.commons.math3.distribution.*;
@@ -123,66 +122,32 @@ public final class LargeScaleSimulation {
         int size = variableNodes.size();
         setupModel(size);
 
-        class SimulateTask extends RecursiveTask<Boolean> {
-
-            private final int from;
-            private final int to;
-            private double[][] all;
-            private int chunk;
-
-            public SimulateTask(int from, int to, double[][] all, int chunk) {
-                this.from = from;
-                this.to = to;
-                this.all = all;
-                this.chunk = chunk;
-            }
-
-            @Override
-            protected Boolean compute() {
-                if (from - to > chunk) {
-                    int mid = from + to / 2;
-                    SimulateTask left = new SimulateTask(from, mid, all, chunk);
-                    SimulateTask right = new SimulateTask(mid, to, all, chunk);
-                    left.fork();
-                    right.compute();
-                    left.join();
-                    return true;
-                } else {
-                    for (int i = from; i < to; i++) {
-                        NormalDistribution normal = new NormalDistribution(new Well1024a(++seed), 0, 1);//sqrt(errorVars[col]));
-                        normal.sample();
-
-                        if (verbose && (i + 1) % 50 == 0) {
-                            System.out.println("Simulating " + (i + 1));
-                        }
+        if (graph instanceof TimeLagGraph) {
+            sampleSize += 200;
+        }
 
-                        for (int col : tierIndices) {
-                            double value = normal.sample() * sqrt(errorVars[col]);
+        final double[][] all = new double[variableNodes.size()][sampleSize];
 
-                            for (int j = 0; j < parents[col].length; j++) {
-                                value += all[parents[col][j]][i] * coefs[col][j];
-                            }
+        // Rows are simulated in blocks, in parallel, each block from its own generator; see RowBlockSimulator.
+        RowBlockSimulator.simulate("LargeScaleSimulation", sampleSize, (from, to, random) -> {
+            for (int i = from; i < to; i++) {
+                if (verbose && (i + 1) % 50 == 0) {
+                    System.out.println("Simulating " + (i + 1));
+                }
 
-                            value += means[col];
+                for (int col : tierIndices) {
+                    double value = random.nextGaussian() * sqrt(errorVars[col]);
 
-                            all[col][i] = value;
-                        }
+                    for (int j = 0; j < parents[col].length; j++) {
+                        value += all[parents[col][j]][i] * coefs[col][j];
                     }
 
-                    return true;
+                    value += means[col];
+
+                    all[col][i] = value;
                 }
             }
-        }
-
-        if (graph instanceof TimeLagGraph) {
-            sampleSize += 200;
-        }
-
-        double[][] all = new double[variableNodes.size()][sampleSize];
-
-        int chunk = sampleSize / ForkJoinPoolInstance.getInstance().getPool().getParallelism() + 1;
-
-        ForkJoinPoolInstance.getInstance().getPool().invoke(new SimulateTask(0, sampleSize, all, chunk));
+        });
 
         if (graph instanceof TimeLagGraph) {
             int[] rem = new int[200];
@@ -34,6 +34,8 @@ import static java.lang.Math.sqrt;
 import java.rmi.MarshalledObject;
 import java.util.*;
 import org.apache.commons.math3.distribution.ChiSquaredDistribution;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well44497b;
 
 /**
  * Stores an instantiated structural equation model (SEM), with error covariance
@@ -1392,6 +1394,13 @@ public final class SemIm implements IM, ISemIm, TetradSerializable {
      */
     @Override
     public DataSet simulateData(int sampleSize, long seed, boolean latentDataSaved) {
+
+        // The generator RandomUtil would make for this seed, but private to this call, so that other threads drawing
+        // from RandomUtil meanwhile don't change the data.
+        if (!semPm.getGraph().isTimeLagModel()) {
+            return simulateDataReducedForm(sampleSize, new Well44497b(seed), latentDataSaved);
+        }
+
         RandomUtil random = RandomUtil.getInstance();
         long _seed = random.getSeed();
         random.setSeed(seed);
@@ -1660,40 +1669,67 @@ public final class SemIm implements IM, ISemIm, TetradSerializable {
     }
 
     public DataSet simulateDataReducedForm(int sampleSize, boolean latentDataSaved) {
-        int numVars = getVariableNodes().size();
+        return simulateDataReducedForm(sampleSize, RandomUtil.getInstance().getRandomGenerator(), latentDataSaved);
+    }
+
+    /**
+     * Simulates data as simulateDataReducedForm(sampleSize, latentDataSaved) does, drawing from the given generator
+     * instead of from RandomUtil. Rows are simulated in blocks, in parallel; see RowBlockSimulator. The data depend
+     * only on the state of the generator, not on the number of threads.
+     */
+    private DataSet simulateDataReducedForm(int sampleSize, RandomGenerator random, boolean latentDataSaved) {
+        final int numVars = getVariableNodes().size();
 
         // Calculate inv(I - edgeCoefC)
         TetradMatrix B = edgeCoef().transpose();
-        TetradMatrix iMinusBInv = TetradAlgebra.identity(B.rows()).minus(B).inverse();
+        final double[][] iMinusBInv = TetradAlgebra.identity(B.rows()).minus(B).inverse().toArray();
 
-        // Pick error values e, for each calculate inv * e.
-        TetradMatrix sim = new TetradMatrix(sampleSize, numVars);
+        final double[] sd = new double[edgeCoef.columns()];
 
-        ROW:
-        for (int row = 0; row < sampleSize; row++) {
-
-            // Step 1. Generate normal samples.
-            TetradVector e = new TetradVector(edgeCoef.columns());
+        for (int i = 0; i < sd.length; i++) {
+            sd[i] = sqrt(errCovar.get(i, i));
 
-            for (int i = 0; i < e.size(); i++) {
-                e.set(i, RandomUtil.getInstance().nextNormal(0, sqrt(errCovar.get(i, i))));
+            if (sd[i] <= 0) {
+                throw new IllegalArgumentException("Standard deviation must be non-negative: " + sd[i]);
             }
+        }
 
-            // Step 3. Calculate the new rows in the data.
-            TetradVector sample = iMinusBInv.times(e);
-            sim.assignRow(row, sample);
+        final double[] means = variableMeans;
+        final boolean positiveOnly = isSimulatedPositiveDataOnly();
 
-            for (int col = 0; col < sample.size(); col++) {
-                double value = sim.get(row, col) + variableMeans[col];
+        // Pick error values e, for each calculate inv * e. The data are stored by column.
+        final double[][] sim = new double[numVars][sampleSize];
 
-                if (isSimulatedPositiveDataOnly() && value < 0) {
-                    row--;
-                    continue ROW;
+        RowBlockSimulator.simulate("SemIm", sampleSize, random, true, (from, to, _random) -> {
+            double[] e = new double[sd.length];
+
+            ROW:
+            for (int row = from; row < to; row++) {
+
+                // Step 1. Generate normal samples.
+                for (int i = 0; i < e.length; i++) {
+                    e[i] = _random.nextGaussian() * sd[i];
                 }
 
-                sim.set(row, col, value);
+                // Step 3. Calculate the new rows in the data.
+                for (int col = 0; col < numVars; col++) {
+                    double sum = 0.0;
+
+                    for (int j = 0; j < e.length; j++) {
+                        sum += iMinusBInv[col][j] * e[j];
+                    }
+
+                    double value = sum + means[col];
+
+                    if (positiveOnly && value < 0) {
+                        row--;
+                        continue ROW;
+                    }
+
+                    sim[col][row] = value;
+                }
             }
-        }
+        });
 
         List<Node> continuousVars = new ArrayList<>();
 
@@ -1703,7 +1739,8 @@ public final class SemIm implements IM, ISemIm, TetradSerializable {
             continuousVars.add(var);
         }
 
-        DataSet fullDataSet = new BoxDataSet(new DoubleDataBox(sim.toArray()), continuousVars);
+        DataBox box = numVars == 0 ? new VerticalDoubleDataBox(sampleSize, 0) : new VerticalDoubleDataBox(sim);
+        DataSet fullDataSet = new BoxDataSet(box, continuousVars);
 
         if (latentDataSaved) {
             return fullDataSet;
@@ -20,11 +20,15 @@ package edu.cmu.tetrad.util;
 
 import edu.cmu.tetrad.data.BoxDataSet;
 import edu.cmu.tetrad.data.ContinuousVariable;
+import edu.cmu.tetrad.data.CovarianceAccumulator;
 import edu.cmu.tetrad.data.CovarianceMatrix;
 import edu.cmu.tetrad.data.DataBox;
 import edu.cmu.tetrad.data.DataModel;
 import edu.cmu.tetrad.data.DiscreteVariable;
 import edu.cmu.tetrad.data.DoubleDataBox;
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.data.MappedDataBox;
+import edu.cmu.tetrad.data.MappedDataBoxWriter;
 import edu.cmu.tetrad.data.MixedDataBox;
 import edu.cmu.tetrad.data.VerticalIntDataBox;
 import edu.cmu.tetrad.graph.Node;
@@ -36,10 +40,17 @@ import edu.pitt.dbmi.data.reader.DiscreteDataColumn;
 import edu.pitt.dbmi.data.reader.covariance.CovarianceData;
 import edu.pitt.dbmi.data.reader.metadata.ColumnMetadata;
 import edu.pitt.dbmi.data.reader.metadata.Metadata;
+import edu.pitt.dbmi.data.reader.tabular.ContinuousTabularDatasetReader;
 import edu.pitt.dbmi.data.reader.tabular.MixedTabularData;
 import edu.pitt.dbmi.data.reader.tabular.VerticalDiscreteTabularData;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 
 /**
@@ -81,6 +92,109 @@ public class DataConvertUtils {
         }
     }
 
+    /**
+     * Reads continuous tabular data a chunk of rows at a time into the given file in the memory-mapped columnar
+     * format and returns a data set backed by that file. At most chunkSize rows are held in memory at once. The file
+     * is read twice, first to count its rows, since the layout of the columns depends on it.
+     *
+     * @param reader the reader, configured (delimiter, header, missing value marker) as for readInData
+     * @param chunkSize the number of rows to read at a time
+     * @param file the file to write
+     * @return a data set over a <code>MappedDataBox</code>
+     * @throws IOException
+     */
+    public static DataModel toMappedDataModel(ContinuousTabularDatasetReader reader, int chunkSize, File file) throws IOException {
+        int[] numRows = new int[1];
+        DataColumn[] columns = reader.readInData(Collections.emptySet(), chunkSize, (data, numOfRows) -> numRows[0] += numOfRows);
+
+        try (MappedDataBoxWriter writer = new MappedDataBoxWriter(file, toNodes(columns), numRows[0])) {
+            int[] firstRow = new int[1];
+
+            try {
+                reader.readInData(Collections.emptySet(), chunkSize, (data, numOfRows) -> {
+                    try {
+                        writer.writeRows(firstRow[0], data, numOfRows);
+                    } catch (IOException exception) {
+                        throw new UncheckedIOException(exception);
+                    }
+
+                    firstRow[0] += numOfRows;
+                });
+            } catch (UncheckedIOException exception) {
+                throw exception.getCause();
+            }
+
+            if (firstRow[0] != numRows[0]) {
+                throw new IllegalStateException("Expecting " + numRows[0] + " rows, read " + firstRow[0]);
+            }
+        }
+
+        return toDataModel(new MappedDataBox(file));
+    }
+
+    /**
+     * Writes tabular data read by the data readers to the given file in the memory-mapped columnar format and
+     * returns a data set backed by that file. This is a convenience for data that has already been read in full;
+     * a continuous file too large for the heap should be written with the chunked overload, which takes a reader.
+     *
+     * @param data continuous, discrete or mixed tabular data
+     * @param file the file to write
+     * @return a data set over a <code>MappedDataBox</code>
+     * @throws IOException
+     */
+    public static DataModel toMappedDataModel(Data data, File file) throws IOException {
+        if (data instanceof ContinuousData) {
+            double[][] rows = ((ContinuousData) data).getData();
+            List<Node> variables = toNodes(((ContinuousData) data).getDataColumns());
+
+            try (MappedDataBoxWriter writer = new MappedDataBoxWriter(file, variables, rows.length)) {
+                double[] column = new double[rows.length];
+
+                for (int j = 0; j < variables.size(); j++) {
+                    for (int i = 0; i < rows.length; i++) column[i] = rows[i][j];
+                    writer.writeColumn(j, column);
+                }
+            }
+        } else if (data instanceof VerticalDiscreteTabularData) {
+            VerticalDiscreteTabularData dataset = (VerticalDiscreteTabularData) data;
+            int[][] columns = dataset.getData();
+            List<Node> variables = toNodes(dataset.getDataColumns());
+            int numRows = columns.length == 0 ? 0 : columns[0].length;
+
+            try (MappedDataBoxWriter writer = new MappedDataBoxWriter(file, variables, numRows)) {
+                for (int j = 0; j < columns.length; j++) writer.writeColumn(j, columns[j]);
+            }
+        } else if (data instanceof MixedTabularData) {
+            MixedTabularData dataset = (MixedTabularData) data;
+            List<Node> variables = Arrays.stream(dataset.getDataColumns())
+                    .map(e -> e.getDataColumn().isDiscrete()
+                    ? new DiscreteVariable(e.getDataColumn().getName(), e.getCategories())
+                    : new ContinuousVariable(e.getDataColumn().getName()))
+                    .collect(Collectors.toList());
+
+            try (MappedDataBoxWriter writer = new MappedDataBoxWriter(file, variables, dataset.getNumOfRows())) {
+                for (int j = 0; j < variables.size(); j++) {
+                    if (writer.isDiscrete(j)) {
+                        writer.writeColumn(j, dataset.getDiscreteData()[j]);
+                    } else {
+                        writer.writeColumn(j, dataset.getContinuousData()[j]);
+                    }
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("Expecting tabular data.");
+        }
+
+        return toDataModel(new MappedDataBox(file));
+    }
+
+    /**
+     * @return a data set over the given mapped data box, using the variables stored in its file.
+     */
+    public static DataModel toDataModel(MappedDataBox dataBox) {
+        return new BoxDataSet(dataBox, new ArrayList<>(dataBox.getVariables()));
+    }
+
     public static DataModel toCovarianceMatrix(CovarianceData dataset) {
         List<Node> variables = toNodes(dataset.getVariables());
         TetradMatrix matrix = new TetradMatrix(dataset.getData());
@@ -89,6 +203,82 @@ public class DataConvertUtils {
         return new CovarianceMatrix(variables, matrix, sampleSize);
     }
 
+    /**
+     * Reads continuous tabular data a chunk of rows at a time into a covariance matrix, without holding the data in
+     * memory.
+     *
+     * @param reader the reader, configured (delimiter, header, missing value marker) as for readInData
+     * @param chunkSize the number of rows to read at a time
+     * @return the covariance matrix of the data, over the columns of the file
+     * @throws IOException
+     */
+    public static ICovarianceMatrix toCovarianceMatrix(ContinuousTabularDatasetReader reader, int chunkSize) throws IOException {
+        return toCovarianceMatrix(Collections.singletonList(reader), chunkSize);
+    }
+
+    /**
+     * Reads several files of continuous tabular data with the same columns (parts of one data set, say) in
+     * parallel, accumulating each separately, and merges the results into one covariance matrix.
+     *
+     * @param readers a reader for each part
+     * @param chunkSize the number of rows to read at a time
+     * @return the covariance matrix of the data in all of the parts
+     * @throws IOException
+     */
+    public static ICovarianceMatrix toCovarianceMatrix(List<? extends ContinuousTabularDatasetReader> readers, int chunkSize) throws IOException {
+        if (readers.isEmpty()) {
+            throw new IllegalArgumentException("Expecting at least one reader.");
+        }
+
+        DataColumn[][] columns = new DataColumn[readers.size()][];
+        CovarianceAccumulator[] accumulators = new CovarianceAccumulator[readers.size()];
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+
+        for (int i = 0; i < readers.size(); i++) {
+            final int _i = i;
+
+            tasks.add(() -> {
+                columns[_i] = readers.get(_i).readInData(Collections.emptySet(), chunkSize, (data, numOfRows) -> {
+                    if (accumulators[_i] == null) {
+                        accumulators[_i] = new CovarianceAccumulator(data[0].length);
+                    }
+
+                    accumulators[_i].add(data, numOfRows);
+                });
+
+                return null;
+            });
+        }
+
+        try {
+            SearchExecutor.getInstance().invokeAll("DataConvertUtils", tasks);
+        } catch (RuntimeException exception) {
+            if (exception.getCause() instanceof IOException) {
+                throw (IOException) exception.getCause();
+            }
+
+            throw exception;
+        }
+
+        List<String> names = Arrays.stream(columns[0]).map(DataColumn::getName).collect(Collectors.toList());
+        CovarianceAccumulator accumulator = new CovarianceAccumulator(names.size());
+
+        for (int i = 0; i < readers.size(); i++) {
+            List<String> _names = Arrays.stream(columns[i]).map(DataColumn::getName).collect(Collectors.toList());
+
+            if (!_names.equals(names)) {
+                throw new IllegalArgumentException("The parts of the data do not have the same columns.");
+            }
+
+            if (accumulators[i] != null) {
+                accumulator.merge(accumulators[i]);
+            }
+        }
+
+        return accumulator.getCovarianceMatrix(toNodes(columns[0]));
+    }
+
     /**
      * Converting using metadata
      *
@@ -24,12 +24,14 @@ package edu.cmu.tetrad.util;
 import java.util.concurrent.ForkJoinPool;
 
 /**
- * Static instance of a ForkJoinPool. Not sure this is necessary.
+ * Static instance of a ForkJoinPool. This is now the pool of the SearchExecutor, so that code
+ * using it shares that executor's parallelism budget; new code should use SearchExecutor directly.
  * Created by josephramsey on 2/7/15.
+ *
+ * @see SearchExecutor
  */
 public class ForkJoinPoolInstance {
     private static final ForkJoinPoolInstance INSTANCE = new ForkJoinPoolInstance();
-    private final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
 
     private ForkJoinPoolInstance() {
 
@@ -40,7 +42,7 @@ public class ForkJoinPoolInstance {
     }
 
     public ForkJoinPool getPool() {
-        return pool;
+        return SearchExecutor.getInstance().getPool();
     }
 }
 
@@ -0,0 +1,295 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.util;
+
+import java.util.Arrays;
+
+/**
+ * A k-d tree over some columns of a data set, for finding the rows nearest a given row in Euclidean distance over
+ * those columns. The tree is kept implicitly in a permutation of the row indices: the middle of each range is the
+ * splitting row, split along the column in which the range is widest. Once built it is read only, so it may be
+ * queried from several threads at once.
+ * <p>
+ * Missing values (NaN) are ignored in distances, as though the rows agreed there. Rows with a missing value in one
+ * of the columns can't be placed in the tree and are checked one by one for each query.
+ *
+ * @author agent
+ */
+public final class KdTree {
+
+    // Ranges this small are scanned rather than split.
+    private static final int LEAF_SIZE = 8;
+
+    // The columns indexed, each of length N.
+    private final double[][] columns;
+
+    // The rows with no missing values in the columns, in tree order.
+    private final int[] order;
+
+    // For each position that splits a range, the column it splits along.
+    private final int[] split;
+
+    // The rows with missing values in the columns.
+    private final int[] incomplete;
+
+    /**
+     * Builds a tree over the given columns of data, where data[c][i] is the value of column c in row i.
+     */
+    public KdTree(double[][] data, int[] columns) {
+        if (columns.length == 0) throw new IllegalArgumentException("No columns to index.");
+
+        this.columns = new double[columns.length][];
+
+        for (int c = 0; c < columns.length; c++) {
+            this.columns[c] = data[columns[c]];
+        }
+
+        int N = this.columns[0].length;
+        int[] complete = new int[N];
+        int[] incomplete = new int[N];
+        int numComplete = 0, numIncomplete = 0;
+
+        ROW:
+        for (int i = 0; i < N; i++) {
+            for (double[] column : this.columns) {
+                if (Double.isNaN(column[i])) {
+                    incomplete[numIncomplete++] = i;
+                    continue ROW;
+                }
+            }
+
+            complete[numComplete++] = i;
+        }
+
+        this.order = Arrays.copyOf(complete, numComplete);
+        this.incomplete = Arrays.copyOf(incomplete, numIncomplete);
+        this.split = new int[numComplete];
+
+        build(0, numComplete);
+    }
+
+    /**
+     * @return the k rows nearest row i (including i itself), in no particular order, or all of the rows if there are
+     * no more than k.
+     */
+    public int[] nearest(int i, int k) {
+        double[] point = new double[columns.length];
+
+        for (int c = 0; c < columns.length; c++) {
+            point[c] = columns[c][i];
+        }
+
+        return nearest(point, k);
+    }
+
+    /**
+     * @return the k rows nearest the given point, which has a coordinate for each column indexed, in no particular
+     * order, or all of the rows if there are no more than k.
+     */
+    public int[] nearest(double[] point, int k) {
+        if (point.length != columns.length) {
+            throw new IllegalArgumentException("Expecting a point with " + columns.length + " coordinates: "
+                    + point.length);
+        }
+
+        if (k < 0) throw new IllegalArgumentException("Number of neighbors must be >= 0: " + k);
+
+        Heap heap = new Heap(Math.min(k, order.length + incomplete.length));
+
+        if (heap.capacity > 0) {
+            search(0, order.length, point, heap);
+
+            for (int r : incomplete) {
+                heap.offer(r, distance(point, r));
+            }
+        }
+
+        return Arrays.copyOf(heap.rows, heap.size);
+    }
+
+    /**
+     * @return the number of rows in the tree, including those with missing values.
+     */
+    public int getNumRows() {
+        return order.length + incomplete.length;
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    private void build(int lo, int hi) {
+        if (hi - lo <= LEAF_SIZE) return;
+
+        int c = widestColumn(lo, hi);
+        int m = (lo + hi) >>> 1;
+
+        select(columns[c], lo, hi - 1, m);
+        split[m] = c;
+
+        build(lo, m);
+        build(m + 1, hi);
+    }
+
+    private int widestColumn(int lo, int hi) {
+        int widest = 0;
+        double maxSpread = -1;
+
+        for (int c = 0; c < columns.length; c++) {
+            double[] column = columns[c];
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+
+            for (int r = lo; r < hi; r++) {
+                double v = column[order[r]];
+                if (v < min) min = v;
+                if (v > max) max = v;
+            }
+
+            if (max - min > maxSpread) {
+                maxSpread = max - min;
+                widest = c;
+            }
+        }
+
+        return widest;
+    }
+
+    // Rearranges order[lo..hi] so that the row at position m has the value it would have if sorted by the given
+    // column, with no larger values before it and no smaller ones after.
+    private void select(double[] column, int lo, int hi, int m) {
+        while (hi > lo) {
+            double pivot = column[order[(lo + hi) >>> 1]];
+            int i = lo, j = hi;
+
+            while (i <= j) {
+                while (column[order[i]] < pivot) i++;
+                while (column[order[j]] > pivot) j--;
+
+                if (i <= j) {
+                    int t = order[i];
+                    order[i] = order[j];
+                    order[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+
+            if (m <= j) {
+                hi = j;
+            } else if (m >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void search(int lo, int hi, double[] point, Heap heap) {
+        if (hi - lo <= LEAF_SIZE) {
+            for (int r = lo; r < hi; r++) {
+                heap.offer(order[r], distance(point, order[r]));
+            }
+
+            return;
+        }
+
+        int m = (lo + hi) >>> 1;
+        int row = order[m];
+        heap.offer(row, distance(point, row));
+
+        double diff = point[split[m]] - columns[split[m]][row];
+        if (Double.isNaN(diff)) diff = 0;
+
+        if (diff < 0) {
+            search(lo, m, point, heap);
+            if (diff * diff < heap.bound()) search(m + 1, hi, point, heap);
+        } else {
+            search(m + 1, hi, point, heap);
+            if (diff * diff < heap.bound()) search(lo, m, point, heap);
+        }
+    }
+
+    // Squared distance.
+    private double distance(double[] point, int row) {
+        double sum = 0.0;
+
+        for (int c = 0; c < columns.length; c++) {
+            double d = point[c] - columns[c][row];
+
+            if (!Double.isNaN(d)) {
+                sum += d * d;
+            }
+        }
+
+        return sum;
+    }
+
+    // A max-heap of the nearest rows found so far, by distance.
+    private static final class Heap {
+        private final int capacity;
+        private final int[] rows;
+        private final double[] distances;
+        private int size = 0;
+
+        Heap(int capacity) {
+            this.capacity = capacity;
+            this.rows = new int[capacity];
+            this.distances = new double[capacity];
+        }
+
+        // Distances must be less than this to get in.
+        double bound() {
+            return size < capacity ? Double.POSITIVE_INFINITY : distances[0];
+        }
+
+        void offer(int row, double distance) {
+            if (size < capacity) {
+                int i = size++;
+
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (distances[parent] >= distance) break;
+                    rows[i] = rows[parent];
+                    distances[i] = distances[parent];
+                    i = parent;
+                }
+
+                rows[i] = row;
+                distances[i] = distance;
+            } else if (distance < distances[0]) {
+                int i = 0;
+
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) break;
+                    if (child + 1 < size && distances[child + 1] > distances[child]) child++;
+                    if (distances[child] <= distance) break;
+                    rows[i] = rows[child];
+                    distances[i] = distances[child];
+                    i = child;
+                }
+
+                rows[i] = row;
+                distances[i] = distance;
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.util;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well44497b;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Simulates rows of data in blocks of BLOCK_SIZE rows, the blocks after the first in parallel, in such a way that
+ * the data depend only on the generator passed in and not on the number of threads or the order in which blocks are
+ * run. The first block is simulated in the calling thread from the given generator, drawing from it just as a
+ * sequential simulation would, so that small simulations come out as they always have. A root seed is then drawn from
+ * the generator, and block b is simulated from its own generator, seeded by mixing the root seed with b; nothing is
+ * shared between blocks, so they may be simulated in any order.
+ * <p>
+ * A Block writes the rows it is given into storage that only it writes to--typically a column-major primitive array,
+ * as held by VerticalDoubleDataBox or VerticalIntDataBox--so no locking is needed.
+ *
+ * @author agent
+ */
+public final class RowBlockSimulator {
+
+    /**
+     * The number of rows in a block.
+     */
+    public static final int BLOCK_SIZE = 1000;
+
+    /**
+     * Simulates a range of rows.
+     */
+    public interface Block {
+
+        /**
+         * Simulates rows from (inclusive) to to (exclusive), drawing only from the given generator.
+         */
+        void simulate(int from, int to, RandomGenerator random);
+    }
+
+    private RowBlockSimulator() {
+    }
+
+    /**
+     * Simulates the given number of rows, drawing the first block from RandomUtil, with the blocks after the first
+     * in parallel.
+     */
+    public static void simulate(String name, int numRows, Block block) {
+        simulate(name, numRows, RandomUtil.getInstance().getRandomGenerator(), true, block);
+    }
+
+    /**
+     * Simulates the given number of rows, drawing the first block and the root seed from the given generator. The
+     * blocks after the first are simulated in parallel if parallel is true and in order otherwise, with the same
+     * result either way.
+     *
+     * @param name the name under which the work is metered by SearchExecutor.
+     */
+    public static void simulate(String name, int numRows, RandomGenerator random, boolean parallel,
+                                Block block) {
+        if (numRows < 0) {
+            throw new IllegalArgumentException("Number of rows must be non-negative: " + numRows);
+        }
+
+        block.simulate(0, Math.min(numRows, BLOCK_SIZE), random);
+
+        if (numRows <= BLOCK_SIZE) {
+            return;
+        }
+
+        final long root = random.nextLong();
+
+        if (!parallel) {
+            for (int from = BLOCK_SIZE; from < numRows; from += BLOCK_SIZE) {
+                block.simulate(from, Math.min(numRows, from + BLOCK_SIZE), getGenerator(root, from / BLOCK_SIZE));
+            }
+
+            return;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+
+        for (int from = BLOCK_SIZE; from < numRows; from += BLOCK_SIZE) {
+            final int _from = from;
+            final int _to = Math.min(numRows, from + BLOCK_SIZE);
+
+            tasks.add(() -> {
+                block.simulate(_from, _to, getGenerator(root, _from / BLOCK_SIZE));
+                return null;
+            });
+        }
+
+        SearchExecutor.getInstance().invokeAll(name, tasks);
+    }
+
+    /**
+     * @return the generator for the given block, given the root seed. Seeds for different blocks are far apart
+     * even for nearby root seeds.
+     */
+    public static RandomGenerator getGenerator(long root, int block) {
+        return new Well44497b(mix(root + block * 0x9E3779B97F4A7C15L));
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    // The SplitMix64 finalizer.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
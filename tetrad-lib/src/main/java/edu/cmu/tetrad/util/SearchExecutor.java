@@ -0,0 +1,397 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The executor that parallel searches take their threads from. There is one work-stealing pool
+ * for the whole process, sized by a global parallelism budget (the "tetrad.parallelism" system
+ * property, or the number of processors), so that an algorithm run inside another--FGES inside
+ * a bootstrap, say--forks its subtasks onto the same workers instead of starting a pool of its
+ * own. Work handed over from inside one of this pool's workers is forked and joined in place, so
+ * nesting does not block threads or add any; work handed over from any other thread, including
+ * the workers of other pools, such as the common pool, is run in this pool.
+ * <p>
+ * Work is tagged with an algorithm name, under which task counts, busy time and peak concurrency
+ * are collected; see getMetrics(). Invocations may be given a timeout, after which tasks not yet
+ * started are cancelled and tasks already running see isCanceled() return true.
+ *
+ * @author agent
+ */
+public class SearchExecutor {
+
+    private static final SearchExecutor INSTANCE = new SearchExecutor(defaultParallelism());
+
+    // The pool. Replaced, not shut down, when the parallelism is changed; its idle workers die off.
+    private volatile ForkJoinPool pool;
+
+    // Metrics, by algorithm name.
+    private final ConcurrentMap<String, Metrics> metrics = new ConcurrentHashMap<>();
+
+    // The invocation the current thread is working for, if any.
+    private static final ThreadLocal<Invocation> CURRENT = new ThreadLocal<>();
+
+    private SearchExecutor(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    public static SearchExecutor getInstance() {
+        return INSTANCE;
+    }
+
+    //==============================PUBLIC METHODS=========================//
+
+    /**
+     * @return the global parallelism budget, that is, the number of worker threads.
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Sets the global parallelism budget. Work already running finishes on the old workers.
+     */
+    public synchronized void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+
+        if (parallelism != pool.getParallelism()) {
+            this.pool = new ForkJoinPool(parallelism);
+        }
+    }
+
+    /**
+     * @return the underlying pool, for code that schedules its own ForkJoinTasks.
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Runs the given task to completion and returns its result. From inside a worker of the pool
+     * the task runs in the calling thread, forking its subtasks onto the pool.
+     */
+    public <T> T invoke(String algorithm, ForkJoinTask<T> task) {
+        return run(new Invocation(getMetrics(algorithm)), Collections.singletonList(
+                new TaskCallable<>(task))).get(0);
+    }
+
+    /**
+     * Runs the given tasks in parallel and returns their results, in order. An exception thrown
+     * by any of the tasks is rethrown here, wrapped if checked.
+     */
+    public <T> List<T> invokeAll(String algorithm, Collection<? extends Callable<T>> tasks) {
+        return run(new Invocation(getMetrics(algorithm)), tasks);
+    }
+
+    /**
+     * As invokeAll(algorithm, tasks), but gives up after the given time. Tasks not yet started are
+     * then cancelled, and isCanceled() returns true in the tasks still running.
+     *
+     * @throws TimeoutException if the tasks did not all finish in time.
+     */
+    public <T> List<T> invokeAll(String algorithm, Collection<? extends Callable<T>> tasks,
+                                 long timeout, TimeUnit unit)
+            throws TimeoutException, InterruptedException {
+        Invocation invocation = new Invocation(getMetrics(algorithm));
+        InvokeAllTask<T> root = new InvokeAllTask<>(invocation, tasks);
+        pool.execute(root);
+
+        try {
+            return root.get(timeout, unit);
+        } catch (TimeoutException | InterruptedException e) {
+            invocation.cancel();
+            root.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    /**
+     * Schedules a single task and returns without waiting for it. Cancelling the returned future
+     * cancels the task if it has not started, and otherwise makes isCanceled() return true in it.
+     */
+    public <T> Future<T> submit(String algorithm, Callable<T> task) {
+        MeteredTask<T> metered = new MeteredTask<>(new Invocation(getMetrics(algorithm)), task);
+        ForkJoinPool pool = this.pool;
+
+        if (ForkJoinTask.getPool() == pool) {
+            metered.fork();
+        } else {
+            pool.execute(metered);
+        }
+
+        return metered;
+    }
+
+    /**
+     * @return true if the invocation the current thread is working for has been cancelled or has
+     * timed out, if the thread has been interrupted, or if the TaskManager has been cancelled.
+     * Long-running tasks should check this now and then and return early if it is true.
+     */
+    public static boolean isCanceled() {
+        Invocation invocation = CURRENT.get();
+        return (invocation != null && invocation.isCancelled())
+                || Thread.currentThread().isInterrupted()
+                || TaskManager.getInstance().isCanceled();
+    }
+
+    /**
+     * @return the metrics for the given algorithm, created if necessary.
+     */
+    public Metrics getMetrics(String algorithm) {
+        if (algorithm == null) throw new NullPointerException("Algorithm name not provided.");
+        return metrics.computeIfAbsent(algorithm, Metrics::new);
+    }
+
+    /**
+     * @return a snapshot of the metrics collected so far, by algorithm name.
+     */
+    public Map<String, Metrics> getMetrics() {
+        return new TreeMap<>(metrics);
+    }
+
+    public void resetMetrics() {
+        metrics.clear();
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    private <T> List<T> run(Invocation invocation, Collection<? extends Callable<T>> tasks) {
+        InvokeAllTask<T> root = new InvokeAllTask<>(invocation, tasks);
+        ForkJoinPool pool = this.pool;
+
+        // Only this pool's own workers may fork onto it; any other thread, including a worker of the
+        // common pool or of a pool this one replaced, hands the work over.
+        if (ForkJoinTask.getPool() == pool) {
+            return root.invoke();
+        } else {
+            return pool.invoke(root);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException) return (RuntimeException) e;
+        if (e instanceof Error) throw (Error) e;
+        return new RuntimeException(e);
+    }
+
+    private static int defaultParallelism() {
+        String property = System.getProperty("tetrad.parallelism");
+
+        if (property != null) {
+            try {
+                int parallelism = Integer.parseInt(property.trim());
+                if (parallelism > 0) return parallelism;
+            } catch (NumberFormatException e) {
+                // Fall through to the default.
+            }
+        }
+
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    //==============================CLASSES=========================//
+
+    /**
+     * Thread usage for one algorithm: the number of tasks run and cancelled, the total time
+     * workers spent in them, and the largest number of them that ran at once.
+     */
+    public static final class Metrics {
+        private final String algorithm;
+        private final AtomicLong numTasks = new AtomicLong();
+        private final AtomicLong numCancelled = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger peakActive = new AtomicInteger();
+
+        private Metrics(String algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        public long getNumTasks() {
+            return numTasks.get();
+        }
+
+        public long getNumCancelled() {
+            return numCancelled.get();
+        }
+
+        public long getBusyNanos() {
+            return busyNanos.get();
+        }
+
+        /**
+         * @return the largest number of this algorithm's tasks that were running at one time.
+         */
+        public int getPeakThreads() {
+            return peakActive.get();
+        }
+
+        private void started() {
+            int now = active.incrementAndGet();
+            int peak;
+
+            while (now > (peak = peakActive.get())) {
+                if (peakActive.compareAndSet(peak, now)) break;
+            }
+        }
+
+        private void finished(long nanos) {
+            active.decrementAndGet();
+            numTasks.incrementAndGet();
+            busyNanos.addAndGet(nanos);
+        }
+
+        public String toString() {
+            return algorithm + ": tasks = " + getNumTasks() + ", cancelled = " + getNumCancelled()
+                    + ", busy = " + TimeUnit.NANOSECONDS.toMillis(getBusyNanos()) + " ms"
+                    + ", peak threads = " + getPeakThreads();
+        }
+    }
+
+    /**
+     * One call into the executor, shared by the tasks it runs, for cancellation.
+     */
+    private static final class Invocation {
+        private final Metrics metrics;
+
+        // The invocation this one was made from, if any; cancelling it cancels this one too.
+        private final Invocation enclosing;
+
+        private volatile boolean cancelled = false;
+
+        Invocation(Metrics metrics) {
+            this.metrics = metrics;
+            this.enclosing = CURRENT.get();
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        boolean isCancelled() {
+            return cancelled || (enclosing != null && enclosing.isCancelled());
+        }
+    }
+
+    private static final class TaskCallable<T> implements Callable<T> {
+        private final ForkJoinTask<T> task;
+
+        TaskCallable(ForkJoinTask<T> task) {
+            this.task = task;
+        }
+
+        public T call() {
+            return task.invoke();
+        }
+    }
+
+    /**
+     * Runs one task on behalf of an invocation, recording it in the metrics.
+     */
+    private static final class MeteredTask<T> extends RecursiveTask<T> {
+        private final Invocation invocation;
+        private final Callable<T> task;
+
+        MeteredTask(Invocation invocation, Callable<T> task) {
+            this.invocation = invocation;
+            this.task = task;
+        }
+
+        protected T compute() {
+            Metrics metrics = invocation.metrics;
+
+            if (invocation.isCancelled()) {
+                metrics.numCancelled.incrementAndGet();
+                throw new CancellationException();
+            }
+
+            Invocation enclosing = CURRENT.get();
+            CURRENT.set(invocation);
+            metrics.started();
+            long start = System.nanoTime();
+
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw rethrow(e);
+            } finally {
+                metrics.finished(System.nanoTime() - start);
+
+                if (enclosing == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(enclosing);
+                }
+            }
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            invocation.cancel();
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+
+    /**
+     * Forks one MeteredTask per callable and joins them, in order.
+     */
+    private static final class InvokeAllTask<T> extends RecursiveTask<List<T>> {
+        private final List<MeteredTask<T>> subtasks = new ArrayList<>();
+
+        InvokeAllTask(Invocation invocation, Collection<? extends Callable<T>> tasks) {
+            for (Callable<T> task : tasks) {
+                subtasks.add(new MeteredTask<>(invocation, task));
+            }
+        }
+
+        protected List<T> compute() {
+            invokeAll(subtasks);
+
+            List<T> results = new ArrayList<>(subtasks.size());
+
+            for (MeteredTask<T> subtask : subtasks) {
+                results.add(subtask.join());
+            }
+
+            return results;
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            for (MeteredTask<T> subtask : subtasks) {
+                subtask.cancel(mayInterruptIfRunning);
+            }
+
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+}
@@ -7,18 +7,25 @@ import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import edu.cmu.tetrad.algcomparison.algorithm.Algorithm;
 import edu.cmu.tetrad.algcomparison.algorithm.MultiDataSetAlgorithm;
+import edu.cmu.tetrad.data.BoxDataSet;
+import edu.cmu.tetrad.data.DataBox;
 import edu.cmu.tetrad.data.DataModel;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DataUtils;
 import edu.cmu.tetrad.data.IKnowledge;
 import edu.cmu.tetrad.data.Knowledge2;
+import edu.cmu.tetrad.data.ResampledDataBox;
+import edu.cmu.tetrad.data.VerticalDoubleDataBox;
+import edu.cmu.tetrad.data.VerticalIntDataBox;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.util.Parameters;
+import edu.cmu.tetrad.util.SearchExecutor;
 import edu.pitt.dbmi.algo.resampling.task.GeneralResamplingSearchRunnable;
 
 /**
@@ -47,14 +54,25 @@ public class GeneralResamplingSearch {
 
 	private List<Graph> PAGs = Collections.synchronizedList(new ArrayList<>());
 
-	// private ForkJoinPool pool = null;
+	// Edge counts over the results, updated as each run finishes.
+	private final ResamplingEdgeCounts edgeCounts = new ResamplingEdgeCounts();
 
-	private final ExecutorService pool;
+	// True if resamples are drawn as row weights over the original data rather
+	// than copied out.
+	private boolean rowWeights = false;
+
+	// The data (or data sets) in the form resamples are drawn from in row-weight mode.
+	private DataBox weightedData = null;
+
+	private List<DataBox> weightedDataSets = null;
 
 	private DataSet data = null;
 
 	private List<DataSet> dataSets = null;
 
+	// Held while a parallel run draws its resample.
+	private final Object resampleLock = new Object();
+
 	/**
 	 * Specification of forbidden and required edges.
 	 */
@@ -71,18 +89,24 @@ public class GeneralResamplingSearch {
 
 	public GeneralResamplingSearch(DataSet data) {
 		this.data = data;
-		// pool = ForkJoinPoolInstance.getInstance().getPool();
-		pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
 	}
 
 	public GeneralResamplingSearch(List<DataSet> dataSets) {
 		this.dataSets = dataSets;
-		// pool = ForkJoinPoolInstance.getInstance().getPool();
-		pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
 	}
 
 	public void addPAG(Graph pag) {
 		PAGs.add(pag);
+		edgeCounts.add(pag);
+	}
+
+	/**
+	 * @return the counts of each kind of edge between each pair of nodes over
+	 *         the results of the last search, which are updated as each run
+	 *         finishes.
+	 */
+	public ResamplingEdgeCounts getEdgeCounts() {
+		return edgeCounts;
 	}
 
 	public void setAlgorithm(Algorithm algorithm) {
@@ -111,6 +135,21 @@ public class GeneralResamplingSearch {
 		this.runParallel = runParallel;
 	}
 
+	/**
+	 * Sets whether each resample is drawn as a weight (multiplicity) for each row
+	 * of the original data instead of being copied out. Covariance matrices and
+	 * BDeu counts are then computed from the original data, weighted, which saves
+	 * most of the memory and time of the copies; see ResampledDataBox. Applies to
+	 * continuous and discrete data sets.
+	 * <p>
+	 * A row-weighted resample is a read-only view of the original data; setting a
+	 * value in it throws UnsupportedOperationException. Leave this off for
+	 * algorithms that write to their input data.
+	 */
+	public void setRowWeights(boolean rowWeights) {
+		this.rowWeights = rowWeights;
+	}
+
 	public void setAddOriginalDataset(boolean addOriginalDataset) {
 		this.addOriginalDataset = addOriginalDataset;
 	}
@@ -166,73 +205,25 @@ public class GeneralResamplingSearch {
 	public List<Graph> search() {
 
 		PAGs.clear();
+		edgeCounts.clear();
 		parameters.set("numberResampling", 0); // This needs to be set to zero to not loop indefinitely
 
+		if (rowWeights) {
+			prepareRowWeightedData();
+		}
+
 		if (!this.runParallel) {
 			// Running in the sequential form
 			if (verbose) {
 				out.println("Running Resamplings in Sequential Mode, numberResampling = " + numberResampling);
 			}
 			for (int i1 = 0; i1 < this.numberResampling; i1++) {
-				GeneralResamplingSearchRunnable task = null;
-
-				// Bootstrapping
-				if (resamplingWithReplacement) {
-					if (data != null) {
-						DataSet dataSet = DataUtils.getBootstrapSample(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-						task = new GeneralResamplingSearchRunnable(dataSet, algorithm, parameters, this, verbose);
-					} else {
-						List<DataModel> dataModels = new ArrayList<>();
-						for (DataSet data : dataSets) {
-							DataSet dataSet = DataUtils.getBootstrapSample(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-							dataModels.add(dataSet);
-						}
-						task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-								verbose);
-					}
-				// Sub-sampling
-				} else {
-					if (data != null) {
-						DataSet dataSet = DataUtils.getResamplingDataset(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-						task = new GeneralResamplingSearchRunnable(dataSet, algorithm, parameters, this, verbose);
-					} else {
-						List<DataModel> dataModels = new ArrayList<>();
-						for (DataSet data : dataSets) {
-							DataSet dataSet = DataUtils.getResamplingDataset(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-							dataModels.add(dataSet);
-						}
-						task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-								verbose);
-					}
-				}
-
-				if (initialGraph != null) {
-					task.setInitialGraph(initialGraph);
-				}
-				task.setKnowledge(knowledge);
-				task.run();
+				newTask(true).run();
 			}
 			
 			// Search again with original dataset
 			if (resamplingWithReplacement && addOriginalDataset) {
-				GeneralResamplingSearchRunnable task = null;
-				
-				if (data != null) {
-					task = new GeneralResamplingSearchRunnable(data, algorithm, parameters, this, verbose);
-				} else {
-					List<DataModel> dataModels = new ArrayList<>();
-					for (DataSet data : dataSets) {
-						dataModels.add(data);
-					}
-					task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-							verbose);
-				}
-				
-				if (initialGraph != null) {
-					task.setInitialGraph(initialGraph);
-				}
-				task.setKnowledge(knowledge);
-				task.run();
+				newTask(false).run();
 			}
 			
 		} else {
@@ -241,152 +232,156 @@ public class GeneralResamplingSearch {
 				out.println("Running Resamplings in Parallel Mode, numberResampling = " + numberResampling);
 			}
 
-			for (int i1 = 0; i1 < this.numberResampling; i1++) {
+			// The resampling tasks share the search executor with the searches they run, so a
+			// parallel search inside a resampling forks onto the same threads.
+			List<Future<Object>> futures = new ArrayList<>();
 
-				GeneralResamplingSearchRunnable task = null;
+			// Each run draws its resample when it starts, so only the resamples of the runs
+			// in progress are held at once. RandomUtil is not thread-safe, so the draws
+			// are made one at a time.
+			for (int i1 = 0; i1 < this.numberResampling; i1++) {
+				futures.add(SearchExecutor.getInstance().submit("GeneralResamplingSearch", () -> {
+					GeneralResamplingSearchRunnable task;
 
-				// Bootstrapping
-				if (resamplingWithReplacement) {
-					if (data != null) {
-						DataSet dataSet = DataUtils.getBootstrapSample(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-						task = new GeneralResamplingSearchRunnable(dataSet, algorithm, parameters, this, verbose);
-					} else {
-						List<DataModel> dataModels = new ArrayList<>();
-						for (DataSet data : dataSets) {
-							DataSet dataSet = DataUtils.getBootstrapSample(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-							dataModels.add(dataSet);
-						}
-						task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-								verbose);
+					synchronized (resampleLock) {
+						task = newTask(true);
 					}
-				// Sub-sampling
-				} else {
-					if (data != null) {
-						DataSet dataSet = DataUtils.getResamplingDataset(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-						task = new GeneralResamplingSearchRunnable(dataSet, algorithm, parameters, this, verbose);
-					} else {
-						List<DataModel> dataModels = new ArrayList<>();
-						for (DataSet data : dataSets) {
-							DataSet dataSet = DataUtils.getResamplingDataset(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-							dataModels.add(dataSet);
-						}
-						task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-								verbose);
-					}
-				}
 
-				if (initialGraph != null) {
-					task.setInitialGraph(initialGraph);
-				}
-				task.setKnowledge(knowledge);
-				pool.submit(task);
+					task.run();
+					return null;
+				}));
 			}
 			
 			// Search again with original dataset
 			if (resamplingWithReplacement && addOriginalDataset) {
-				GeneralResamplingSearchRunnable task = null;
-				
-				if (data != null) {
-					task = new GeneralResamplingSearchRunnable(data, algorithm, parameters, this, verbose);
-				} else {
-					List<DataModel> dataModels = new ArrayList<>();
-					for (DataSet data : dataSets) {
-						dataModels.add(data);
-					}
-					task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-							verbose);
-				}
-				
-				if (initialGraph != null) {
-					task.setInitialGraph(initialGraph);
-				}
-				task.setKnowledge(knowledge);
-				pool.submit(task);
+				futures.add(SearchExecutor.getInstance().submit("GeneralResamplingSearch",
+						Executors.callable(newTask(false))));
 			}
 
-			pool.shutdown();
-
-			while (!pool.isTerminated()) {
+			for (Future<Object> future : futures) {
 				try {
-					Thread.sleep(1000);
-					// out.println("Waiting...");
+					future.get();
 				} catch (InterruptedException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
+					for (Future<Object> f : futures) {
+						f.cancel(true);
+					}
+					Thread.currentThread().interrupt();
+					break;
+				} catch (ExecutionException e) {
+					// A failed run would otherwise leave the tallies short without a word, so stop
+					// the other runs and report the failure to the caller.
+					for (Future<Object> f : futures) {
+						f.cancel(true);
+					}
+
+					Throwable cause = e.getCause();
+
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					} else if (cause instanceof Error) {
+						throw (Error) cause;
+					} else {
+						throw new IllegalStateException("A resampling run failed.", cause);
+					}
 				}
 			}
-			// out.println("Is terminated: " + pool.isTerminated());
 		}
 
 		// If the pool is prematurely terminated, do sequentially
 		if (PAGs == null || PAGs.size() == 0) {
 			for (int i1 = 0; i1 < this.numberResampling; i1++) {
-				GeneralResamplingSearchRunnable task = null;
-
-				// Bootstrapping
-				if (resamplingWithReplacement) {
-					if (data != null) {
-						DataSet dataSet = DataUtils.getBootstrapSample(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-						task = new GeneralResamplingSearchRunnable(dataSet, algorithm, parameters, this, verbose);
-					} else {
-						List<DataModel> dataModels = new ArrayList<>();
-						for (DataSet data : dataSets) {
-							DataSet dataSet = DataUtils.getBootstrapSample(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-							dataModels.add(dataSet);
-						}
-						task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-								verbose);
-					}
-				// Sub-sampling
-				} else {
-					if (data != null) {
-						DataSet dataSet = DataUtils.getResamplingDataset(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-						task = new GeneralResamplingSearchRunnable(dataSet, algorithm, parameters, this, verbose);
-					} else {
-						List<DataModel> dataModels = new ArrayList<>();
-						for (DataSet data : dataSets) {
-							DataSet dataSet = DataUtils.getResamplingDataset(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-							dataModels.add(dataSet);
-						}
-						task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-								verbose);
-					}
-				}
-
-				if (initialGraph != null) {
-					task.setInitialGraph(initialGraph);
-				}
-				task.setKnowledge(knowledge);
-				task.run();
+				newTask(true).run();
 			}
 			
 			// Search again with original dataset
 			if (resamplingWithReplacement && addOriginalDataset) {
-				GeneralResamplingSearchRunnable task = null;
-				
-				if (data != null) {
-					task = new GeneralResamplingSearchRunnable(data, algorithm, parameters, this, verbose);
-				} else {
-					List<DataModel> dataModels = new ArrayList<>();
-					for (DataSet data : dataSets) {
-						dataModels.add(data);
-					}
-					task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-							verbose);
-				}
-				
-				if (initialGraph != null) {
-					task.setInitialGraph(initialGraph);
-				}
-				task.setKnowledge(knowledge);
-				task.run();
+				newTask(false).run();
 			}
 			
 		}
 
 		parameters.set("numberResampling", numberResampling); // This needs to be reset back to the previous value
 
+		weightedData = null;
+		weightedDataSets = null;
+
 		return PAGs;
 	}
 
+	/**
+	 * Makes the task for one run, on a resample of the data if resample is true
+	 * and on the data itself otherwise.
+	 */
+	private GeneralResamplingSearchRunnable newTask(boolean resample) {
+		GeneralResamplingSearchRunnable task;
+
+		if (data != null) {
+			DataSet dataSet = resample ? resample(data, weightedData) : data;
+			task = new GeneralResamplingSearchRunnable(dataSet, algorithm, parameters, this, verbose);
+		} else {
+			List<DataModel> dataModels = new ArrayList<>();
+			for (int i = 0; i < dataSets.size(); i++) {
+				DataSet data = dataSets.get(i);
+				dataModels.add(resample ? resample(data, weightedDataSets == null ? null : weightedDataSets.get(i))
+						: data);
+			}
+			task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
+					verbose);
+		}
+
+		if (initialGraph != null) {
+			task.setInitialGraph(initialGraph);
+		}
+		task.setKnowledge(knowledge);
+		return task;
+	}
+
+	// Bootstraps or sub-samples the given data set. In row-weight mode the sample
+	// is a view of the (already prepared) box of the original data. Bootstraps draw
+	// the same rows in both modes for a given seed; sub-samples do not, since
+	// DataUtils.getResamplingDataset does not draw only from RandomUtil.
+	private DataSet resample(DataSet data, DataBox weighted) {
+		int sampleSize = (int) (data.getNumRows() * percentResampleSize / 100.0);
+
+		if (weighted != null) {
+			DataBox box = resamplingWithReplacement ? ResampledDataBox.bootstrap(weighted, sampleSize)
+					: ResampledDataBox.subsample(weighted, sampleSize);
+			return new BoxDataSet(box, data.getVariables());
+		} else if (resamplingWithReplacement) {
+			return DataUtils.getBootstrapSample(data, sampleSize);
+		} else {
+			return DataUtils.getResamplingDataset(data, sampleSize);
+		}
+	}
+
+	// Puts each data set into the column-wise box that weighted covariances and
+	// counts read fastest, once for all of the resamples. Mixed data sets are
+	// resampled by copying, as before.
+	private void prepareRowWeightedData() {
+		if (data != null) {
+			weightedData = columnBox(data);
+		} else {
+			weightedDataSets = new ArrayList<>();
+			for (DataSet data : dataSets) {
+				weightedDataSets.add(columnBox(data));
+			}
+		}
+	}
+
+	private static DataBox columnBox(DataSet data) {
+		if (!(data instanceof BoxDataSet)) {
+			return null;
+		}
+
+		DataBox box = ((BoxDataSet) data).getDataBox();
+
+		if (data.isContinuous()) {
+			return box instanceof VerticalDoubleDataBox ? box : new VerticalDoubleDataBox(box);
+		} else if (data.isDiscrete()) {
+			return box instanceof VerticalIntDataBox ? box : new VerticalIntDataBox(box);
+		} else {
+			return null;
+		}
+	}
+
 }
@@ -14,7 +14,6 @@ import edu.cmu.tetrad.util.RandomUtil;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -103,6 +102,14 @@ public class GeneralResamplingTest {
 		this.resamplingSearch.setNumberResampling(numberResampling);
 	}
 
+	/**
+	 * Sets whether resamples are drawn as row weights over the data instead of
+	 * being copied out; see GeneralResamplingSearch.setRowWeights.
+	 */
+	public void setRowWeights(boolean rowWeights) {
+		this.resamplingSearch.setRowWeights(rowWeights);
+	}
+
 	/**
 	 * Sets the background knowledge.
 	 *
@@ -357,30 +364,13 @@ public class GeneralResamplingTest {
 	}
 
 	private List<EdgeTypeProbability> getProbability(Node node1, Node node2){
-		Map<String, Integer> edgeDist = new HashMap<>();
-		int no_edge_num = 0;
-		for (Graph g : PAGs) {
-			Edge e = g.getEdge(node1, node2);
-			if(e != null) {				
-				String edgeString = e.toString();
-				if(e.getEndpoint1() == e.getEndpoint2() && node1.compareTo(e.getNode1()) != 0) {
-					Edge edge = new Edge(node1, node2, e.getEndpoint1(), e.getEndpoint2());
-					for(Property property : e.getProperties()) {
-						edge.addProperty(property);
-					}
-					edgeString = edge.toString();
-				}
-				Integer num_edge = edgeDist.get(edgeString);
-				if(num_edge == null) {
-					num_edge = 0;
-				}
-				num_edge = num_edge.intValue() + 1;
-				edgeDist.put(edgeString, num_edge);	
-			}else {
-				no_edge_num++;
-			}
+		ResamplingEdgeCounts edgeCounts = resamplingSearch.getEdgeCounts();
+		Map<String, Integer> edgeDist = edgeCounts.getEdgeCounts(node1, node2);
+		int n = edgeCounts.getNumGraphs();
+		int no_edge_num = n;
+		for (int num_edge : edgeDist.values()) {
+			no_edge_num -= num_edge;
 		}
-		int n = PAGs.size();
 		// Normalization
 		List<EdgeTypeProbability> edgeTypeProbabilities = edgeDist.size()==0?null:new ArrayList<>();
 		for(String edgeString : edgeDist.keySet()) {
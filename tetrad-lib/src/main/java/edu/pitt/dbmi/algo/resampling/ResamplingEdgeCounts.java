@@ -0,0 +1,94 @@
+package edu.pitt.dbmi.algo.resampling;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.cmu.tetrad.graph.Edge;
+import edu.cmu.tetrad.graph.Edge.Property;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.graph.OrderedPair;
+
+/**
+ * Tallies, for each pair of nodes, how many resampling results had each kind of
+ * edge between them. Results are added as the resampling runs finish, so the
+ * edge ensemble (see ResamplingEdgeEnsemble) can be formed without a pass over
+ * all of the result graphs at the end.
+ * <p>
+ * Edges are recorded by their string form, as in GeneralResamplingTest; edges
+ * with the same endpoint at both ends are written with their nodes in name
+ * order, so that both orientations of such an edge count as one kind.
+ *
+ * @author agent
+ */
+public class ResamplingEdgeCounts {
+
+	private final Map<OrderedPair<String>, Map<String, Integer>> counts = new HashMap<>();
+
+	private int numGraphs = 0;
+
+	/**
+	 * Adds the edges of one resampling result.
+	 */
+	public synchronized void add(Graph graph) {
+		numGraphs++;
+
+		for (Edge e : graph.getEdges()) {
+			Node n1 = e.getNode1();
+			Node n2 = e.getNode2();
+			String edgeString = e.toString();
+
+			if (n1.getName().compareTo(n2.getName()) > 0) {
+				if (e.getEndpoint1() == e.getEndpoint2()) {
+					Edge edge = new Edge(n2, n1, e.getEndpoint2(), e.getEndpoint1());
+					for (Property property : e.getProperties()) {
+						edge.addProperty(property);
+					}
+					edgeString = edge.toString();
+				}
+
+				n1 = e.getNode2();
+				n2 = e.getNode1();
+			}
+
+			OrderedPair<String> pair = new OrderedPair<>(n1.getName(), n2.getName());
+			Map<String, Integer> edgeDist = counts.get(pair);
+
+			if (edgeDist == null) {
+				edgeDist = new HashMap<>();
+				counts.put(pair, edgeDist);
+			}
+
+			Integer count = edgeDist.get(edgeString);
+			edgeDist.put(edgeString, count == null ? 1 : count + 1);
+		}
+	}
+
+	/**
+	 * @return the number of results added.
+	 */
+	public synchronized int getNumGraphs() {
+		return numGraphs;
+	}
+
+	/**
+	 * @return a map from the string form of each kind of edge found between the
+	 *         two nodes to the number of results that had it.
+	 */
+	public synchronized Map<String, Integer> getEdgeCounts(Node node1, Node node2) {
+		String name1 = node1.getName();
+		String name2 = node2.getName();
+
+		OrderedPair<String> pair = name1.compareTo(name2) <= 0 ? new OrderedPair<>(name1, name2)
+				: new OrderedPair<>(name2, name1);
+
+		Map<String, Integer> edgeDist = counts.get(pair);
+		return edgeDist == null ? new HashMap<>() : new HashMap<>(edgeDist);
+	}
+
+	public synchronized void clear() {
+		counts.clear();
+		numGraphs = 0;
+	}
+
+}
@@ -0,0 +1,159 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.bayes.BayesPm;
+import edu.cmu.tetrad.bayes.MlBayesIm;
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.BDeuScore;
+import edu.cmu.tetrad.search.BicScore;
+import edu.cmu.tetrad.search.IndTestGSquare;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks counts from AdTree against counting the data.
+ *
+ * @author agent
+ */
+public class TestAdTree {
+
+    @Test
+    public void testCount() {
+        DataSet data = simulate(2000);
+        AdTree tree = new AdTree(data, 4);
+
+        int[][] queries = {{0}, {3, 1}, {0, 2, 5}, {7, 6, 5, 4}, {1, 3, 5, 7, 0}};
+
+        for (int[] variables : queries) {
+            int[] values = new int[variables.length];
+
+            for (int i = 0; i < values.length; i++) {
+                values[i] = i % 2;
+            }
+
+            int expected = 0;
+
+            ROW:
+            for (int i = 0; i < data.getNumRows(); i++) {
+                for (int v = 0; v < variables.length; v++) {
+                    if (data.getInt(i, variables[v]) != values[v]) continue ROW;
+                }
+
+                expected++;
+            }
+
+            assertEquals(expected, tree.count(variables, values));
+        }
+    }
+
+    @Test
+    public void testCells() {
+        DataSet data = simulate(1000);
+        AdTree tree = new AdTree(data);
+
+        int[] variables = {4, 1, 6};
+        AdTree.Cells cells = tree.getCells(variables);
+        int total = 0;
+
+        for (int c = 0; c < cells.getNumCells(); c++) {
+            int[] values = new int[variables.length];
+
+            for (int i = 0; i < variables.length; i++) {
+                values[i] = cells.getValue(c, i);
+            }
+
+            assertEquals(tree.count(variables, values), cells.getCount(c));
+            total += cells.getCount(c);
+        }
+
+        assertEquals(1000, total);
+    }
+
+    @Test
+    public void testScoresAndTests() {
+        DataSet data = simulate(3000);
+        AdTree tree = new AdTree(data);
+
+        BDeuScore bdeu = new BDeuScore(data);
+        BDeuScore bdeuTree = new BDeuScore(data);
+        bdeuTree.setAdTree(tree);
+
+        BicScore bic = new BicScore(data);
+        BicScore bicTree = new BicScore(data);
+        bicTree.setAdTree(tree);
+
+        for (int i = 0; i < 8; i++) {
+            int[] parents = {(i + 1) % 8, (i + 4) % 8, (i + 6) % 8};
+            assertEquals(bdeu.localScore(i, parents), bdeuTree.localScore(i, parents), 0.0);
+            assertEquals(bic.localScore(i, parents), bicTree.localScore(i, parents), 0.0);
+        }
+
+        IndTestGSquare test = new IndTestGSquare(data, 0.05);
+        IndTestGSquare testTree = new IndTestGSquare(data, 0.05);
+        testTree.setAdTree(tree);
+
+        List<Node> nodes = data.getVariables();
+
+        for (int i = 0; i < 7; i++) {
+            List<Node> z = Collections.singletonList(nodes.get((i + 3) % 8));
+            test.isIndependent(nodes.get(i), nodes.get(i + 1), z);
+            testTree.isIndependent(nodes.get(i), nodes.get(i + 1), z);
+            assertEquals(test.getPValue(), testTree.getPValue(), 0.0);
+        }
+    }
+
+    @Test
+    public void testResampled() {
+        DataSet data = simulate(1000);
+        RandomUtil.getInstance().setSeed(4829L);
+
+        DataSet resample = new BoxDataSet(ResampledDataBox.bootstrap(((BoxDataSet) data).getDataBox(), 1000),
+                data.getVariables());
+        DataSet copied = new BoxDataSet(((BoxDataSet) resample).getDataBox().copy(), data.getVariables());
+
+        BDeuScore direct = new BDeuScore(copied);
+        BDeuScore weighted = new BDeuScore(resample);
+        weighted.setAdTree(new AdTree(resample));
+
+        for (int i = 0; i < 8; i++) {
+            int[] parents = {(i + 2) % 8, (i + 5) % 8};
+            assertEquals(direct.localScore(i, parents), weighted.localScore(i, parents), 1e-8);
+        }
+    }
+
+    private DataSet simulate(int sampleSize) {
+        RandomUtil.getInstance().setSeed(583838L);
+        Graph dag = GraphUtils.randomGraph(8, 0, 10, 30, 15, 15, false);
+        MlBayesIm im = new MlBayesIm(new BayesPm(dag, 2, 3), MlBayesIm.RANDOM);
+        DataSet data = im.simulateData(sampleSize, false);
+        return new BoxDataSet(new VerticalIntDataBox(((BoxDataSet) data).getDataBox()), data.getVariables());
+    }
+}
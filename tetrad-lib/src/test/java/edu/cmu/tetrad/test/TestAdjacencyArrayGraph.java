@@ -0,0 +1,182 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.search.MeekRules;
+import edu.cmu.tetrad.search.SearchGraphUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the functions of AdjacencyArrayGraph through the Graph interface,
+ * against EdgeListGraph.
+ *
+ * @author agent
+ */
+public final class TestAdjacencyArrayGraph {
+    private Node x1, x2, x3, x4, x5;
+    private Graph graph;
+
+    public void setUp() {
+        x1 = new GraphNode("x1");
+        x2 = new GraphNode("x2");
+        x3 = new GraphNode("x3");
+        x4 = new GraphNode("x4");
+        x5 = new GraphNode("x5");
+        graph = new AdjacencyArrayGraph();
+    }
+
+    @Test
+    public void testSequence1() {
+        setUp();
+
+        graph.addNode(x1);
+        graph.addNode(x2);
+        graph.addNode(x3);
+        graph.addNode(x4);
+        graph.addNode(x5);
+
+        graph.addDirectedEdge(x1, x2);
+        graph.addDirectedEdge(x2, x3);
+        graph.addDirectedEdge(x3, x4);
+
+        assertEquals(Collections.singletonList(x2), graph.getChildren(x1));
+        assertEquals(Collections.singletonList(x3), graph.getParents(x4));
+
+        assertTrue(graph.isAdjacentTo(x2, x1));
+        assertFalse(graph.isAdjacentTo(x1, x3));
+        assertTrue(graph.isAncestorOf(x1, x4));
+        assertFalse(graph.isAncestorOf(x4, x1));
+
+        assertTrue(graph.isDConnectedTo(x1, x3, Collections.<Node>emptyList()));
+        assertFalse(graph.isDConnectedTo(x1, x3, Collections.singletonList(x2)));
+
+        graph.removeNode(x2);
+
+        assertEquals(4, graph.getNumNodes());
+        assertEquals(1, graph.getNumEdges());
+        assertTrue(graph.getEdges(x1).isEmpty());
+        assertFalse(graph.existsDirectedCycle());
+
+        Graph graph2 = new AdjacencyArrayGraph(graph);
+        assertEquals(graph, graph2);
+        assertEquals(graph, new EdgeListGraph(graph));
+    }
+
+    @Test
+    public void testSequence2() {
+        setUp();
+
+        graph.addNode(x1);
+        graph.addNode(x2);
+        graph.addNode(x3);
+        graph.addNode(x4);
+        graph.addNode(x5);
+
+        assertFalse(graph.existsDirectedCycle());
+
+        assertTrue(graph.addDirectedEdge(x1, x3));
+        assertTrue(graph.addDirectedEdge(x1, x3));
+
+        // Only one edge may connect a pair of nodes.
+        assertFalse(graph.addDirectedEdge(x3, x1));
+        assertEquals(1, graph.getNumEdges());
+
+        graph.addDirectedEdge(x3, x4);
+        graph.addDirectedEdge(x4, x1);
+
+        assertTrue(graph.existsDirectedCycle());
+
+        graph.setEndpoint(x3, x1, Endpoint.TAIL);
+        graph.setEndpoint(x1, x3, Endpoint.ARROW);
+        assertEquals(Edges.directedEdge(x1, x3), graph.getEdge(x3, x1));
+
+        graph.removeEdge(x4, x1);
+        assertFalse(graph.existsDirectedCycle());
+        assertEquals(2, graph.getNumEdges());
+
+        graph.setEndpoint(x4, x3, Endpoint.ARROW);
+        assertTrue(Edges.isBidirectedEdge(graph.getEdge(x3, x4)));
+    }
+
+    @Test
+    public void testAgainstEdgeListGraph() {
+        RandomUtil.getInstance().setSeed(2939483L);
+
+        for (int i = 0; i < 10; i++) {
+            Graph dag = GraphUtils.randomGraph(40, 0, 60, 10, 10, 10, false);
+            Graph graph = new AdjacencyArrayGraph(dag);
+            Graph edgeList = new EdgeListGraph(dag);
+
+            assertEquals(edgeList, graph);
+
+            for (Node x : dag.getNodes()) {
+                Node _x = graph.getNode(x.getName());
+
+                assertEquals(new HashSet<>(edgeList.getParents(x)), new HashSet<>(graph.getParents(_x)));
+                assertEquals(new HashSet<>(edgeList.getChildren(x)), new HashSet<>(graph.getChildren(_x)));
+                assertEquals(new HashSet<>(edgeList.getAdjacentNodes(x)), new HashSet<>(graph.getAdjacentNodes(_x)));
+                assertEquals(new HashSet<>(edgeList.getAncestors(Collections.singletonList(x))),
+                        new HashSet<>(graph.getAncestors(Collections.singletonList(_x))));
+                assertEquals(new HashSet<>(edgeList.getDescendants(Collections.singletonList(x))),
+                        new HashSet<>(graph.getDescendants(Collections.singletonList(_x))));
+            }
+
+            List<Node> nodes = dag.getNodes();
+
+            for (int j = 0; j < 50; j++) {
+                Node x = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+                Node y = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+
+                assertEquals(edgeList.isAncestorOf(x, y), graph.isAncestorOf(x, y));
+                assertEquals(edgeList.existsDirectedPathFromTo(x, y), graph.existsDirectedPathFromTo(x, y));
+                assertEquals(edgeList.existsTrek(x, y), graph.existsTrek(x, y));
+                assertEquals(edgeList.isDSeparatedFrom(x, y, Collections.<Node>emptyList()),
+                        graph.isDSeparatedFrom(x, y, Collections.<Node>emptyList()));
+            }
+        }
+    }
+
+    @Test
+    public void testMeekRules() {
+        RandomUtil.getInstance().setSeed(4938485L);
+
+        for (int i = 0; i < 10; i++) {
+            Graph dag = GraphUtils.randomGraph(50, 0, 80, 10, 10, 10, false);
+
+            Graph graph = new AdjacencyArrayGraph(dag);
+            SearchGraphUtils.basicPattern(graph, false);
+            new MeekRules().orientImplied(graph);
+
+            assertEquals(SearchGraphUtils.patternForDag(dag), graph);
+        }
+    }
+}
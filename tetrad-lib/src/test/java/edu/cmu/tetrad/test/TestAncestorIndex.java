@@ -0,0 +1,156 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that ancestor questions answered from the ancestor index agree with a search of the graph as edges are
+ * added, removed and reoriented.
+ *
+ * @author agent
+ */
+public class TestAncestorIndex {
+
+    @Test
+    public void testEdgeListGraph() {
+        RandomUtil random = RandomUtil.getInstance();
+        random.setSeed(4829384L);
+
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 20; i++) {
+            nodes.add(new GraphNode("X" + (i + 1)));
+        }
+
+        Graph graph = new EdgeListGraph(nodes);
+
+        for (int step = 0; step < 2000; step++) {
+            Node a = nodes.get(random.nextInt(nodes.size()));
+            Node b = nodes.get(random.nextInt(nodes.size()));
+
+            if (a == b) {
+                continue;
+            }
+
+            double r = random.nextDouble();
+
+            if (r < 0.4) {
+                if (!graph.isAdjacentTo(a, b)) {
+                    graph.addDirectedEdge(a, b);
+                }
+            } else if (r < 0.5) {
+                if (!graph.isAdjacentTo(a, b)) {
+                    graph.addUndirectedEdge(a, b);
+                }
+            } else if (r < 0.6) {
+                if (graph.isAdjacentTo(a, b)) {
+                    graph.setEndpoint(a, b, Endpoint.ARROW);
+                    graph.setEndpoint(b, a, Endpoint.TAIL);
+                }
+            } else if (r < 0.8) {
+                graph.removeEdges(a, b);
+            } else {
+                checkAgainstSearch(graph, nodes);
+            }
+        }
+    }
+
+    @Test
+    public void testDag() {
+        RandomUtil random = RandomUtil.getInstance();
+        random.setSeed(2938221L);
+
+        Dag dag = new Dag(GraphUtils.randomGraph(20, 0, 30, 30, 15, 15, false));
+        List<Node> nodes = dag.getNodes();
+
+        for (int step = 0; step < 1000; step++) {
+            Node a = nodes.get(random.nextInt(nodes.size()));
+            Node b = nodes.get(random.nextInt(nodes.size()));
+
+            if (a == b) {
+                continue;
+            }
+
+            if (random.nextDouble() < 0.6) {
+                if (!dag.isAdjacentTo(a, b)) {
+                    boolean cycle = dag.isAncestorOf(b, a);
+                    assertEquals(!cycle, dag.addDirectedEdge(a, b));
+                }
+            } else {
+                dag.removeEdges(a, b);
+            }
+
+            assertFalse(dag.existsDirectedCycle());
+        }
+
+        checkAgainstSearch(dag, nodes);
+    }
+
+    @Test
+    public void testCycle() {
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            nodes.add(new GraphNode("X" + (i + 1)));
+        }
+
+        Graph graph = new EdgeListGraph(nodes);
+        graph.addDirectedEdge(nodes.get(0), nodes.get(1));
+        graph.addDirectedEdge(nodes.get(1), nodes.get(2));
+
+        assertFalse(graph.existsDirectedPathFromTo(nodes.get(0), nodes.get(0)));
+        assertTrue(graph.isAncestorOf(nodes.get(0), nodes.get(2)));
+
+        graph.addDirectedEdge(nodes.get(2), nodes.get(0));
+        assertTrue(graph.existsDirectedPathFromTo(nodes.get(0), nodes.get(0)));
+        assertTrue(graph.isAncestorOf(nodes.get(2), nodes.get(1)));
+
+        graph.removeEdge(nodes.get(0), nodes.get(1));
+        assertFalse(graph.existsDirectedPathFromTo(nodes.get(0), nodes.get(0)));
+        assertFalse(graph.isAncestorOf(nodes.get(2), nodes.get(1)));
+        assertTrue(graph.isDescendentOf(nodes.get(0), nodes.get(1)));
+    }
+
+    private void checkAgainstSearch(Graph graph, List<Node> nodes) {
+        for (Node b : nodes) {
+            List<Node> ancestors = graph.getAncestors(Collections.singletonList(b));
+
+            for (Node a : nodes) {
+                boolean expected = ancestors.contains(a);
+                assertEquals(expected, graph.isAncestorOf(a, b));
+                assertEquals(expected, graph.isDescendentOf(b, a));
+                assertEquals(a != b && expected, graph.existsDirectedPathFromTo(a, b));
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.bayes.*;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.SearchExecutor;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests likelihood weighting and Gibbs sampling in ApproximateUpdater against exact updating.
+ *
+ * @author agent
+ */
+public class TestApproximateUpdater {
+
+    @Test
+    public void testLikelihoodWeighting() {
+        checkAgainstExact(ApproximateUpdater.LIKELIHOOD_WEIGHTING);
+    }
+
+    @Test
+    public void testGibbsSampling() {
+        checkAgainstExact(ApproximateUpdater.GIBBS_SAMPLING);
+    }
+
+    @Test
+    public void testManipulatedNode() {
+        RandomUtil.getInstance().setSeed(392949L);
+        BayesIm im = randomIm();
+
+        // A manipulated node with none of its categories ruled out, and with parents to be cut off.
+        int manipulated = 0;
+        while (im.getNumParents(manipulated) == 0) manipulated++;
+
+        Evidence evidence = Evidence.tautology(im);
+        evidence.setManipulated(manipulated, true);
+        evidence.getProposition().setCategory(5, 0);
+
+        checkAgainstExact(im, evidence, ApproximateUpdater.LIKELIHOOD_WEIGHTING);
+        checkAgainstExact(im, evidence, ApproximateUpdater.GIBBS_SAMPLING);
+    }
+
+    @Test
+    public void testIndependentOfThreads() {
+        RandomUtil.getInstance().setSeed(392949L);
+        BayesIm im = randomIm();
+        Evidence evidence = Evidence.tautology(im);
+        evidence.getProposition().setCategory(0, 1);
+
+        double[][] marginals1 = marginals(im, evidence, ApproximateUpdater.GIBBS_SAMPLING);
+
+        int parallelism = SearchExecutor.getInstance().getParallelism();
+        SearchExecutor.getInstance().setParallelism(1);
+
+        try {
+            double[][] marginals2 = marginals(im, evidence, ApproximateUpdater.GIBBS_SAMPLING);
+
+            for (int i = 0; i < marginals1.length; i++) {
+                for (int j = 0; j < marginals1[i].length; j++) {
+                    assertEquals(marginals1[i][j], marginals2[i][j], 0.0);
+                }
+            }
+        } finally {
+            SearchExecutor.getInstance().setParallelism(parallelism);
+        }
+    }
+
+    private void checkAgainstExact(int method) {
+        RandomUtil.getInstance().setSeed(392949L);
+        BayesIm im = randomIm();
+
+        Evidence evidence = Evidence.tautology(im);
+        evidence.getProposition().setCategory(0, 1);
+        evidence.getProposition().setCategory(5, 0);
+
+        checkAgainstExact(im, evidence, method);
+    }
+
+    private void checkAgainstExact(BayesIm im, Evidence evidence, int method) {
+        ApproximateUpdater updater = new ApproximateUpdater(im, evidence, method);
+        updater.setSeed(3883L);
+        updater.setTolerance(0.01);
+        updater.setMaxTime(0);
+
+        JunctionTreeUpdater exact = new JunctionTreeUpdater(im, evidence);
+
+        for (int i = 0; i < im.getNumNodes(); i++) {
+            for (int j = 0; j < im.getNumColumns(i); j++) {
+                assertEquals(exact.getMarginal(i, j), updater.getMarginal(i, j), 0.03);
+            }
+        }
+
+        assertTrue(updater.isConverged());
+        assertTrue(updater.getError() <= 0.01);
+    }
+
+    private double[][] marginals(BayesIm im, Evidence evidence, int method) {
+        ApproximateUpdater updater = new ApproximateUpdater(im, evidence, method);
+        updater.setSeed(3883L);
+        updater.setMaxTime(0);
+
+        double[][] marginals = new double[im.getNumNodes()][];
+
+        for (int i = 0; i < im.getNumNodes(); i++) {
+            marginals[i] = updater.calculateUpdatedMarginals(i);
+        }
+
+        return marginals;
+    }
+
+    private BayesIm randomIm() {
+        Graph graph = GraphUtils.randomGraph(10, 0, 14, 30, 15, 15, false);
+        return new MlBayesIm(new BayesPm(graph, 2, 3), MlBayesIm.RANDOM);
+    }
+}
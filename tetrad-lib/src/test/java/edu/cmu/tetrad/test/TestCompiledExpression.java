@@ -0,0 +1,170 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.calculator.expression.CompiledExpression;
+import edu.cmu.tetrad.calculator.expression.Context;
+import edu.cmu.tetrad.calculator.expression.Expression;
+import edu.cmu.tetrad.calculator.parser.ExpressionParser;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.sem.GeneralizedSemIm;
+import edu.cmu.tetrad.sem.GeneralizedSemPm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.apache.commons.math3.random.Well44497b;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks compiled expressions against the expressions they were compiled from.
+ *
+ * @author agent
+ */
+public class TestCompiledExpression {
+
+    private static final String[] FORMULAS = {
+            "a * X1 + b * X2 + X3",
+            "tanh(a * X1) + cos(X2 - b) ^ 2",
+            "exp(-X1 * X1 / 2) / sqrt(2 * PI)",
+            "max(X1, X2, X3) - min(X1, b)",
+            "IF(X1 > X2, X1, X2) + IF(X2 >= X3, 1, 0)",
+            "IF(X1 < 0 AND X2 <= 0, logistic(X3), abs(X3))",
+            "pow(abs(X1), 1.5) * signum(X1) + ln(1 + X2 * X2)",
+    };
+
+    @Test
+    public void testMatchesExpression() throws ParseException {
+        RandomUtil.getInstance().setSeed(49382L);
+
+        ExpressionParser parser = new ExpressionParser();
+        Map<String, Integer> slots = new HashMap<>();
+        slots.put("X1", 0);
+        slots.put("X2", 1);
+        slots.put("X3", 2);
+
+        Map<String, Double> parameters = new HashMap<>();
+        parameters.put("a", 0.7);
+        parameters.put("b", -1.3);
+
+        int n = 100;
+        double[][] columns = new double[3][n];
+
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < 3; k++) {
+                columns[k][i] = RandomUtil.getInstance().nextNormal(0, 2);
+            }
+        }
+
+        for (String formula : FORMULAS) {
+            Expression expression = parser.parseExpression(formula);
+            CompiledExpression compiled = CompiledExpression.compile(expression, slots, parameters);
+            assertTrue(compiled.isDeterministic());
+
+            double[] out = new double[n];
+            compiled.evaluate(columns, n, out, null);
+
+            for (int i = 0; i < n; i++) {
+                final int row = i;
+                double[] values = {columns[0][i], columns[1][i], columns[2][i]};
+
+                Context context = var -> {
+                    Double value = parameters.get(var);
+                    return value != null ? value : columns[slots.get(var)][row];
+                };
+
+                double expected = expression.evaluate(context);
+                assertEquals(formula, expected, compiled.evaluate(values, null), 0.0);
+                assertEquals(formula, expected, out[i], 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testConstantFolding() throws ParseException {
+        ExpressionParser parser = new ExpressionParser();
+        Map<String, Double> parameters = new HashMap<>();
+        parameters.put("a", 2.0);
+
+        CompiledExpression compiled = CompiledExpression.compile(
+                parser.parseExpression("a * 3 + exp(a) - cos(PI)"), new HashMap<>(), parameters);
+
+        assertFalse(compiled.usesVariables());
+        assertEquals(2.0 * 3 + Math.exp(2.0) - Math.cos(Math.PI), compiled.evaluate(new double[0], null), 1e-12);
+    }
+
+    @Test
+    public void testDistributions() throws ParseException {
+        ExpressionParser parser = new ExpressionParser();
+        Map<String, Integer> slots = new HashMap<>();
+        slots.put("X1", 0);
+
+        CompiledExpression compiled = CompiledExpression.compile(
+                parser.parseExpression("X1 + N(0, 2) * U(0, 1) + Beta(2, 5)"), slots, new HashMap<>());
+
+        assertFalse(compiled.isDeterministic());
+        assertTrue(compiled.isSelfContained());
+
+        // Draws come from the generator given, so the same seed gives the same values.
+        double[] values = {1.0};
+        Well44497b random1 = new Well44497b(2039L);
+        Well44497b random2 = new Well44497b(2039L);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(compiled.evaluate(values, random1), compiled.evaluate(values, random2), 0.0);
+        }
+    }
+
+    @Test
+    public void testSimulationReproducible() {
+        RandomUtil.getInstance().setSeed(5838201L);
+
+        Graph graph = GraphUtils.randomGraph(10, 0, 15, 30, 15, 15, false);
+        GeneralizedSemPm pm = new GeneralizedSemPm(new SemPm(graph));
+        GeneralizedSemIm im = new GeneralizedSemIm(pm);
+
+        DataSet data1 = im.simulateData(2500, 4838L, false);
+        DataSet data2 = im.simulateData(2500, 4838L, false);
+        DataSet data3 = im.simulateData(1000, 4838L, false);
+
+        assertEquals(2500, data1.getNumRows());
+
+        for (int j = 0; j < data1.getNumColumns(); j++) {
+            for (int i = 0; i < data1.getNumRows(); i++) {
+                assertEquals(data1.getDouble(i, j), data2.getDouble(i, j), 0.0);
+            }
+
+            // The first block is drawn from RandomUtil, however many rows there are.
+            for (int i = 0; i < data3.getNumRows(); i++) {
+                assertEquals(data1.getDouble(i, j), data3.getDouble(i, j), 0.0);
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.bayes.*;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests CompiledJunctionTree against the row summing updater.
+ *
+ * @author agent
+ */
+public class TestCompiledJunctionTree {
+
+    @Test
+    public void testMarginals() {
+        RandomUtil.getInstance().setSeed(392949L);
+
+        for (int trial = 0; trial < 5; trial++) {
+            BayesIm im = randomIm();
+            CompiledJunctionTree tree = new CompiledJunctionTree(im);
+
+            // Evidence is added a node at a time, so that later queries are answered incrementally.
+            Evidence evidence = Evidence.tautology(im);
+
+            for (int step = 0; step < 3; step++) {
+                int node = RandomUtil.getInstance().nextInt(im.getNumNodes());
+                int value = RandomUtil.getInstance().nextInt(im.getNumColumns(node));
+
+                evidence.getProposition().setCategory(node, value);
+                tree.setEvidence(node, value);
+
+                RowSummingExactUpdater updater = new RowSummingExactUpdater(im, evidence);
+
+                for (int i = 0; i < im.getNumNodes(); i++) {
+                    for (int j = 0; j < im.getNumColumns(i); j++) {
+                        assertEquals(updater.getMarginal(i, j), tree.getMarginal(i, j), 1e-9);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testJunctionTreeUpdater() {
+        RandomUtil.getInstance().setSeed(392949L);
+        BayesIm im = randomIm();
+
+        Evidence evidence = Evidence.tautology(im);
+        evidence.getProposition().setCategory(0, 1);
+        evidence.getProposition().removeCategory(3, 0);
+
+        ManipulatingBayesUpdater updater1 = new RowSummingExactUpdater(im, evidence);
+        ManipulatingBayesUpdater updater2 = new JunctionTreeUpdater(im, evidence);
+
+        for (int i = 0; i < im.getNumNodes(); i++) {
+            for (int j = 0; j < im.getNumColumns(i); j++) {
+                assertEquals(updater1.getMarginal(i, j), updater2.getMarginal(i, j), 1e-9);
+            }
+        }
+
+        int[] variables = {1, 2};
+        int[] values = {0, 1};
+        assertEquals(updater1.getJointMarginal(variables, values), updater2.getJointMarginal(variables, values),
+                1e-9);
+    }
+
+    @Test
+    public void testBatch() {
+        RandomUtil.getInstance().setSeed(392949L);
+        BayesIm im = randomIm();
+        CompiledJunctionTree tree = new CompiledJunctionTree(im);
+
+        int[][] cases = new int[500][im.getNumNodes()];
+
+        for (int[] _case : cases) {
+            for (int i = 0; i < _case.length; i++) {
+                _case[i] = RandomUtil.getInstance().nextDouble() < 0.5 ? -1
+                        : RandomUtil.getInstance().nextInt(im.getNumColumns(i));
+            }
+        }
+
+        double[] logProbabilities = tree.getLogProbabilities(cases);
+        double[][] marginals = tree.getMarginals(cases, 2);
+
+        for (int k = 0; k < cases.length; k++) {
+            for (int i = 0; i < im.getNumNodes(); i++) {
+                tree.setEvidence(i, cases[k][i]);
+            }
+
+            assertEquals(tree.getLogProbabilityOfEvidence(), logProbabilities[k], 1e-9);
+
+            double[] _marginals = tree.getMarginals(2);
+
+            for (int j = 0; j < _marginals.length; j++) {
+                assertEquals(_marginals[j], marginals[k][j], 1e-9);
+            }
+        }
+    }
+
+    private BayesIm randomIm() {
+        Graph graph = GraphUtils.randomGraph(10, 0, 14, 30, 15, 15, false);
+        return new MlBayesIm(new BayesPm(graph, 2, 3), MlBayesIm.RANDOM);
+    }
+}
@@ -0,0 +1,255 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.BDeuScore;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.apache.commons.math3.special.Gamma;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the counts of ContingencyCounts against counting row by row.
+ *
+ * @author agent
+ */
+public class TestContingencyCounts {
+
+    @Test
+    public void testDense() {
+        DataSet data = simulate(2000, 6, 3);
+        ContingencyCounts counts = new ContingencyCounts(data);
+
+        assertCounts(data, counts, 0, new int[0]);
+        assertCounts(data, counts, 0, new int[]{1});
+        assertCounts(data, counts, 0, new int[]{1, 2});
+        assertCounts(data, counts, 3, new int[]{1, 2});
+        assertCounts(data, counts, 5, new int[]{4, 2, 1, 0});
+
+        assertTrue(counts.count(0, new int[]{1, 2}).isDense());
+        assertEquals(9, counts.count(0, new int[]{1, 2}).getNumRows());
+    }
+
+    @Test
+    public void testSparse() {
+        DataSet data = simulate(1000, 7, 8);
+        ContingencyCounts counts = new ContingencyCounts(data);
+
+        int[] parents = {1, 2, 3, 4, 5, 6};
+        ContingencyCounts.Table table = counts.count(0, parents);
+
+        assertFalse(table.isDense());
+        assertEquals(Math.pow(8, 6), table.getNumConfigurations(), 0.0);
+        assertTrue(table.getNumRows() <= 1000);
+
+        assertCounts(data, counts, 0, parents);
+        assertCounts(data, counts, 6, new int[]{5, 4, 3, 2, 1, 0});
+    }
+
+    @Test
+    public void testWeighted() {
+        DataSet data = simulate(800, 5, 3);
+        RandomUtil.getInstance().setSeed(2938L);
+
+        DataSet resample = new BoxDataSet(ResampledDataBox.bootstrap(((BoxDataSet) data).getDataBox(), 800),
+                data.getVariables());
+        DataSet copied = new BoxDataSet(((BoxDataSet) resample).getDataBox().copy(), data.getVariables());
+
+        ContingencyCounts weighted = new ContingencyCounts(resample);
+        ContingencyCounts direct = new ContingencyCounts(copied);
+
+        int[][] parentSets = {{}, {1}, {2, 3}, {1, 3, 4}};
+
+        for (int[] parents : parentSets) {
+            ContingencyCounts.Table t1 = weighted.count(0, parents);
+            ContingencyCounts.Table t2 = direct.count(0, parents);
+
+            assertEquals(t2.getNumRows(), t1.getNumRows());
+
+            for (int j = 0; j < t1.getNumRows(); j++) {
+                assertEquals(t2.getRowTotal(j), t1.getRowTotal(j));
+
+                for (int k = 0; k < t1.getNumCategories(); k++) {
+                    assertEquals(t2.getCount(j, k), t1.getCount(j, k));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBDeu() {
+        DataSet data = simulate(500, 4, 2);
+        assertEquals(bruteForceBDeu(data, 0, new int[]{1, 2, 3}),
+                new BDeuScore(data).localScore(0, new int[]{1, 2, 3}), 1e-8);
+
+        // With 100^3 parent states, only those that occur are counted.
+        DataSet wide = widen(data, 100);
+        assertFalse(new ContingencyCounts(wide).count(0, new int[]{1, 2, 3}).isDense());
+        assertEquals(bruteForceBDeu(wide, 0, new int[]{1, 2, 3}),
+                new BDeuScore(wide).localScore(0, new int[]{1, 2, 3}), 1e-8);
+    }
+
+    // Each value is uniform over its categories, with 1 in 50 values missing.
+    private DataSet simulate(int sampleSize, int numVars, int numCategories) {
+        RandomUtil random = RandomUtil.getInstance();
+        random.setSeed(4959483L);
+
+        List<Node> variables = new ArrayList<>();
+
+        for (int j = 0; j < numVars; j++) {
+            variables.add(new DiscreteVariable("X" + (j + 1), numCategories));
+        }
+
+        int[][] columns = new int[numVars][sampleSize];
+
+        for (int j = 0; j < numVars; j++) {
+            for (int i = 0; i < sampleSize; i++) {
+                columns[j][i] = random.nextInt(50) == 0 ? DiscreteVariable.MISSING_VALUE
+                        : random.nextInt(numCategories);
+            }
+        }
+
+        return new BoxDataSet(new VerticalIntDataBox(columns), variables);
+    }
+
+    // The same data, with each variable given the given number of categories.
+    private DataSet widen(DataSet data, int numCategories) {
+        List<Node> variables = new ArrayList<>();
+
+        for (Node node : data.getVariables()) {
+            variables.add(new DiscreteVariable(node.getName(), numCategories));
+        }
+
+        return new BoxDataSet(((BoxDataSet) data).getDataBox().copy(), variables);
+    }
+
+    private void assertCounts(DataSet data, ContingencyCounts counts, int child, int[] parents) {
+        Map<List<Integer>, int[]> expected = bruteForce(data, child, parents);
+        ContingencyCounts.Table table = counts.count(child, parents);
+        int c = ((DiscreteVariable) data.getVariable(child)).getNumCategories();
+        int numNonzero = 0;
+
+        List<Integer> previous = null;
+
+        for (int j = 0; j < table.getNumRows(); j++) {
+            List<Integer> key = new ArrayList<>();
+
+            for (int p = 0; p < parents.length; p++) {
+                key.add(table.getParentValue(j, p));
+            }
+
+            // Rows are in lexicographic order.
+            if (previous != null) assertTrue(compare(previous, key) < 0);
+            previous = key;
+
+            int[] cells = expected.containsKey(key) ? expected.get(key) : new int[c];
+            int total = 0;
+
+            for (int k = 0; k < c; k++) {
+                assertEquals(cells[k], table.getCount(j, k));
+                total += cells[k];
+            }
+
+            assertEquals(total, table.getRowTotal(j));
+            if (total > 0) numNonzero++;
+        }
+
+        assertEquals(expected.size(), numNonzero);
+    }
+
+    private Map<List<Integer>, int[]> bruteForce(DataSet data, int child, int[] parents) {
+        Map<List<Integer>, int[]> counts = new HashMap<>();
+        int c = ((DiscreteVariable) data.getVariable(child)).getNumCategories();
+
+        ROW:
+        for (int i = 0; i < data.getNumRows(); i++) {
+            List<Integer> key = new ArrayList<>();
+
+            for (int parent : parents) {
+                int value = data.getInt(i, parent);
+                if (value == DiscreteVariable.MISSING_VALUE) continue ROW;
+                key.add(value);
+            }
+
+            int value = data.getInt(i, child);
+            if (value == DiscreteVariable.MISSING_VALUE) continue;
+
+            counts.computeIfAbsent(key, k -> new int[c])[value]++;
+        }
+
+        return counts;
+    }
+
+    // The BDeu score with sample and structure priors 1.
+    private double bruteForceBDeu(DataSet data, int child, int[] parents) {
+        Map<List<Integer>, int[]> counts = bruteForce(data, child, parents);
+        int c = ((DiscreteVariable) data.getVariable(child)).getNumCategories();
+        double r = 1;
+
+        for (int parent : parents) {
+            r *= ((DiscreteVariable) data.getVariable(parent)).getNumCategories();
+        }
+
+        int vm = data.getNumColumns() - 1;
+        double score = parents.length * Math.log(1.0 / vm) + (vm - parents.length) * Math.log(1.0 - 1.0 / vm);
+
+        double rowPrior = 1.0 / r;
+        double cellPrior = 1.0 / (c * r);
+
+        // Configurations that don't occur contribute lgamma(rowPrior) - lgamma(rowPrior) + c * 0.
+        for (int[] cells : counts.values()) {
+            int total = 0;
+
+            for (int k = 0; k < c; k++) {
+                score += logGamma(cellPrior + cells[k]) - logGamma(cellPrior);
+                total += cells[k];
+            }
+
+            score += logGamma(rowPrior) - logGamma(rowPrior + total);
+        }
+
+        return score;
+    }
+
+    private double logGamma(double x) {
+        return Gamma.logGamma(x);
+    }
+
+    private int compare(List<Integer> a, List<Integer> b) {
+        for (int i = 0; i < a.size(); i++) {
+            int d = Integer.compare(a.get(i), b.get(i));
+            if (d != 0) return d;
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,156 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.DataConvertUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.pitt.dbmi.data.reader.Delimiter;
+import edu.pitt.dbmi.data.reader.tabular.ContinuousTabularDatasetFileReader;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that covariances accumulated by row, by chunk and by merging parts match those of the whole data set.
+ *
+ * @author agent
+ */
+public final class TestCovarianceAccumulator {
+
+    @Test
+    public void testAgainstCovarianceMatrix() {
+        DataSet data = simulate(1003);
+        CovarianceMatrix expected = new CovarianceMatrix(data);
+        double[][] rows = data.getDoubleData().toArray();
+
+        CovarianceAccumulator byRow = new CovarianceAccumulator(data.getNumColumns());
+        for (double[] row : rows) byRow.add(row);
+
+        CovarianceAccumulator byChunk = new CovarianceAccumulator(data.getNumColumns());
+        double[][] chunk = new double[100][];
+
+        for (int i = 0; i < rows.length; i += chunk.length) {
+            int n = Math.min(chunk.length, rows.length - i);
+            System.arraycopy(rows, i, chunk, 0, n);
+            byChunk.add(chunk, n);
+        }
+
+        CovarianceAccumulator merged = new CovarianceAccumulator(data.getNumColumns());
+        CovarianceAccumulator first = new CovarianceAccumulator(data.getNumColumns());
+        CovarianceAccumulator second = new CovarianceAccumulator(data.getNumColumns());
+
+        for (int i = 0; i < rows.length; i++) {
+            (i < 400 ? first : second).add(rows[i]);
+        }
+
+        merged.merge(second);
+        merged.merge(first);
+
+        for (CovarianceAccumulator accumulator : new CovarianceAccumulator[]{byRow, byChunk, merged}) {
+            assertEquals(data.getNumRows(), accumulator.getSampleSize());
+            assertTrue(expected.getMatrix().equals(accumulator.getCovarianceMatrix(data.getVariables()).getMatrix(), 1e-10));
+        }
+    }
+
+    @Test
+    public void testMissingRowsSkipped() {
+        DataSet data = simulate(500);
+        double[][] rows = data.getDoubleData().toArray();
+
+        CovarianceAccumulator complete = new CovarianceAccumulator(data.getNumColumns());
+        complete.add(rows, rows.length);
+
+        double[][] withMissing = new double[rows.length + 2][];
+        System.arraycopy(rows, 0, withMissing, 0, rows.length);
+        withMissing[rows.length] = new double[data.getNumColumns()];
+        withMissing[rows.length][2] = Double.NaN;
+        withMissing[rows.length + 1] = withMissing[rows.length];
+
+        CovarianceAccumulator accumulator = new CovarianceAccumulator(data.getNumColumns());
+        accumulator.add(withMissing, withMissing.length);
+        accumulator.add(withMissing[rows.length]);
+
+        assertEquals(rows.length, accumulator.getSampleSize());
+        assertTrue(complete.getCovarianceMatrix(data.getVariables()).getMatrix().equals(
+                accumulator.getCovarianceMatrix(data.getVariables()).getMatrix(), 1e-10));
+    }
+
+    @Test
+    public void testFromFiles() throws IOException {
+        DataSet data = simulate(1000);
+
+        File whole = write(data, 0, 1000);
+        List<ContinuousTabularDatasetFileReader> parts = new ArrayList<>();
+
+        for (int i = 0; i < 1000; i += 300) {
+            parts.add(new ContinuousTabularDatasetFileReader(write(data, i, Math.min(i + 300, 1000)).toPath(), Delimiter.COMMA));
+        }
+
+        DataSet read = (DataSet) DataConvertUtils.toDataModel(
+                new ContinuousTabularDatasetFileReader(whole.toPath(), Delimiter.COMMA).readInData());
+        ICovarianceMatrix expected = new CovarianceMatrix(read);
+
+        ICovarianceMatrix streamed = DataConvertUtils.toCovarianceMatrix(
+                new ContinuousTabularDatasetFileReader(whole.toPath(), Delimiter.COMMA), 64);
+        ICovarianceMatrix merged = DataConvertUtils.toCovarianceMatrix(parts, 64);
+
+        for (ICovarianceMatrix cov : new ICovarianceMatrix[]{streamed, merged}) {
+            assertEquals(1000, cov.getSampleSize());
+            assertEquals(expected.getVariableNames(), cov.getVariableNames());
+            assertTrue(expected.getMatrix().equals(cov.getMatrix(), 1e-10));
+        }
+    }
+
+    private DataSet simulate(int sampleSize) {
+        RandomUtil.getInstance().setSeed(3928492L);
+        Graph graph = GraphUtils.randomGraph(10, 0, 15, 10, 10, 10, false);
+        SemIm im = new SemIm(new SemPm(graph));
+        return im.simulateData(sampleSize, false);
+    }
+
+    private File write(DataSet data, int from, int to) throws IOException {
+        int[] rows = new int[to - from];
+        for (int i = 0; i < rows.length; i++) rows[i] = from + i;
+
+        File file = File.createTempFile("covariance", ".csv");
+        file.deleteOnExit();
+
+        try (Writer out = new FileWriter(file)) {
+            DataWriter.writeRectangularData(data.subsetRows(rows), out, ',');
+        }
+
+        return file;
+    }
+}
@@ -0,0 +1,148 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.search.IndTestDSep;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the d-separation oracle against the graph's own d-separation search.
+ *
+ * @author agent
+ */
+public class TestDSeparationOracle {
+
+    @Test
+    public void testDag() {
+        RandomUtil.getInstance().setSeed(384828L);
+
+        for (int trial = 0; trial < 10; trial++) {
+            Graph graph = GraphUtils.randomGraph(15, 0, 25, 30, 15, 15, false);
+            checkAgainstGraph(graph);
+        }
+    }
+
+    @Test
+    public void testLatentGraph() {
+        RandomUtil random = RandomUtil.getInstance();
+        random.setSeed(291043L);
+
+        for (int trial = 0; trial < 10; trial++) {
+            List<Node> nodes = new ArrayList<>();
+
+            for (int i = 0; i < 12; i++) {
+                nodes.add(new GraphNode("X" + (i + 1)));
+            }
+
+            Graph graph = new EdgeListGraph(nodes);
+
+            for (int i = 0; i < nodes.size(); i++) {
+                for (int j = i + 1; j < nodes.size(); j++) {
+                    double r = random.nextDouble();
+
+                    if (r < 0.15) {
+                        graph.addDirectedEdge(nodes.get(i), nodes.get(j));
+                    } else if (r < 0.25) {
+                        graph.addBidirectedEdge(nodes.get(i), nodes.get(j));
+                    } else if (r < 0.28) {
+                        graph.addUndirectedEdge(nodes.get(i), nodes.get(j));
+                    }
+                }
+            }
+
+            checkAgainstGraph(graph);
+        }
+    }
+
+    @Test
+    public void testBatch() {
+        RandomUtil.getInstance().setSeed(1093323L);
+        Graph graph = GraphUtils.randomGraph(15, 0, 25, 30, 15, 15, false);
+        List<Node> nodes = graph.getNodes();
+
+        IndTestDSep test = new IndTestDSep(graph);
+        List<IndependenceFact> facts = new ArrayList<>();
+
+        for (int k = 0; k < 200; k++) {
+            Node x = nodes.get(k % 3);
+            Node y = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+            facts.add(new IndependenceFact(x, y, randomSubset(nodes, 0.2)));
+        }
+
+        boolean[] independent = test.isIndependent(facts);
+        double[] pValues = test.getPValues(facts);
+
+        for (int k = 0; k < facts.size(); k++) {
+            IndependenceFact fact = facts.get(k);
+            boolean expected = test.isIndependent(fact.getX(), fact.getY(), fact.getZ());
+            assertEquals(expected, independent[k]);
+            assertEquals(expected ? 1.0 : 0.0, pValues[k], 0.0);
+        }
+    }
+
+    private void checkAgainstGraph(Graph graph) {
+        DSeparationOracle oracle = new DSeparationOracle(graph);
+        List<Node> nodes = graph.getNodes();
+
+        for (int q = 0; q < 20; q++) {
+            List<Node> z = randomSubset(nodes, 0.2);
+
+            for (Node x : nodes) {
+                boolean[] expected = new boolean[nodes.size()];
+                List<Node> connected = new ArrayList<>();
+
+                for (int k = 0; k < nodes.size(); k++) {
+                    Node y = nodes.get(k);
+                    expected[k] = graph.isDSeparatedFrom(x, y, z);
+                    assertEquals(expected[k], oracle.isDSeparatedFrom(x, y, z));
+
+                    if (x != y && !expected[k]) {
+                        connected.add(y);
+                    }
+                }
+
+                assertArrayEquals(expected, oracle.isDSeparatedFrom(x, nodes, z));
+                assertEquals(connected, oracle.getDConnectedNodes(x, z));
+            }
+        }
+    }
+
+    private List<Node> randomSubset(List<Node> nodes, double p) {
+        List<Node> subset = new ArrayList<>();
+
+        for (Node node : nodes) {
+            if (RandomUtil.getInstance().nextDouble() < p) {
+                subset.add(node);
+            }
+        }
+
+        return subset;
+    }
+}
@@ -0,0 +1,142 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.bayes.BayesIm;
+import edu.cmu.tetrad.bayes.BayesPm;
+import edu.cmu.tetrad.bayes.EmBayesEngine;
+import edu.cmu.tetrad.bayes.MlBayesIm;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.SearchExecutor;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests EM estimation over rows grouped by pattern.
+ *
+ * @author agent
+ */
+public class TestEmBayesEngine {
+
+    @Test
+    public void testCompleteData() {
+        RandomUtil.getInstance().setSeed(48392L);
+        Graph graph = GraphUtils.randomGraph(6, 0, 6, 30, 15, 15, false);
+        BayesIm im = new MlBayesIm(new BayesPm(graph, 2, 3), MlBayesIm.RANDOM);
+        DataSet data = im.simulateData(2000, 3883L, false);
+
+        EmBayesEngine engine = new EmBayesEngine(im.getBayesPm(), data);
+        assertTrue(engine.getNumPatterns() < engine.getNumRows());
+
+        // With nothing missing, the expected counts are the counts.
+        EmBayesEngine.ExpectedCounts counts = engine.expectation(im);
+
+        for (int node = 0; node < im.getNumNodes(); node++) {
+            int column = data.getColumn(data.getVariable(im.getNode(node).getName()));
+            int[] parents = im.getParents(node);
+            double[][] observed = new double[im.getNumRows(node)][im.getNumColumns(node)];
+
+            for (int i = 0; i < data.getNumRows(); i++) {
+                int[] values = new int[parents.length];
+
+                for (int k = 0; k < parents.length; k++) {
+                    values[k] = data.getInt(i, data.getColumn(data.getVariable(im.getNode(parents[k]).getName())));
+                }
+
+                observed[im.getRowIndex(node, values)][data.getInt(i, column)]++;
+            }
+
+            for (int row = 0; row < im.getNumRows(node); row++) {
+                for (int k = 0; k < im.getNumColumns(node); k++) {
+                    assertEquals(observed[row][k], counts.getCount(node, row, k), 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMissingValues() {
+        RandomUtil.getInstance().setSeed(48392L);
+        Graph graph = GraphUtils.randomGraph(6, 0, 6, 30, 15, 15, false);
+        BayesIm im = new MlBayesIm(new BayesPm(graph, 2, 3), MlBayesIm.RANDOM);
+        DataSet data = im.simulateData(2000, 3883L, false);
+
+        for (int i = 0; i < data.getNumRows(); i++) {
+            for (int j = 0; j < data.getNumColumns(); j++) {
+                if (RandomUtil.getInstance().nextDouble() < 0.2) {
+                    data.setInt(i, j, -99);
+                }
+            }
+        }
+
+        EmBayesEngine engine = new EmBayesEngine(im.getBayesPm(), data);
+        BayesIm start = new MlBayesIm(im.getBayesPm(), MlBayesIm.RANDOM);
+        engine.estimate(start, 1e-4);
+
+        // EM never lowers the likelihood.
+        List<EmBayesEngine.Iteration> iterations = engine.getIterations();
+        assertTrue(iterations.size() > 1);
+
+        for (int i = 1; i < iterations.size(); i++) {
+            assertTrue(iterations.get(i).getLogLikelihood() >= iterations.get(i - 1).getLogLikelihood() - 1e-6);
+        }
+
+        // Each row is counted once for each node.
+        EmBayesEngine.ExpectedCounts counts1 = engine.expectation(start);
+
+        for (int node = 0; node < im.getNumNodes(); node++) {
+            double sum = 0.0;
+
+            for (int row = 0; row < im.getNumRows(node); row++) {
+                sum += counts1.getRowCount(node, row);
+            }
+
+            assertEquals(data.getNumRows(), sum, 1e-6);
+        }
+
+        // The counts don't depend on the number of threads.
+        int parallelism = SearchExecutor.getInstance().getParallelism();
+        SearchExecutor.getInstance().setParallelism(1);
+
+        try {
+            EmBayesEngine.ExpectedCounts counts2 = new EmBayesEngine(im.getBayesPm(), data).expectation(start);
+            assertEquals(counts1.getLogLikelihood(), counts2.getLogLikelihood(), 1e-9);
+
+            for (int node = 0; node < im.getNumNodes(); node++) {
+                for (int row = 0; row < im.getNumRows(node); row++) {
+                    for (int k = 0; k < im.getNumColumns(node); k++) {
+                        assertEquals(counts1.getCount(node, row, k), counts2.getCount(node, row, k), 1e-9);
+                    }
+                }
+            }
+        } finally {
+            SearchExecutor.getInstance().setParallelism(parallelism);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.ContinuousVariable;
+import edu.cmu.tetrad.data.IKnowledge;
+import edu.cmu.tetrad.data.Knowledge2;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.*;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that FasParallel finds the same adjacencies and sepsets as FasStable.
+ *
+ * @author agent
+ */
+public class TestFasParallel {
+
+    @Test
+    public void testSameAsFasStable() {
+        RandomUtil.getInstance().setSeed(3829482L);
+
+        for (int i = 0; i < 10; i++) {
+            Graph dag = GraphUtils.randomGraph(variables(30), 0, 60, 10, 10, 10, false);
+            IndependenceTest test = new IndTestDSep(dag);
+
+            FasStable fasStable = new FasStable(test);
+            FasParallel fasParallel = new FasParallel(test);
+
+            assertSame(fasStable, fasParallel);
+        }
+    }
+
+    @Test
+    public void testSameAsFasStableWithKnowledge() {
+        RandomUtil.getInstance().setSeed(2938433L);
+
+        for (int i = 0; i < 10; i++) {
+            List<Node> nodes = variables(20);
+            Graph dag = GraphUtils.randomGraph(nodes, 0, 40, 10, 10, 10, false);
+            IndependenceTest test = new IndTestDSep(dag);
+
+            IKnowledge knowledge = new Knowledge2();
+
+            for (int j = 0; j < nodes.size(); j++) {
+                knowledge.addToTier(j / 5, nodes.get(j).getName());
+            }
+
+            knowledge.setRequired(nodes.get(0).getName(), nodes.get(19).getName());
+
+            FasStable fasStable = new FasStable(test);
+            fasStable.setKnowledge(knowledge);
+
+            FasParallel fasParallel = new FasParallel(test);
+            fasParallel.setKnowledge(knowledge);
+
+            assertSame(fasStable, fasParallel);
+        }
+    }
+
+    @Test
+    public void testDepth() {
+        RandomUtil.getInstance().setSeed(4829384L);
+
+        Graph dag = GraphUtils.randomGraph(variables(30), 0, 60, 10, 10, 10, false);
+        IndependenceTest test = new IndTestDSep(dag);
+
+        for (int depth = 0; depth <= 2; depth++) {
+            FasStable fasStable = new FasStable(test);
+            fasStable.setDepth(depth);
+
+            FasParallel fasParallel = new FasParallel(test);
+            fasParallel.setDepth(depth);
+            fasParallel.setBatchSize(1);
+
+            assertSame(fasStable, fasParallel);
+        }
+    }
+
+    private void assertSame(FasStable fasStable, FasParallel fasParallel) {
+        Graph expected = fasStable.search();
+        Graph actual = fasParallel.search();
+
+        assertEquals(expected, actual);
+
+        List<Node> nodes = expected.getNodes();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = i + 1; j < nodes.size(); j++) {
+                Node x = nodes.get(i);
+                Node y = nodes.get(j);
+                assertEquals(fasStable.getSepsets().get(x, y), fasParallel.getSepsets().get(x, y));
+            }
+        }
+    }
+
+    private List<Node> variables(int numVars) {
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < numVars; i++) {
+            nodes.add(new ContinuousVariable("X" + (i + 1)));
+        }
+
+        return nodes;
+    }
+}
@@ -0,0 +1,169 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.BoxDataSet;
+import edu.cmu.tetrad.data.ContinuousVariable;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DoubleDataBox;
+import edu.cmu.tetrad.graph.IndependenceFact;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.IndTestCache;
+import edu.cmu.tetrad.search.IndTestFisherZ;
+import edu.cmu.tetrad.search.IndependenceTest;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the on-disk cache of independence results.
+ *
+ * @author agent
+ */
+public class TestIndTestCache {
+
+    @Test
+    public void testCache() throws IOException {
+        File file = File.createTempFile("tetrad", ".cache");
+        file.delete();
+
+        try {
+            DataSet data = simulate(300, 3848273L);
+            List<IndependenceFact> facts = facts(data.getVariables());
+
+            IndTestCache cache = new IndTestCache(new IndTestFisherZ(data, 0.05), file);
+            assertSameAs(new IndTestFisherZ(data, 0.05), cache, facts);
+            assertEquals(facts.size(), cache.getNumMisses());
+
+            assertSameAs(new IndTestFisherZ(data, 0.05), cache, facts);
+            assertEquals(facts.size(), cache.getNumHits());
+
+            // Questions with x and y swapped are asked again, unless the cache is told the test is symmetric.
+            List<IndependenceFact> swapped = new ArrayList<>();
+            for (IndependenceFact fact : facts) swapped.add(new IndependenceFact(fact.getY(), fact.getX(), fact.getZ()));
+
+            assertSameInBatches(new IndTestFisherZ(data, 0.05), cache, swapped);
+            assertEquals(2 * facts.size(), cache.getNumHits());
+            assertEquals(2 * facts.size(), cache.getNumMisses());
+
+            IndTestCache symmetric = new IndTestCache(new IndTestFisherZ(data, 0.05), file, "", true);
+            assertSameAs(new IndTestFisherZ(data, 0.05), symmetric, facts);
+            assertSameInBatches(new IndTestFisherZ(data, 0.05), symmetric, swapped);
+            assertEquals(2 * facts.size(), symmetric.getNumHits());
+            assertEquals(facts.size(), symmetric.getNumMisses());
+
+            // Read back from the file, with a different alpha.
+            IndTestCache.close(file);
+            cache = new IndTestCache(new IndTestFisherZ(data, 0.2), file);
+            assertSameAs(new IndTestFisherZ(data, 0.2), cache, facts);
+            assertEquals(facts.size(), cache.getNumHits());
+
+            // Different data misses.
+            DataSet data2 = simulate(300, 2938475L);
+            cache = new IndTestCache(new IndTestFisherZ(data2, 0.05), file);
+            assertSameAs(new IndTestFisherZ(data2, 0.05), cache, facts(data2.getVariables()));
+            assertEquals(facts.size(), cache.getNumMisses());
+
+            // A partly written last record is dropped.
+            IndTestCache.close(file);
+
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(raf.length() - 3);
+            }
+
+            cache = new IndTestCache(new IndTestFisherZ(data2, 0.05), file);
+            assertSameAs(new IndTestFisherZ(data2, 0.05), cache, facts(data2.getVariables()));
+            assertEquals(1, cache.getNumMisses());
+        } finally {
+            IndTestCache.close(file);
+            file.delete();
+        }
+    }
+
+    private void assertSameAs(IndependenceTest test, IndependenceTest cache, List<IndependenceFact> facts) {
+        for (IndependenceFact fact : facts) {
+            assertEquals(test.isIndependent(fact.getX(), fact.getY(), fact.getZ()),
+                    cache.isIndependent(fact.getX(), fact.getY(), fact.getZ()));
+            assertEquals(test.getPValue(), cache.getPValue(), 0.0);
+        }
+    }
+
+    // Asks the batch methods, the second time looking up what the first found.
+    private void assertSameInBatches(IndependenceTest test, IndependenceTest cache, List<IndependenceFact> facts) {
+        double[] pValues = cache.getPValues(facts);
+        boolean[] independent = cache.isIndependent(facts);
+
+        for (int i = 0; i < facts.size(); i++) {
+            IndependenceFact fact = facts.get(i);
+            assertEquals(test.isIndependent(fact.getX(), fact.getY(), fact.getZ()), independent[i]);
+            assertEquals(test.getPValue(), pValues[i], 0.0);
+        }
+    }
+
+    private List<IndependenceFact> facts(List<Node> nodes) {
+        List<IndependenceFact> facts = new ArrayList<>();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = i + 1; j < nodes.size(); j++) {
+                facts.add(new IndependenceFact(nodes.get(i), nodes.get(j), Collections.<Node>emptyList()));
+
+                for (int k = 0; k < nodes.size(); k++) {
+                    if (k != i && k != j) {
+                        facts.add(new IndependenceFact(nodes.get(i), nodes.get(j), nodes.get(k)));
+                    }
+                }
+            }
+        }
+
+        return facts;
+    }
+
+    // A chain X1 -> X2 -> X3 -> X4.
+    private DataSet simulate(int sampleSize, long seed) {
+        RandomUtil random = RandomUtil.getInstance();
+        random.setSeed(seed);
+
+        int numVars = 4;
+        List<Node> variables = new ArrayList<>();
+        double[][] rows = new double[sampleSize][numVars];
+
+        for (int j = 0; j < numVars; j++) {
+            variables.add(new ContinuousVariable("X" + (j + 1)));
+        }
+
+        for (int i = 0; i < sampleSize; i++) {
+            for (int j = 0; j < numVars; j++) {
+                rows[i][j] = (j > 0 ? 0.3 * rows[i][j - 1] : 0) + random.nextNormal(0, 1);
+            }
+        }
+
+        return new BoxDataSet(new DoubleDataBox(rows), variables);
+    }
+}
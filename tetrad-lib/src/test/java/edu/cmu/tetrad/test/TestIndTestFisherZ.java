@@ -23,8 +23,7 @@ package edu.cmu.tetrad.test;
 
 import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.graph.*;
-import edu.cmu.tetrad.search.IndTestFisherZ;
-import edu.cmu.tetrad.search.IndependenceTest;
+import edu.cmu.tetrad.search.*;
 import edu.cmu.tetrad.sem.SemIm;
 import edu.cmu.tetrad.sem.SemPm;
 import edu.cmu.tetrad.util.Parameters;
@@ -33,10 +32,12 @@ import edu.cmu.tetrad.util.StatUtils;
 import edu.cmu.tetrad.util.TetradMatrix;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static java.lang.Math.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 
 /**
@@ -181,6 +182,60 @@ public class TestIndTestFisherZ {
             System.out.println(abs(f1) > abs(f2));
         }
     }
-}
 
+    @Test
+    public void testPartialCorrelationEngine() {
+        RandomUtil.getInstance().setSeed(29348234L);
+
+        Graph graph = GraphUtils.randomGraph(12, 0, 20, 5, 5, 5, false);
+        DataSet data = new SemIm(new SemPm(graph)).simulateData(1000, false);
+        TetradMatrix cor = new CorrelationMatrix(data).getMatrix();
+
+        PartialCorrelationEngine engine = new PartialCorrelationEngine(cor, 2);
+
+        int[][] zs = {{}, {2}, {5, 3}, {3, 5}, {9, 4, 7}, {10, 11, 6, 2}, {5, 3}};
+
+        for (int[] z : zs) {
+            for (int x = 0; x < 2; x++) {
+                assertEquals(StatUtils.partialCorrelation(cor, x, 1 - x, z),
+                        engine.partialCorrelation(x, 1 - x, z), 1e-10);
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrent() throws InterruptedException {
+        RandomUtil.getInstance().setSeed(9483423L);
 
+        Graph graph = GraphUtils.randomGraph(20, 0, 30, 5, 5, 5, false);
+        DataSet data = new SemIm(new SemPm(graph)).simulateData(1000, false);
+        final IndTestFisherZ test = new IndTestFisherZ(data, 0.01);
+        final List<Node> nodes = test.getVariables();
+
+        final double[] expected = new double[nodes.size()];
+
+        for (int i = 2; i < nodes.size(); i++) {
+            expected[i] = test.getPValue(nodes.get(0), nodes.get(1), nodes.subList(2, i + 1));
+        }
+
+        final IndTestFisherZ test2 = new IndTestFisherZ(data, 0.01);
+        final List<Thread> threads = new ArrayList<>();
+        final boolean[] failed = new boolean[1];
+
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int rep = 0; rep < 50; rep++) {
+                    for (int i = 2; i < nodes.size(); i++) {
+                        double p = test2.getPValue(nodes.get(0), nodes.get(1), nodes.subList(2, i + 1));
+                        if (p != expected[i]) failed[0] = true;
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        assertFalse(failed[0]);
+    }
+}
@@ -0,0 +1,149 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.IndependenceFact;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.IndTestChiSquare;
+import edu.cmu.tetrad.search.IndTestFisherZ;
+import edu.cmu.tetrad.search.IndTestGSquare;
+import edu.cmu.tetrad.search.IndependenceTest;
+import edu.cmu.tetrad.util.ChoiceGenerator;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the batch methods of independence tests agree with testing facts one at a time.
+ *
+ * @author agent
+ */
+public class TestIndependenceBatch {
+
+    @Test
+    public void testChiSquare() {
+        DataSet data = simulateDiscrete(500);
+        assertSameAsOneAtATime(new IndTestChiSquare(data, 0.05), data.getVariables());
+    }
+
+    @Test
+    public void testGSquare() {
+        DataSet data = simulateDiscrete(500);
+        assertSameAsOneAtATime(new IndTestGSquare(data, 0.05), data.getVariables());
+    }
+
+    @Test
+    public void testFisherZ() {
+        DataSet data = simulateContinuous(500);
+        assertSameAsOneAtATime(new IndTestFisherZ(data, 0.05), data.getVariables());
+    }
+
+    private void assertSameAsOneAtATime(IndependenceTest test, List<Node> nodes) {
+        List<IndependenceFact> facts = new ArrayList<>();
+
+        for (int depth = 0; depth <= 2; depth++) {
+            ChoiceGenerator gen = new ChoiceGenerator(nodes.size(), depth + 2);
+            int[] choice;
+
+            while ((choice = gen.next()) != null) {
+                List<Node> z = new ArrayList<>();
+
+                for (int i = 2; i < choice.length; i++) {
+                    z.add(nodes.get(choice[i]));
+                }
+
+                facts.add(new IndependenceFact(nodes.get(choice[0]), nodes.get(choice[1]), z));
+                facts.add(new IndependenceFact(nodes.get(choice[1]), nodes.get(choice[0]), z));
+            }
+        }
+
+        boolean[] independent = test.isIndependent(facts);
+        double[] pValues = test.getPValues(facts);
+
+        boolean[] judged = new boolean[facts.size()];
+        double[] judgedPValues = test.getPValues(facts, judged);
+
+        for (int i = 0; i < facts.size(); i++) {
+            IndependenceFact fact = facts.get(i);
+            assertEquals(test.isIndependent(fact.getX(), fact.getY(), fact.getZ()), independent[i]);
+            assertEquals(test.getPValue(), pValues[i], 1e-12);
+            assertEquals(independent[i], judged[i]);
+            assertEquals(pValues[i], judgedPValues[i], 0.0);
+        }
+    }
+
+    // A chain X1 -> X2 -> ... -> X6 of three-valued variables, with a few values missing.
+    private DataSet simulateDiscrete(int sampleSize) {
+        RandomUtil random = RandomUtil.getInstance();
+        random.setSeed(2939482L);
+
+        int numVars = 6;
+        List<Node> variables = new ArrayList<>();
+        int[][] columns = new int[numVars][sampleSize];
+
+        for (int j = 0; j < numVars; j++) {
+            variables.add(new DiscreteVariable("X" + (j + 1), 3));
+
+            for (int i = 0; i < sampleSize; i++) {
+                if (j > 0 && random.nextInt(4) != 0) {
+                    columns[j][i] = columns[j - 1][i] == DiscreteVariable.MISSING_VALUE
+                            ? random.nextInt(3) : columns[j - 1][i];
+                } else {
+                    columns[j][i] = random.nextInt(3);
+                }
+            }
+
+            for (int i = 0; i < sampleSize; i++) {
+                if (random.nextInt(50) == 0) columns[j][i] = DiscreteVariable.MISSING_VALUE;
+            }
+        }
+
+        return new BoxDataSet(new VerticalIntDataBox(columns), variables);
+    }
+
+    // A chain X1 -> X2 -> ... -> X6.
+    private DataSet simulateContinuous(int sampleSize) {
+        RandomUtil random = RandomUtil.getInstance();
+        random.setSeed(3948273L);
+
+        int numVars = 6;
+        List<Node> variables = new ArrayList<>();
+        double[][] rows = new double[sampleSize][numVars];
+
+        for (int j = 0; j < numVars; j++) {
+            variables.add(new ContinuousVariable("X" + (j + 1)));
+        }
+
+        for (int i = 0; i < sampleSize; i++) {
+            for (int j = 0; j < numVars; j++) {
+                rows[i][j] = (j > 0 ? 0.6 * rows[i][j - 1] : 0) + random.nextNormal(0, 1);
+            }
+        }
+
+        return new BoxDataSet(new DoubleDataBox(rows), variables);
+    }
+}
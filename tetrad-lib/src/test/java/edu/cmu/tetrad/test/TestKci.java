@@ -0,0 +1,114 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.BoxDataSet;
+import edu.cmu.tetrad.data.ContinuousVariable;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DoubleDataBox;
+import edu.cmu.tetrad.graph.IndependenceFact;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.Kci;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the low-rank mode of KCI.
+ *
+ * @author agent
+ */
+public class TestKci {
+
+    @Test
+    public void testLowRank() {
+        DataSet data = simulate(1000);
+        Node x = data.getVariable("X");
+        Node y = data.getVariable("Y");
+        Node z = data.getVariable("Z");
+
+        for (boolean approximate : new boolean[]{true, false}) {
+            Kci kci = new Kci(data, 0.01);
+            kci.setRank(50);
+            kci.setApproximate(approximate);
+            kci.setNumBootstraps(1000);
+
+            assertTrue(kci.isDependent(x, y));
+            assertTrue(kci.isDependent(x, z, y));
+        }
+    }
+
+    @Test
+    public void testFullRankMatchesExact() {
+        DataSet data = simulate(120);
+        Node x = data.getVariable("X");
+        Node y = data.getVariable("Y");
+        Node z = data.getVariable("Z");
+
+        Kci exact = new Kci(data, 0.05);
+        exact.setApproximate(true);
+
+        Kci lowRank = new Kci(data, 0.05);
+        lowRank.setApproximate(true);
+        lowRank.setRank(data.getNumRows());
+
+        List<IndependenceFact> facts = new ArrayList<>();
+        facts.add(new IndependenceFact(x, y, Collections.<Node>emptyList()));
+        facts.add(new IndependenceFact(x, z, Collections.<Node>emptyList()));
+        facts.add(new IndependenceFact(x, y, Collections.singletonList(z)));
+        facts.add(new IndependenceFact(x, z, Collections.singletonList(y)));
+
+        for (IndependenceFact fact : facts) {
+            exact.isIndependent(fact.getX(), fact.getY(), fact.getZ());
+            lowRank.isIndependent(fact.getX(), fact.getY(), fact.getZ());
+            assertEquals(exact.getScoreForFact(fact), lowRank.getScoreForFact(fact), 1e-4);
+        }
+    }
+
+    // X -> Z -> Y.
+    private DataSet simulate(int sampleSize) {
+        RandomUtil random = RandomUtil.getInstance();
+        random.setSeed(3929483L);
+
+        List<Node> variables = new ArrayList<>();
+        variables.add(new ContinuousVariable("X"));
+        variables.add(new ContinuousVariable("Y"));
+        variables.add(new ContinuousVariable("Z"));
+
+        double[][] rows = new double[sampleSize][3];
+
+        for (int i = 0; i < sampleSize; i++) {
+            double _x = random.nextNormal(0, 1);
+            double _z = _x + 0.5 * random.nextNormal(0, 1);
+            double _y = _z + 0.5 * random.nextNormal(0, 1);
+            rows[i] = new double[]{_x, _y, _z};
+        }
+
+        return new BoxDataSet(new DoubleDataBox(rows), variables);
+    }
+}
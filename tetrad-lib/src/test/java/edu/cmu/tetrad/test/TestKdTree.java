@@ -0,0 +1,93 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.util.KdTree;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests KdTree against a brute force search.
+ *
+ * @author agent
+ */
+public final class TestKdTree {
+
+    @Test
+    public void testNearest() {
+        RandomUtil random = RandomUtil.getInstance();
+        random.setSeed(4938292L);
+
+        for (int trial = 0; trial < 50; trial++) {
+            int N = 1 + random.nextInt(2000);
+            int numColumns = 1 + random.nextInt(4);
+            double[][] data = new double[numColumns + 1][N];
+
+            for (double[] column : data) {
+                for (int i = 0; i < N; i++) {
+
+                    // Some ties and some missing values.
+                    column[i] = trial % 3 == 0 ? random.nextInt(5) : random.nextNormal(0, 1);
+                    if (trial % 5 == 0 && random.nextInt(50) == 0) column[i] = Double.NaN;
+                }
+            }
+
+            int[] columns = new int[numColumns];
+            for (int c = 0; c < numColumns; c++) columns[c] = c + 1;
+
+            KdTree tree = new KdTree(data, columns);
+            assertEquals(N, tree.getNumRows());
+
+            for (int q = 0; q < 20; q++) {
+                int i = random.nextInt(N);
+                int k = 1 + random.nextInt(150);
+
+                double[] distances = new double[N];
+
+                for (int j = 0; j < N; j++) {
+                    for (int c : columns) {
+                        double d = data[c][i] - data[c][j];
+                        if (!Double.isNaN(d)) distances[j] += d * d;
+                    }
+                }
+
+                int[] nearest = tree.nearest(i, k);
+                assertEquals(Math.min(k, N), nearest.length);
+                assertEquals(nearest.length, Arrays.stream(nearest).distinct().count());
+
+                double[] expected = distances.clone();
+                Arrays.sort(expected);
+
+                double[] actual = new double[nearest.length];
+                for (int j = 0; j < nearest.length; j++) actual[j] = distances[nearest[j]];
+                Arrays.sort(actual);
+
+                assertArrayEquals(Arrays.copyOf(expected, nearest.length), actual, 0.0);
+            }
+        }
+    }
+}
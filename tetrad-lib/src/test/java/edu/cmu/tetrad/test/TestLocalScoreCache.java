@@ -0,0 +1,136 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.ContinuousVariable;
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.Fges;
+import edu.cmu.tetrad.search.LocalScoreCache;
+import edu.cmu.tetrad.search.SemBicScore;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ */
+public class TestLocalScoreCache {
+
+    @Test
+    public void testParentOrder() {
+        LocalScoreCache cache = new LocalScoreCache();
+
+        cache.add(3, new int[]{1, 5, 7}, -12.5);
+
+        assertEquals(-12.5, cache.get(3, new int[]{7, 1, 5}), 0.0);
+        assertTrue(Double.isNaN(cache.get(3, new int[]{1, 5})));
+        assertTrue(Double.isNaN(cache.get(1, new int[]{3, 5, 7})));
+        assertTrue(Double.isNaN(cache.get(3, new int[]{1, 5, 7, 8})));
+
+        assertEquals(1, cache.getNumHits());
+        assertEquals(3, cache.getNumMisses());
+    }
+
+    @Test
+    public void testBounded() {
+        LocalScoreCache cache = new LocalScoreCache(64 * 1024, 4);
+
+        for (int i = 0; i < 100000; i++) {
+            cache.add(i % 50, new int[]{i, i + 1}, i);
+        }
+
+        assertTrue(cache.size() * 25 <= 64 * 1024);
+        assertTrue(cache.getNumEvictions() > 0);
+
+        int found = 0;
+
+        for (int i = 0; i < 100000; i++) {
+            double score = cache.get(i % 50, new int[]{i + 1, i});
+            if (Double.isNaN(score)) continue;
+            assertEquals(i, score, 0.0);
+            found++;
+        }
+
+        assertEquals(cache.size(), found);
+    }
+
+    @Test
+    public void testConcurrent() throws InterruptedException {
+        final LocalScoreCache cache = new LocalScoreCache(1024 * 1024);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < 4; t++) {
+            final int offset = t;
+
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    int[] parents = {i, offset};
+                    cache.add(i, parents, i + offset);
+                    double score = cache.get(i, parents);
+                    if (!Double.isNaN(score) && score != i + offset) throw new IllegalStateException();
+                }
+            }));
+        }
+
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(80000, cache.getNumHits() + cache.getNumMisses());
+    }
+
+    @Test
+    public void testFges() {
+        RandomUtil.getInstance().setSeed(492834238L);
+
+        List<Node> vars = new ArrayList<>();
+
+        for (int i = 0; i < 20; i++) {
+            vars.add(new ContinuousVariable("X" + i));
+        }
+
+        Graph dag = GraphUtils.randomGraphRandomForwardEdges(vars, 0, 20, 30, 15, 15, false, true);
+        SemIm im = new SemIm(new SemPm(dag));
+        DataSet data = im.simulateData(1000, false);
+        CovarianceMatrix cov = new CovarianceMatrix(data);
+
+        Graph pattern1 = new Fges(new SemBicScore(cov)).search();
+
+        SemBicScore score = new SemBicScore(cov);
+        LocalScoreCache cache = new LocalScoreCache();
+        score.setLocalScoreCache(cache);
+        Graph pattern2 = new Fges(score).search();
+
+        assertEquals(pattern1, pattern2);
+        assertTrue(cache.getNumHits() > 0);
+    }
+}
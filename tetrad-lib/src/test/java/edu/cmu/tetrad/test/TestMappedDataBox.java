@@ -0,0 +1,162 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.bayes.BayesIm;
+import edu.cmu.tetrad.bayes.BayesPm;
+import edu.cmu.tetrad.bayes.MlBayesIm;
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.search.BDeuScore;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.DataConvertUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.pitt.dbmi.data.reader.Delimiter;
+import edu.pitt.dbmi.data.reader.tabular.ContinuousTabularDatasetFileReader;
+import org.junit.Test;
+
+import java.io.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author agent
+ */
+public class TestMappedDataBox {
+
+    @Test
+    public void testContinuous() throws IOException {
+        RandomUtil.getInstance().setSeed(3928472L);
+
+        Graph graph = GraphUtils.randomGraph(8, 0, 10, 5, 5, 5, false);
+        DataSet data = new SemIm(new SemPm(graph)).simulateData(300, false);
+
+        File file = tempFile();
+        MappedDataBox box = MappedDataBoxWriter.write(file, data);
+        DataSet mapped = new BoxDataSet(new MappedDataBox(file), data.getVariables());
+
+        assertEquals(data.getNumRows(), box.numRows());
+        assertEquals(data.getNumColumns(), box.numCols());
+        assertEquals(data.getVariableNames(), mapped.getVariableNames());
+
+        for (int i = 0; i < data.getNumRows(); i++) {
+            for (int j = 0; j < data.getNumColumns(); j++) {
+                assertEquals(data.getDouble(i, j), mapped.getDouble(i, j), 0.0);
+            }
+        }
+
+        assertTrue(new CovarianceMatrix(data).getMatrix().equals(new CovarianceMatrix(mapped).getMatrix(), 1e-10));
+    }
+
+    @Test
+    public void testStreamedFromReader() throws IOException {
+        RandomUtil.getInstance().setSeed(4829374L);
+
+        Graph graph = GraphUtils.randomGraph(6, 0, 8, 5, 5, 5, false);
+        DataSet data = new SemIm(new SemPm(graph)).simulateData(250, false);
+
+        File text = File.createTempFile("tetrad", ".csv");
+        text.deleteOnExit();
+
+        try (Writer out = new FileWriter(text)) {
+            DataWriter.writeRectangularData(data, out, ',');
+        }
+
+        DataSet read = (DataSet) DataConvertUtils.toDataModel(
+                new ContinuousTabularDatasetFileReader(text.toPath(), Delimiter.COMMA).readInData());
+        DataSet mapped = (DataSet) DataConvertUtils.toMappedDataModel(
+                new ContinuousTabularDatasetFileReader(text.toPath(), Delimiter.COMMA), 17, tempFile());
+
+        assertEquals(read.getNumRows(), mapped.getNumRows());
+        assertEquals(read.getVariableNames(), mapped.getVariableNames());
+
+        for (int i = 0; i < read.getNumRows(); i++) {
+            for (int j = 0; j < read.getNumColumns(); j++) {
+                assertEquals(read.getDouble(i, j), mapped.getDouble(i, j), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testDiscrete() throws IOException {
+        RandomUtil.getInstance().setSeed(2934823L);
+
+        Graph graph = GraphUtils.randomGraph(6, 0, 8, 5, 5, 5, false);
+        BayesIm im = new MlBayesIm(new BayesPm(graph, 2, 4), MlBayesIm.RANDOM);
+        DataSet data = im.simulateData(500, false);
+
+        File file = tempFile();
+        MappedDataBox box = MappedDataBoxWriter.write(file, data);
+        DataSet mapped = new BoxDataSet(box, box.getVariables());
+
+        assertEquals(((DiscreteVariable) data.getVariable(0)).getCategories(),
+                ((DiscreteVariable) mapped.getVariable(0)).getCategories());
+
+        BDeuScore score1 = new BDeuScore(data);
+        BDeuScore score2 = new BDeuScore(mapped);
+
+        assertEquals(score1.localScore(0, new int[]{1, 2}), score2.localScore(0, new int[]{1, 2}), 1e-10);
+        assertEquals(score1.localScore(3, new int[0]), score2.localScore(3, new int[0]), 1e-10);
+    }
+
+    @Test
+    public void testWriteAndSerialize() throws IOException, ClassNotFoundException {
+        RandomUtil.getInstance().setSeed(938472L);
+
+        Graph graph = GraphUtils.randomGraph(4, 0, 4, 5, 5, 5, false);
+        DataSet data = new SemIm(new SemPm(graph)).simulateData(20, false);
+
+        File file = tempFile();
+        MappedDataBoxWriter.write(file, data);
+
+        MappedDataBox box = new MappedDataBox(file, true);
+        box.set(3, 2, 17.0);
+        box.set(4, 2, null);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(new MappedDataBox(file));
+        out.close();
+
+        MappedDataBox box2 = (MappedDataBox) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        assertEquals(17.0, box2.getDouble(3, 2), 0.0);
+        assertTrue(Double.isNaN(box2.getDouble(4, 2)));
+        assertEquals(data.getDouble(5, 2), box2.get(5, 2).doubleValue(), 0.0);
+
+        try {
+            box2.set(0, 0, 1.0);
+            fail("Expecting a read-only box.");
+        } catch (UnsupportedOperationException e) {
+            // Expected.
+        }
+    }
+
+    private File tempFile() throws IOException {
+        File file = File.createTempFile("tetrad", ".tdb");
+        file.deleteOnExit();
+        return file;
+    }
+}
@@ -0,0 +1,147 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.Knowledge2;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.search.MeekRules;
+import edu.cmu.tetrad.search.MeekRulesParallel;
+import edu.cmu.tetrad.search.SearchGraphUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that MeekRulesParallel orients patterns as MeekRules does.
+ *
+ * @author agent
+ */
+public class TestMeekRulesParallel {
+
+    @Test
+    public void testPatterns() {
+        RandomUtil.getInstance().setSeed(3929384L);
+
+        for (int i = 0; i < 10; i++) {
+            Graph dag = GraphUtils.randomGraph(50, 0, 25 + 10 * i, 30, 15, 15, false);
+            assertSameOrientations(basicPattern(dag, 0), null);
+            assertSameOrientations(basicPattern(dag, 5), null);
+        }
+    }
+
+    @Test
+    public void testKnowledge() {
+        RandomUtil.getInstance().setSeed(2938472L);
+        Graph dag = GraphUtils.randomGraph(60, 0, 120, 30, 15, 15, false);
+
+        Knowledge2 knowledge = new Knowledge2();
+
+        for (Edge edge : dag.getEdges()) {
+            if (RandomUtil.getInstance().nextInt(4) == 0) {
+                knowledge.setForbidden(Edges.getDirectedEdgeHead(edge).getName(),
+                        Edges.getDirectedEdgeTail(edge).getName());
+            }
+        }
+
+        assertSameOrientations(basicPattern(dag, 0), knowledge);
+    }
+
+    @Test
+    public void testComponents() {
+        RandomUtil.getInstance().setSeed(4928374L);
+
+        // Several DAGs side by side, and enough edges in all for MeekRules to hand off to MeekRulesParallel.
+        List<Node> nodes = new ArrayList<>();
+        List<Graph> dags = new ArrayList<>();
+
+        for (int k = 0; k < 8; k++) {
+            Graph dag = GraphUtils.randomGraph(100, 0, 200, 30, 15, 15, false);
+
+            for (Node node : dag.getNodes()) {
+                node.setName(node.getName() + "_" + k);
+                nodes.add(node);
+            }
+
+            dags.add(dag);
+        }
+
+        Graph union = new EdgeListGraph(nodes);
+        Graph expected = new EdgeListGraph(nodes);
+
+        for (Graph dag : dags) {
+            Graph pattern = basicPattern(dag, 0);
+
+            for (Edge edge : pattern.getEdges()) {
+                union.addEdge(edge);
+            }
+
+            new MeekRules().orientImplied(pattern);
+
+            for (Edge edge : pattern.getEdges()) {
+                expected.addEdge(edge);
+            }
+        }
+
+        new MeekRules().orientImplied(union);
+        assertEquals(expected, union);
+    }
+
+    private void assertSameOrientations(Graph pattern, Knowledge2 knowledge) {
+        Graph sequential = new EdgeListGraph(pattern);
+        Graph parallel = new EdgeListGraph(pattern);
+
+        MeekRules rules = new MeekRules();
+        if (knowledge != null) rules.setKnowledge(knowledge);
+        rules.orientImplied(sequential);
+
+        MeekRulesParallel parallelRules = new MeekRulesParallel();
+        if (knowledge != null) parallelRules.setKnowledge(knowledge);
+        parallelRules.orientImplied(parallel);
+
+        assertEquals(sequential, parallel);
+        assertEquals(rules.getVisited(), parallelRules.getVisited());
+    }
+
+    // The pattern of the DAG, with every numOriented'th undirected edge oriented as in the DAG.
+    private Graph basicPattern(Graph dag, int numOriented) {
+        Graph pattern = new EdgeListGraph(dag);
+        SearchGraphUtils.basicPattern(pattern, false);
+
+        if (numOriented > 0) {
+            int k = 0;
+
+            for (Edge edge : dag.getEdges()) {
+                if (Edges.isUndirectedEdge(pattern.getEdge(edge.getNode1(), edge.getNode2()))
+                        && ++k % numOriented == 0) {
+                    pattern.removeEdge(edge.getNode1(), edge.getNode2());
+                    pattern.addEdge(edge);
+                }
+            }
+        }
+
+        return pattern;
+    }
+}
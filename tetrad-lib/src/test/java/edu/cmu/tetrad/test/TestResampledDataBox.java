@@ -0,0 +1,155 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.algcomparison.algorithm.oracle.pattern.Fges;
+import edu.cmu.tetrad.algcomparison.score.SemBicScore;
+import edu.cmu.tetrad.bayes.BayesPm;
+import edu.cmu.tetrad.bayes.MlBayesIm;
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.Edge;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.search.BDeuScore;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.Parameters;
+import edu.cmu.tetrad.util.Params;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.TetradMatrix;
+import edu.pitt.dbmi.algo.resampling.GeneralResamplingTest;
+import edu.pitt.dbmi.algo.resampling.ResamplingEdgeEnsemble;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ */
+public class TestResampledDataBox {
+
+    @Test
+    public void testView() {
+        DataBox original = new VerticalDoubleDataBox(new double[][]{{1, 2, 3, 4}, {5, 6, 7, 8}});
+        ResampledDataBox box = new ResampledDataBox(original, new int[]{2, 0, 1, 3});
+
+        assertEquals(6, box.numRows());
+        assertEquals(2, box.numCols());
+
+        double[] expected = {1, 1, 3, 4, 4, 4};
+
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], box.get(i, 0).doubleValue(), 0.0);
+            assertEquals(expected[i] + 4, box.get(i, 1).doubleValue(), 0.0);
+        }
+
+        DataBox copy = box.copy();
+        assertEquals(6, copy.numRows());
+        assertEquals(8.0, copy.get(5, 1).doubleValue(), 0.0);
+
+        RandomUtil.getInstance().setSeed(29483L);
+        assertEquals(3, ResampledDataBox.subsample(original, 3).numRows());
+        assertEquals(4, ResampledDataBox.subsample(original, 10).numRows());
+        assertEquals(10, ResampledDataBox.bootstrap(original, 10).numRows());
+    }
+
+    @Test
+    public void testWeightedCovariance() {
+        RandomUtil.getInstance().setSeed(3928493L);
+        Graph dag = GraphUtils.randomGraph(10, 0, 12, 30, 15, 15, false);
+        DataSet data = new SemIm(new SemPm(dag)).simulateData(500, false);
+        DataBox original = new VerticalDoubleDataBox(data.getDoubleData().transpose().toArray());
+
+        DataSet resample = new BoxDataSet(ResampledDataBox.bootstrap(original, 500), data.getVariables());
+        DataSet copied = new BoxDataSet(((BoxDataSet) resample).getDataBox().copy(), data.getVariables());
+
+        TetradMatrix weighted = new CovarianceMatrix(resample).getMatrix();
+        TetradMatrix direct = new CovarianceMatrix(copied).getMatrix();
+
+        for (int i = 0; i < weighted.rows(); i++) {
+            for (int j = 0; j < weighted.columns(); j++) {
+                assertEquals(direct.get(i, j), weighted.get(i, j), 1e-10);
+            }
+        }
+
+        assertEquals(500, new CovarianceMatrix(resample).getSampleSize());
+    }
+
+    @Test
+    public void testWeightedCounts() {
+        RandomUtil.getInstance().setSeed(3928493L);
+        Graph dag = GraphUtils.randomGraph(8, 0, 10, 30, 15, 15, false);
+        DataSet data = new MlBayesIm(new BayesPm(dag, 2, 3), MlBayesIm.RANDOM).simulateData(500, false);
+        DataBox original = ((BoxDataSet) data).getDataBox();
+
+        DataSet resample = new BoxDataSet(ResampledDataBox.subsample(original, 300), data.getVariables());
+        DataSet copied = new BoxDataSet(((BoxDataSet) resample).getDataBox().copy(), data.getVariables());
+
+        BDeuScore weighted = new BDeuScore(resample);
+        BDeuScore direct = new BDeuScore(copied);
+
+        assertEquals(300, weighted.getSampleSize());
+
+        for (int i = 0; i < 8; i++) {
+            assertEquals(direct.localScore(i), weighted.localScore(i), 1e-8);
+            assertEquals(direct.localScore(i, new int[]{(i + 1) % 8, (i + 3) % 8}),
+                    weighted.localScore(i, new int[]{(i + 1) % 8, (i + 3) % 8}), 1e-8);
+        }
+    }
+
+    @Test
+    public void testRowWeightBootstrap() {
+        RandomUtil.getInstance().setSeed(492834238L);
+        Graph dag = GraphUtils.randomGraph(10, 0, 12, 30, 15, 15, false);
+        DataSet data = new SemIm(new SemPm(dag)).simulateData(1000, false);
+
+        Parameters parameters = new Parameters();
+        parameters.set(Params.PENALTY_DISCOUNT, 2);
+        parameters.set(Params.VERBOSE, false);
+
+        Graph copied = bootstrap(data, parameters, false);
+        Graph weighted = bootstrap(data, parameters, true);
+
+        assertEquals(copied.getNumEdges(), weighted.getNumEdges());
+
+        for (Edge edge : copied.getEdges()) {
+            Edge other = weighted.getEdge(weighted.getNode(edge.getNode1().getName()),
+                    weighted.getNode(edge.getNode2().getName()));
+            assertTrue(other != null);
+            assertEquals(edge.getEdgeTypeProbabilities().size(), other.getEdgeTypeProbabilities().size());
+        }
+    }
+
+    // Both modes draw the same rows from the same seed.
+    private Graph bootstrap(DataSet data, Parameters parameters, boolean rowWeights) {
+        RandomUtil.getInstance().setSeed(18383L);
+        GeneralResamplingTest test = new GeneralResamplingTest(data, new Fges(new SemBicScore()), 10);
+        test.setResamplingWithReplacement(true);
+        test.setPercentResampleSize(100);
+        test.setParameters(parameters);
+        test.setParallelMode(false);
+        test.setRowWeights(rowWeights);
+        test.setEdgeEnsemble(ResamplingEdgeEnsemble.Highest);
+        return test.search();
+    }
+}
@@ -0,0 +1,105 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.bayes.BayesPm;
+import edu.cmu.tetrad.bayes.MlBayesIm;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.RowBlockSimulator;
+import edu.cmu.tetrad.util.SearchExecutor;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well44497b;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that simulations done in blocks of rows depend only on the seed.
+ *
+ * @author agent
+ */
+public class TestRowBlockSimulator {
+
+    @Test
+    public void testIndependentOfThreads() {
+        double[] parallel = simulate(12345, true);
+        double[] sequential = simulate(12345, false);
+
+        for (int i = 0; i < parallel.length; i++) {
+            assertEquals(sequential[i], parallel[i], 0.0);
+        }
+
+        // The first block is drawn from the given generator as a sequential simulation would draw it.
+        RandomGenerator random = new Well44497b(12345);
+
+        for (int i = 0; i < RowBlockSimulator.BLOCK_SIZE; i++) {
+            assertEquals(random.nextDouble(), parallel[i], 0.0);
+        }
+    }
+
+    @Test
+    public void testSemIm() {
+        RandomUtil.getInstance().setSeed(48392L);
+        Graph graph = GraphUtils.randomGraph(10, 0, 10, 30, 15, 15, false);
+        SemIm im = new SemIm(new SemPm(graph));
+
+        DataSet data1 = im.simulateData(3500, 3883L, false);
+
+        int parallelism = SearchExecutor.getInstance().getParallelism();
+        SearchExecutor.getInstance().setParallelism(1);
+
+        try {
+            DataSet data2 = im.simulateData(3500, 3883L, false);
+            assertEquals(data1, data2);
+        } finally {
+            SearchExecutor.getInstance().setParallelism(parallelism);
+        }
+    }
+
+    @Test
+    public void testMlBayesIm() {
+        RandomUtil.getInstance().setSeed(48392L);
+        Graph graph = GraphUtils.randomGraph(10, 0, 10, 30, 15, 15, false);
+        MlBayesIm im = new MlBayesIm(new BayesPm(graph, 2, 3), MlBayesIm.RANDOM);
+
+        DataSet data1 = im.simulateData(3500, 3883L, false);
+        DataSet data2 = im.simulateData(3500, 3883L, false);
+        assertEquals(data1, data2);
+    }
+
+    private double[] simulate(long seed, boolean parallel) {
+        final double[] values = new double[5500];
+
+        RowBlockSimulator.simulate("Test", values.length, new Well44497b(seed), parallel, (from, to, random) -> {
+            for (int i = from; i < to; i++) {
+                values[i] = random.nextDouble();
+            }
+        });
+
+        return values;
+    }
+}
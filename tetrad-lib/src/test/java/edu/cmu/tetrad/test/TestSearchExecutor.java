@@ -0,0 +1,166 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.util.SearchExecutor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author agent
+ */
+public class TestSearchExecutor {
+
+    @Test
+    public void testInvokeAll() {
+        SearchExecutor executor = SearchExecutor.getInstance();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++) {
+            final int j = i;
+            tasks.add(() -> j * j);
+        }
+
+        List<Integer> results = executor.invokeAll("TestInvokeAll", tasks);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i * i, (int) results.get(i));
+        }
+
+        SearchExecutor.Metrics metrics = executor.getMetrics("TestInvokeAll");
+        assertEquals(100, metrics.getNumTasks());
+        assertTrue(metrics.getPeakThreads() >= 1);
+        assertTrue(metrics.getPeakThreads() <= executor.getParallelism());
+    }
+
+    @Test
+    public void testNested() throws Exception {
+        final SearchExecutor executor = SearchExecutor.getInstance();
+        List<Future<Integer>> outer = new ArrayList<>();
+
+        // More outer tasks than workers, each running an inner invokeAll; this must not deadlock.
+        for (int i = 0; i < 4 * executor.getParallelism(); i++) {
+            outer.add(executor.submit("TestNestedOuter", () -> {
+                List<Callable<Integer>> inner = new ArrayList<>();
+
+                for (int k = 0; k < 20; k++) {
+                    inner.add(() -> 1);
+                }
+
+                int sum = 0;
+
+                for (int x : executor.invokeAll("TestNestedInner", inner)) {
+                    sum += x;
+                }
+
+                return sum + executor.invoke("TestNestedInner", new Sum(0, 64));
+            }));
+        }
+
+        for (Future<Integer> future : outer) {
+            assertEquals(20 + 64, (int) future.get(60, TimeUnit.SECONDS));
+        }
+
+        assertEquals(outer.size(), executor.getMetrics("TestNestedOuter").getNumTasks());
+        assertEquals(outer.size() * 21, executor.getMetrics("TestNestedInner").getNumTasks());
+    }
+
+    @Test
+    public void testFromOtherPool() throws Exception {
+        final SearchExecutor executor = SearchExecutor.getInstance();
+        final List<Callable<Boolean>> tasks = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++) {
+            tasks.add(() -> ForkJoinTask.getPool() == executor.getPool());
+        }
+
+        // Work handed over from a worker of the common pool runs in the executor's pool.
+        List<Boolean> inPool = ForkJoinPool.commonPool().submit(() -> executor.invokeAll("test", tasks)).get();
+
+        for (boolean b : inPool) {
+            assertTrue(b);
+        }
+    }
+
+    @Test
+    public void testTimeout() throws InterruptedException {
+        SearchExecutor executor = SearchExecutor.getInstance();
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+
+        for (int i = 0; i < 4 * executor.getParallelism(); i++) {
+            tasks.add(() -> {
+                while (!SearchExecutor.isCanceled()) {
+                    Thread.sleep(5);
+                }
+
+                return true;
+            });
+        }
+
+        try {
+            executor.invokeAll("TestTimeout", tasks, 100, TimeUnit.MILLISECONDS);
+            fail("Expected a timeout.");
+        } catch (TimeoutException e) {
+            // Expected.
+        }
+
+        // The running tasks see the cancellation and return; the rest never start.
+        long stop = System.currentTimeMillis() + 10000;
+
+        while (executor.getMetrics("TestTimeout").getNumTasks() < executor.getParallelism()
+                && System.currentTimeMillis() < stop) {
+            Thread.sleep(10);
+        }
+
+        assertFalse(SearchExecutor.isCanceled());
+        assertTrue(executor.getMetrics("TestTimeout").getNumTasks() < tasks.size());
+    }
+
+    private static class Sum extends RecursiveTask<Integer> {
+        private final int from;
+        private final int to;
+
+        Sum(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        protected Integer compute() {
+            if (to - from <= 4) return to - from;
+            int mid = (from + to) / 2;
+            Sum left = new Sum(from, mid);
+            left.fork();
+            return new Sum(mid, to).compute() + left.join();
+        }
+    }
+}
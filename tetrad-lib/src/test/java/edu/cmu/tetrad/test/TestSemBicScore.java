@@ -0,0 +1,115 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.ContinuousVariable;
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.SemBicScore;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.TetradMatrix;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.Math.log;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ */
+public class TestSemBicScore {
+
+    @Test
+    public void testLocalScore() {
+        RandomUtil.getInstance().setSeed(38492384L);
+
+        Graph dag = GraphUtils.randomGraph(10, 0, 15, 5, 5, 5, false);
+        DataSet data = new SemIm(new SemPm(dag)).simulateData(500, false);
+        CovarianceMatrix cov = new CovarianceMatrix(data);
+
+        SemBicScore score = new SemBicScore(cov);
+        score.setPenaltyDiscount(2);
+
+        int[][] families = {{0}, {0, 1}, {3, 7, 2}, {9, 8, 4, 1}, {5, 0, 1, 2, 3, 4, 6}};
+
+        for (int[] family : families) {
+            int i = family[0];
+            int[] parents = new int[family.length - 1];
+            System.arraycopy(family, 1, parents, 0, parents.length);
+
+            assertEquals(expected(cov, i, parents, 2), score.localScore(i, parents), 1e-8);
+        }
+    }
+
+    @Test
+    public void testLocalScoreDiff() {
+        RandomUtil.getInstance().setSeed(2384723984L);
+
+        Graph dag = GraphUtils.randomGraph(10, 0, 15, 5, 5, 5, false);
+        DataSet data = new SemIm(new SemPm(dag)).simulateData(500, false);
+        SemBicScore score = new SemBicScore(new CovarianceMatrix(data));
+
+        int[][] z = {{}, {1}, {2, 5}, {8, 6, 4}};
+
+        for (int[] _z : z) {
+            int[] zx = new int[_z.length + 1];
+            System.arraycopy(_z, 0, zx, 0, _z.length);
+            zx[_z.length] = 3;
+
+            assertEquals(score.localScore(0, zx) - score.localScore(0, _z), score.localScoreDiff(3, 0, _z), 1e-8);
+        }
+    }
+
+    @Test
+    public void testSingular() {
+        double[][] m = {{1, 1, 0}, {1, 1, 0}, {0, 0, 1}};
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) nodes.add(new ContinuousVariable("X" + i));
+        CovarianceMatrix cov = new CovarianceMatrix(nodes, m, 100);
+        SemBicScore score = new SemBicScore(cov);
+
+        assertTrue(Double.isNaN(score.localScore(2, 0, 1)));
+        assertTrue(Double.isNaN(score.localScoreDiff(1, 2, new int[]{0})));
+    }
+
+    // The score as computed by regression with an explicit inverse.
+    private double expected(CovarianceMatrix cov, int i, int[] parents, double penaltyDiscount) {
+        TetradMatrix x = cov.getSelection(parents, parents);
+        TetradMatrix y = cov.getSelection(parents, new int[]{i});
+        double s2 = cov.getValue(i, i);
+
+        if (parents.length > 0) {
+            s2 -= y.transpose().times(x.inverse()).times(y).get(0, 0);
+        }
+
+        int n = cov.getSampleSize();
+        return -n * log(s2) - penaltyDiscount * (parents.length + 1) * log(n);
+    }
+}